@@ -0,0 +1,252 @@
+package ants.compiler;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import ants.vm.AntClass;
+import ants.vm.AntClassFile;
+
+/**
+ * The <code>AntsBuild</code> class compiles many ant source files at once.
+ * The sources are compiled in parallel on a pool of threads; every thread
+ * uses its own {@link AntsCompiler}, so the buffers of a compiler are
+ * allocated once per thread instead of once per source.  The class file of
+ * a source is written next to it, with the extension <code>.bin</code>
+ * appended to its name.
+ * <p>
+ * A build can keep a cache file that records a hash of the contents of
+ * every source it has compiled.  A source whose contents have the same hash
+ * as in the previous build, and whose class file still exists, is not
+ * compiled again.  The cache file is a text file with one line per source,
+ * the hash and the path of the source separated by a tab.
+ * <p>
+ * The messages of the compiler are printed in the order of the sources,
+ * independently of the order in which they are compiled.
+ */
+public class AntsBuild {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int threads;
+    private final String cacheFile;
+    private final boolean optimizing;
+    private final PrintStream out;
+
+    /**
+     * The hashes of the sources by their paths, as read from and written to
+     * the cache file.
+     */
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * The compiler of each thread of the pool.
+     */
+    private final ThreadLocal<AntsCompiler> compilers = new ThreadLocal<AntsCompiler>() {
+        protected AntsCompiler initialValue() {
+            AntsCompiler compiler = new AntsCompiler();
+            compiler.setOptimizing(optimizing);
+            return compiler;
+        }
+    };
+
+    /**
+     * Creates a new build.
+     *
+     * @param threads The number of threads that compile sources.
+     * @param cacheFile The path to the cache file, or <code>null</code> to
+     *                  compile all sources.
+     * @param optimizing True to optimize the programs.
+     * @param out The stream to which the messages are written.
+     */
+    public AntsBuild(int threads, String cacheFile, boolean optimizing,
+                     PrintStream out) {
+        this.threads = Math.max(threads, 1);
+        this.cacheFile = cacheFile;
+        this.optimizing = optimizing;
+        this.out = out;
+    }
+
+    /**
+     * Compiles source files.
+     *
+     * @param sources The paths to the source files.
+     * @return The number of sources that could not be compiled.
+     * @throws IOException The cache file could not be read or written.
+     */
+    public int build(List<String> sources) throws IOException {
+
+        if (cacheFile != null)
+            readCache();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<>();
+        int failed = 0;
+
+        try {
+            for (final String source: sources) {
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() {
+                        return compile(source);
+                    }
+                }));
+            }
+
+            for (Future<String> result: results) {
+
+                String messages = result.get();
+
+                if (messages.indexOf('\n') < messages.length() - 1)
+                    failed++;
+
+                out.print(messages);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The build has been interrupted.");
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (cacheFile != null)
+            writeCache();
+
+        return failed;
+    }
+
+    /**
+     * Compiles a source file unless it is unchanged.
+     *
+     * @param source The path to the source file.
+     * @return The messages for the source.  The first line reports that
+     *         the source has been compiled or skipped; any further line
+     *         reports an error.
+     */
+    private String compile(String source) {
+
+        String target = source + ".bin";
+        byte[] contents;
+
+        try (FileInputStream in = new FileInputStream(source)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] block = new byte[8192];
+
+            for (int n; (n = in.read(block)) >= 0; )
+                buffer.write(block, 0, n);
+
+            contents = buffer.toByteArray();
+
+        } catch (IOException e) {
+            hashes.remove(source);
+            return "Compiling " + source + "\n" +
+                "Error while opening or reading input file: " +
+                e.getMessage() + ".\n";
+        }
+
+        String hash = cacheFile != null ? hash(contents, optimizing) : null;
+
+        if (hash != null && hash.equals(hashes.get(source)) && new File(target).isFile())
+            return "Up to date " + source + "\n";
+
+        hashes.remove(source);
+
+        AntClass ant;
+
+        try {
+            ant = compilers.get().compile(new InputStreamReader(
+                new ByteArrayInputStream(contents), Charset.defaultCharset()));
+
+        } catch (SyntaxError e) {
+            return "Compiling " + source + "\n" +
+                "Syntax error (line " + e.getLine() + "): " +
+                e.getMessage() + ".\n";
+
+        } catch (IOException e) {
+            return "Compiling " + source + "\n" +
+                "Error while opening or reading input file: " +
+                e.getMessage() + ".\n";
+        }
+
+        try {
+            AntClassFile.write(ant, target);
+        } catch (IOException e) {
+            return "Compiling " + source + "\n" +
+                "Error while writing output file: " + e.getMessage() + ".\n";
+        }
+
+        if (hash != null)
+            hashes.put(source, hash);
+
+        return "Compiling " + source + "\n";
+    }
+
+    /**
+     * Computes the hash of a source.  The version of the class file format
+     * and whether the program is optimized are part of the hash, so all
+     * sources are compiled again when either changes.
+     */
+    private static String hash(byte[] contents, boolean optimizing) {
+
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        digest.update((byte) AntClassFile.VERSION);
+        digest.update((byte) (optimizing ? 1 : 0));
+
+        StringBuilder hex = new StringBuilder();
+
+        for (byte b: digest.digest(contents))
+            hex.append(String.format("%02x", b & 0xff));
+
+        return hex.toString();
+    }
+
+    /**
+     * Reads the cache file, if it exists.
+     */
+    private void readCache() throws IOException {
+
+        if (!new File(cacheFile).isFile())
+            return;
+
+        try (BufferedReader in = new BufferedReader(
+                 new InputStreamReader(new FileInputStream(cacheFile), UTF8))) {
+
+            String line;
+
+            while ((line = in.readLine()) != null) {
+
+                String[] entry = line.split("\t", 2);
+
+                if (entry.length == 2)
+                    hashes.put(entry[1], entry[0]);
+            }
+        }
+    }
+
+    /**
+     * Writes the cache file.  The entries of sources that have not been
+     * part of this build are kept.
+     */
+    private void writeCache() throws IOException {
+
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                 new FileOutputStream(cacheFile), UTF8))) {
+
+            for (Map.Entry<String, String> e: new TreeMap<>(hashes).entrySet())
+                out.print(e.getValue() + "\t" + e.getKey() + "\n");
+
+            if (out.checkError())
+                throw new IOException("Error while writing " + cacheFile);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package ants.compiler;
 import java.util.*;
 import java.io.*;
 import ants.vm.AntClass;
+import ants.vm.AntClassFile;
 import ants.vm.AntsVm;
 import ants.vm.Instruction;
 import ants.vm.Direction;
@@ -108,10 +109,18 @@ public class AntsCompiler {
     protected AntClass ant;
 
     /**
-     * The compiled program of the ant class.
+     * The compiled program of the ant class.  The buffer is allocated for
+     * the largest possible program and reused by all sources that are
+     * compiled by this compiler.
      */
     protected short[] program;
 
+    /**
+     * Whether the compiled programs are optimized with a {@link
+     * ProgramOptimizer}.
+     */
+    protected boolean optimizing;
+
     /**
      * Tests the current token for an expected token and reads the next symbol
      * if they match.
@@ -736,6 +745,17 @@ public class AntsCompiler {
         }
     }
 
+    /**
+     * Sets whether the compiled programs are optimized.  Optimized programs
+     * execute fewer instructions and need fewer variables, but no longer
+     * correspond one to one to the source file.
+     *
+     * @param optimizing True to optimize the programs.
+     */
+    public void setOptimizing(boolean optimizing) {
+        this.optimizing = optimizing;
+    }
+
     /**
      * The main method of the ant compiler.
      *
@@ -743,47 +763,46 @@ public class AntsCompiler {
      */
     public static void main(String[] args) {
 
-        if (args.length < 1) {
-            System.out.println(
-                "Usage: java ants.compiler.AntsCompiler [source files ...]");
-        } else {
+        int threads = 1;
+        String cacheFile = null;
+        boolean optimizing = false;
+        List<String> sources = new ArrayList<>();
 
+        try {
             for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-threads"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-cache"))
+                    cacheFile = args[++i];
+                else if (args[i].equals("-O"))
+                    optimizing = true;
+                else
+                    sources.add(args[i]);
+            }
 
-                System.out.println("Compiling " + args[i]);
-
-                AntClass ant;
-
-                try (FileReader srcReader = new FileReader(args[i])) {
-
-                    AntsCompiler compiler = new AntsCompiler();
-                    ant = compiler.compile(srcReader);
-
-                } catch (SyntaxError e) {
-                    System.out.println(
-                            "Syntax error (line " + e.getLine() + "): " +
-                            e.getMessage() + ".");
-                    continue;
-
-                } catch (IOException e) {
-                    System.out.println(
-                            "Error while opening or reading input file: " +
-                            e.getMessage() + ".");
-                    continue;
-                }
+            if (threads <= 0)
+                throw new IllegalArgumentException();
 
-                try (FileOutputStream fos = new FileOutputStream(args[i] + ".bin");
-                     ObjectOutputStream oos = new ObjectOutputStream(fos)) {
+        } catch (RuntimeException e) {
+            sources.clear();
+        }
 
-                    oos.writeObject(ant);
+        if (sources.isEmpty()) {
+            System.out.println(
+                "Usage: java ants.compiler.AntsCompiler [options] [source files ...]\n" +
+                "  -O                    optimize the programs\n" +
+                "  -threads n            number of sources compiled in parallel\n" +
+                "  -cache file           skip sources that are unchanged since the\n" +
+                "                        build that wrote the cache file");
+            return;
+        }
 
-                } catch (IOException e) {
-                    System.out.println(
-                            "Error while writing output file: " +
-                            e.getMessage() + ".");
-                    continue;
-                }
-            }
+        try {
+            new AntsBuild(threads, cacheFile, optimizing, System.out).build(sources);
+        } catch (IOException e) {
+            System.out.println(
+                    "Error while reading or writing cache file: " +
+                    e.getMessage() + ".");
         }
     }
 
@@ -808,19 +827,37 @@ public class AntsCompiler {
             variables.put(defaultVariables[i],
                 new VariableEntry(defaultVariables[i], i));
 
+        if (program == null)
+            program = new short[AntsVm.INSTRUCTION_SIZE * AntsVm.MAX_PROGRAM_SIZE];
+        else {
+            // The instructions are assembled with |=, so the part that the
+            // previous source has used, including an instruction that was
+            // left unfinished by a syntax error, must be cleared.
+            Arrays.fill(program, 0,
+                Math.min(program.length, AntsVm.INSTRUCTION_SIZE * (pc + 1)), (short) 0);
+        }
+
         pc = 0;
         vc = (short) variables.size();
 
         ant = new AntClass();
-        program = new short[AntsVm.INSTRUCTION_SIZE * AntsVm.MAX_PROGRAM_SIZE];
 
         parseAnt();
         backpatchLabels();
 
         short[] antProgram = Arrays.copyOf(program, AntsVm.INSTRUCTION_SIZE * pc);
 
-        ant.setVariableSize((short) variables.size());
-        ant.setProgramSize(pc);
+        int variableSize = variables.size();
+
+        if (optimizing) {
+            ProgramOptimizer optimizer = new ProgramOptimizer();
+            antProgram = optimizer.optimize(antProgram);
+            antProgram = optimizer.allocateVariables(antProgram, variableSize);
+            variableSize = optimizer.getVariableSize();
+        }
+
+        ant.setVariableSize((short) variableSize);
+        ant.setProgramSize((short) (antProgram.length / AntsVm.INSTRUCTION_SIZE));
         ant.setProgram(antProgram);
 
         return ant;
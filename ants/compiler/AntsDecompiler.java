@@ -4,6 +4,7 @@ import java.io.*;
 import java.util.*;
 
 import ants.vm.AntClass;
+import ants.vm.AntClassFile;
 import ants.vm.AntsVm;
 import ants.vm.Instruction;
 
@@ -422,11 +423,8 @@ public class AntsDecompiler {
 
                 AntClass ant;
 
-                try (FileInputStream fis = new FileInputStream(args[i]);
-                     ObjectInputStream ois = new ObjectInputStream(fis)) {
-
-                    ant = (AntClass) ois.readObject();
-
+                try {
+                    ant = AntClassFile.read(args[i]);
                 } catch (ClassNotFoundException e) {
                     System.out.println(
                             "Error while opening or reading input file: " +
@@ -0,0 +1,1158 @@
+package ants.compiler;
+
+import java.util.*;
+import ants.vm.AntsVm;
+import ants.vm.DecodedProgram;
+import ants.vm.Instruction;
+import ants.vm.ProgramVerifier;
+
+/**
+ * The <code>ProgramOptimizer</code> class reduces the number of instructions
+ * that an ant program executes.  Every instruction costs energy (see {@link
+ * AntsVm#ENERGY_COSTS}), so an ant whose program executes fewer instructions
+ * gets more useful work done in each cycle.
+ * <p>
+ * The optimizer works on a program whose labels have been resolved.  It
+ * builds a control-flow graph of basic blocks and repeats the following
+ * passes until none of them changes the program any more:
+ * <ul>
+ * <li>Sparse conditional constant propagation, which replaces variables
+ *     with known values by constants, folds arithmetic on constants, turns
+ *     <i>GotoIf</i> instructions with a constant condition into a
+ *     <i>Goto</i> or removes them, and removes code that can never be
+ *     executed.</li>
+ * <li>Copy propagation, which reads a variable instead of a copy of it.</li>
+ * <li>Dead-store elimination, which removes instructions without side
+ *     effects whose result is never read.</li>
+ * <li>Jump threading, which lets a jump to a <i>Goto</i> jump to the target
+ *     of the <i>Goto</i> directly, and removes jumps to the next
+ *     instruction.</li>
+ * <li>Branch inversion, which turns a comparison followed by <i>GotoIf</i>
+ *     over a <i>Goto</i> into the inverse comparison followed by a single
+ *     <i>GotoIf</i>.</li>
+ * </ul>
+ * An ant executes the same actions in the same order with the optimized
+ * program as with the original one, but it needs less energy for them, so
+ * it gets further in each cycle.  Only the values of variables that are
+ * never read again, and of <code>$MyEnergy</code>, can differ.
+ * <p>
+ * Finally, {@link #allocateVariables(short[], int)} lets variables whose
+ * values are never needed at the same time share a slot, so the ants of a
+ * class need fewer variables.
+ * <p>
+ * Addresses that are used as data, for example a label copied to a
+ * variable, keep the value they have in the original program.  If a
+ * program jumps to an address from a variable that cannot be replaced by a
+ * constant, no instruction may move, and the optimizer only applies the
+ * replacements of the constant propagation.  Programs that do not end with
+ * a <i>Goto</i> are returned unchanged, and so are programs that jump to
+ * constant addresses outside of the program, which the {@link
+ * ProgramVerifier} reports when they are loaded.
+ */
+public class ProgramOptimizer {
+
+    /**
+     * The value of a variable whose value is not a known constant.
+     */
+    private static final int NOT_CONSTANT = Integer.MIN_VALUE;
+
+    /**
+     * The maximum number of rounds of all passes.
+     */
+    private static final int MAX_ROUNDS = 16;
+
+    /**
+     * The maximum number of variable states kept by the data-flow analyses.
+     * Larger programs are not optimized.
+     */
+    private static final int MAX_STATES = 1 << 22;
+
+    private short[] program;
+    private int size;
+    private int variableSize;
+    private int allocatedSize;
+    private boolean[] deleted;
+
+    private int blocks;
+    private int[] blockStart;
+    private int[] blockOf;
+
+    /**
+     * Optimizes a program.
+     *
+     * @param input The program with resolved labels, four shorts per
+     *              instruction.  The array is not changed.
+     * @return The optimized program, or <code>input</code> if the program
+     *         cannot be optimized.
+     */
+    public short[] optimize(short[] input) {
+
+        program = input.clone();
+        size = program.length / AntsVm.INSTRUCTION_SIZE;
+
+        if (!isWellFormed() || (long) size * variableSize > MAX_STATES)
+            return input;
+
+        deleted = new boolean[size];
+
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+
+            boolean changed = propagateConstants();
+
+            // Jumps to computed addresses only stay correct if no
+            // instruction moves.
+            if (hasComputedJumps())
+                return Arrays.equals(program, input) ? input : program;
+
+            changed |= compact();
+            changed |= propagateCopies();
+            changed |= eliminateDeadStores() | compact();
+            changed |= threadJumps() | compact();
+            changed |= invertBranches() | compact();
+
+            if (!changed)
+                break;
+        }
+
+        return getOpcode(size - 1) == Instruction.GOTO ? program : input;
+    }
+
+    /**
+     * Assigns the user variables of a program to as few slots as possible.
+     * Two variables share a slot if neither is written while the other
+     * holds a value that is still needed.  The system variables keep their
+     * slots.  Variables that are read before they are written can share a
+     * slot as well, since the VM sets all variables of a new ant to 0.
+     *
+     * @param input The program with resolved labels, four shorts per
+     *              instruction.  The array is not changed.
+     * @param variables The number of variables of the program.
+     * @return The program with the new variable slots, or <code>input</code>
+     *         if the slots cannot be assigned.
+     */
+    public short[] allocateVariables(short[] input, int variables) {
+
+        program = input.clone();
+        size = program.length / AntsVm.INSTRUCTION_SIZE;
+        allocatedSize = variables;
+
+        if (!isWellFormed() || (long) size * variableSize > MAX_STATES)
+            return input;
+
+        deleted = new boolean[size];
+        buildBlocks();
+
+        BitSet[] liveOut = computeLiveness(getSuccessors());
+        BitSet[] interference = new BitSet[variableSize];
+        BitSet used = new BitSet(variableSize);
+
+        for (int v = 0; v < variableSize; v++)
+            interference[v] = new BitSet(variableSize);
+
+        for (int b = 0; b < blocks; b++) {
+
+            BitSet live = (BitSet) liveOut[b].clone();
+
+            for (int i = blockStart[b + 1] - 1; i >= blockStart[b]; i--) {
+
+                int opcode = getOpcode(i);
+                int result = getResult(i);
+
+                if (ProgramVerifier.hasResult(opcode) && result >= AntsVm.FIRST_USER_VAR) {
+
+                    // After a Copy, the source and the result hold the
+                    // same value, so they may share a slot.
+                    int source = opcode == Instruction.COPY && !isConstant(i, 1) ?
+                        getOperand(i, 1) : -1;
+
+                    used.set(result);
+
+                    for (int v = live.nextSetBit(0); v >= 0; v = live.nextSetBit(v + 1)) {
+                        if (v != result && v != source) {
+                            interference[result].set(v);
+                            interference[v].set(result);
+                        }
+                    }
+                }
+
+                transferLiveness(i, live);
+
+                for (int operand = 1; operand <= DecodedProgram.getOperandCount(opcode); operand++) {
+                    if (!isConstant(i, operand) && getOperand(i, operand) >= AntsVm.FIRST_USER_VAR)
+                        used.set(getOperand(i, operand));
+                }
+            }
+        }
+
+        int[] slots = new int[variableSize];
+        allocatedSize = AntsVm.FIRST_USER_VAR;
+
+        for (int v = 0; v < AntsVm.FIRST_USER_VAR; v++)
+            slots[v] = v;
+
+        for (int v = used.nextSetBit(0); v >= 0; v = used.nextSetBit(v + 1)) {
+
+            BitSet taken = new BitSet();
+
+            for (int u = interference[v].nextSetBit(0); u >= 0 && u < v;
+                 u = interference[v].nextSetBit(u + 1)) {
+                if (used.get(u))
+                    taken.set(slots[u]);
+            }
+
+            slots[v] = taken.nextClearBit(AntsVm.FIRST_USER_VAR);
+            allocatedSize = Math.max(allocatedSize, slots[v] + 1);
+        }
+
+        for (int i = 0; i < size; i++) {
+
+            int opcode = getOpcode(i);
+            int pc = i * AntsVm.INSTRUCTION_SIZE;
+
+            if (ProgramVerifier.hasResult(opcode))
+                program[pc + AntsVm.RESULT_OFFSET] = (short) slots[getResult(i)];
+
+            for (int operand = 1; operand <= DecodedProgram.getOperandCount(opcode); operand++) {
+                if (!isConstant(i, operand))
+                    setOperand(i, operand, (short) slots[getOperand(i, operand)], false);
+            }
+        }
+
+        return program;
+    }
+
+    /**
+     * Returns the number of variables of the program returned by the last
+     * call of {@link #allocateVariables(short[], int)}.
+     *
+     * @return The number of variables, including the system variables.
+     */
+    public int getVariableSize() {
+        return allocatedSize;
+    }
+
+    // ----------------------------------------------------------------------
+    // Constant propagation
+
+    /**
+     * Propagates constants through the program.  The analysis only follows
+     * the edges of the control-flow graph that can be taken with the values
+     * known so far, so it also finds the blocks that are never executed.
+     * The values of the variables are not known when an ant starts.
+     *
+     * @return True if the program has been changed.
+     */
+    private boolean propagateConstants() {
+
+        buildBlocks();
+
+        int[][] in = new int[blocks][];
+        BlockQueue queue = new BlockQueue(blocks);
+
+        in[0] = new int[variableSize];
+        Arrays.fill(in[0], NOT_CONSTANT);
+        queue.add(0);
+
+        while (!queue.isEmpty()) {
+
+            int b = queue.poll();
+            int[] state = in[b].clone();
+            int last = blockStart[b + 1] - 1;
+
+            for (int i = blockStart[b]; i <= last; i++)
+                transferConstants(i, state);
+
+            for (int target: getReachableSuccessors(last, state)) {
+                if (mergeConstants(state, in, blockOf[target]))
+                    queue.add(blockOf[target]);
+            }
+        }
+
+        boolean changed = false;
+
+        for (int b = 0; b < blocks; b++) {
+
+            if (in[b] == null) {
+                for (int i = blockStart[b]; i < blockStart[b + 1]; i++)
+                    deleted[i] = true;
+                changed = true;
+                continue;
+            }
+
+            int[] state = in[b].clone();
+
+            for (int i = blockStart[b]; i < blockStart[b + 1]; i++) {
+                changed |= replaceConstants(i, state);
+                transferConstants(i, state);
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Updates the values of the variables after an instruction.
+     */
+    private void transferConstants(int i, int[] state) {
+
+        int result = getResult(i);
+
+        if (ProgramVerifier.hasResult(getOpcode(i)) && result >= AntsVm.FIRST_USER_VAR)
+            state[result] = evaluate(i, state);
+    }
+
+    /**
+     * Merges the values at the end of a block into the values at the start
+     * of a successor.
+     *
+     * @return True if the values at the start of the successor have changed.
+     */
+    private static boolean mergeConstants(int[] state, int[][] in, int b) {
+
+        if (in[b] == null) {
+            in[b] = state.clone();
+            return true;
+        }
+
+        boolean changed = false;
+
+        for (int v = 0; v < state.length; v++) {
+            if (in[b][v] != state[v] && in[b][v] != NOT_CONSTANT) {
+                in[b][v] = NOT_CONSTANT;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Returns the instructions that can follow the last instruction of a
+     * block, given the values of the variables before it.
+     */
+    private List<Integer> getReachableSuccessors(int i, int[] state) {
+
+        List<Integer> successors = new ArrayList<>(2);
+        int opcode = getOpcode(i);
+
+        if (opcode == Instruction.GOTO || opcode == Instruction.GOTO_IF) {
+
+            int condition = opcode == Instruction.GOTO ? 1 : getValue(i, 2, state);
+
+            if (condition != 0) {
+
+                int target = getValue(i, 1, state);
+
+                if (target == NOT_CONSTANT) {
+                    for (int b = 0; b < blocks; b++)
+                        successors.add(blockStart[b]);
+                } else if (target >= 0 && target < size) {
+                    successors.add(target);
+                }
+            }
+
+            if (opcode == Instruction.GOTO_IF && (condition == 0 || condition == NOT_CONSTANT))
+                successors.add(i + 1);
+
+        } else {
+            successors.add(i + 1);
+        }
+
+        return successors;
+    }
+
+    /**
+     * Replaces the variable operands of an instruction whose values are
+     * known by constants, and folds the instruction if its result is known.
+     * Operands that would make the program invalid, like a division by 0
+     * or an invalid direction, are kept, since the original program only
+     * fails when it actually executes them.
+     *
+     * @return True if the instruction has been changed.
+     */
+    private boolean replaceConstants(int i, int[] state) {
+
+        int opcode = getOpcode(i);
+        boolean changed = false;
+
+        for (int operand = 1; operand <= DecodedProgram.getOperandCount(opcode); operand++) {
+
+            int value = getValue(i, operand, state);
+
+            if (isConstant(i, operand) || value == NOT_CONSTANT)
+                continue;
+
+            boolean valid;
+
+            if (operand == 1 && ProgramVerifier.isDirection(opcode))
+                valid = ProgramVerifier.isValidDirection(opcode, value);
+            else if (operand == 1 && ProgramVerifier.isJump(opcode))
+                valid = value >= 0 && value < size;
+            else if (operand == 2 && ProgramVerifier.isTribe(opcode))
+                valid = ProgramVerifier.isValidTribe(opcode, value, 1);
+            else if (operand == 2 && opcode == Instruction.DIV)
+                valid = value != 0;
+            else
+                valid = true;
+
+            if (valid) {
+                setOperand(i, operand, (short) value, true);
+                changed = true;
+            }
+        }
+
+        if (isArithmetic(opcode) && getResult(i) >= AntsVm.FIRST_USER_VAR
+            && !(opcode == Instruction.COPY && isConstant(i, 1))) {
+
+            int value = evaluate(i, state);
+
+            if (value != NOT_CONSTANT) {
+                setInstruction(i, Instruction.COPY, getResult(i), (short) value, true,
+                               (short) 0, false);
+                changed = true;
+            }
+        }
+
+        if (opcode == Instruction.GOTO_IF && isConstant(i, 2)) {
+
+            if (getOperand(i, 2) != 0)
+                setInstruction(i, Instruction.GOTO, (short) 0, getOperand(i, 1),
+                               isConstant(i, 1), (short) 0, false);
+            else
+                deleted[i] = true;
+
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Computes the result of an instruction, given the values of the
+     * variables before it.
+     *
+     * @return The result, or {@link #NOT_CONSTANT} if it is not known.
+     */
+    private int evaluate(int i, int[] state) {
+
+        int opcode = getOpcode(i);
+
+        if (!isArithmetic(opcode))
+            return NOT_CONSTANT;
+
+        int v1 = getValue(i, 1, state);
+        int v2 = DecodedProgram.getOperandCount(opcode) == 2 ? getValue(i, 2, state) : 0;
+
+        if (v1 == NOT_CONSTANT || v2 == NOT_CONSTANT)
+            return NOT_CONSTANT;
+
+        int value;
+
+        switch (opcode) {
+            case Instruction.COPY:          value = v1; break;
+            case Instruction.OR:            value = v1 | v2; break;
+            case Instruction.AND:           value = v1 & v2; break;
+            case Instruction.XOR:           value = v1 ^ v2; break;
+            case Instruction.NOT:           value = ~v1; break;
+            case Instruction.BITS_TRUE:     value = Integer.bitCount(v1 & 0xffff); break;
+            case Instruction.BITS_FALSE:    value = 16 - Integer.bitCount(v1 & 0xffff); break;
+            case Instruction.ADD:           value = v1 + v2; break;
+            case Instruction.SUB:           value = v1 - v2; break;
+            case Instruction.MULT:          value = v1 * v2; break;
+            case Instruction.DIV:
+                if (v2 == 0)
+                    return NOT_CONSTANT;
+                value = v1 / v2;
+                break;
+            case Instruction.NEG:           value = -v1; break;
+            case Instruction.EQUAL:         value = v1 == v2 ? 1 : 0; break;
+            case Instruction.NOT_EQUAL:     value = v1 != v2 ? 1 : 0; break;
+            case Instruction.LESS:          value = v1 < v2 ? 1 : 0; break;
+            case Instruction.LESS_EQUAL:    value = v1 <= v2 ? 1 : 0; break;
+            case Instruction.GREATER:       value = v1 > v2 ? 1 : 0; break;
+            case Instruction.GREATER_EQUAL: value = v1 >= v2 ? 1 : 0; break;
+            default:
+                return NOT_CONSTANT;
+        }
+
+        return (short) value;
+    }
+
+    /**
+     * Returns the value of an operand, given the values of the variables.
+     * The system variables change while the ant runs and are never
+     * constant.
+     */
+    private int getValue(int i, int operand, int[] state) {
+
+        short value = getOperand(i, operand);
+
+        if (isConstant(i, operand))
+            return value;
+
+        return value >= AntsVm.FIRST_USER_VAR ? state[value] : NOT_CONSTANT;
+    }
+
+    /**
+     * Tests if the program contains a jump to an address from a variable.
+     */
+    private boolean hasComputedJumps() {
+
+        for (int i = 0; i < size; i++) {
+            if (!deleted[i] && ProgramVerifier.isJump(getOpcode(i)) && !isConstant(i, 1))
+                return true;
+        }
+
+        return false;
+    }
+
+    // ----------------------------------------------------------------------
+    // Copy propagation
+
+    /**
+     * Replaces variables that hold a copy of another variable by that
+     * variable.  The copy itself is removed by the dead-store elimination if
+     * it is not needed any more.  For each variable, the analysis keeps the
+     * variable it is a copy of on all paths, or -1.
+     *
+     * @return True if the program has been changed.
+     */
+    private boolean propagateCopies() {
+
+        buildBlocks();
+
+        int[][] successors = getSuccessors();
+        int[][] in = new int[blocks][];
+        BlockQueue queue = new BlockQueue(blocks);
+
+        in[0] = new int[variableSize];
+        Arrays.fill(in[0], -1);
+        queue.add(0);
+
+        while (!queue.isEmpty()) {
+
+            int b = queue.poll();
+            int[] state = in[b].clone();
+
+            for (int i = blockStart[b]; i < blockStart[b + 1]; i++)
+                transferCopies(i, state);
+
+            for (int s: successors[b]) {
+                if (mergeCopies(state, in, s))
+                    queue.add(s);
+            }
+        }
+
+        boolean changed = false;
+
+        for (int b = 0; b < blocks; b++) {
+
+            // Blocks that have become unreachable are removed by the next
+            // constant propagation.
+            if (in[b] == null)
+                continue;
+
+            int[] state = in[b].clone();
+
+            for (int i = blockStart[b]; i < blockStart[b + 1]; i++) {
+
+                int opcode = getOpcode(i);
+
+                for (int operand = 1; operand <= DecodedProgram.getOperandCount(opcode); operand++) {
+
+                    short v = getOperand(i, operand);
+
+                    if (!isConstant(i, operand) && v >= AntsVm.FIRST_USER_VAR && state[v] >= 0) {
+                        setOperand(i, operand, (short) state[v], false);
+                        changed = true;
+                    }
+                }
+
+                transferCopies(i, state);
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Updates the copies after an instruction.
+     */
+    private void transferCopies(int i, int[] state) {
+
+        int opcode = getOpcode(i);
+        int result = getResult(i);
+
+        if (!ProgramVerifier.hasResult(opcode) || result < AntsVm.FIRST_USER_VAR)
+            return;
+
+        for (int v = 0; v < state.length; v++) {
+            if (state[v] == result)
+                state[v] = -1;
+        }
+
+        short source = getOperand(i, 1);
+
+        state[result] = opcode == Instruction.COPY && !isConstant(i, 1)
+            && source >= AntsVm.FIRST_USER_VAR && source != result ? source : -1;
+    }
+
+    /**
+     * Merges the copies at the end of a block into the copies at the start
+     * of a successor.
+     *
+     * @return True if the copies at the start of the successor have changed.
+     */
+    private static boolean mergeCopies(int[] state, int[][] in, int b) {
+
+        if (in[b] == null) {
+            in[b] = state.clone();
+            return true;
+        }
+
+        boolean changed = false;
+
+        for (int v = 0; v < state.length; v++) {
+            if (in[b][v] != state[v] && in[b][v] != -1) {
+                in[b][v] = -1;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    // ----------------------------------------------------------------------
+    // Dead-store elimination
+
+    /**
+     * Removes instructions without side effects whose result is not read
+     * before it is overwritten.  Writes to system variables are ignored by
+     * the VM, so such instructions are removed as well.
+     *
+     * @return True if the program has been changed.
+     */
+    private boolean eliminateDeadStores() {
+
+        buildBlocks();
+
+        int[][] successors = getSuccessors();
+        boolean changed = false;
+
+        while (true) {
+
+            BitSet[] liveOut = computeLiveness(successors);
+            boolean removed = false;
+
+            for (int b = 0; b < blocks; b++) {
+
+                BitSet live = (BitSet) liveOut[b].clone();
+
+                for (int i = blockStart[b + 1] - 1; i >= blockStart[b]; i--) {
+
+                    if (deleted[i])
+                        continue;
+
+                    int result = getResult(i);
+
+                    if (isPure(i)
+                        && (result < AntsVm.FIRST_USER_VAR || !live.get(result))) {
+                        deleted[i] = true;
+                        removed = true;
+                    } else {
+                        transferLiveness(i, live);
+                    }
+                }
+            }
+
+            if (!removed)
+                return changed;
+
+            changed = true;
+        }
+    }
+
+    /**
+     * Computes the variables that are live at the end of each block.
+     */
+    private BitSet[] computeLiveness(int[][] successors) {
+
+        BitSet[] liveIn = new BitSet[blocks];
+        BitSet[] liveOut = new BitSet[blocks];
+
+        for (int b = 0; b < blocks; b++) {
+            liveIn[b] = new BitSet(variableSize);
+            liveOut[b] = new BitSet(variableSize);
+        }
+
+        boolean changed = true;
+
+        while (changed) {
+
+            changed = false;
+
+            for (int b = blocks - 1; b >= 0; b--) {
+
+                BitSet live = new BitSet(variableSize);
+
+                for (int s: successors[b])
+                    live.or(liveIn[s]);
+
+                liveOut[b] = (BitSet) live.clone();
+
+                for (int i = blockStart[b + 1] - 1; i >= blockStart[b]; i--) {
+                    if (!deleted[i])
+                        transferLiveness(i, live);
+                }
+
+                if (!live.equals(liveIn[b])) {
+                    liveIn[b] = live;
+                    changed = true;
+                }
+            }
+        }
+
+        return liveOut;
+    }
+
+    /**
+     * Updates the live variables before an instruction.
+     */
+    private void transferLiveness(int i, BitSet live) {
+
+        int opcode = getOpcode(i);
+        int result = getResult(i);
+
+        if (ProgramVerifier.hasResult(opcode) && result >= AntsVm.FIRST_USER_VAR)
+            live.clear(result);
+
+        for (int operand = 1; operand <= DecodedProgram.getOperandCount(opcode); operand++) {
+            if (!isConstant(i, operand) && getOperand(i, operand) >= AntsVm.FIRST_USER_VAR)
+                live.set(getOperand(i, operand));
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Jump threading
+
+    /**
+     * Lets jumps to a <i>Goto</i> jump to its target instead, and removes
+     * jumps to the next instruction.
+     *
+     * @return True if the program has been changed.
+     */
+    private boolean threadJumps() {
+
+        boolean changed = false;
+
+        for (int i = 0; i < size; i++) {
+
+            if (deleted[i] || !ProgramVerifier.isJump(getOpcode(i)))
+                continue;
+
+            int target = getOperand(i, 1);
+
+            // A cycle of Gotos is an endless loop wherever it is entered.
+            for (int steps = 0; steps < size; steps++) {
+
+                int next = getNextInstruction(target);
+
+                if (getOpcode(next) != Instruction.GOTO || !isConstant(next, 1)
+                    || getOperand(next, 1) == target)
+                    break;
+
+                target = getOperand(next, 1);
+            }
+
+            if (target != getOperand(i, 1)) {
+                setOperand(i, 1, (short) target, true);
+                changed = true;
+            }
+        }
+
+        for (int i = size - 1; i >= 0; i--) {
+
+            if (!deleted[i] && ProgramVerifier.isJump(getOpcode(i))
+                && getNextInstruction(getOperand(i, 1)) == getNextInstruction(i + 1)) {
+                deleted[i] = true;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Returns the first instruction at or after an index that has not been
+     * deleted.
+     */
+    private int getNextInstruction(int i) {
+
+        while (i < size && deleted[i])
+            i++;
+
+        return i;
+    }
+
+    // ----------------------------------------------------------------------
+    // Branch inversion
+
+    /**
+     * Inverts conditional jumps over an unconditional jump.  The sequence
+     * <pre>
+     *     $c = $a &lt; $b
+     *     GotoIf(%Then, $c)
+     *     Goto(%Else)
+     * %Then:
+     * </pre>
+     * becomes
+     * <pre>
+     *     $c = $a &gt;= $b
+     *     GotoIf(%Else, $c)
+     * %Then:
+     * </pre>
+     * provided that <code>$c</code> is not read afterwards and no other
+     * instruction jumps to the <i>GotoIf</i> or the <i>Goto</i>.
+     *
+     * @return True if the program has been changed.
+     */
+    private boolean invertBranches() {
+
+        buildBlocks();
+
+        int[][] successors = getSuccessors();
+        BitSet[] liveOut = computeLiveness(successors);
+        boolean[] targets = new boolean[size];
+        boolean changed = false;
+
+        for (int i = 0; i < size; i++) {
+            if (ProgramVerifier.isJump(getOpcode(i)))
+                targets[getOperand(i, 1)] = true;
+        }
+
+        for (int i = 1; i + 2 < size; i++) {
+
+            int compare = i - 1;
+            int jump = i + 1;
+
+            if (getOpcode(i) != Instruction.GOTO_IF || isConstant(i, 2)
+                || getOperand(i, 1) != i + 2 || targets[i]
+                || getOpcode(jump) != Instruction.GOTO || targets[jump]
+                || getOperand(jump, 1) == jump
+                || getInverse(getOpcode(compare)) < 0
+                || getResult(compare) != getOperand(i, 2)
+                || getResult(compare) < AntsVm.FIRST_USER_VAR)
+                continue;
+
+            // The jumps end the blocks of the GotoIf and the Goto, so the
+            // condition must not be live at the end of either block.
+            if (liveOut[blockOf[i]].get(getResult(compare))
+                || liveOut[blockOf[jump]].get(getResult(compare)))
+                continue;
+
+            program[compare * AntsVm.INSTRUCTION_SIZE + AntsVm.OPCODE_OFFSET] =
+                (short) (getFlags(compare) | getInverse(getOpcode(compare)));
+            setOperand(i, 1, getOperand(jump, 1), true);
+            targets[getOperand(jump, 1)] = true;
+            deleted[jump] = true;
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Returns the comparison with the inverse result.
+     *
+     * @return The opcode of the inverse comparison, or -1 if the
+     *         instruction is not a comparison.
+     */
+    private static int getInverse(int opcode) {
+
+        switch (opcode) {
+            case Instruction.EQUAL:         return Instruction.NOT_EQUAL;
+            case Instruction.NOT_EQUAL:     return Instruction.EQUAL;
+            case Instruction.LESS:          return Instruction.GREATER_EQUAL;
+            case Instruction.LESS_EQUAL:    return Instruction.GREATER;
+            case Instruction.GREATER:       return Instruction.LESS_EQUAL;
+            case Instruction.GREATER_EQUAL: return Instruction.LESS;
+            default:                        return -1;
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Control-flow graph
+
+    /**
+     * Divides the program into basic blocks.  A block starts at the first
+     * instruction, at every jump target and after every jump.  If the
+     * program jumps to computed addresses, every instruction starts a block.
+     * The program must not contain deleted instructions.
+     */
+    private void buildBlocks() {
+
+        boolean[] leaders = new boolean[size + 1];
+        boolean computed = hasComputedJumps();
+
+        leaders[0] = true;
+        leaders[size] = true;
+
+        for (int i = 0; i < size; i++) {
+
+            if (computed) {
+                leaders[i] = true;
+            } else if (ProgramVerifier.isJump(getOpcode(i))) {
+                leaders[getOperand(i, 1)] = true;
+                leaders[i + 1] = true;
+            }
+        }
+
+        blockStart = new int[size + 1];
+        blockOf = new int[size];
+        blocks = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (leaders[i])
+                blockStart[blocks++] = i;
+            blockOf[i] = blocks - 1;
+        }
+
+        blockStart[blocks] = size;
+    }
+
+    /**
+     * Returns the successors of each block.  A jump to a computed address
+     * can continue at any block.
+     */
+    private int[][] getSuccessors() {
+
+        int[][] successors = new int[blocks][];
+
+        for (int b = 0; b < blocks; b++) {
+
+            int last = blockStart[b + 1] - 1;
+            int opcode = getOpcode(last);
+
+            if (ProgramVerifier.isJump(opcode) && !isConstant(last, 1)) {
+                successors[b] = new int[opcode == Instruction.GOTO ? blocks : blocks + 1];
+                for (int s = 0; s < blocks; s++)
+                    successors[b][s] = s;
+                if (opcode == Instruction.GOTO_IF)
+                    successors[b][blocks] = b + 1;
+            } else if (opcode == Instruction.GOTO)
+                successors[b] = new int[] { blockOf[getOperand(last, 1)] };
+            else if (opcode == Instruction.GOTO_IF)
+                successors[b] = new int[] { blockOf[getOperand(last, 1)], b + 1 };
+            else
+                successors[b] = new int[] { b + 1 };
+        }
+
+        return successors;
+    }
+
+    /**
+     * Removes the deleted instructions from the program.  Jumps to a deleted
+     * instruction jump to the next instruction that is kept, which has the
+     * same effect.
+     *
+     * @return True if instructions have been removed.
+     */
+    private boolean compact() {
+
+        int[] index = new int[size + 1];
+        int kept = 0;
+
+        for (int i = 0; i < size; i++) {
+            index[i] = kept;
+            if (!deleted[i])
+                kept++;
+        }
+
+        index[size] = kept;
+
+        if (kept == size)
+            return false;
+
+        short[] compacted = new short[AntsVm.INSTRUCTION_SIZE * kept];
+
+        for (int i = 0; i < size; i++) {
+
+            if (deleted[i])
+                continue;
+
+            System.arraycopy(program, i * AntsVm.INSTRUCTION_SIZE, compacted,
+                             index[i] * AntsVm.INSTRUCTION_SIZE, AntsVm.INSTRUCTION_SIZE);
+
+            if (ProgramVerifier.isJump(getOpcode(i)))
+                compacted[index[i] * AntsVm.INSTRUCTION_SIZE + AntsVm.OP1_OFFSET] =
+                    (short) index[getOperand(i, 1)];
+        }
+
+        program = compacted;
+        size = kept;
+        deleted = new boolean[size];
+        return true;
+    }
+
+    /**
+     * Tests if the program can be optimized.  The program must have valid
+     * instructions and constant jump targets, and must end with a
+     * <i>Goto</i>, so that every instruction has a successor.  Also
+     * determines the number of variables of the program.
+     */
+    private boolean isWellFormed() {
+
+        if (size == 0 || program.length != size * AntsVm.INSTRUCTION_SIZE)
+            return false;
+
+        variableSize = AntsVm.FIRST_USER_VAR;
+
+        for (int i = 0; i < size; i++) {
+
+            int opcode = getOpcode(i);
+
+            if (opcode < 0 || opcode >= AntsVm.NUM_INSTRUCTIONS)
+                return false;
+
+            if (ProgramVerifier.isJump(opcode) && isConstant(i, 1)
+                && (getOperand(i, 1) < 0 || getOperand(i, 1) >= size))
+                return false;
+
+            if (ProgramVerifier.hasResult(opcode)) {
+
+                if (getResult(i) < 0)
+                    return false;
+
+                variableSize = Math.max(variableSize, getResult(i) + 1);
+            }
+
+            for (int operand = 1; operand <= DecodedProgram.getOperandCount(opcode); operand++) {
+
+                if (isConstant(i, operand))
+                    continue;
+
+                if (getOperand(i, operand) < 0)
+                    return false;
+
+                variableSize = Math.max(variableSize, getOperand(i, operand) + 1);
+            }
+        }
+
+        return getOpcode(size - 1) == Instruction.GOTO;
+    }
+
+    // ----------------------------------------------------------------------
+    // Instructions
+
+    /**
+     * Tests if an instruction only computes its result.  Such an
+     * instruction can be removed if the result is not needed.  Instructions
+     * that can fail, a division by a variable or by 0 and a sensing
+     * instruction whose direction or tribe may be invalid, are kept, since
+     * the original program fails when it executes them.
+     */
+    private boolean isPure(int i) {
+
+        int opcode = getOpcode(i);
+
+        if (opcode == Instruction.DIV)
+            return isConstant(i, 2) && getOperand(i, 2) != 0;
+
+        if (opcode >= Instruction.STONES && opcode <= Instruction.MARK_VALUE) {
+
+            // A constant tribe must be valid for any number of players.
+            return !ProgramVerifier.needsCheck(opcode, getFlags(i))
+                && (!isConstant(i, 1) || ProgramVerifier.isValidDirection(opcode, getOperand(i, 1)))
+                && (!ProgramVerifier.isTribe(opcode) || !isConstant(i, 2)
+                    || ProgramVerifier.isValidTribe(opcode, getOperand(i, 2), 1));
+        }
+
+        return isArithmetic(opcode);
+    }
+
+    /**
+     * Tests if an instruction computes its result from its operands only.
+     */
+    private static boolean isArithmetic(int opcode) {
+        return opcode >= Instruction.COPY && opcode <= Instruction.GREATER_EQUAL;
+    }
+
+    private int getOpcode(int i) {
+        return program[i * AntsVm.INSTRUCTION_SIZE + AntsVm.OPCODE_OFFSET]
+            & ~(AntsVm.OP1_CONSTANT | AntsVm.OP2_CONSTANT);
+    }
+
+    private int getFlags(int i) {
+        return program[i * AntsVm.INSTRUCTION_SIZE + AntsVm.OPCODE_OFFSET]
+            & (AntsVm.OP1_CONSTANT | AntsVm.OP2_CONSTANT);
+    }
+
+    private short getResult(int i) {
+        return program[i * AntsVm.INSTRUCTION_SIZE + AntsVm.RESULT_OFFSET];
+    }
+
+    private short getOperand(int i, int operand) {
+        return program[i * AntsVm.INSTRUCTION_SIZE +
+                       (operand == 1 ? AntsVm.OP1_OFFSET : AntsVm.OP2_OFFSET)];
+    }
+
+    private boolean isConstant(int i, int operand) {
+        return (getFlags(i) & (operand == 1 ? AntsVm.OP1_CONSTANT : AntsVm.OP2_CONSTANT)) != 0;
+    }
+
+    private void setOperand(int i, int operand, short value, boolean constant) {
+
+        int flag = operand == 1 ? AntsVm.OP1_CONSTANT : AntsVm.OP2_CONSTANT;
+        int pc = i * AntsVm.INSTRUCTION_SIZE;
+
+        program[pc + (operand == 1 ? AntsVm.OP1_OFFSET : AntsVm.OP2_OFFSET)] = value;
+        program[pc + AntsVm.OPCODE_OFFSET] = (short) (constant ?
+            program[pc + AntsVm.OPCODE_OFFSET] | flag :
+            program[pc + AntsVm.OPCODE_OFFSET] & ~flag);
+    }
+
+    private void setInstruction(int i, int opcode, short result,
+                                short op1, boolean constant1,
+                                short op2, boolean constant2) {
+
+        int pc = i * AntsVm.INSTRUCTION_SIZE;
+
+        program[pc + AntsVm.OPCODE_OFFSET] = (short) (opcode
+            | (constant1 ? AntsVm.OP1_CONSTANT : 0)
+            | (constant2 ? AntsVm.OP2_CONSTANT : 0));
+        program[pc + AntsVm.RESULT_OFFSET] = result;
+        program[pc + AntsVm.OP1_OFFSET] = op1;
+        program[pc + AntsVm.OP2_OFFSET] = op2;
+    }
+
+    /**
+     * A queue of blocks whose analysis must be repeated.  A block is in the
+     * queue at most once.
+     */
+    private static class BlockQueue {
+
+        private final ArrayDeque<Integer> queue = new ArrayDeque<>();
+        private final boolean[] queued;
+
+        BlockQueue(int blocks) {
+            queued = new boolean[blocks];
+        }
+
+        void add(int b) {
+            if (!queued[b]) {
+                queued[b] = true;
+                queue.add(b);
+            }
+        }
+
+        int poll() {
+            int b = queue.poll();
+            queued[b] = false;
+            return b;
+        }
+
+        boolean isEmpty() {
+            return queue.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ants.test;
+
+/**
+ * The <code>AllTests</code> class runs all tests.  The tests compile the
+ * sample programs of the benchmarks, so they must be run from the project
+ * directory, or the system property <code>ants.test.sources</code> must
+ * point to the directory of the samples.
+ */
+public class AllTests extends TestSuite {
+
+    /**
+     * Creates the suite of all tests.
+     */
+    public AllTests() {
+        addTest(new EngineTest());
+        addTest(new CompilerTest());
+        addTest(new PlayfieldTest());
+        addTest(new ChunkedPlayfieldTest());
+        addTest(new ThreadsTest());
+        addTest(new BatchRunnerTest());
+        addTest(new SeedTest());
+        addTest(new StepTest());
+        addTest(new SchedulerTest());
+        addTest(new ants.vm.AntStoreTest());
+        addTest(new SensingTest());
+        addTest(new FoodRegrowthTest());
+        addTest(new MarkDecayTest());
+        addTest(new ants.vm.MarkPagesTest());
+        addTest(new HeadlessRunnerTest());
+        addTest(new VerifierTest());
+        addTest(new ClassFileTest());
+        addTest(new ArchiveTest());
+        addTest(new BuildCacheTest());
+        addTest(new OptimizerTest());
+    }
+
+    /**
+     * Runs all tests.  The process exits with status 1 if a test fails.
+     *
+     * @param args The command line arguments, which are ignored.
+     */
+    public static void main(String[] args) {
+
+        try {
+            new AllTests().run();
+            System.out.println("All tests passed.");
+
+        } catch (TestFailedException e) {
+            System.out.println(e.getTest().getClass().getSimpleName() +
+                               " failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ants.test;
+
+import java.io.*;
+import java.util.*;
+import ants.vm.*;
+
+/**
+ * The <code>ArchiveTest</code> class tests the {@link AntClassArchive}.
+ * The sample programs are bundled into an archive, which must return them
+ * as they have been written, both directly and through an {@link
+ * AntClassCache}.  A simulation that loads its classes from the archive
+ * must compute the same state as one that loads them from single files.
+ */
+public class ArchiveTest extends Test {
+
+    private static final String ARCHIVE = "samples.archive";
+    private static final long CYCLES = 10000;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException The archive does not hold the classes.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            File filesDir = TestSimulation.createDirectory();
+            File archiveDir = TestSimulation.createDirectory();
+            Map<String, AntClass> classes = new TreeMap<>();
+
+            TestSimulation.compilePrograms(filesDir, false);
+
+            for (String name: TestSimulation.PROGRAMS)
+                classes.put(name + ".ant.bin", TestSimulation.compile(
+                                TestSimulation.readSource(name), false));
+
+            File file = new File(archiveDir, ARCHIVE);
+            file.deleteOnExit();
+
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                AntClassArchive.write(classes, out);
+            }
+
+            AntClassArchive archive = AntClassArchive.open(file.getPath());
+
+            assertCond(archive.getNames().equals(classes.keySet()),
+                       "The archive does not list its entries.");
+            assertCond(!archive.contains("missing.ant.bin")
+                       && archive.getAntClass("missing.ant.bin") == null,
+                       "The archive contains a class that has not been written.");
+
+            for (Map.Entry<String, AntClass> e: classes.entrySet()) {
+
+                AntClass c = archive.getAntClass(e.getKey());
+
+                assertCond(archive.contains(e.getKey()) && c != null
+                           && c.getName().equals(e.getValue().getName())
+                           && c.getVariableSize() == e.getValue().getVariableSize()
+                           && Arrays.equals(c.getProgram(), e.getValue().getProgram()),
+                           "The archive has not returned the class " + e.getKey() + ".");
+                assertCond(archive.getAntClass(e.getKey()) == c,
+                           "The archive has read the class " + e.getKey() + " twice.");
+
+                AntClass cached = new AntClassCache().getAntClass(
+                    file.getPath() + "!" + e.getKey(), AntsVm.Engine.DECODED, 4);
+
+                assertCond(cached != c && Arrays.equals(cached.getProgram(), c.getProgram()),
+                           "The cache has not loaded a copy of the class " + e.getKey() + ".");
+            }
+
+            try {
+                new AntClassCache().getAntClass(file.getPath() + "!missing.ant.bin",
+                                                AntsVm.Engine.DECODED, 4);
+                fail("The cache has loaded a class that is not in the archive.");
+            } catch (ClassNotFoundException e) {
+                // expected
+            }
+
+            Configuration config =
+                TestSimulation.configure(filesDir, 64, AntsVm.Engine.DECODED);
+            long expected = TestSimulation.hash(TestSimulation.run(config, CYCLES), true);
+
+            config = TestSimulation.configure(archiveDir, 64, AntsVm.Engine.DECODED);
+            config.classArchive = ARCHIVE;
+
+            assertCond(TestSimulation.hash(TestSimulation.run(config, CYCLES), true) == expected,
+                       "The simulation differs when it loads the classes from the archive.");
+
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } catch (ClassNotFoundException e) {
+            fail(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package ants.test;
+
+import java.io.*;
+import java.util.*;
+import ants.vm.*;
+
+/**
+ * The <code>BatchRunnerTest</code> class tests the {@link BatchRunner}.
+ * Configuration fields must be set from strings, and sweeps must derive
+ * independent runs that keep their seed.  Simulations run in parallel must
+ * return their results in the order of the runs and compute the same state
+ * as when they run one after the other, and a simulation that fails must
+ * not affect the others.
+ */
+public class BatchRunnerTest extends Test {
+
+    private static final long CYCLES = 3000;
+    private static final int THREADS = 3;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException The runs have not been derived or
+     *                             simulated as expected.
+     */
+    public void run() throws TestFailedException {
+
+        testSetField();
+
+        try {
+            testRuns();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } catch (InterruptedException e) {
+            fail("The test has been interrupted.");
+        }
+    }
+
+    /**
+     * Tests {@link BatchRunner#setField(Configuration, String, String)}.
+     */
+    private void testSetField() throws TestFailedException {
+
+        Configuration config = new Configuration();
+
+        BatchRunner.setField(config, "playfieldWidth", "123");
+        BatchRunner.setField(config, "initialEnergy", "77");
+        BatchRunner.setField(config, "maxCycles", "5000000000");
+        BatchRunner.setField(config, "foodRatio", "0.25");
+        BatchRunner.setField(config, "chunkedPlayfield", "true");
+        BatchRunner.setField(config, "engine", "decoded");
+        BatchRunner.setField(config, "dataPath", "some/where");
+
+        assertCond(config.playfieldWidth == 123 && config.initialEnergy == 77
+                   && config.maxCycles == 5000000000L && config.foodRatio == 0.25
+                   && config.chunkedPlayfield && config.engine == AntsVm.Engine.DECODED
+                   && "some/where".equals(config.dataPath),
+                   "The configuration fields have not been set.");
+
+        assertRejected(config, "noSuchField", "1", "an unknown field");
+        assertRejected(config, "playfieldWidth", "wide", "an invalid number");
+        assertRejected(config, "engine", "fast", "an unknown engine");
+        assertRejected(config, "playerInfos", "none", "a field of another type");
+    }
+
+    private void assertRejected(Configuration config, String field, String value,
+                                String description) throws TestFailedException {
+        try {
+            BatchRunner.setField(config, field, value);
+            fail("The batch runner has set " + description + ".");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests sweeps and simulations.
+     */
+    private void testRuns() throws IOException, InterruptedException, TestFailedException {
+
+        File dir = TestSimulation.createDirectory();
+        TestSimulation.compilePrograms(dir, false);
+
+        Configuration first = TestSimulation.configure(dir, 48, AntsVm.Engine.DECODED);
+        Configuration second = TestSimulation.configure(dir, 48, AntsVm.Engine.DECODED);
+
+        first.maxCycles = CYCLES;
+        second.maxCycles = CYCLES;
+        second.seed = TestSimulation.SEED + 1;
+
+        List<BatchRunner.Run> runs = BatchRunner.sweep(
+            Arrays.asList(new BatchRunner.Run("first", first),
+                          new BatchRunner.Run("second", second)),
+            "engine", new String[] { "reflective", "compiled" });
+
+        assertCond(runs.size() == 4, "The sweep has derived " + runs.size() + " runs.");
+        assertCond(runs.get(1).name.equals("first engine=compiled")
+                   && runs.get(2).name.equals("second engine=reflective"),
+                   "The derived runs are not named after the assignment.");
+        assertCond(runs.get(0).config.engine == AntsVm.Engine.REFLECTIVE
+                   && runs.get(3).config.engine == AntsVm.Engine.COMPILED
+                   && first.engine == AntsVm.Engine.DECODED
+                   && runs.get(0).config != runs.get(1).config,
+                   "The derived runs do not have their own configuration.");
+        assertCond(runs.get(1).config.seed == TestSimulation.SEED
+                   && runs.get(3).config.seed == TestSimulation.SEED + 1,
+                   "The derived runs have not kept the seed.");
+
+        Configuration broken = first.copy();
+        broken.dataPath = new File(dir, "missing").getPath();
+        runs = new ArrayList<>(runs);
+        runs.add(2, new BatchRunner.Run("broken", broken));
+
+        List<BatchRunner.Result> results = new BatchRunner(THREADS).run(runs);
+
+        assertCond(results.size() == runs.size(),
+                   "The batch runner has returned " + results.size() + " results.");
+
+        for (int i = 0; i < runs.size(); i++) {
+
+            BatchRunner.Run run = runs.get(i);
+            BatchRunner.Result result = results.get(i);
+
+            assertCond(result.name.equals(run.name) && result.seed == run.config.seed,
+                       "The result " + i + " does not belong to the run " + run.name + ".");
+
+            if (run.config == broken) {
+                assertCond(result.error != null && result.state == null,
+                           "The run without class files has not failed.");
+                continue;
+            }
+
+            assertCond(result.error == null, "The run " + run.name + " has failed: " +
+                       result.error);
+
+            BatchRunner.Result alone = new BatchRunner(1).simulate(run);
+
+            assertCond(result.cycles == CYCLES && alone.cycles == CYCLES
+                       && Arrays.equals(result.ants, alone.ants),
+                       "The run " + run.name + " differs when it runs alone.");
+        }
+
+        assertCond(Arrays.equals(results.get(0).ants, results.get(1).ants),
+                   "The engines have computed different results.");
+    }
+}
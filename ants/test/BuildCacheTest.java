@@ -0,0 +1,125 @@
+package ants.test;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import ants.compiler.AntsBuild;
+
+/**
+ * The <code>BuildCacheTest</code> class tests the cache file of {@link
+ * AntsBuild}.  A source is compiled again only if its contents, the
+ * optimize option, or its class file have changed since the last build,
+ * and a source with errors is compiled again by every build.
+ */
+public class BuildCacheTest extends Test {
+
+    private static final String COMPILING = "Compiling ";
+    private static final String UP_TO_DATE = "Up to date ";
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException A source has been compiled when it was
+     *                             unchanged, or skipped when it had changed.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            File dir = TestSimulation.createDirectory();
+            String cache = new File(dir, "build.cache").getPath();
+            List<String> sources = new ArrayList<>();
+
+            for (String name: TestSimulation.PROGRAMS) {
+
+                File file = new File(dir, name + ".ant");
+                file.deleteOnExit();
+                new File(file.getPath() + ".bin").deleteOnExit();
+
+                Files.write(file.toPath(), TestSimulation.readSource(name).getBytes("UTF-8"));
+                sources.add(file.getPath());
+            }
+
+            new File(cache).deleteOnExit();
+
+            String first = sources.get(0);
+            String second = sources.get(1);
+            List<String> none = Collections.emptyList();
+
+            check("first build", cache, false, sources, sources, 0);
+            check("unchanged build", cache, false, sources, none, 0);
+
+            for (String source: sources)
+                assertCond(new File(source + ".bin").isFile(),
+                           "The class file of " + source + " has not been written.");
+
+            append(first, "\n; changed\n");
+            check("build after a change", cache, false, sources, Arrays.asList(first), 0);
+
+            new File(second + ".bin").delete();
+            check("build after deleting a class file", cache, false, sources,
+                  Arrays.asList(second), 0);
+
+            check("optimizing build", cache, true, sources, sources, 0);
+            check("unchanged optimizing build", cache, true, sources, none, 0);
+            check("partial build", cache, true, sources.subList(0, 2), none, 0);
+            check("build after a partial build", cache, true, sources, none, 0);
+            check("build without cache", null, true, sources, sources, 0);
+
+            append(first, "\n    Goto(\n");
+            check("build with a syntax error", cache, true, sources, Arrays.asList(first), 1);
+            check("build with an unchanged syntax error", cache, true, sources,
+                  Arrays.asList(first), 1);
+
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a build and checks which sources it has compiled.
+     *
+     * @param description The description of the build.
+     * @param cache The path to the cache file, or <code>null</code>.
+     * @param optimizing True to optimize the programs.
+     * @param sources The sources to build.
+     * @param compiled The sources that must be compiled; all other sources
+     *                 must be up to date.
+     * @param failures The number of sources that must fail to compile.
+     */
+    private void check(String description, String cache, boolean optimizing,
+                       List<String> sources, List<String> compiled, int failures)
+        throws IOException, TestFailedException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true, "UTF-8");
+
+        int failed = new AntsBuild(2, cache, optimizing, out).build(sources);
+        Set<String> reported = new HashSet<>();
+
+        assertCond(failed == failures, "The " + description + " has " + failed +
+                   " failures, expected " + failures + ".");
+
+        for (String line: buffer.toString("UTF-8").split("\n")) {
+
+            if (line.startsWith(COMPILING)) {
+                String source = line.substring(COMPILING.length());
+                assertCond(compiled.contains(source),
+                           "The " + description + " has compiled " + source + ".");
+                reported.add(source);
+
+            } else if (line.startsWith(UP_TO_DATE)) {
+                String source = line.substring(UP_TO_DATE.length());
+                assertCond(!compiled.contains(source),
+                           "The " + description + " has skipped " + source + ".");
+                reported.add(source);
+            }
+        }
+
+        assertCond(reported.equals(new HashSet<>(sources)),
+                   "The " + description + " has not reported every source.");
+    }
+
+    private static void append(String file, String text) throws IOException {
+        Files.write(Paths.get(file), text.getBytes("UTF-8"), StandardOpenOption.APPEND);
+    }
+}
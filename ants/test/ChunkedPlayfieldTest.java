@@ -0,0 +1,222 @@
+package ants.test;
+
+import java.util.*;
+import ants.vm.*;
+
+/**
+ * The <code>ChunkedPlayfieldTest</code> class tests the {@link
+ * ChunkedPlayfield}.  A chunk must be allocated only when one of its cells
+ * is accessed, also when the playfield is far larger than an {@link
+ * ArrayPlayfield} could be, and it must look the same no matter in which
+ * order, or by how many threads, the chunks are created.  Positions must
+ * wrap across the borders, where the last chunks are only partly inside
+ * the playfield.
+ */
+public class ChunkedPlayfieldTest extends Test {
+
+    private static final int WIDTH = 100003;
+    private static final int HEIGHT = 70001;
+    private static final int PLAYERS = 2;
+    private static final int THREADS = 4;
+    private static final long SEED = 5;
+
+    /**
+     * The positions that are accessed, including the borders of the
+     * playfield and positions outside of it.
+     */
+    private static final int[][] POSITIONS = {
+        { 0, 0 }, { 63, 63 }, { 64, 0 }, { 50000, 35000 }, { WIDTH - 1, HEIGHT - 1 },
+        { -1, 5 }, { 7, -1 }, { WIDTH + 3, HEIGHT + 64 }, { 12345, 67890 },
+        { 99999, 1 }, { 1, 69999 }
+    };
+
+    private final PlayfieldBuilder builder = new PlayfieldBuilder();
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException The chunks are not allocated or generated
+     *                             as expected.
+     */
+    public void run() throws TestFailedException {
+
+        ChunkedPlayfield playfield = create();
+
+        assertCond(playfield.getResidentChunks() == 0 && !playfield.isResident(0, 0),
+                   "The new playfield has allocated a chunk.");
+        assertCond(playfield.getFood() == 0,
+                   "The new playfield has food without any chunk.");
+
+        Set<Long> chunks = new HashSet<>();
+
+        for (int[] p: POSITIONS) {
+
+            playfield.getFood(p[0], p[1]);
+            chunks.add(((long) chunk(p[1], HEIGHT) << 32) | chunk(p[0], WIDTH));
+
+            assertCond(playfield.isResident(p[0], p[1]),
+                       "The chunk of (" + p[0] + ", " + p[1] + ") is not resident.");
+            assertCond(playfield.getResidentChunks() == chunks.size(),
+                       "The playfield has " + playfield.getResidentChunks() +
+                       " chunks, expected " + chunks.size() + ".");
+        }
+
+        assertCond(playfield.isResident(WIDTH - 1, 5) && playfield.isResident(-1, -1)
+                   && !playfield.isResident(200, 5) && !playfield.isResident(0, 200),
+                   "The residency of chunks does not wrap at the borders.");
+
+        long food = 0;
+
+        for (long c: chunks)
+            food += sumChunk(playfield, (int) c, (int) (c >>> 32));
+
+        assertCond(playfield.getFood() == food && food > 0,
+                   "The playfield has " + playfield.getFood() + " food items, expected " +
+                   food + ".");
+        assertCond(playfield.getResidentChunks() == chunks.size(),
+                   "Counting the food has allocated chunks.");
+
+        // The same chunks, created in the opposite order.
+        ChunkedPlayfield reversed = create();
+
+        for (int i = POSITIONS.length - 1; i >= 0; i--)
+            reversed.getStones(POSITIONS[i][0], POSITIONS[i][1]);
+
+        assertSame(playfield, reversed, "created in the opposite order");
+        assertSame(playfield, createConcurrently(), "created by several threads");
+
+        testAccessors(playfield);
+    }
+
+    /**
+     * Tests that the properties of the cells are stored separately, also
+     * across the borders of chunks and of the playfield.
+     */
+    private void testAccessors(ChunkedPlayfield playfield) throws TestFailedException {
+
+        for (int i = 0; i < POSITIONS.length; i++) {
+
+            int x = POSITIONS[i][0];
+            int y = POSITIONS[i][1];
+
+            playfield.setPassable(x, y, i % 2 == 0);
+            playfield.setStones(x, y, (short) i);
+            playfield.setFood(x, y, (short) (2 * i));
+            playfield.setAnt(x, y, i + 1, i % PLAYERS);
+            playfield.setMark(x, y, 0, (short) -i);
+            playfield.setMark(x, y, 1, (short) (i * 3));
+        }
+
+        for (int i = 0; i < POSITIONS.length; i++) {
+
+            int x = POSITIONS[i][0] + WIDTH;
+            int y = POSITIONS[i][1] - HEIGHT;
+
+            assertCond(playfield.isPassable(x, y) == (i % 2 == 0)
+                       && playfield.getStones(x, y) == i && playfield.getFood(x, y) == 2 * i
+                       && playfield.getAnt(x, y) == i + 1
+                       && playfield.getAntTribe(x, y) == i % PLAYERS
+                       && playfield.getMark(x, y, 0) == -i && playfield.getMark(x, y, 1) == i * 3,
+                       "The cell (" + x + ", " + y + ") does not hold the values set.");
+        }
+
+        playfield.clearAnt(0, 0);
+        assertCond(playfield.getAnt(0, 0) == Playfield.NO_ANT && playfield.getAnt(63, 63) == 2,
+                   "The ant has not been removed from its cell only.");
+    }
+
+    private ChunkedPlayfield create() {
+        return new ChunkedPlayfield(PLAYERS, WIDTH, HEIGHT, builder, SEED);
+    }
+
+    /**
+     * Creates a playfield whose chunks at the positions are allocated by
+     * several threads at the same time.
+     */
+    private ChunkedPlayfield createConcurrently() throws TestFailedException {
+
+        final ChunkedPlayfield playfield = create();
+        Thread[] threads = new Thread[THREADS];
+
+        for (int i = 0; i < THREADS; i++) {
+
+            final int offset = i;
+
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < POSITIONS.length; j++) {
+                        int[] p = POSITIONS[(j + offset) % POSITIONS.length];
+                        playfield.isPassable(p[0], p[1]);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        try {
+            for (Thread thread: threads)
+                thread.join();
+        } catch (InterruptedException e) {
+            fail("The test has been interrupted.");
+        }
+
+        return playfield;
+    }
+
+    /**
+     * Asserts that the chunks at the positions of two playfields have the
+     * same contents and that no other chunks have been allocated.
+     */
+    private void assertSame(ChunkedPlayfield expected, ChunkedPlayfield actual,
+                            String description) throws TestFailedException {
+
+        assertCond(actual.getResidentChunks() == expected.getResidentChunks(),
+                   "The playfield " + description + " has " + actual.getResidentChunks() +
+                   " chunks, expected " + expected.getResidentChunks() + ".");
+
+        for (int[] p: POSITIONS) {
+
+            int x0 = chunk(p[0], WIDTH) * ChunkedPlayfield.CHUNK_SIZE;
+            int y0 = chunk(p[1], HEIGHT) * ChunkedPlayfield.CHUNK_SIZE;
+
+            for (int y = y0; y < y0 + ChunkedPlayfield.CHUNK_SIZE && y < HEIGHT; y++) {
+                for (int x = x0; x < x0 + ChunkedPlayfield.CHUNK_SIZE && x < WIDTH; x++) {
+                    assertCond(actual.isPassable(x, y) == expected.isPassable(x, y)
+                               && actual.getStones(x, y) == expected.getStones(x, y)
+                               && actual.getFood(x, y) == expected.getFood(x, y),
+                               "The cell (" + x + ", " + y + ") of the playfield " +
+                               description + " differs.");
+                }
+            }
+        }
+
+        assertCond(actual.getResidentChunks() == expected.getResidentChunks(),
+                   "Comparing the playfield " + description + " has allocated chunks.");
+    }
+
+    /**
+     * Sums the food of a chunk cell by cell.
+     */
+    private static long sumChunk(Playfield playfield, int cx, int cy) {
+
+        long food = 0;
+
+        for (int i = 0; i < ChunkedPlayfield.CHUNK_SIZE; i++) {
+            for (int j = 0; j < ChunkedPlayfield.CHUNK_SIZE; j++) {
+                if (cx * ChunkedPlayfield.CHUNK_SIZE + j < WIDTH
+                    && cy * ChunkedPlayfield.CHUNK_SIZE + i < HEIGHT)
+                    food += playfield.getFood(cx * ChunkedPlayfield.CHUNK_SIZE + j,
+                                              cy * ChunkedPlayfield.CHUNK_SIZE + i);
+            }
+        }
+
+        return food;
+    }
+
+    /**
+     * Returns the index of the chunk that contains a position.
+     */
+    private static int chunk(int position, int size) {
+        return ((position % size + size) % size) / ChunkedPlayfield.CHUNK_SIZE;
+    }
+}
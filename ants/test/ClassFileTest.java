@@ -0,0 +1,180 @@
+package ants.test;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import ants.vm.*;
+
+/**
+ * The <code>ClassFileTest</code> class tests the {@link AntClassFile}
+ * format.  The sample programs must be read back as they have been written,
+ * also when a file contains sections the reader does not know; files that
+ * the compiler wrote with Java serialization must still be read; and
+ * damaged files and serialized objects of other classes must be rejected.
+ */
+public class ClassFileTest extends Test {
+
+    /**
+     * An ant class file written with Java serialization by the compiler
+     * before the binary format was introduced.  The class is named
+     * <code>Legacy</code>, has the id 3, the backpack size 2, the variable
+     * size 6 and the program {@link #LEGACY_PROGRAM}.
+     */
+    private static final String LEGACY =
+        "aced000573720010616e74732e766d2e416e74436c617373206334fb31e1a78c02" +
+        "000653000c6261636b7061636b53697a65530002696453000b70726f6772616d53" +
+        "697a6553000c7661726961626c6553697a654c00046e616d657400124c6a617661" +
+        "2f6c616e672f537472696e673b5b000770726f6772616d7400025b537870000200" +
+        "03000200067400064c6567616379757200025b53ef832e06e55db0fa0200007870" +
+        "0000000800500005000700000062000000000000";
+
+    private static final short[] LEGACY_PROGRAM = {
+        Instruction.COPY | AntsVm.OP1_CONSTANT, 5, 7, 0,
+        Instruction.GOTO | AntsVm.OP1_CONSTANT, 0, 0, 0
+    };
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException A class has not been read as expected.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            File dir = TestSimulation.createDirectory();
+
+            for (String name: TestSimulation.PROGRAMS) {
+
+                AntClass c = TestSimulation.compile(TestSimulation.readSource(name), false);
+                c.setId((short) 7);
+                TestSimulation.writeClass(dir, name + ".ant.bin", c);
+
+                File file = new File(dir, name + ".ant.bin");
+
+                assertEqual(AntClassFile.read(file.getPath()), c, name);
+                assertEqual(readWithSection(c), c, name + " with a section");
+            }
+
+            File file = new File(dir, "legacy.ant.bin");
+            file.deleteOnExit();
+
+            writeBytes(file, parseHex(LEGACY));
+
+            AntClass legacy = AntClassFile.read(file.getPath());
+
+            assertCond("Legacy".equals(legacy.getName()) && legacy.getId() == 3
+                       && legacy.getBackpackSize() == 2 && legacy.getVariableSize() == 6
+                       && legacy.getProgramSize() == 2
+                       && Arrays.equals(legacy.getProgram(), LEGACY_PROGRAM),
+                       "The legacy class file has not been read correctly.");
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+            try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+                out.writeObject(legacy);
+            }
+
+            writeBytes(file, buffer.toByteArray());
+            assertEqual(AntClassFile.read(file.getPath()), legacy, "serialized class");
+
+            buffer = new ByteArrayOutputStream();
+
+            try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+                out.writeObject(new ArrayList<String>());
+            }
+
+            writeBytes(file, buffer.toByteArray());
+            assertRejected(file, "a serialized list");
+
+            buffer = new ByteArrayOutputStream();
+            AntClassFile.write(legacy, buffer);
+            byte[] bytes = buffer.toByteArray();
+
+            writeBytes(file, Arrays.copyOf(bytes, bytes.length - 6));
+            assertRejected(file, "a truncated class file");
+
+            bytes[4] = (byte) (AntClassFile.VERSION + 1);
+            writeBytes(file, bytes);
+            assertRejected(file, "a newer version");
+
+            bytes[0] = 'X';
+            writeBytes(file, bytes);
+            assertRejected(file, "a wrong magic number");
+
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } catch (ClassNotFoundException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes an ant class with an additional section of an unknown type and
+     * reads it.
+     */
+    private static AntClass readWithSection(AntClass c) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AntClassFile.write(c, out);
+
+        byte[] bytes = out.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 9).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.put(bytes, 0, bytes.length - 2);
+        buffer.putShort((short) 0x7fff);
+        buffer.putInt(3);
+        buffer.put(new byte[] { 1, 2, 3 });
+        buffer.putShort((short) AntClassFile.END_OF_SECTIONS);
+        buffer.flip();
+
+        return AntClassFile.read(buffer);
+    }
+
+    /**
+     * Asserts that an ant class has been read as it has been written.
+     */
+    private void assertEqual(AntClass read, AntClass written, String name)
+        throws TestFailedException {
+
+        assertCond(read.getName().equals(written.getName())
+                   && read.getId() == written.getId()
+                   && read.getBackpackSize() == written.getBackpackSize()
+                   && read.getVariableSize() == written.getVariableSize()
+                   && read.getProgramSize() == written.getProgramSize()
+                   && Arrays.equals(read.getProgram(), written.getProgram()),
+                   "The class " + name + " has not been read as it has been written.");
+    }
+
+    /**
+     * Asserts that a file is rejected as an ant class file.
+     */
+    private void assertRejected(File file, String description)
+        throws TestFailedException, ClassNotFoundException {
+
+        try {
+            AntClassFile.read(file.getPath());
+            fail("The class file reader has accepted " + description + ".");
+        } catch (InvalidClassException e) {
+            // expected
+        } catch (IOException e) {
+            fail("The class file reader has not rejected " + description +
+                 " as an invalid class: " + e.getMessage());
+        }
+    }
+
+    private static void writeBytes(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] parseHex(String hex) {
+
+        byte[] bytes = new byte[hex.length() / 2];
+
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+
+        return bytes;
+    }
+}
@@ -0,0 +1,149 @@
+package ants.test;
+
+import java.io.*;
+import ants.vm.*;
+
+/**
+ * The <code>CompilerTest</code> class tests the {@link ProgramCompiler}.
+ * Ant classes must be compiled whatever their names are, although the
+ * names of the generated JVM classes are derived from them.  A program that
+ * is too large to be compiled must be interpreted by the compiled engine
+ * instead.  In both cases, the compiled engine must compute the same state
+ * as the reflective one.
+ */
+public class CompilerTest extends Test {
+
+    private static final short C1 = AntsVm.OP1_CONSTANT;
+    private static final short C2 = AntsVm.OP2_CONSTANT;
+    private static final long CYCLES = 500;
+
+    /**
+     * Names that are not valid in JVM class names.
+     */
+    private static final String[] NAMES = {
+        "a.b", "[", ";", "x/y", "<init>", "", "Ameise\u00e4", "$1", "a b"
+    };
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException A program has not been compiled or does
+     *                             not run as expected.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            for (String name: NAMES) {
+
+                AntClass c = createClass(name, 3);
+
+                assertCond(ProgramCompiler.compile(c) != null,
+                           "The class '" + name + "' has not been compiled.");
+                compare(c, "the class '" + name + "'");
+            }
+
+            AntClass large = createClass("Large", ProgramCompiler.MAX_CODE_SIZE);
+
+            assertCond(ProgramCompiler.compile(large) == null,
+                       "The program that is too large has been compiled.");
+            compare(large, "the program that is too large");
+
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Asserts that the compiled and the reflective engine compute the same
+     * state for a queen.
+     */
+    private void compare(AntClass c, String description)
+        throws IOException, TestFailedException {
+
+        File dir = TestSimulation.createDirectory();
+        TestSimulation.writeClass(dir, "queen.ant.bin", c);
+
+        long expected = 0;
+
+        for (AntsVm.Engine engine: new AntsVm.Engine[] { AntsVm.Engine.REFLECTIVE,
+                                                         AntsVm.Engine.COMPILED }) {
+
+            Configuration config = new Configuration();
+
+            config.dataPath = dir.getPath();
+            config.numberOfPlayers = 1;
+            config.playerInfos = new Configuration.PlayerInfo[1];
+            TestSimulation.addPlayer(config, 0, "red", "queen.ant.bin");
+            config.playfieldWidth = 16;
+            config.playfieldHeight = 16;
+            config.initialEnergy = Short.MAX_VALUE;
+            config.engine = engine;
+            config.seed = TestSimulation.SEED;
+
+            AntsVm vm = TestSimulation.run(config, CYCLES);
+            long hash = TestSimulation.hash(vm, true);
+
+            assertCond(vm.getCycles() == CYCLES && hasMark(vm),
+                       engine + ": " + description + " has not run.");
+
+            if (engine == AntsVm.Engine.REFLECTIVE)
+                expected = hash;
+            else
+                assertCond(hash == expected,
+                           engine + ": " + description + " has computed a different state.");
+        }
+    }
+
+    /**
+     * Returns true if the queen has set its mark on the playfield.
+     */
+    private static boolean hasMark(AntsVm vm) {
+
+        for (int y = 0; y < vm.getPlayfieldHeight(); y++)
+            for (int x = 0; x < vm.getPlayfieldWidth(); x++)
+                if (vm.getPlayfieldCell(x, y).marks[0] == 5)
+                    return true;
+
+        return false;
+    }
+
+    /**
+     * Creates an ant class whose program sets the mark of the cell north
+     * of the ant, adds to a variable a number of times, and starts over.
+     *
+     * @param name The name of the class.
+     * @param additions The number of additions.
+     * @return The ant class.
+     */
+    private static AntClass createClass(String name, int additions) {
+
+        short[] program = new short[(additions + 2) * AntsVm.INSTRUCTION_SIZE];
+        int i = 0;
+
+        program[i++] = Instruction.SET_MARK | C1 | C2;
+        program[i++] = 0;
+        program[i++] = Direction.NORTH;
+        program[i++] = 5;
+
+        for (int j = 0; j < additions; j++) {
+            program[i++] = Instruction.ADD | C2;
+            program[i++] = 5;
+            program[i++] = 5;
+            program[i++] = (short) (j % 7 + 1);
+        }
+
+        program[i++] = Instruction.GOTO | C1;
+        program[i++] = 0;
+        program[i++] = 0;
+        program[i++] = 0;
+
+        AntClass c = new AntClass();
+
+        c.setName(name);
+        c.setVariableSize((short) 7);
+        c.setProgram(program);
+        c.setProgramSize((short) (additions + 2));
+
+        return c;
+    }
+}
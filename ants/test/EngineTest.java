@@ -0,0 +1,59 @@
+package ants.test;
+
+import java.io.*;
+import ants.vm.*;
+
+/**
+ * The <code>EngineTest</code> class tests that all execution engines of
+ * the VM compute the same simulation.  The simulation runs the sample
+ * programs long enough that ants are created, die of hunger, and execute
+ * every instruction.
+ */
+public class EngineTest extends Test {
+
+    private static final long CYCLES = 30000;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException An engine computed a different state.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            File dir = TestSimulation.createDirectory();
+            TestSimulation.compilePrograms(dir, false);
+
+            AntsVm reference = null;
+            long referenceHash = 0;
+
+            for (AntsVm.Engine engine: AntsVm.Engine.values()) {
+
+                AntsVm vm = TestSimulation.run(
+                    TestSimulation.configure(dir, 64, engine), CYCLES);
+                long hash = TestSimulation.hash(vm, true);
+
+                if (reference == null) {
+                    assertCond(vm.getCycles() == CYCLES, "The simulation has ended early.");
+                    reference = vm;
+                    referenceHash = hash;
+                    continue;
+                }
+
+                assertCond(hash == referenceHash,
+                           "The " + engine + " engine computed a different playfield.");
+                assertCond(vm.getInstructions() == reference.getInstructions(),
+                           "The " + engine + " engine executed a different number of instructions.");
+
+                for (int i = 0; i < vm.getNumberOfPlayers(); i++) {
+                    assertCond(vm.getNumberOfAnts(i) == reference.getNumberOfAnts(i)
+                               && vm.getFoodOfAnts(i) == reference.getFoodOfAnts(i),
+                               "The " + engine + " engine computed different ants.");
+                }
+            }
+
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ants.test;
+
+import java.io.*;
+import ants.vm.*;
+
+/**
+ * The <code>FoodRegrowthTest</code> class tests the regrowth of food on a
+ * playfield without food and stones, on which a single queen idles.  The
+ * amount of food that grows must match the regrowth rate, no food may grow
+ * if the rate is zero, and no food may grow where the regrowth map has a
+ * factor of zero.
+ */
+public class FoodRegrowthTest extends Test {
+
+    private static final double RATE = 0.05;
+    private static final long CYCLES = 30000;
+
+    private static final String SOURCE =
+        "DefineAnt Idler(0):\n" +
+        "Configuration:\n" +
+        "    $MyBackpackSize = 0\n" +
+        "Program:\n" +
+        "%Loop:\n" +
+        "    Goto(%Loop)\n";
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException The food does not grow as expected.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            File dir = TestSimulation.createDirectory();
+            TestSimulation.writeClass(dir, "idler.ant.bin",
+                                      TestSimulation.compile(SOURCE, false));
+
+            File map = new File(dir, "regrowth.map");
+            map.deleteOnExit();
+
+            try (PrintWriter out = new PrintWriter(new FileWriter(map))) {
+                out.println("# Food grows on the left half only.");
+                out.println("1 0");
+            }
+
+            Configuration config = configure(dir, RATE);
+            AntsVm vm = TestSimulation.run(config, 0);
+
+            assertCond(countFood(vm, 0, config.playfieldWidth) == 0,
+                       "The playfield has food before the first cycle.");
+
+            vm.step(CYCLES);
+
+            // Every regrowth adds 0 to maxFoodPerCell - 1 food.
+            double expected = CYCLES * RATE * (config.maxFoodPerCell - 1) / 2.0;
+            long food = countFood(vm, 0, config.playfieldWidth);
+
+            assertCond(vm.getCycles() == CYCLES, "The queen has died.");
+            assertCond(Math.abs(food - expected) < expected / 10,
+                       food + " food has grown, expected about " + (long) expected + ".");
+
+            vm = TestSimulation.run(configure(dir, 0), CYCLES);
+
+            assertCond(countFood(vm, 0, config.playfieldWidth) == 0,
+                       "Food has grown with a regrowth rate of zero.");
+
+            config = configure(dir, RATE);
+            config.foodRegrowMap = map.getName();
+            vm = TestSimulation.run(config, CYCLES);
+
+            int half = config.playfieldWidth / 2;
+            food = countFood(vm, 0, half);
+
+            assertCond(countFood(vm, half, config.playfieldWidth) == 0,
+                       "Food has grown where the regrowth map has a factor of zero.");
+            assertCond(Math.abs(food - expected / 2) < expected / 20,
+                       food + " food has grown on the left half, expected about " +
+                       (long) (expected / 2) + ".");
+
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the configuration of a playfield without food and stones, and
+     * of a queen that lives for more than {@link #CYCLES} cycles.
+     */
+    private static Configuration configure(File dir, double rate) {
+
+        Configuration config = new Configuration();
+
+        config.dataPath = dir.getPath();
+        config.numberOfPlayers = 1;
+        config.playerInfos = new Configuration.PlayerInfo[1];
+        TestSimulation.addPlayer(config, 0, "red", "idler.ant.bin");
+        config.playfieldWidth = 100;
+        config.playfieldHeight = 100;
+        config.passableRatio = 1;
+        config.foodRatio = 0;
+        config.stonesRatio = 0;
+        config.foodRegrowRate = rate;
+        config.initialEnergy = Short.MAX_VALUE;
+        config.energyPerRun = 1;
+        config.seed = TestSimulation.SEED;
+
+        return config;
+    }
+
+    /**
+     * Returns the amount of food in a range of columns of the playfield.
+     */
+    private static long countFood(AntsVm vm, int fromX, int toX) {
+
+        long food = 0;
+
+        for (int y = 0; y < vm.getPlayfieldHeight(); y++)
+            for (int x = fromX; x < toX; x++)
+                food += vm.getPlayfieldCell(x, y).food;
+
+        return food;
+    }
+}
@@ -0,0 +1,159 @@
+package ants.test;
+
+import java.io.*;
+import java.util.*;
+import ants.vm.*;
+
+/**
+ * The <code>HeadlessRunnerTest</code> class tests the reports of the {@link
+ * HeadlessRunner}.  A report must be written at the start, after every
+ * interval, and at the end of a run, with one column per value, and its
+ * values must match the state of the VM.  Reporting the food on a chunked
+ * playfield must not create the chunks that the ants have not reached.
+ */
+public class HeadlessRunnerTest extends Test {
+
+    private static final int PLAYERS = 4;
+    private static final int COLUMNS = 4 + 2 * PLAYERS + 1;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException The reports are not as expected.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            File dir = TestSimulation.createDirectory();
+            TestSimulation.compilePrograms(dir, false);
+
+            testIntervals(dir);
+            testEnd(dir);
+            testChunked(dir);
+
+        } catch (Exception e) {
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests a run of a fixed number of cycles.
+     */
+    private void testIntervals(File dir) throws Exception {
+
+        Configuration config = TestSimulation.configure(dir, 48, AntsVm.Engine.DECODED);
+        List<String[]> lines = new ArrayList<>();
+        HeadlessRunner runner = run(config, 2500, 1000, lines);
+        AntsVm vm = runner.getVm();
+
+        assertCond(lines.size() == 5, "The run has written " + lines.size() + " lines.");
+        assertCond(lines.get(0)[0].equals("cycles") && lines.get(0)[4].equals("ants red")
+                   && lines.get(0)[COLUMNS - 1].equals("food on playfield"),
+                   "The header does not name the columns.");
+
+        long[] cycles = { 0, 1000, 2000, 2500 };
+
+        for (int i = 0; i < cycles.length; i++)
+            assertCond(Long.parseLong(lines.get(i + 1)[0]) == cycles[i],
+                       "Report " + i + " has been written after " + lines.get(i + 1)[0] +
+                       " cycles, expected " + cycles[i] + ".");
+
+        assertLastReport(vm, lines);
+    }
+
+    /**
+     * Tests a run until the simulation ends, with ants that starve soon.
+     */
+    private void testEnd(File dir) throws Exception {
+
+        Configuration config = TestSimulation.configure(dir, 48, AntsVm.Engine.DECODED);
+        config.initialEnergy = 300;
+
+        List<String[]> lines = new ArrayList<>();
+        HeadlessRunner runner = run(config, 0, 700, lines);
+        AntsVm vm = runner.getVm();
+
+        assertCond(vm.getVmState() == AntsVm.VmState.STOPPED_BY_SIM,
+                   "The simulation has not ended.");
+        assertCond(lines.size() == 2 + (vm.getCycles() + 699) / 700,
+                   "The run has written " + lines.size() + " lines in " + vm.getCycles() +
+                   " cycles.");
+        assertLastReport(vm, lines);
+    }
+
+    /**
+     * Tests a run on a chunked playfield that is too large to be created
+     * as a whole.
+     */
+    private void testChunked(File dir) throws Exception {
+
+        Configuration config = TestSimulation.configure(dir, 100000, AntsVm.Engine.DECODED);
+        List<String[]> lines = new ArrayList<>();
+        HeadlessRunner runner = run(config, 300, 100, lines);
+        AntsVm vm = runner.getVm();
+        ChunkedPlayfield playfield = (ChunkedPlayfield) vm.getPlayfield();
+        int chunks = playfield.getResidentChunks();
+
+        assertCond(chunks < 50, "The run has created " + chunks + " chunks.");
+
+        long food = 0;
+
+        for (String[] line: lines.subList(1, lines.size()))
+            food = Long.parseLong(line[COLUMNS - 1]);
+
+        assertCond(food == playfield.getFood() && food > 0,
+                   "The last report shows " + food + " food items, expected " +
+                   playfield.getFood() + ".");
+        assertCond(playfield.getResidentChunks() == chunks,
+                   "Counting the food has created chunks.");
+    }
+
+    /**
+     * Runs a simulation and splits the reports into columns.
+     */
+    private HeadlessRunner run(Configuration config, long cycles, long interval,
+                               List<String[]> lines) throws Exception {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        HeadlessRunner runner = new HeadlessRunner(config, new PrintStream(buffer, true, "UTF-8"));
+
+        runner.run(cycles, interval);
+
+        for (String line: buffer.toString("UTF-8").split("\n")) {
+
+            String[] columns = line.split("\t", -1);
+
+            assertCond(columns.length == COLUMNS,
+                       "The line '" + line + "' has " + columns.length + " columns.");
+            lines.add(columns);
+        }
+
+        return runner;
+    }
+
+    /**
+     * Asserts that the last report matches the state of a VM.
+     */
+    private void assertLastReport(AntsVm vm, List<String[]> lines) throws TestFailedException {
+
+        String[] last = lines.get(lines.size() - 1);
+        long food = 0;
+
+        for (int y = 0; y < vm.getPlayfieldHeight(); y++) {
+            for (int x = 0; x < vm.getPlayfieldWidth(); x++)
+                food += vm.getPlayfield().getFood(x, y);
+        }
+
+        assertCond(Long.parseLong(last[0]) == vm.getCycles(),
+                   "The last report has not been written at the end of the run.");
+
+        for (int i = 0; i < PLAYERS; i++)
+            assertCond(Integer.parseInt(last[4 + 2 * i]) == vm.getNumberOfAnts(i)
+                       && Long.parseLong(last[5 + 2 * i]) == vm.getFoodOfAnts(i),
+                       "The last report shows the wrong ants of player " + i + ".");
+
+        assertCond(Long.parseLong(last[COLUMNS - 1]) == food,
+                   "The last report shows " + last[COLUMNS - 1] + " food items, expected " +
+                   food + ".");
+    }
+}
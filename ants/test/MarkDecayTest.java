@@ -0,0 +1,124 @@
+package ants.test;
+
+import java.io.*;
+import ants.vm.*;
+
+/**
+ * The <code>MarkDecayTest</code> class tests the decay of marks.  Two queens
+ * set a mark on the cell north of them once and then read it in a loop.  The mark of
+ * the red tribe, which has a half-life, loses half its value each time the
+ * half-life passes, both on the playfield and for the ant that reads it;
+ * the mark of the green tribe keeps its value.
+ */
+public class MarkDecayTest extends Test {
+
+    private static final short VALUE = 100;
+    private static final long HALF_LIFE = 300;
+
+    /**
+     * The cycles at which the marks are checked.  None of them is close to
+     * a multiple of the half-life, so the result does not depend on the
+     * cycle at which the marks have been set.
+     */
+    private static final long[] CYCLES = { 2, 150, 650, 1000, 2000, 2900 };
+
+    /**
+     * Returns the source of a queen that sets a mark and reads it.
+     *
+     * @param tribe The name of the tribe of the queen.
+     * @return The source.
+     */
+    private static String source(String tribe) {
+        return "DefineAnt Marker(0):\n" +
+            "Configuration:\n" +
+            "    $MyBackpackSize = 0\n" +
+            "Program:\n" +
+            "    SetMark(#North, " + VALUE + ")\n" +
+            "%Loop:\n" +
+            "    MarkValue(#North, #" + tribe + ", $v)\n" +
+            "    Goto(%Loop)\n";
+    }
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException A mark does not have the expected value.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            File dir = TestSimulation.createDirectory();
+            TestSimulation.writeClass(dir, "red.ant.bin",
+                                      TestSimulation.compile(source("Red"), false));
+            TestSimulation.writeClass(dir, "green.ant.bin",
+                                      TestSimulation.compile(source("Green"), false));
+
+            for (AntsVm.Engine engine: AntsVm.Engine.values()) {
+
+                Configuration config = new Configuration();
+
+                config.dataPath = dir.getPath();
+                config.numberOfPlayers = 2;
+                config.playerInfos = new Configuration.PlayerInfo[2];
+                TestSimulation.addPlayer(config, 0, "red", "red.ant.bin");
+                TestSimulation.addPlayer(config, 1, "green", "green.ant.bin");
+                config.playerInfos[0].markHalfLife = HALF_LIFE;
+                config.playfieldWidth = 32;
+                config.playfieldHeight = 32;
+                config.initialEnergy = Short.MAX_VALUE;
+                config.engine = engine;
+                config.seed = TestSimulation.SEED;
+
+                AntsVm vm = TestSimulation.run(config, 0);
+
+                for (long cycles: CYCLES) {
+
+                    vm.step(cycles - vm.getCycles());
+
+                    short expected = (short) (VALUE >> (cycles / HALF_LIFE));
+
+                    assertCond(TestSimulation.countAnts(vm) == 2,
+                               "The queens have died before cycle " + cycles + ".");
+                    checkMark(vm, 0, expected, engine);
+                    checkMark(vm, 1, VALUE, engine);
+                }
+            }
+
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Checks the mark that the queen of a tribe has set north of it, and
+     * the value that the queen has read last.
+     */
+    private void checkMark(AntsVm vm, int tribe, short expected, AntsVm.Engine engine)
+        throws TestFailedException {
+
+        for (int y = 0; y < vm.getPlayfieldHeight(); y++) {
+            for (int x = 0; x < vm.getPlayfieldWidth(); x++) {
+
+                PlayfieldCell cell = vm.getPlayfieldCell(x, y);
+
+                if (cell.ant == null || cell.ant.getTribe() != tribe)
+                    continue;
+
+                short mark = vm.getPlayfieldCell(x, y - 1).marks[tribe];
+
+                assertCond(mark == expected,
+                           engine + ": the mark of tribe " + tribe + " is " +
+                           mark + " at cycle " + vm.getCycles() +
+                           ", expected " + expected + ".");
+                assertCond(cell.ant.getVariables()[AntsVm.FIRST_USER_VAR] == expected,
+                           engine + ": tribe " + tribe + " has read " +
+                           cell.ant.getVariables()[AntsVm.FIRST_USER_VAR] +
+                           " at cycle " + vm.getCycles() + ", expected " +
+                           expected + ".");
+                return;
+            }
+        }
+
+        fail("The queen of tribe " + tribe + " is missing.");
+    }
+}
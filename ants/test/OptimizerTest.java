@@ -0,0 +1,470 @@
+package ants.test;
+
+import java.io.*;
+import java.util.*;
+import ants.compiler.ProgramOptimizer;
+import ants.vm.*;
+
+/**
+ * The <code>OptimizerTest</code> class tests the {@link ProgramOptimizer}.
+ * An optimized program must execute the same actions in the same order as
+ * the original program, and fail at the same point if the original fails.
+ * This is checked with a model of the VM in which the results of sensing
+ * instructions and actions depend only on their operands and on the number
+ * of actions executed so far, for the sample programs and for random
+ * programs.  Besides, the sample programs with shared variable slots must
+ * compute the same simulation as the original ones, and the optimized
+ * sample programs must pass the verifier and compute the same simulation
+ * with every engine.
+ */
+public class OptimizerTest extends Test {
+
+    private static final short C1 = AntsVm.OP1_CONSTANT;
+    private static final short C2 = AntsVm.OP2_CONSTANT;
+
+    private static final int PLAYERS = 4;
+    private static final int TRIALS = 5;
+    private static final int BUDGET = 3000;
+
+    private static final int RANDOM_PROGRAMS = 1000;
+    private static final int RANDOM_VARIABLES = 10;
+
+    private static final long CYCLES = 30000;
+
+    /**
+     * The actions of an ant in the model, and whether it has failed.
+     */
+    private static class Trace {
+        final List<Long> actions = new ArrayList<>();
+        boolean failed;
+    }
+
+    /**
+     * An instruction has failed in the model.
+     */
+    private static class Failure extends Exception {
+    }
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException An optimized program behaves differently.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            for (String name: TestSimulation.PROGRAMS) {
+
+                String source = TestSimulation.readSource(name);
+                AntClass original = TestSimulation.compile(source, false);
+                AntClass optimized = TestSimulation.compile(source, true);
+
+                try {
+                    ProgramVerifier.verify(optimized, PLAYERS);
+                } catch (InvalidClassException e) {
+                    fail("The optimized " + name + " is invalid: " + e.getMessage());
+                }
+
+                assertCond(optimized.getVariableSize() <= original.getVariableSize(),
+                           "The optimized " + name + " has more variables.");
+
+                for (int trial = 0; trial < TRIALS; trial++)
+                    compare(name, original.getProgram(), original.getVariableSize(),
+                            optimized.getProgram(), optimized.getVariableSize(), trial);
+            }
+
+            testRandomPrograms();
+            testSharedSlots();
+            testEngines();
+
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Optimizes random programs, and assigns variable slots to them without
+     * optimizing them, and compares their actions.
+     */
+    private void testRandomPrograms() throws TestFailedException {
+
+        for (int i = 0; i < RANDOM_PROGRAMS; i++) {
+
+            Random random = new Random(TestSimulation.SEED + i);
+            short[] program = generate(random);
+            String name = "random program " + i;
+
+            ProgramOptimizer optimizer = new ProgramOptimizer();
+            short[] optimized = optimizer.allocateVariables(
+                optimizer.optimize(program), RANDOM_VARIABLES);
+            int optimizedVariables = optimizer.getVariableSize();
+
+            optimizer = new ProgramOptimizer();
+            short[] allocated = optimizer.allocateVariables(program, RANDOM_VARIABLES);
+            int allocatedVariables = optimizer.getVariableSize();
+
+            assertCond(optimizedVariables <= RANDOM_VARIABLES
+                       && allocatedVariables <= RANDOM_VARIABLES,
+                       "The " + name + " has more variables.");
+
+            if (isValid(program, RANDOM_VARIABLES))
+                assertCond(isValid(optimized, optimizedVariables)
+                           && isValid(allocated, allocatedVariables),
+                           "The optimized " + name + " is invalid.");
+
+            for (int trial = 0; trial < TRIALS; trial++) {
+                compare(name, program, RANDOM_VARIABLES,
+                        optimized, optimizedVariables, trial);
+                compare(name + " with shared slots", program, RANDOM_VARIABLES,
+                        allocated, allocatedVariables, trial);
+            }
+        }
+    }
+
+    /**
+     * Tests that the sample programs compute the same simulation when their
+     * variables share slots.  Only the variables of the ants differ.
+     */
+    private void testSharedSlots() throws IOException, TestFailedException {
+
+        File originalDir = TestSimulation.createDirectory();
+        File allocatedDir = TestSimulation.createDirectory();
+        boolean shared = false;
+
+        TestSimulation.compilePrograms(originalDir, false);
+
+        for (String name: TestSimulation.PROGRAMS) {
+
+            AntClass c = TestSimulation.compile(TestSimulation.readSource(name), false);
+            ProgramOptimizer optimizer = new ProgramOptimizer();
+            short[] program = optimizer.allocateVariables(c.getProgram(), c.getVariableSize());
+
+            shared |= optimizer.getVariableSize() < c.getVariableSize();
+
+            c.setProgram(program);
+            c.setProgramSize((short) (program.length / AntsVm.INSTRUCTION_SIZE));
+            c.setVariableSize((short) optimizer.getVariableSize());
+            TestSimulation.writeClass(allocatedDir, name + ".ant.bin", c);
+        }
+
+        assertCond(shared, "No sample program has variables that share a slot.");
+
+        for (AntsVm.Engine engine: new AntsVm.Engine[] {
+                 AntsVm.Engine.DECODED, AntsVm.Engine.COMPILED }) {
+
+            AntsVm original = TestSimulation.run(
+                TestSimulation.configure(originalDir, 64, engine), CYCLES);
+            AntsVm allocated = TestSimulation.run(
+                TestSimulation.configure(allocatedDir, 64, engine), CYCLES);
+
+            assertCond(TestSimulation.hash(original, false) == TestSimulation.hash(allocated, false)
+                       && original.getInstructions() == allocated.getInstructions(),
+                       "The simulation differs with shared variable slots (" + engine + ").");
+        }
+    }
+
+    /**
+     * Tests that all engines compute the same simulation with the optimized
+     * sample programs.
+     */
+    private void testEngines() throws IOException, TestFailedException {
+
+        File dir = TestSimulation.createDirectory();
+        TestSimulation.compilePrograms(dir, true);
+
+        AntsVm reference = null;
+        long referenceHash = 0;
+
+        for (AntsVm.Engine engine: AntsVm.Engine.values()) {
+
+            AntsVm vm = TestSimulation.run(TestSimulation.configure(dir, 64, engine), CYCLES);
+            long hash = TestSimulation.hash(vm, true);
+
+            if (reference == null) {
+                reference = vm;
+                referenceHash = hash;
+                continue;
+            }
+
+            assertCond(hash == referenceHash
+                       && vm.getInstructions() == reference.getInstructions(),
+                       "The " + engine + " engine computed a different simulation " +
+                       "with the optimized programs.");
+        }
+    }
+
+    /**
+     * Runs an original and a transformed program in the model and compares
+     * their actions.  The transformed program executes fewer instructions,
+     * so it may get further within the budget.  It must fail if and only
+     * if the original fails, after the same actions.
+     */
+    private void compare(String name, short[] original, int originalVariables,
+                         short[] transformed, int transformedVariables, int trial)
+        throws TestFailedException {
+
+        Trace expected = execute(original, originalVariables, trial);
+        Trace actual = execute(transformed, transformedVariables, trial);
+        int n = expected.actions.size();
+
+        boolean equal = expected.failed ?
+            actual.failed && actual.actions.equals(expected.actions) :
+            actual.actions.size() >= n
+                && actual.actions.subList(0, n).equals(expected.actions)
+                && !(actual.failed && actual.actions.size() == n);
+
+        assertCond(equal, "The optimized " + name + " executes different actions " +
+                   "in trial " + trial + ".");
+    }
+
+    /**
+     * Executes a program in the model for {@link #BUDGET} instructions.
+     * The user variables start as 0, as in the VM.  The system variables,
+     * the results of the sensing instructions, and the results of the
+     * actions are derived from the trial, the operands, and the number of
+     * actions executed so far.
+     */
+    private static Trace execute(short[] program, int variableSize, int trial) {
+
+        Trace trace = new Trace();
+        short[] variables = new short[variableSize];
+        int size = program.length / AntsVm.INSTRUCTION_SIZE;
+        int time = 0;
+        int pc = 0;
+
+        setSystemVariables(variables, trial, time);
+
+        try {
+            for (int n = 0; n < BUDGET; n++) {
+
+                if (pc < 0 || pc >= size)
+                    throw new Failure();
+
+                int i = pc * AntsVm.INSTRUCTION_SIZE;
+                int instruction = program[i + AntsVm.OPCODE_OFFSET];
+                int opcode = instruction & ~(C1 | C2);
+                int result = program[i + AntsVm.RESULT_OFFSET];
+                short op1 = program[i + AntsVm.OP1_OFFSET];
+                short op2 = program[i + AntsVm.OP2_OFFSET];
+                short v1 = (instruction & C1) != 0 ? op1 : variables[op1];
+                short v2 = DecodedProgram.getOperandCount(opcode) < 2 ? 0
+                    : (instruction & C2) != 0 ? op2 : variables[op2];
+                int value;
+
+                if (ProgramVerifier.isDirection(opcode)
+                    && !ProgramVerifier.isValidDirection(opcode, v1))
+                    throw new Failure();
+
+                if ((opcode == Instruction.MARKS || opcode == Instruction.MARK_VALUE)
+                    && !ProgramVerifier.isValidTribe(opcode, v2, PLAYERS))
+                    throw new Failure();
+
+                if (opcode == Instruction.GOTO) {
+                    pc = v1;
+                    continue;
+                }
+
+                if (opcode == Instruction.GOTO_IF) {
+                    pc = v2 != 0 ? v1 : pc + 1;
+                    continue;
+                }
+
+                if (opcode >= Instruction.STONES && opcode <= Instruction.MARK_VALUE) {
+                    value = (int) (mix(opcode, v1, v2, trial * BUDGET + time) & 0xff) - 3;
+
+                } else if (opcode == Instruction.MAKE_ANT
+                           || (opcode >= Instruction.MOVE && opcode <= Instruction.CLEAR_MARK)) {
+                    trace.actions.add(((long) opcode << 48) | ((long) (v1 & 0xffff) << 32)
+                                      | ((long) (v2 & 0xffff) << 16) | time);
+                    value = (int) (mix(opcode, v1, v2, trial * BUDGET + time) & 3);
+                    setSystemVariables(variables, trial, ++time);
+
+                } else {
+                    value = compute(opcode, v1, v2);
+                }
+
+                if (ProgramVerifier.hasResult(opcode) && result >= AntsVm.FIRST_USER_VAR)
+                    variables[result] = (short) value;
+
+                pc++;
+            }
+
+        } catch (Failure e) {
+            trace.failed = true;
+        }
+
+        return trace;
+    }
+
+    /**
+     * Computes the result of an arithmetic instruction.
+     */
+    private static int compute(int opcode, short v1, short v2) throws Failure {
+
+        switch (opcode) {
+            case Instruction.COPY:          return v1;
+            case Instruction.OR:            return v1 | v2;
+            case Instruction.AND:           return v1 & v2;
+            case Instruction.XOR:           return v1 ^ v2;
+            case Instruction.NOT:           return ~v1;
+            case Instruction.BITS_TRUE:     return Integer.bitCount(v1 & 0xffff);
+            case Instruction.BITS_FALSE:    return 16 - Integer.bitCount(v1 & 0xffff);
+            case Instruction.ADD:           return v1 + v2;
+            case Instruction.SUB:           return v1 - v2;
+            case Instruction.MULT:          return v1 * v2;
+            case Instruction.NEG:           return -v1;
+            case Instruction.EQUAL:         return v1 == v2 ? 1 : 0;
+            case Instruction.NOT_EQUAL:     return v1 != v2 ? 1 : 0;
+            case Instruction.LESS:          return v1 < v2 ? 1 : 0;
+            case Instruction.LESS_EQUAL:    return v1 <= v2 ? 1 : 0;
+            case Instruction.GREATER:       return v1 > v2 ? 1 : 0;
+            case Instruction.GREATER_EQUAL: return v1 >= v2 ? 1 : 0;
+            case Instruction.DIV:
+                if (v2 == 0)
+                    throw new Failure();
+                return v1 / v2;
+            default:
+                throw new IllegalArgumentException("Invalid instruction " + opcode);
+        }
+    }
+
+    /**
+     * Sets the system variables, which change after every action.
+     */
+    private static void setSystemVariables(short[] variables, int trial, int time) {
+        for (int i = 0; i < AntsVm.FIRST_USER_VAR; i++)
+            variables[i] = (short) (mix(i, trial, 0, time) & 0x3f);
+    }
+
+    private static long mix(int a, int b, int c, int d) {
+
+        long x = a * 1000003L + b * 7919L + c * 31L + d;
+
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+
+        return x;
+    }
+
+    /**
+     * Generates a random program that ends with a <i>Goto</i>.  About one
+     * in four programs also jumps to addresses from variables.  Most
+     * comparisons are followed by a <i>GotoIf</i> over a <i>Goto</i>, as the
+     * compiler emits them.
+     */
+    private static short[] generate(Random random) {
+
+        int size = 3 + random.nextInt(40);
+        short[] program = new short[AntsVm.INSTRUCTION_SIZE * size];
+        boolean computed = random.nextInt(4) == 0;
+
+        for (int i = 0; i < size; i++) {
+
+            int opcode;
+            int k = random.nextInt(10);
+
+            if (i == size - 1)
+                opcode = Instruction.GOTO;
+            else if (k < 2)
+                opcode = random.nextBoolean() ? Instruction.GOTO_IF : Instruction.GOTO;
+            else if (k < 4)
+                opcode = Instruction.COPY;
+            else if (k < 5)
+                opcode = Instruction.EQUAL + random.nextInt(6);
+            else
+                opcode = random.nextInt(Instruction.GOTO);
+
+            int flags = 0;
+            int op1;
+            int op2 = 0;
+            int result = 0;
+
+            if (ProgramVerifier.isJump(opcode)) {
+                if (computed && random.nextInt(3) == 0) {
+                    op1 = randomVariable(random);
+                } else {
+                    flags |= C1;
+                    op1 = random.nextInt(size);
+                }
+            } else if (random.nextBoolean()) {
+                flags |= C1;
+                op1 = random.nextInt(12) - 2;
+            } else {
+                op1 = random.nextInt(RANDOM_VARIABLES);
+            }
+
+            if (DecodedProgram.getOperandCount(opcode) == 2) {
+                if (random.nextInt(3) == 0) {
+                    flags |= C2;
+                    op2 = random.nextInt(8) - 1;
+                } else {
+                    op2 = random.nextInt(RANDOM_VARIABLES);
+                }
+            }
+
+            if (ProgramVerifier.hasResult(opcode))
+                result = random.nextInt(8) == 0 ?
+                    random.nextInt(AntsVm.FIRST_USER_VAR) : randomVariable(random);
+
+            if (computed && opcode == Instruction.COPY && random.nextBoolean()) {
+                flags = C1;
+                op1 = random.nextInt(size);
+            }
+
+            setInstruction(program, i, opcode | flags, result, op1, op2);
+        }
+
+        for (int i = 0; i + 3 < size; i++) {
+
+            if (random.nextInt(6) != 0)
+                continue;
+
+            int condition = randomVariable(random);
+
+            setInstruction(program, i,
+                           (Instruction.EQUAL + random.nextInt(6)) | (random.nextBoolean() ? C2 : 0),
+                           condition, randomVariable(random), random.nextInt(RANDOM_VARIABLES));
+            setInstruction(program, i + 1, Instruction.GOTO_IF | C1, 0, i + 3, condition);
+            setInstruction(program, i + 2, Instruction.GOTO | C1, 0, random.nextInt(size), 0);
+            i += 2;
+        }
+
+        return program;
+    }
+
+    private static int randomVariable(Random random) {
+        return AntsVm.FIRST_USER_VAR
+            + random.nextInt(RANDOM_VARIABLES - AntsVm.FIRST_USER_VAR);
+    }
+
+    private static void setInstruction(short[] program, int index, int instruction,
+                                       int result, int op1, int op2) {
+
+        int i = index * AntsVm.INSTRUCTION_SIZE;
+
+        program[i + AntsVm.OPCODE_OFFSET] = (short) instruction;
+        program[i + AntsVm.RESULT_OFFSET] = (short) result;
+        program[i + AntsVm.OP1_OFFSET] = (short) op1;
+        program[i + AntsVm.OP2_OFFSET] = (short) op2;
+    }
+
+    private static boolean isValid(short[] program, int variableSize) {
+
+        AntClass c = new AntClass();
+
+        c.setName("Random");
+        c.setVariableSize((short) variableSize);
+        c.setProgram(program);
+        c.setProgramSize((short) (program.length / AntsVm.INSTRUCTION_SIZE));
+
+        try {
+            ProgramVerifier.verify(c, PLAYERS);
+            return true;
+        } catch (InvalidClassException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package ants.test;
+
+import java.io.*;
+import java.util.*;
+import ants.vm.*;
+
+/**
+ * The <code>PlayfieldTest</code> class tests the {@link ArrayPlayfield} and
+ * the copies of the playfield that the VM hands out.  The properties of a
+ * cell must be stored independently of each other and of the other cells,
+ * and positions outside the playfield must wrap.  A copy of the playfield
+ * must show its state when it has been made, reuse the cells of the
+ * previous copy, and hold an {@link Ant} only for the occupied cells.
+ */
+public class PlayfieldTest extends Test {
+
+    private static final int WIDTH = 21;
+    private static final int HEIGHT = 13;
+    private static final int PLAYERS = 3;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException The playfield or a copy of it does not
+     *                             hold the expected values.
+     */
+    public void run() throws TestFailedException {
+
+        testArrayPlayfield();
+
+        try {
+            testCopy();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests the accessors of the {@link ArrayPlayfield}.
+     */
+    private void testArrayPlayfield() throws TestFailedException {
+
+        ArrayPlayfield playfield = new ArrayPlayfield(PLAYERS, WIDTH, HEIGHT);
+        long food = 0;
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertCond(!playfield.isPassable(x, y) && playfield.getStones(x, y) == 0
+                           && playfield.getFood(x, y) == 0
+                           && playfield.getAnt(x, y) == Playfield.NO_ANT
+                           && playfield.getMark(x, y, PLAYERS - 1) == 0,
+                           "The new cell (" + x + ", " + y + ") is not unpassable and empty.");
+            }
+        }
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+
+                int cell = y * WIDTH + x;
+
+                playfield.setPassable(x, y, cell % 3 != 0);
+                playfield.setStones(x, y, (short) (cell % 5));
+                playfield.setFood(x, y, (short) (cell % 7));
+
+                if (cell % 4 == 0)
+                    playfield.setAnt(x, y, cell + 1, cell % PLAYERS);
+
+                for (int i = 0; i < PLAYERS; i++)
+                    playfield.setMark(x, y, i, (short) (cell * PLAYERS + i - 100));
+
+                food += cell % 7;
+            }
+        }
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+
+                int cell = y * WIDTH + x;
+
+                // Read through positions that wrap around the playfield.
+                int x0 = x + (cell % 3 - 1) * WIDTH;
+                int y0 = y - (cell % 2) * HEIGHT;
+                String where = "The cell (" + x0 + ", " + y0 + ")";
+
+                assertCond(playfield.isPassable(x0, y0) == (cell % 3 != 0),
+                           where + " has the wrong passability.");
+                assertCond(playfield.getStones(x0, y0) == cell % 5,
+                           where + " has the wrong number of stones.");
+                assertCond(playfield.getFood(x0, y0) == cell % 7,
+                           where + " has the wrong amount of food.");
+                assertCond(playfield.getAnt(x0, y0) == (cell % 4 == 0 ? cell + 1 : Playfield.NO_ANT),
+                           where + " has the wrong ant.");
+                assertCond(cell % 4 != 0 || playfield.getAntTribe(x0, y0) == cell % PLAYERS,
+                           where + " has an ant of the wrong tribe.");
+                assertCond(playfield.isEmpty(x0, y0) == (cell % 3 != 0 && cell % 5 == 0
+                                                         && cell % 7 == 0 && cell % 4 != 0),
+                           where + " is " + (playfield.isEmpty(x0, y0) ? "" : "not ") + "empty.");
+
+                for (int i = 0; i < PLAYERS; i++)
+                    assertCond(playfield.getMark(x0, y0, i) == (short) (cell * PLAYERS + i - 100),
+                               where + " has the wrong mark of tribe " + i + ".");
+            }
+        }
+
+        assertCond(playfield.getFood() == food, "The playfield has " + playfield.getFood() +
+                   " food items, expected " + food + ".");
+
+        playfield.clearAnt(-WIDTH, 0);
+        playfield.setMark(0, HEIGHT, 1, (short) 0);
+
+        assertCond(playfield.getAnt(0, 0) == Playfield.NO_ANT,
+                   "The ant has not been removed.");
+        assertCond(playfield.getMark(0, 0, 0) == -100 && playfield.getMark(0, 0, 1) == 0
+                   && playfield.getMark(0, 0, 2) == -98,
+                   "Clearing a mark has changed the marks of other tribes.");
+    }
+
+    /**
+     * Tests {@link AntsVm#copyPlayfield(PlayfieldCell[][], int, int, int,
+     * int)} and {@link AntsVm#getPlayfieldCell(int, int)}.
+     */
+    private void testCopy() throws IOException, TestFailedException {
+
+        File dir = TestSimulation.createDirectory();
+        TestSimulation.compilePrograms(dir, false);
+
+        AntsVm vm = TestSimulation.run(
+            TestSimulation.configure(dir, 64, AntsVm.Engine.DECODED), 200);
+        PlayfieldCell[][] dest = new PlayfieldCell[64][64];
+
+        dest[0][0] = new PlayfieldCell(1);
+        vm.copyPlayfield(dest, 0, 0, 64, 64);
+        assertCopy(vm, dest, "first copy");
+
+        PlayfieldCell[][] previous = new PlayfieldCell[64][];
+
+        for (int y = 0; y < 64; y++)
+            previous[y] = dest[y].clone();
+
+        vm.step(200);
+        vm.copyPlayfield(dest, 0, 0, 64, 64);
+        assertCopy(vm, dest, "second copy");
+
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++)
+                assertCond(dest[y][x] == previous[y][x],
+                           "The copy has not reused the cell (" + x + ", " + y + ").");
+        }
+
+        PlayfieldCell cell = vm.getPlayfieldCell(-1, 64);
+        assertCond(cell != dest[0][63] && sameState(cell, dest[0][63]),
+                   "The snapshot of a cell outside the playfield is wrong.");
+
+        short food = cell.food;
+        cell.food = (short) (food + 1);
+        assertCond(vm.getPlayfieldCell(63, 0).food == food,
+                   "Changing a snapshot has changed the playfield.");
+    }
+
+    /**
+     * Asserts that a copy of the playfield matches the state of the VM.
+     */
+    private void assertCopy(AntsVm vm, PlayfieldCell[][] dest, String description)
+        throws TestFailedException {
+
+        Playfield playfield = vm.getPlayfield();
+        int occupied = 0;
+
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+
+                PlayfieldCell cell = dest[y][x];
+                String where = "The " + description + " of the cell (" + x + ", " + y + ")";
+
+                assertCond(cell != null && cell.marks.length == vm.getNumberOfPlayers(),
+                           where + " has not been made.");
+                assertCond(cell.isPassable == playfield.isPassable(x, y)
+                           && cell.stones == playfield.getStones(x, y)
+                           && cell.food == playfield.getFood(x, y),
+                           where + " differs from the playfield.");
+
+                for (int i = 0; i < cell.marks.length; i++)
+                    assertCond(cell.marks[i] == playfield.getMark(x, y, i),
+                               where + " has the wrong mark of tribe " + i + ".");
+
+                if (playfield.getAnt(x, y) == Playfield.NO_ANT) {
+                    assertCond(cell.ant == null, where + " has an ant.");
+                } else {
+                    assertCond(cell.ant != null && cell.ant.getXPos() == x
+                               && cell.ant.getYPos() == y
+                               && cell.ant.getTribe() == playfield.getAntTribe(x, y),
+                               where + " does not have the ant on it.");
+                    occupied++;
+                }
+
+                assertCond(sameState(cell, vm.getPlayfieldCell(x, y)),
+                           where + " differs from the snapshot of the cell.");
+            }
+        }
+
+        assertCond(occupied == TestSimulation.countAnts(vm),
+                   "The " + description + " has " + occupied + " ants, expected " +
+                   TestSimulation.countAnts(vm) + ".");
+    }
+
+    private static boolean sameState(PlayfieldCell a, PlayfieldCell b) {
+        return a.isPassable == b.isPassable && a.stones == b.stones && a.food == b.food
+            && Arrays.equals(a.marks, b.marks) && (a.ant == null) == (b.ant == null);
+    }
+}
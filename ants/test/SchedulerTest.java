@@ -0,0 +1,216 @@
+package ants.test;
+
+import java.io.*;
+import java.util.*;
+import ants.vm.*;
+
+/**
+ * The <code>SchedulerTest</code> class tests the {@link
+ * RoundRobinScheduler}.  Random sequences of operations are compared with a
+ * queue of slot ids, from which the ant whose turn it is is taken and to
+ * which it is appended again before the next turn.  A VM must take the
+ * turns of its ants from the scheduler that {@link
+ * AntsVm#createAntScheduler()} returns.
+ */
+public class SchedulerTest extends Test {
+
+    private static final long SEED = 11;
+    private static final int OPERATIONS = 20000;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException The scheduler has not given the turns in
+     *                             the expected order.
+     */
+    public void run() throws TestFailedException {
+
+        testExample();
+        testRandom();
+
+        try {
+            testVm();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests the order of the turns in a small example.
+     */
+    private void testExample() throws TestFailedException {
+
+        AntScheduler scheduler = new RoundRobinScheduler();
+
+        assertCond(scheduler.isEmpty() && scheduler.size() == 0,
+                   "The new scheduler is not empty.");
+
+        try {
+            scheduler.next();
+            fail("The empty scheduler has returned an ant.");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+
+        try {
+            scheduler.removeCurrent();
+            fail("The scheduler has removed an ant before the first turn.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        scheduler.add(1);
+        scheduler.add(2);
+        scheduler.add(3);
+
+        assertCond(scheduler.next() == 1, "The first ant has not had the first turn.");
+
+        // An ant created during the turn of 1 waits before 1.
+        scheduler.add(4);
+
+        assertCond(scheduler.next() == 2 && scheduler.getRound() == 0,
+                   "The second ant has not had the second turn.");
+        assertCond(Arrays.equals(scheduler.toArray(), new int[] { 3, 4, 1, 2 }),
+                   "The ants are waiting in the order " + Arrays.toString(scheduler.toArray()) +
+                   ".");
+
+        scheduler.removeCurrent();
+
+        assertCond(scheduler.next() == 3 && scheduler.getRound() == 1,
+                   "The round has not ended after the turns of the first three ants.");
+        assertCond(scheduler.next() == 4 && scheduler.next() == 1 && scheduler.next() == 3,
+                   "The ants have not had their turns in the second round.");
+        assertCond(scheduler.getRound() == 2 && scheduler.size() == 3,
+                   "The second round has not ended after the turns of the three ants.");
+
+        scheduler.clear();
+
+        assertCond(scheduler.isEmpty() && scheduler.toArray().length == 0,
+                   "The cleared scheduler is not empty.");
+    }
+
+    /**
+     * Compares random sequences of operations with a queue.
+     */
+    private void testRandom() throws TestFailedException {
+
+        Random random = new Random(SEED);
+        AntScheduler scheduler = new RoundRobinScheduler();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int current = Playfield.NO_ANT;
+        int turnsLeftInRound = 0;
+        long round = 0;
+        int nextSlot = 1;
+
+        for (int i = 0; i < OPERATIONS; i++) {
+
+            // Let the number of ants grow beyond the initial capacity, and
+            // shrink again.
+            int addPercent = i < OPERATIONS / 2 ? 40 : 15;
+            int operation = random.nextInt(100);
+
+            if (operation < addPercent) {
+
+                scheduler.add(nextSlot);
+                queue.addLast(nextSlot++);
+
+            } else if (operation < addPercent + 25 && current != Playfield.NO_ANT) {
+
+                scheduler.removeCurrent();
+                current = Playfield.NO_ANT;
+
+            } else if (!queue.isEmpty() || current != Playfield.NO_ANT) {
+
+                if (current != Playfield.NO_ANT)
+                    queue.addLast(current);
+
+                if (turnsLeftInRound == 0)
+                    turnsLeftInRound = queue.size();
+
+                current = queue.removeFirst();
+
+                if (--turnsLeftInRound == 0)
+                    ++round;
+
+                int slot = scheduler.next();
+
+                assertCond(slot == current, "Operation " + i + ": the scheduler has returned " +
+                           slot + ", expected " + current + ".");
+            }
+
+            int[] expected = new int[queue.size() + (current != Playfield.NO_ANT ? 1 : 0)];
+            int j = 0;
+
+            for (int slot: queue)
+                expected[j++] = slot;
+
+            if (current != Playfield.NO_ANT)
+                expected[j] = current;
+
+            assertCond(scheduler.size() == expected.length
+                       && scheduler.isEmpty() == (expected.length == 0)
+                       && Arrays.equals(scheduler.toArray(), expected),
+                       "Operation " + i + ": the scheduler does not hold the waiting ants.");
+            assertCond(scheduler.getRound() == round, "Operation " + i + ": the scheduler is " +
+                       "in round " + scheduler.getRound() + ", expected " + round + ".");
+        }
+
+        assertCond(nextSlot > 1000, "The test has not created enough ants.");
+    }
+
+    /**
+     * The scheduler of {@link CountingVm}.
+     */
+    private static class CountingScheduler extends RoundRobinScheduler {
+
+        long turns = 0;
+
+        public int next() {
+            ++turns;
+            return super.next();
+        }
+    }
+
+    /**
+     * A VM that counts the turns of its ants.
+     */
+    private static class CountingVm extends AntsVm {
+
+        CountingScheduler scheduler;
+
+        CountingVm(Configuration config) throws IOException, ClassNotFoundException {
+            super(config);
+        }
+
+        protected AntScheduler createAntScheduler() {
+            scheduler = new CountingScheduler();
+            return scheduler;
+        }
+    }
+
+    /**
+     * Tests that a VM takes the turns of its ants from its scheduler.
+     */
+    private void testVm() throws IOException, TestFailedException {
+
+        File dir = TestSimulation.createDirectory();
+        TestSimulation.compilePrograms(dir, false);
+
+        Configuration config = TestSimulation.configure(dir, 64, AntsVm.Engine.DECODED);
+        CountingVm vm;
+
+        try {
+            vm = new CountingVm(config);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+
+        vm.step(2000);
+
+        assertCond(vm.scheduler != null && vm.scheduler.turns > 0,
+                   "The VM has not used its scheduler.");
+        assertCond(TestSimulation.hash(vm, true)
+                   == TestSimulation.hash(TestSimulation.run(config, 2000), true),
+                   "The VM with its own scheduler differs from the VM with the default one.");
+    }
+}
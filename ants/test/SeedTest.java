@@ -0,0 +1,84 @@
+package ants.test;
+
+import java.io.*;
+import ants.vm.*;
+
+/**
+ * The <code>SeedTest</code> class tests that a simulation is reproducible
+ * from the <i>Seed</i> key of its configuration file: two simulations with
+ * the same seed compute the same state, with either playfield, and
+ * simulations with different seeds start from different playfields.
+ */
+public class SeedTest extends Test {
+
+    private static final long SEED = 123456789;
+    private static final long CYCLES = 20000;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException The simulation is not reproducible.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            File dir = TestSimulation.createDirectory();
+            TestSimulation.compilePrograms(dir, false);
+
+            File file = new File(dir, "seed.cfg");
+            file.deleteOnExit();
+
+            try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+                out.println("GlobalConfig:");
+                out.println("NumberOfPlayers = 2");
+                out.println("PlayfieldWidth = 48");
+                out.println("PlayfieldHeight = 48");
+                out.println("InitialEnergy = 6000");
+                out.println("Seed = " + SEED);
+                out.println("PlayerConfig:");
+                out.println("Player = red");
+                out.println("Classes = crowd-queen.ant.bin walker.ant.bin");
+                out.println("Player = green");
+                out.println("Classes = forager.ant.bin");
+            }
+
+            Configuration config;
+
+            try (FileReader in = new FileReader(file)) {
+                config = new ConfigurationParser().readConfigFile(in);
+            }
+
+            config.dataPath = dir.getPath();
+
+            assertCond(config.seed == SEED, "The seed has not been read.");
+
+            for (boolean chunked: new boolean[] { false, true }) {
+
+                config.chunkedPlayfield = chunked;
+
+                AntsVm first = TestSimulation.run(config.copy(), CYCLES);
+                AntsVm second = TestSimulation.run(config.copy(), CYCLES);
+
+                assertCond(first.getSeed() == SEED, "The VM does not use the seed.");
+                assertCond(first.getCycles() == CYCLES
+                           && TestSimulation.hash(first, true) == TestSimulation.hash(second, true)
+                           && first.getInstructions() == second.getInstructions(),
+                           "Two simulations with the same seed differ.");
+            }
+
+            config.chunkedPlayfield = false;
+
+            long start = TestSimulation.hash(TestSimulation.run(config.copy(), 0), true);
+
+            config.seed = SEED + 1;
+
+            assertCond(TestSimulation.hash(TestSimulation.run(config.copy(), 0), true) != start,
+                       "Two simulations with different seeds start alike.");
+
+        } catch (ConfigurationParser.SyntaxError e) {
+            fail(e.getMessage());
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package ants.test;
+
+import java.util.*;
+import ants.vm.*;
+
+/**
+ * The <code>SensingTest</code> class tests the sensing methods of the
+ * {@link ArrayPlayfield} against a naive probe of the 15 cells in the
+ * sensed area.  The playfields are filled at random, and every cell is
+ * sensed in every direction and for every tribe, so the areas lie across
+ * the borders of the playfield as well.  The widths include ones that are
+ * not a multiple of 64, where the rows of a {@link Bitboard} do not end at
+ * a word boundary.  The positions of the cells in the area are taken from
+ * the images in the specification, not from the tables of the VM.
+ */
+public class SensingTest extends Test {
+
+    private static final long SEED = 13;
+
+    private static final int STONES = 0;
+    private static final int FOOD = 1;
+    private static final int OBSTACLES = 2;
+    private static final int ANTS = 3;
+    private static final int MARKS = 4;
+
+    /**
+     * The sizes of the tested playfields, as pairs of width and height.
+     */
+    private static final int[][] SIZES = {
+        { 64, 16 }, { 67, 13 }, { 130, 9 }, { 9, 7 }
+    };
+
+    /**
+     * The offsets of the cells in the area, indexed by direction and bit,
+     * with the offsets in x direction at even and the offsets in y
+     * direction at odd positions.
+     */
+    private static final int[][] AREAS = new int[AntsVm.NUM_DIRECTIONS][];
+
+    static {
+
+        // Bits 1..F for North and NorthEast, as drawn in Spec.txt.
+        AREAS[Direction.NORTH] = new int[] {
+            -1, -1,  0, -1,  1, -1,
+            -2, -2, -1, -2,  0, -2,  1, -2,  2, -2,
+            -3, -3, -2, -3, -1, -3,  0, -3,  1, -3,  2, -3,  3, -3
+        };
+        AREAS[Direction.NORTHEAST] = new int[] {
+             0, -1,  1, -1,  1,  0,
+             0, -2,  1, -2,  2, -2,  2, -1,  2,  0,
+             0, -3,  1, -3,  2, -3,  3, -3,  3, -2,  3, -1,  3,  0
+        };
+
+        // The other directions are turned clockwise by a quarter.
+        for (int direction = 2; direction < AntsVm.NUM_DIRECTIONS; direction++) {
+
+            int[] from = AREAS[direction - 2];
+            int[] to = new int[from.length];
+
+            for (int i = 0; i < from.length; i += 2) {
+                to[i] = -from[i + 1];
+                to[i + 1] = from[i];
+            }
+
+            AREAS[direction] = to;
+        }
+    }
+
+    private Playfield playfield;
+    private int width;
+    private int height;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException A sensing method has returned a result
+     *                             that differs from the naive probe.
+     */
+    public void run() throws TestFailedException {
+
+        Random random = new Random(SEED);
+
+        for (int[] size: SIZES) {
+            for (int players = 1; players <= 4; players += 3) {
+
+                String name = size[0] + "x" + size[1] + ", " + players + " players";
+
+                ArrayPlayfield array = new ArrayPlayfield(players, size[0], size[1]);
+                fill(array, random);
+                check(array, random, name);
+
+                // The bitboards must follow changes of the cells.
+                fill(array, random);
+                check(array, random, name + ", changed");
+            }
+        }
+    }
+
+    /**
+     * Sets the properties of every cell at random.
+     */
+    private static void fill(Playfield playfield, Random random) {
+
+        int players = playfield.getNumberOfPlayers();
+        int slot = 1;
+
+        for (int y = 0; y < playfield.getHeight(); y++) {
+            for (int x = 0; x < playfield.getWidth(); x++) {
+
+                playfield.setPassable(x, y, random.nextInt(4) != 0);
+                playfield.setStones(x, y, (short) (random.nextInt(3) == 0 ? 1 + random.nextInt(5) : 0));
+                playfield.setFood(x, y, (short) (random.nextInt(3) == 0 ? 1 + random.nextInt(5) : 0));
+
+                if (random.nextInt(3) == 0)
+                    playfield.setAnt(x, y, slot++, random.nextInt(players));
+                else
+                    playfield.clearAnt(x, y);
+
+                for (int tribe = 0; tribe < players; tribe++)
+                    playfield.setMark(x, y, tribe,
+                                      (short) (random.nextInt(4) == 0 ? random.nextInt(100) - 50 : 0));
+            }
+        }
+    }
+
+    /**
+     * Compares the sensing methods with the naive probe for every cell of a
+     * playfield.
+     */
+    private void check(Playfield playfield, Random random, String name)
+        throws TestFailedException {
+
+        this.playfield = playfield;
+        width = playfield.getWidth();
+        height = playfield.getHeight();
+
+        int players = playfield.getNumberOfPlayers();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+
+                // Pass some positions outside the playfield, which wrap.
+                int x0 = x + (random.nextInt(3) - 1) * width;
+                int y0 = y + (random.nextInt(3) - 1) * height;
+
+                for (int d = 0; d < AntsVm.NUM_DIRECTIONS; d++) {
+
+                    String where = name + ": (" + x0 + ", " + y0 + ") direction " + d;
+
+                    assertEqual(playfield.senseStones(x0, y0, d), probe(x, y, d, STONES, 0, 0),
+                                where + " stones");
+                    assertEqual(playfield.senseFood(x0, y0, d), probe(x, y, d, FOOD, 0, 0),
+                                where + " food");
+                    assertEqual(playfield.senseObstacles(x0, y0, d), probe(x, y, d, OBSTACLES, 0, 0),
+                                where + " obstacles");
+
+                    for (int own = 0; own < players; own++) {
+                        for (int tribe = 0; tribe <= Tribe.OUR; tribe++) {
+
+                            String who = where + " tribe " + tribe + " own " + own;
+
+                            assertEqual(playfield.senseAnts(x0, y0, d, tribe, own),
+                                        probe(x, y, d, ANTS, tribe, own), who + " ants");
+
+                            if (tribe < players || tribe >= Tribe.ANY)
+                                assertEqual(playfield.senseMarks(x0, y0, d, tribe, own),
+                                            probe(x, y, d, MARKS, tribe, own), who + " marks");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Senses a property by looking at each cell of the area.
+     *
+     * @param x The position in x direction, within the playfield.
+     * @param y The position in y direction, within the playfield.
+     * @param direction The direction to look at.
+     * @param property The property to look for.
+     * @param tribe The tribe to look for.
+     * @param own The tribe of the ant that looks.
+     * @return The bit mask of the cells that have the property.
+     */
+    private short probe(int x, int y, int direction, int property, int tribe, int own) {
+
+        int[] area = AREAS[direction];
+        int bits = 0;
+
+        for (int i = 0; i < area.length; i += 2) {
+
+            int cx = ((x + area[i]) % width + width) % width;
+            int cy = ((y + area[i + 1]) % height + height) % height;
+
+            if (has(cx, cy, property, tribe, own))
+                bits |= 1 << (i / 2);
+        }
+
+        return (short) bits;
+    }
+
+    private boolean has(int x, int y, int property, int tribe, int own) {
+
+        switch (property) {
+
+            case STONES:
+                return playfield.getStones(x, y) > 0;
+
+            case FOOD:
+                return playfield.getFood(x, y) > 0;
+
+            case OBSTACLES:
+                return !playfield.isPassable(x, y);
+
+            case ANTS:
+                return playfield.getAnt(x, y) != Playfield.NO_ANT
+                    && matches(playfield.getAntTribe(x, y), tribe, own);
+
+            case MARKS:
+            default:
+                for (int i = 0; i < playfield.getNumberOfPlayers(); i++) {
+                    if (playfield.getMark(x, y, i) != 0 && matches(i, tribe, own))
+                        return true;
+                }
+                return false;
+        }
+    }
+
+    private static boolean matches(int found, int tribe, int own) {
+        return tribe == Tribe.ANY
+            || (tribe == Tribe.OTHER && found != own)
+            || (tribe == Tribe.OUR && found == own)
+            || found == tribe;
+    }
+
+    private void assertEqual(short sensed, short probed, String description)
+        throws TestFailedException {
+
+        assertCond(sensed == probed, description + ": sensed " +
+                   Integer.toHexString(sensed & 0xffff) + ", expected " +
+                   Integer.toHexString(probed & 0xffff) + ".");
+    }
+}
@@ -0,0 +1,88 @@
+package ants.test;
+
+import java.io.*;
+import ants.vm.*;
+
+/**
+ * The <code>StepTest</code> class tests the synchronous execution of the
+ * VM with {@link AntsVm#step(long)} and {@link
+ * AntsVm#runUntil(AntsVm.Condition, long)}.  A VM that is run in steps must
+ * stop where it is told to, and compute the same state as a VM that runs
+ * in its own thread.
+ */
+public class StepTest extends Test {
+
+    private static final long CYCLES = 700;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException The VM has not executed the expected
+     *                             cycles.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            File dir = TestSimulation.createDirectory();
+            TestSimulation.compilePrograms(dir, false);
+
+            Configuration config = TestSimulation.configure(dir, 48, AntsVm.Engine.DECODED);
+            config.maxCycles = CYCLES;
+
+            AntsVm threaded = create(config);
+            threaded.startVm();
+            threaded.join();
+
+            AntsVm vm = create(config);
+
+            assertCond(vm.step(300) == 300 && vm.getCycles() == 300
+                       && vm.getVmState() == AntsVm.VmState.SUSPENDED,
+                       "The VM has not executed the cycles of the step.");
+
+            long cycles = vm.runUntil(new AntsVm.Condition() {
+                public boolean isSatisfied(AntsVm vm) {
+                    return vm.getCycles() >= 450;
+                }
+            }, 100);
+
+            assertCond(cycles == 200 && vm.getCycles() == 500,
+                       "The VM has not stopped at the first test of the condition " +
+                       "that is satisfied, but after " + vm.getCycles() + " cycles.");
+            assertCond(vm.step(1000) == CYCLES - 500
+                       && vm.getVmState() == AntsVm.VmState.STOPPED_BY_SIM,
+                       "The VM has not stopped at the end of the simulation.");
+            assertCond(threaded.getCycles() == CYCLES
+                       && TestSimulation.hash(vm, true) == TestSimulation.hash(threaded, true),
+                       "The VM run in steps differs from the VM run in its thread.");
+
+            config.sleepPerCycle = 10;
+            config.maxCycles = 20;
+
+            AntsVm running = create(config);
+            running.startVm();
+
+            try {
+                running.step(1);
+                fail("The VM has run in steps while its thread was running.");
+            } catch (IllegalStateException e) {
+                // expected
+            } finally {
+                running.stopVm();
+                running.join();
+            }
+
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } catch (InterruptedException e) {
+            fail("The test has been interrupted.");
+        }
+    }
+
+    private static AntsVm create(Configuration config) throws IOException {
+        try {
+            return new AntsVm(config);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
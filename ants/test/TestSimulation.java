@@ -0,0 +1,238 @@
+package ants.test;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import ants.compiler.*;
+import ants.vm.*;
+
+/**
+ * The <code>TestSimulation</code> class sets up the simulations used by the
+ * tests.  The ant programs are compiled from the sample sources of the
+ * benchmarks, which are read from the directory given by the system
+ * property <code>ants.test.sources</code>, or from
+ * <code>benchmarks/src/main/resources/ants/benchmarks</code> below the
+ * working directory.  All simulations are seeded with {@link #SEED}.
+ */
+final class TestSimulation {
+
+    /**
+     * The seed of all simulations.
+     */
+    static final long SEED = 4711;
+
+    /**
+     * The names of the sample programs, without the extension.
+     */
+    static final String[] PROGRAMS = {
+        "arithmetic", "crowd-queen", "forager", "sensing", "walker"
+    };
+
+    private TestSimulation() {
+    }
+
+    /**
+     * Reads the source of a sample ant program.
+     *
+     * @param name The name of the program, without the extension.
+     * @return The source of the program.
+     * @throws IOException An I/O error occured while reading the source.
+     */
+    static String readSource(String name) throws IOException {
+
+        String dir = System.getProperty("ants.test.sources",
+                                        "benchmarks/src/main/resources/ants/benchmarks");
+
+        return new String(Files.readAllBytes(Paths.get(dir, name + ".ant")), "UTF-8");
+    }
+
+    /**
+     * Compiles an ant program.
+     *
+     * @param source The source of the program.
+     * @param optimizing True to optimize the program.
+     * @return The compiled ant class.
+     * @throws IOException The source has a syntax error.
+     */
+    static AntClass compile(String source, boolean optimizing) throws IOException {
+
+        AntsCompiler compiler = new AntsCompiler();
+        compiler.setOptimizing(optimizing);
+
+        try {
+            return compiler.compile(new StringReader(source));
+        } catch (SyntaxError e) {
+            throw new IOException("Line " + e.getLine() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a temporary directory, which is deleted together with its
+     * files when the Java VM exits.
+     *
+     * @return The directory.
+     * @throws IOException The directory could not be created.
+     */
+    static File createDirectory() throws IOException {
+
+        File dir = Files.createTempDirectory("ants-test").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /**
+     * Compiles the sample programs into a directory.  The class file of a
+     * program is named after it, with the extension <code>.ant.bin</code>.
+     *
+     * @param dir The directory.
+     * @param optimizing True to optimize the programs.
+     * @throws IOException An I/O error occured.
+     */
+    static void compilePrograms(File dir, boolean optimizing) throws IOException {
+        for (String name: PROGRAMS)
+            writeClass(dir, name + ".ant.bin", compile(readSource(name), optimizing));
+    }
+
+    /**
+     * Writes an ant class file into a directory.
+     *
+     * @param dir The directory.
+     * @param fileName The name of the class file.
+     * @param c The ant class.
+     * @throws IOException An I/O error occured.
+     */
+    static void writeClass(File dir, String fileName, AntClass c) throws IOException {
+
+        File file = new File(dir, fileName);
+        file.deleteOnExit();
+        AntClassFile.write(c, file.getPath());
+    }
+
+    /**
+     * Creates the configuration of a simulation of four players with the
+     * sample programs: a queen that creates walkers, a forager, an ant that
+     * senses, and an ant that computes.  The ants have little energy, so
+     * that the walkers die after a few hundred turns.
+     *
+     * @param dir The directory with the class files, see {@link
+     *            #compilePrograms(File, boolean)}.
+     * @param size The width and height of the playfield.
+     * @param engine The execution engine.
+     * @return The configuration.
+     */
+    static Configuration configure(File dir, int size, AntsVm.Engine engine) {
+
+        Configuration config = new Configuration();
+
+        config.dataPath = dir.getPath();
+        config.numberOfPlayers = 4;
+        config.playerInfos = new Configuration.PlayerInfo[4];
+
+        addPlayer(config, 0, "red", "crowd-queen.ant.bin", "walker.ant.bin");
+        addPlayer(config, 1, "green", "forager.ant.bin");
+        addPlayer(config, 2, "blue", "sensing.ant.bin");
+        addPlayer(config, 3, "yellow", "arithmetic.ant.bin");
+
+        config.playfieldWidth = size;
+        config.playfieldHeight = size;
+        config.initialEnergy = 6000;
+        config.engine = engine;
+        config.seed = SEED;
+
+        return config;
+    }
+
+    /**
+     * Adds a player to a configuration.
+     *
+     * @param config The configuration.
+     * @param index The index of the player.
+     * @param name The name of the player.
+     * @param classFiles The class files of the player, starting with the
+     *                   queen.
+     */
+    static void addPlayer(Configuration config, int index, String name,
+                          String... classFiles) {
+
+        Configuration.PlayerInfo info = new Configuration.PlayerInfo();
+
+        info.name = name;
+        info.classFiles.addAll(Arrays.asList(classFiles));
+        config.playerInfos[index] = info;
+    }
+
+    /**
+     * Creates a VM and runs it synchronously.
+     *
+     * @param config The configuration of the VM.
+     * @param cycles The number of cycles to execute.
+     * @return The VM.
+     * @throws IOException An I/O error occured while loading the classes.
+     */
+    static AntsVm run(Configuration config, long cycles) throws IOException {
+
+        AntsVm vm;
+
+        try {
+            vm = new AntsVm(config);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+
+        vm.step(cycles);
+        return vm;
+    }
+
+    /**
+     * Computes a hash of the state of a VM: the contents of every cell of
+     * the playfield and the ant on it.
+     *
+     * @param vm The VM.
+     * @param variables True to include the variables of the ants.
+     * @return The hash.
+     */
+    static long hash(AntsVm vm, boolean variables) {
+
+        long h = vm.getCycles();
+
+        for (int y = 0; y < vm.getPlayfieldHeight(); y++) {
+            for (int x = 0; x < vm.getPlayfieldWidth(); x++) {
+
+                PlayfieldCell cell = vm.getPlayfieldCell(x, y);
+
+                h = 31 * h + (cell.isPassable ? 1 : 0);
+                h = 31 * h + cell.stones;
+                h = 31 * h + cell.food;
+                h = 31 * h + Arrays.hashCode(cell.marks);
+
+                if (cell.ant != null) {
+
+                    h = 31 * h + cell.ant.getAntClass().getName().hashCode();
+                    h = 31 * h + cell.ant.getPC();
+                    h = 31 * h + cell.ant.getTribe();
+
+                    if (variables)
+                        h = 31 * h + Arrays.hashCode(cell.ant.getVariables());
+                }
+            }
+        }
+
+        return h;
+    }
+
+    /**
+     * Returns the number of ants of all players of a VM.
+     *
+     * @param vm The VM.
+     * @return The number of ants.
+     */
+    static int countAnts(AntsVm vm) {
+
+        int ants = 0;
+
+        for (int i = 0; i < vm.getNumberOfPlayers(); i++)
+            ants += vm.getNumberOfAnts(i);
+
+        return ants;
+    }
+}
@@ -0,0 +1,59 @@
+package ants.test;
+
+import java.io.*;
+import ants.vm.*;
+
+/**
+ * The <code>ThreadsTest</code> class tests that the result of a simulation
+ * does not depend on the number of threads that execute it.  With more
+ * than one thread, the VM runs the ants in rounds, whose outcome must be
+ * the same for every number of threads.  A playfield that is too small to
+ * be split into strips is run sequentially, exactly as with one thread.
+ */
+public class ThreadsTest extends Test {
+
+    private static final long CYCLES = 30000;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException The result depends on the number of
+     *                             threads.
+     */
+    public void run() throws TestFailedException {
+
+        try {
+            File dir = TestSimulation.createDirectory();
+            TestSimulation.compilePrograms(dir, false);
+
+            long small = simulate(dir, 12, 1);
+
+            for (int threads: new int[] { 2, 4 })
+                assertCond(simulate(dir, 12, threads) == small,
+                           "A small playfield gives different results with " +
+                           threads + " threads.");
+
+            long large = simulate(dir, 64, 2);
+
+            for (int threads: new int[] { 3, 4, 8, 8 })
+                assertCond(simulate(dir, 64, threads) == large,
+                           "The rounds give different results with " +
+                           threads + " threads.");
+
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a simulation and returns the hash of its final state.
+     */
+    private long simulate(File dir, int size, int threads) throws IOException {
+
+        Configuration config = TestSimulation.configure(dir, size, AntsVm.Engine.DECODED);
+        config.threads = threads;
+
+        AntsVm vm = TestSimulation.run(config, CYCLES);
+        return TestSimulation.hash(vm, true) * 31 + vm.getInstructions();
+    }
+}
@@ -0,0 +1,203 @@
+package ants.test;
+
+import java.io.*;
+import ants.vm.*;
+
+/**
+ * The <code>VerifierTest</code> class tests the {@link ProgramVerifier}.
+ * Programs with invalid operands must be rejected, also when they are
+ * loaded through an {@link AntClassCache}, while programs that can only
+ * fail at execution, like a division by the constant 0 or a last
+ * instruction that may fall through, must be accepted.  Such a program
+ * must run with every engine.
+ */
+public class VerifierTest extends Test {
+
+    private static final short C1 = AntsVm.OP1_CONSTANT;
+    private static final short C2 = AntsVm.OP2_CONSTANT;
+    private static final short VARIABLES = 7;
+    private static final int PLAYERS = 2;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException A program has not been verified as
+     *                             expected.
+     */
+    public void run() throws TestFailedException {
+
+        accept("valid operands",
+               Instruction.COPY | C1, 5, 3, 0,
+               Instruction.MOVE | C1, 6, Direction.NORTH, 0,
+               Instruction.GOTO_IF | C1, 0, 0, 6,
+               Instruction.GOTO | C1, 0, 0, 0);
+        accept("a trailing GotoIf",
+               Instruction.COPY | C1, 5, 1, 0,
+               Instruction.GOTO_IF | C1, 0, 0, 5);
+        accept("a division by the constant 0",
+               Instruction.DIV | C2, 5, 5, 0,
+               Instruction.GOTO | C1, 0, 0, 0);
+        accept("a result in a system variable",
+               Instruction.COPY | C1, 0, 3, 0,
+               Instruction.GOTO | C1, 0, 0, 0);
+        accept("a direction and a jump target from variables",
+               Instruction.MOVE, 6, 5, 0,
+               Instruction.GOTO, 0, 6, 0);
+        accept("the Marks of any tribe",
+               Instruction.MARKS | C1 | C2, 5, Direction.NORTH, Tribe.ANY,
+               Instruction.GOTO | C1, 0, 0, 0);
+        accept("the Ants of a tribe without player",
+               Instruction.ANTS | C1 | C2, 5, Direction.NORTH, Tribe.YELLOW,
+               Instruction.GOTO | C1, 0, 0, 0);
+        accept("the MarkValue here",
+               Instruction.MARK_VALUE | C1 | C2, 5, Direction.HERE, Tribe.GREEN,
+               Instruction.GOTO | C1, 0, 0, 0);
+
+        reject("an invalid instruction code",
+               AntsVm.NUM_INSTRUCTIONS, 0, 0, 0);
+        reject("a variable out of range",
+               Instruction.COPY, 5, VARIABLES, 0,
+               Instruction.GOTO | C1, 0, 0, 0);
+        reject("a negative variable",
+               Instruction.ADD | C1, 5, 1, -1,
+               Instruction.GOTO | C1, 0, 0, 0);
+        reject("a result out of range",
+               Instruction.COPY | C1, VARIABLES, 3, 0,
+               Instruction.GOTO | C1, 0, 0, 0);
+        reject("a Move here",
+               Instruction.MOVE | C1, 5, Direction.HERE, 0,
+               Instruction.GOTO | C1, 0, 0, 0);
+        reject("the Marks of a tribe without player",
+               Instruction.MARKS | C1 | C2, 5, Direction.NORTH, Tribe.YELLOW,
+               Instruction.GOTO | C1, 0, 0, 0);
+        reject("the MarkValue of any tribe",
+               Instruction.MARK_VALUE | C1 | C2, 5, Direction.HERE, Tribe.ANY,
+               Instruction.GOTO | C1, 0, 0, 0);
+        reject("a jump target out of range",
+               Instruction.GOTO | C1, 0, 1, 0);
+        reject("no instructions");
+
+        AntClass c = createClass(Instruction.GOTO | C1, 0, 0, 0);
+        c.setProgramSize((short) 2);
+        reject("a wrong program size", c);
+
+        c = createClass(Instruction.GOTO | C1, 0, 0, 0);
+        c.setVariableSize((short) (AntsVm.FIRST_USER_VAR - 1));
+        reject("too few variables", c);
+
+        try {
+            testCache();
+            testEngines();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } catch (ClassNotFoundException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that an {@link AntClassCache} rejects an invalid class before
+     * it prepares the class for an engine.
+     */
+    private void testCache() throws IOException, ClassNotFoundException, TestFailedException {
+
+        File dir = TestSimulation.createDirectory();
+        TestSimulation.writeClass(dir, "invalid.ant.bin",
+                                  createClass(Instruction.GOTO | C1, 0, 1, 0));
+
+        for (AntsVm.Engine engine: AntsVm.Engine.values()) {
+            try {
+                new AntClassCache().getAntClass(new File(dir, "invalid.ant.bin").getPath(),
+                                                engine, PLAYERS);
+                fail(engine + ": the cache has loaded an invalid class.");
+            } catch (InvalidClassException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Tests that every engine runs a program whose last instruction may
+     * fall through.
+     */
+    private void testEngines() throws IOException, TestFailedException {
+
+        File dir = TestSimulation.createDirectory();
+        TestSimulation.writeClass(dir, "loop.ant.bin",
+                                  createClass(Instruction.COPY | C1, 5, 1, 0,
+                                              Instruction.GOTO_IF | C1, 0, 0, 5));
+
+        for (AntsVm.Engine engine: AntsVm.Engine.values()) {
+
+            Configuration config = new Configuration();
+
+            config.dataPath = dir.getPath();
+            config.numberOfPlayers = 1;
+            config.playerInfos = new Configuration.PlayerInfo[1];
+            TestSimulation.addPlayer(config, 0, "red", "loop.ant.bin");
+            config.playfieldWidth = 16;
+            config.playfieldHeight = 16;
+            config.initialEnergy = Short.MAX_VALUE;
+            config.engine = engine;
+            config.seed = TestSimulation.SEED;
+
+            AntsVm vm = TestSimulation.run(config, 1000);
+
+            assertCond(vm.getCycles() == 1000 && vm.getNumberOfAnts(0) == 1,
+                       engine + ": the queen has not survived.");
+        }
+    }
+
+    /**
+     * Asserts that a program is valid.
+     */
+    private void accept(String description, int... program) throws TestFailedException {
+        try {
+            ProgramVerifier.verify(createClass(program), PLAYERS);
+        } catch (InvalidClassException e) {
+            fail("The verifier has rejected a program with " + description + ": " +
+                 e.getMessage());
+        }
+    }
+
+    /**
+     * Asserts that a program is invalid.
+     */
+    private void reject(String description, int... program) throws TestFailedException {
+        reject(description, createClass(program));
+    }
+
+    /**
+     * Asserts that the program of a class is invalid.
+     */
+    private void reject(String description, AntClass c) throws TestFailedException {
+        try {
+            ProgramVerifier.verify(c, PLAYERS);
+            fail("The verifier has accepted a program with " + description + ".");
+        } catch (InvalidClassException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Creates an ant class.
+     *
+     * @param program The words of the program.
+     * @return The ant class.
+     */
+    private static AntClass createClass(int... program) {
+
+        AntClass c = new AntClass();
+        short[] words = new short[program.length];
+
+        for (int i = 0; i < words.length; i++)
+            words[i] = (short) program[i];
+
+        c.setName("Test");
+        c.setVariableSize(VARIABLES);
+        c.setProgram(words);
+        c.setProgramSize((short) (words.length / AntsVm.INSTRUCTION_SIZE));
+
+        return c;
+    }
+}
@@ -6,6 +6,11 @@ package ants.vm;
  * <code>Ant</code> objects are created during the execution of the {@link
  * AntsVm} using the <i>MakeAnt</i> instruction, which can only be executed by
  * ants of a queen class (the first ant class of each player).
+ * <p>
+ * The VM itself keeps the state of the living ants in primitive arrays
+ * rather than in <code>Ant</code> objects.  The objects returned by the VM,
+ * for example in a {@link PlayfieldCell}, are snapshots: changing them does
+ * not change the ants in the VM.
  */
 public class Ant {
 
@@ -229,6 +234,18 @@ public class Ant {
         variables[MY_TRIBE]  = tribe;
     }
 
+    /**
+     * Creates a snapshot of an ant of a VM.
+     */
+    Ant(AntClass antClass, int pc, int xpos, int ypos, short[] variables) {
+
+        this.antClass = antClass;
+        this.pc = pc;
+        this.xpos = xpos;
+        this.ypos = ypos;
+        this.variables = variables;
+    }
+
     /**
      * Advances the program counter by one instruction.
      */
@@ -9,6 +9,8 @@ import java.io.*;
  */
 public class AntClass implements Serializable {
 
+    private static final long serialVersionUID = 2333767285386356620L;
+
     private String name;
     private short id;
     private short backpackSize;
@@ -17,6 +19,32 @@ public class AntClass implements Serializable {
     private short[] program;
 
     private transient int player;
+    private transient DecodedProgram decodedProgram;
+    private transient CompiledProgram compiledProgram;
+
+    /**
+     * Creates a new, empty <code>AntClass</code>.
+     */
+    public AntClass() {
+    }
+
+    /**
+     * Creates a copy of an ant class that is not assigned to a player.  The
+     * copy shares the program and its decoded and compiled forms with the
+     * original, which must therefore not be modified any more.
+     *
+     * @param other The ant class to copy.
+     */
+    public AntClass(AntClass other) {
+        name = other.name;
+        id = other.id;
+        backpackSize = other.backpackSize;
+        variableSize = other.variableSize;
+        programSize = other.programSize;
+        program = other.program;
+        decodedProgram = other.decodedProgram;
+        compiledProgram = other.compiledProgram;
+    }
 
     /**
      * Returns the player that this ant class is assigned to.
@@ -155,4 +183,44 @@ public class AntClass implements Serializable {
     public void setProgram(short[] value) {
         program = value;
     }
+
+    /**
+     * Returns the compiled form of the program of this ant class.
+     *
+     * @return The compiled program, or <code>null</code> if the program has
+     *         not been compiled.
+     */
+    public CompiledProgram getCompiledProgram() {
+        return compiledProgram;
+    }
+
+    /**
+     * Sets the compiled form of the program of this ant class.
+     *
+     * @param value The compiled program, which must have been created from
+     *              the program of this ant class.
+     */
+    public void setCompiledProgram(CompiledProgram value) {
+        compiledProgram = value;
+    }
+
+    /**
+     * Returns the pre-decoded form of the program of this ant class.
+     *
+     * @return The decoded program, or <code>null</code> if the program has
+     *         not been decoded.
+     */
+    public DecodedProgram getDecodedProgram() {
+        return decodedProgram;
+    }
+
+    /**
+     * Sets the pre-decoded form of the program of this ant class.
+     *
+     * @param value The decoded program, which must have been created from
+     *              the program of this ant class.
+     */
+    public void setDecodedProgram(DecodedProgram value) {
+        decodedProgram = value;
+    }
 }
@@ -0,0 +1,277 @@
+package ants.vm;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * The <code>AntClassArchive</code> class bundles many ant classes in one
+ * file, so a simulation can load its classes without opening a file for each
+ * of them.  An archive is mapped into memory when it is opened, and each
+ * class is read from the mapped file when it is requested for the first
+ * time.
+ * <p>
+ * An archive file has the following layout, in little-endian byte order:
+ * <pre>
+ *   u4  magic           the bytes 'A' 'N' 'T' 'A'
+ *   u2  version         {@link #VERSION}
+ *   u4  entry count
+ *   ..  index           for each entry: u4 offset and u4 length of the
+ *                       class, u2 name length and the name in UTF-8
+ *   ..  classes         the classes in the format of {@link AntClassFile}
+ * </pre>
+ * The offsets are counted from the start of the archive.  The names of the
+ * entries are the names by which the configuration refers to the classes,
+ * usually the names of the class files the archive has been built from.
+ * <p>
+ * Archives are shared by the whole Java VM: opening the same file again
+ * returns the same archive, and the classes read from it are kept, so all
+ * simulations share their programs.  An archive must therefore not be
+ * changed while a program uses it.  The classes returned by an archive must
+ * not be modified; {@link AntClassCache} makes copies of them.
+ */
+public class AntClassArchive {
+
+    /**
+     * The first four bytes of an archive, read as a little-endian integer.
+     */
+    public static final int MAGIC = 0x41544e41;
+
+    /**
+     * The version of the format that is written.
+     */
+    public static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Map<File, AntClassArchive> openArchives = new HashMap<>();
+
+    private final String filename;
+    private final ByteBuffer buffer;
+    private final Map<String, long[]> index = new HashMap<>();
+    private final Map<String, AntClass> classes = new HashMap<>();
+
+    /**
+     * Creates an archive from a buffer that holds the archive file.
+     */
+    private AntClassArchive(String filename, ByteBuffer buffer)
+        throws InvalidClassException {
+
+        this.filename = filename;
+        this.buffer = buffer;
+
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            if (in.getInt() != MAGIC)
+                throw new InvalidClassException(filename, "Not an ant class archive.");
+
+            int version = in.getShort() & 0xffff;
+
+            if (version > VERSION)
+                throw new InvalidClassException(filename,
+                    "Unsupported archive version " + version + ".");
+
+            int entries = in.getInt();
+
+            for (int i = 0; i < entries; i++) {
+
+                long offset = in.getInt() & 0xffffffffL;
+                long length = in.getInt() & 0xffffffffL;
+                byte[] name = new byte[in.getShort() & 0xffff];
+
+                in.get(name);
+
+                if (offset + length > buffer.limit())
+                    throw new BufferUnderflowException();
+
+                index.put(new String(name, UTF8), new long[] { offset, length });
+            }
+
+        } catch (BufferUnderflowException e) {
+            throw new InvalidClassException(filename, "Truncated ant class archive.");
+        }
+    }
+
+    /**
+     * Opens an archive file, or returns the archive if the file has been
+     * opened before.
+     *
+     * @param filename The path to the archive.
+     * @return The archive.
+     * @throws IOException An I/O error occured, or the file is not a valid
+     *                     archive.
+     */
+    public static AntClassArchive open(String filename) throws IOException {
+
+        File file = new File(filename).getCanonicalFile();
+
+        synchronized (openArchives) {
+
+            AntClassArchive archive = openArchives.get(file);
+
+            if (archive == null) {
+                try (RandomAccessFile f = new RandomAccessFile(file, "r")) {
+                    FileChannel channel = f.getChannel();
+                    archive = new AntClassArchive(filename,
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+                openArchives.put(file, archive);
+            }
+
+            return archive;
+        }
+    }
+
+    /**
+     * Tests if the archive contains a class.
+     *
+     * @param name The name of the entry.
+     * @return True if the archive contains the class.
+     */
+    public boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    /**
+     * Returns the names of all entries.
+     *
+     * @return The names of the entries.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Returns a class of the archive.  The class is read when it is
+     * requested for the first time; afterwards, the same object is returned.
+     *
+     * @param name The name of the entry.
+     * @return The class, or <code>null</code> if the archive does not
+     *         contain the class.
+     * @throws InvalidClassException The entry is not a valid class.
+     */
+    public synchronized AntClass getAntClass(String name)
+        throws InvalidClassException {
+
+        AntClass c = classes.get(name);
+
+        if (c == null) {
+
+            long[] entry = index.get(name);
+
+            if (entry == null)
+                return null;
+
+            ByteBuffer in = buffer.duplicate();
+            in.position((int) entry[0]);
+            in.limit((int) (entry[0] + entry[1]));
+
+            try {
+                c = AntClassFile.read(in);
+            } catch (InvalidClassException e) {
+                throw new InvalidClassException(filename + "!" + name, e.getMessage());
+            }
+
+            classes.put(name, c);
+        }
+
+        return c;
+    }
+
+    /**
+     * Writes an archive.
+     *
+     * @param classes The classes by the names of their entries.
+     * @param out The stream.  It is not closed.
+     * @throws IOException An I/O error occured.
+     */
+    public static void write(Map<String, AntClass> classes, OutputStream out)
+        throws IOException {
+
+        List<byte[]> names = new ArrayList<>();
+        List<byte[]> files = new ArrayList<>();
+        int indexSize = 0;
+
+        for (Map.Entry<String, AntClass> e: classes.entrySet()) {
+
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            AntClassFile.write(e.getValue(), file);
+
+            byte[] name = e.getKey().getBytes(UTF8);
+
+            if (name.length > 0xffff)
+                throw new IOException("Entry name too long: " + e.getKey());
+
+            names.add(name);
+            files.add(file.toByteArray());
+            indexSize += 10 + name.length;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(10 + indexSize)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(MAGIC);
+        header.putShort((short) VERSION);
+        header.putInt(names.size());
+
+        long offset = header.capacity();
+
+        for (int i = 0; i < names.size(); i++) {
+            header.putInt((int) offset);
+            header.putInt(files.get(i).length);
+            header.putShort((short) names.get(i).length);
+            header.put(names.get(i));
+            offset += files.get(i).length;
+        }
+
+        if (offset > 0xffffffffL)
+            throw new IOException("Archive too large.");
+
+        out.write(header.array());
+
+        for (byte[] file: files)
+            out.write(file);
+    }
+
+    /**
+     * Builds an archive from ant class files from the command line.  The
+     * entries are named after the class files, without their directories.
+     *
+     * @param args The path to the archive, followed by the paths to the
+     *             class files.
+     */
+    public static void main(String[] args) {
+
+        if (args.length < 2) {
+            System.out.println(
+                "Usage: java ants.vm.AntClassArchive archive [bin files ...]");
+            return;
+        }
+
+        Map<String, AntClass> classes = new LinkedHashMap<>();
+
+        for (int i = 1; i < args.length; i++) {
+            try {
+                classes.put(new File(args[i]).getName(), AntClassFile.read(args[i]));
+            } catch (IOException | ClassNotFoundException e) {
+                System.out.println(
+                    "Error while opening or reading input file: " +
+                    e.getMessage() + ".");
+                return;
+            }
+        }
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(args[0]))) {
+            write(classes, out);
+        } catch (IOException e) {
+            System.out.println(
+                "Error while writing output file: " + e.getMessage() + ".");
+            return;
+        }
+
+        System.out.println(classes.size() + " classes written to " + args[0]);
+    }
+}
@@ -0,0 +1,92 @@
+package ants.vm;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The <code>AntClassCache</code> class loads ant class files and keeps the
+ * loaded classes, so that several VMs that use the same ant class files
+ * read and prepare each of them only once.  The VMs get their own copies of
+ * the cached classes, which share the program and its decoded and compiled
+ * forms.  A cache can be used by several threads at the same time.
+ * <p>
+ * Classes can also be taken from an {@link AntClassArchive}.  Archives are
+ * shared by all caches, so the programs of archived classes are shared by
+ * all VMs.
+ */
+public class AntClassCache {
+
+    private final Map<String, AntClass> antClasses = new HashMap<>();
+
+    /**
+     * The paths of the cached classes whose programs are too large to be
+     * compiled, see {@link ProgramCompiler#MAX_CODE_SIZE}.  These classes
+     * are interpreted, and their compilation is not attempted again.
+     */
+    private final Set<String> uncompilable = new HashSet<>();
+
+    /**
+     * Returns an ant class that has been loaded from a file, checked by the
+     * {@link ProgramVerifier} and prepared for an engine.  The class file is
+     * read when it is requested for the first time.  A path of the form
+     * <i>archive</i><code>!</code><i>name</i> refers to the entry
+     * <i>name</i> of the {@link AntClassArchive} stored in the file
+     * <i>archive</i>.
+     *
+     * @param filename The path to the ant class.
+     * @param engine The engine that executes the ant class.
+     * @param numberOfPlayers The number of players of the VM that uses the
+     *                        class.
+     * @return A new copy of the ant class, which is not assigned to a player.
+     * @throws ClassNotFoundException The class to be loaded could not be found.
+     * @throws InvalidClassException The program of the class is not valid.
+     * @throws IOException An I/O error occured while loading the class, or
+     *                     the file is not a valid ant class file.
+     */
+    public synchronized AntClass getAntClass(String filename, AntsVm.Engine engine,
+                                             int numberOfPlayers)
+        throws IOException, ClassNotFoundException {
+
+        AntClass c = antClasses.get(filename);
+
+        if (c == null) {
+
+            int separator = filename.lastIndexOf('!');
+
+            if (separator >= 0 && new File(filename.substring(0, separator)).isFile()) {
+
+                String name = filename.substring(separator + 1);
+                AntClass archived =
+                    AntClassArchive.open(filename.substring(0, separator)).getAntClass(name);
+
+                if (archived == null)
+                    throw new ClassNotFoundException(filename);
+
+                // The archive shares its classes with other caches.
+                c = new AntClass(archived);
+
+            } else {
+                c = AntClassFile.read(filename);
+            }
+
+            antClasses.put(filename, c);
+        }
+
+        // The decoder and the compiler rely on a verified program.
+        ProgramVerifier.verify(c, numberOfPlayers);
+
+        if (engine == AntsVm.Engine.COMPILED && c.getCompiledProgram() == null
+            && !uncompilable.contains(filename)) {
+
+            c.setCompiledProgram(ProgramCompiler.compile(c));
+
+            if (c.getCompiledProgram() == null)
+                uncompilable.add(filename);
+        }
+
+        if (engine == AntsVm.Engine.DECODED && c.getDecodedProgram() == null)
+            c.setDecodedProgram(new DecodedProgram(c.getProgram()));
+
+        return new AntClass(c);
+    }
+}
@@ -0,0 +1,239 @@
+package ants.vm;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * The <code>AntClassFile</code> class reads and writes ant class files.  An
+ * ant class file holds a single {@link AntClass} in a compact binary format
+ * with the following layout.  All numbers are stored in little-endian byte
+ * order; u2 and u4 denote unsigned numbers of two and four bytes.
+ * <pre>
+ *   u4  magic           the bytes 'A' 'N' 'T' 'C'
+ *   u2  version         {@link #VERSION}
+ *   u2  id              the id of the ant class
+ *   u2  backpack size
+ *   u2  variable size
+ *   u2  program size    the number of instructions
+ *   u2  name length     the number of bytes of the name
+ *   ..  name            the name of the ant class in UTF-8
+ *   ..  program         the program, program size * 4 shorts
+ *   ..  sections        optional sections, each a u2 tag, a u4 length and
+ *                       length bytes, ended by the tag {@link #END_OF_SECTIONS}
+ * </pre>
+ * The sections are reserved for debug information, for example the names
+ * of the variables, which is not needed to run an ant class.  Readers skip
+ * all sections they do not know, so such information can be added without
+ * a new version.
+ * <p>
+ * Earlier versions of the compiler wrote ant classes with Java
+ * serialization.  Such files are still read, but only
+ * <code>AntClass</code> objects are accepted from them.
+ */
+public class AntClassFile {
+
+    /**
+     * The first four bytes of an ant class file, read as a little-endian
+     * integer.
+     */
+    public static final int MAGIC = 0x43544e41;
+
+    /**
+     * The version of the format that is written.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The tag that ends the sections of an ant class file.
+     */
+    public static final int END_OF_SECTIONS = 0;
+
+    /**
+     * The first two bytes of a serialized Java object.
+     */
+    private static final int SERIALIZATION_MAGIC = 0xaced;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private AntClassFile() {
+    }
+
+    /**
+     * Reads an ant class from a file.
+     *
+     * @param filename The path to the ant class file.
+     * @return The ant class.
+     * @throws ClassNotFoundException The file holds a serialized object that
+     *                                is not an ant class.
+     * @throws IOException An I/O error occured, or the file is not a valid
+     *                     ant class file.
+     */
+    public static AntClass read(String filename)
+        throws IOException, ClassNotFoundException {
+
+        ByteBuffer buffer;
+
+        try (FileInputStream in = new FileInputStream(filename)) {
+
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE)
+                throw new InvalidClassException(filename, "The file is too large.");
+
+            buffer = ByteBuffer.allocate((int) size);
+
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+                ;
+
+            buffer.flip();
+        }
+
+        if (buffer.remaining() >= 2
+            && (buffer.getShort(0) & 0xffff) == SERIALIZATION_MAGIC)
+            return readSerialized(new ByteArrayInputStream(buffer.array(), 0, buffer.limit()));
+
+        return read(buffer);
+    }
+
+    /**
+     * Reads an ant class from a buffer, which can also be a memory-mapped
+     * file.  The program is copied from the buffer in one piece.  The
+     * position and byte order of the buffer are not changed.
+     *
+     * @param buffer The buffer whose remaining bytes hold the class.
+     * @return The ant class.
+     * @throws InvalidClassException The buffer does not hold a valid ant
+     *                               class file.
+     */
+    public static AntClass read(ByteBuffer buffer) throws InvalidClassException {
+
+        ByteBuffer in = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            if (in.getInt() != MAGIC)
+                throw new InvalidClassException(null, "Not an ant class file.");
+
+            int version = in.getShort() & 0xffff;
+
+            if (version > VERSION)
+                throw new InvalidClassException(null,
+                    "Unsupported class file version " + version + ".");
+
+            AntClass c = new AntClass();
+
+            c.setId(in.getShort());
+            c.setBackpackSize(in.getShort());
+            c.setVariableSize(in.getShort());
+
+            int programSize = in.getShort() & 0xffff;
+            byte[] name = new byte[in.getShort() & 0xffff];
+
+            in.get(name);
+            c.setName(new String(name, UTF8));
+
+            if (programSize > AntsVm.MAX_PROGRAM_SIZE)
+                throw new InvalidClassException(c.getName(), "Invalid program size.");
+
+            short[] program = new short[AntsVm.INSTRUCTION_SIZE * programSize];
+
+            in.asShortBuffer().get(program);
+            in.position(in.position() + 2 * program.length);
+
+            c.setProgramSize((short) programSize);
+            c.setProgram(program);
+
+            for (int tag = in.getShort() & 0xffff; tag != END_OF_SECTIONS;
+                 tag = in.getShort() & 0xffff) {
+
+                int length = in.getInt();
+
+                if (length < 0 || length > in.remaining())
+                    throw new BufferUnderflowException();
+
+                in.position(in.position() + length);
+            }
+
+            return c;
+
+        } catch (BufferUnderflowException e) {
+            throw new InvalidClassException(null, "Truncated ant class file.");
+        }
+    }
+
+    /**
+     * Writes an ant class to a stream.
+     *
+     * @param c The ant class.
+     * @param out The stream.  It is not closed.
+     * @throws IOException An I/O error occured.
+     */
+    public static void write(AntClass c, OutputStream out) throws IOException {
+
+        byte[] name = c.getName() != null ? c.getName().getBytes(UTF8) : new byte[0];
+        short[] program = c.getProgram();
+
+        if (name.length > 0xffff)
+            throw new InvalidClassException(c.getName(), "The name is too long.");
+
+        ByteBuffer buffer = ByteBuffer.allocate(18 + name.length + 2 * program.length)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort(c.getId());
+        buffer.putShort(c.getBackpackSize());
+        buffer.putShort(c.getVariableSize());
+        buffer.putShort((short) (program.length / AntsVm.INSTRUCTION_SIZE));
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+
+        buffer.asShortBuffer().put(program);
+        buffer.position(buffer.position() + 2 * program.length);
+
+        buffer.putShort((short) END_OF_SECTIONS);
+
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    /**
+     * Writes an ant class to a file.
+     *
+     * @param c The ant class.
+     * @param filename The path to the ant class file.
+     * @throws IOException An I/O error occured.
+     */
+    public static void write(AntClass c, String filename) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename))) {
+            write(c, out);
+        }
+    }
+
+    /**
+     * Reads an ant class that has been written with Java serialization.  The
+     * stream may only contain the classes that make up an
+     * <code>AntClass</code>, so a file cannot make the reader create objects
+     * of any other class.
+     */
+    private static AntClass readSerialized(InputStream in)
+        throws IOException, ClassNotFoundException {
+
+        try (ObjectInputStream os = new ObjectInputStream(in) {
+                protected Class<?> resolveClass(ObjectStreamClass desc)
+                    throws IOException, ClassNotFoundException {
+
+                    String name = desc.getName();
+
+                    if (!name.equals(AntClass.class.getName()) && !name.equals("[S"))
+                        throw new InvalidClassException(name, "Unexpected class.");
+
+                    return super.resolveClass(desc);
+                }
+            }) {
+
+            return (AntClass) os.readObject();
+        }
+    }
+}
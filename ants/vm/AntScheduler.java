@@ -0,0 +1,72 @@
+package ants.vm;
+
+/**
+ * The <code>AntScheduler</code> interface decides in which order the living
+ * ants get their turns.  Ants are identified by their slot ids, see {@link
+ * Playfield#getAnt(int, int)}.  The scheduled ants form a cycle: {@link
+ * #next()} returns the ant whose turn is next and moves on to the following
+ * ant, so an ant that has had its turn is scheduled again after all other
+ * ants.  A round ends when every ant has had a turn.
+ * <p>
+ * An {@link AntsVm} creates its scheduler in {@link
+ * AntsVm#createAntScheduler()}, so subclasses of the VM can provide their
+ * own scheduling policy.
+ */
+public interface AntScheduler {
+
+    /**
+     * Schedules a new ant.  The ant gets its first turn after all ants that
+     * are waiting for their turn in the current round.
+     *
+     * @param slot The slot id of the ant.
+     */
+    void add(int slot);
+
+    /**
+     * Returns the ant whose turn is next and moves on to the following ant.
+     *
+     * @return The slot id of the ant.
+     * @throws java.util.NoSuchElementException No ant is scheduled.
+     */
+    int next();
+
+    /**
+     * Removes the ant that has last been returned by {@link #next()}, for
+     * example because it has died.
+     */
+    void removeCurrent();
+
+    /**
+     * Returns the number of scheduled ants.
+     *
+     * @return The number of scheduled ants.
+     */
+    int size();
+
+    /**
+     * Tests if no ants are scheduled.
+     *
+     * @return True if no ants are scheduled, false otherwise.
+     */
+    boolean isEmpty();
+
+    /**
+     * Returns the number of rounds that have been completed.
+     *
+     * @return The number of completed rounds.
+     */
+    long getRound();
+
+    /**
+     * Returns the scheduled ants in the order in which they get their turns,
+     * starting with the ant that {@link #next()} returns next.
+     *
+     * @return The slot ids of the scheduled ants.
+     */
+    int[] toArray();
+
+    /**
+     * Removes all ants.
+     */
+    void clear();
+}
@@ -0,0 +1,315 @@
+package ants.vm;
+
+import java.util.*;
+
+/**
+ * The <code>AntStore</code> class holds the state of the ants that are placed
+ * on the playfield.  Every ant is identified by a slot id, by which the
+ * playfield refers to it.  Slot ids of dead ants are reused for new ants.
+ * <p>
+ * The state is kept as a structure of arrays instead of an object per ant:
+ * the program counters, positions, classes and variable frames of the ants
+ * are stored in primitive arrays indexed by slot id.  The arrays are split
+ * into pages of a fixed size, which are never moved once they have been
+ * allocated, so growing the store does not copy the state of living ants.
+ * <p>
+ * The variable frames are carved out of large <code>short</code> arrays,
+ * called segments.  The frame of an ant is a range of
+ * {@link AntClass#getVariableSize()} values in one segment, which the VM
+ * addresses through {@link #getVariables(int)} and
+ * {@link #getVariableBase(int)}.  The frames of dead ants are reused for new
+ * ants of the same class.
+ * <p>
+ * The store can be shared by several threads that run ants on the same
+ * playfield.  Adding and removing ants is synchronized; reading and writing
+ * the state of an ant is not, see {@link #getAntClass(int)}.
+ */
+class AntStore {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private static final int SEGMENT_BITS = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int OFFSET_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * The state of the ants of <code>PAGE_SIZE</code> consecutive slots.
+     * A class index of 0 marks an unused slot.
+     */
+    private static final class Page {
+        final int[] pcs = new int[PAGE_SIZE];
+        final int[] xpos = new int[PAGE_SIZE];
+        final int[] ypos = new int[PAGE_SIZE];
+        final int[] classIndexes = new int[PAGE_SIZE];
+        final int[] frames = new int[PAGE_SIZE];
+    }
+
+    private volatile Page[] pages = new Page[0];
+    private int[] freeSlots = new int[64];
+    private int freeSlotCount = 0;
+    private int slotCount = Playfield.NO_ANT + 1;
+
+    private volatile AntClass[] classes = { null };
+    private Map<AntClass, Integer> classIndexes = new IdentityHashMap<>();
+
+    private volatile short[][] segments = new short[0][];
+    private int segmentTop = SEGMENT_SIZE;
+    private int[][] freeFrames = { null };
+    private int[] freeFrameCounts = { 0 };
+
+    /**
+     * Adds a new ant and assigns a free slot id to it.  The program counter
+     * of the new ant is 0, and its user variables are cleared.
+     *
+     * @param antClass The class (kind) of the new ant.
+     * @param x The horizontal position of the new ant.
+     * @param y The vertical position of the new ant.
+     * @param tribe The index of the tribe the new ant belongs to.
+     * @param initialEnergy The energy of the new ant.
+     * @return The slot id of the new ant.
+     */
+    public synchronized int add(AntClass antClass, int x, int y, short tribe,
+                                short initialEnergy) {
+
+        int slot;
+
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            slot = slotCount++;
+            if (slot == freeSlots.length)
+                freeSlots = Arrays.copyOf(freeSlots, 2 * slot);
+            if (slot >>> PAGE_BITS == pages.length) {
+                Page[] newPages = Arrays.copyOf(pages, pages.length + 1);
+                newPages[pages.length] = new Page();
+                pages = newPages;
+            }
+        }
+
+        int classIndex = getClassIndex(antClass);
+        int frame = allocateFrame(classIndex, antClass.getVariableSize());
+
+        short[] segment = segments[frame >>> SEGMENT_BITS];
+        int base = frame & OFFSET_MASK;
+
+        Arrays.fill(segment, base, base + antClass.getVariableSize(), (short) 0);
+        segment[base + Ant.MY_BACKPACK_SIZE] = antClass.getBackpackSize();
+        segment[base + Ant.MY_ENERGY] = initialEnergy;
+        segment[base + Ant.MY_TRIBE] = tribe;
+
+        Page page = pages[slot >>> PAGE_BITS];
+        int i = slot & PAGE_MASK;
+
+        page.pcs[i] = 0;
+        page.xpos[i] = x;
+        page.ypos[i] = y;
+        page.classIndexes[i] = classIndex;
+        page.frames[i] = frame;
+
+        return slot;
+    }
+
+    /**
+     * Removes an ant, releasing its slot id and its variable frame.
+     *
+     * @param slot The slot id of the ant.
+     */
+    public synchronized void remove(int slot) {
+
+        Page page = pages[slot >>> PAGE_BITS];
+        int i = slot & PAGE_MASK;
+        int classIndex = page.classIndexes[i];
+
+        if (freeFrameCounts[classIndex] == freeFrames[classIndex].length)
+            freeFrames[classIndex] = Arrays.copyOf(freeFrames[classIndex],
+                                                   2 * freeFrameCounts[classIndex]);
+
+        freeFrames[classIndex][freeFrameCounts[classIndex]++] = page.frames[i];
+        page.classIndexes[i] = 0;
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    /**
+     * Tests if a slot id is in use.
+     *
+     * @param slot The slot id.
+     * @return True if the slot belongs to a living ant, false otherwise.
+     */
+    public boolean contains(int slot) {
+
+        Page[] p = pages;
+
+        return slot != Playfield.NO_ANT && slot >>> PAGE_BITS < p.length
+            && p[slot >>> PAGE_BITS].classIndexes[slot & PAGE_MASK] != 0;
+    }
+
+    /**
+     * Returns the class of an ant.  This method and the other accessors of
+     * the ant state are called for every turn of an ant, so they do not lock
+     * the store.  The caller must either be the thread that has added the
+     * ant, or a thread that has synchronized with it afterwards, as the
+     * threads of the parallel execution mode do at the end of each round.
+     *
+     * @param slot The slot id of the ant.
+     * @return The class of the ant.
+     */
+    public AntClass getAntClass(int slot) {
+        return classes[pages[slot >>> PAGE_BITS].classIndexes[slot & PAGE_MASK]];
+    }
+
+    /**
+     * Returns the program counter of an ant.
+     *
+     * @param slot The slot id of the ant.
+     * @return The program counter.
+     */
+    public int getPC(int slot) {
+        return pages[slot >>> PAGE_BITS].pcs[slot & PAGE_MASK];
+    }
+
+    /**
+     * Sets the program counter of an ant.
+     *
+     * @param slot The slot id of the ant.
+     * @param pc The new program counter.
+     */
+    public void setPC(int slot, int pc) {
+        pages[slot >>> PAGE_BITS].pcs[slot & PAGE_MASK] = pc;
+    }
+
+    /**
+     * Returns the horizontal position of an ant.
+     *
+     * @param slot The slot id of the ant.
+     * @return The horizontal position.
+     */
+    public int getXPos(int slot) {
+        return pages[slot >>> PAGE_BITS].xpos[slot & PAGE_MASK];
+    }
+
+    /**
+     * Returns the vertical position of an ant.
+     *
+     * @param slot The slot id of the ant.
+     * @return The vertical position.
+     */
+    public int getYPos(int slot) {
+        return pages[slot >>> PAGE_BITS].ypos[slot & PAGE_MASK];
+    }
+
+    /**
+     * Sets the position of an ant.
+     *
+     * @param slot The slot id of the ant.
+     * @param x The new horizontal position.
+     * @param y The new vertical position.
+     */
+    public void setPos(int slot, int x, int y) {
+
+        Page page = pages[slot >>> PAGE_BITS];
+
+        page.xpos[slot & PAGE_MASK] = x;
+        page.ypos[slot & PAGE_MASK] = y;
+    }
+
+    /**
+     * Returns the segment that holds the variable frame of an ant.
+     *
+     * @param slot The slot id of the ant.
+     * @return The segment array.
+     */
+    public short[] getVariables(int slot) {
+        return segments[pages[slot >>> PAGE_BITS].frames[slot & PAGE_MASK] >>> SEGMENT_BITS];
+    }
+
+    /**
+     * Returns the index of the first variable of an ant within the array
+     * returned by {@link #getVariables(int)}.
+     *
+     * @param slot The slot id of the ant.
+     * @return The index of the variable frame.
+     */
+    public int getVariableBase(int slot) {
+        return pages[slot >>> PAGE_BITS].frames[slot & PAGE_MASK] & OFFSET_MASK;
+    }
+
+    /**
+     * Returns the tribe an ant belongs to.
+     *
+     * @param slot The slot id of the ant.
+     * @return The tribe index.
+     */
+    public short getTribe(int slot) {
+        return getVariables(slot)[getVariableBase(slot) + Ant.MY_TRIBE];
+    }
+
+    /**
+     * Returns a snapshot of an ant.  Changing the returned object does not
+     * change the ant.
+     *
+     * @param slot The slot id of the ant.
+     * @return The ant, or <code>null</code> if the slot is not in use.
+     */
+    public Ant getAnt(int slot) {
+
+        if (!contains(slot))
+            return null;
+
+        AntClass antClass = getAntClass(slot);
+        int base = getVariableBase(slot);
+        short[] variables = Arrays.copyOfRange(getVariables(slot), base,
+                                               base + antClass.getVariableSize());
+
+        return new Ant(antClass, getPC(slot), getXPos(slot), getYPos(slot), variables);
+    }
+
+    /**
+     * Returns the index of an ant class, registering the class if necessary.
+     * Index 0 is reserved for unused slots.
+     */
+    private int getClassIndex(AntClass antClass) {
+
+        Integer index = classIndexes.get(antClass);
+
+        if (index == null) {
+            index = classes.length;
+            classIndexes.put(antClass, index);
+
+            AntClass[] newClasses = Arrays.copyOf(classes, index + 1);
+            newClasses[index] = antClass;
+            classes = newClasses;
+
+            freeFrames = Arrays.copyOf(freeFrames, index + 1);
+            freeFrames[index] = new int[16];
+            freeFrameCounts = Arrays.copyOf(freeFrameCounts, index + 1);
+        }
+
+        return index;
+    }
+
+    /**
+     * Allocates a variable frame, reusing the frame of a dead ant of the same
+     * class if possible.  Frames never cross segment boundaries.
+     *
+     * @return The segment number in the upper and the index within the
+     *         segment in the lower 16 bits.
+     */
+    private int allocateFrame(int classIndex, int size) {
+
+        if (freeFrameCounts[classIndex] > 0)
+            return freeFrames[classIndex][--freeFrameCounts[classIndex]];
+
+        if (segmentTop + size > SEGMENT_SIZE) {
+            short[][] newSegments = Arrays.copyOf(segments, segments.length + 1);
+            newSegments[segments.length] = new short[SEGMENT_SIZE];
+            segments = newSegments;
+            segmentTop = 0;
+        }
+
+        int frame = ((segments.length - 1) << SEGMENT_BITS) | segmentTop;
+        segmentTop += size;
+        return frame;
+    }
+}
@@ -0,0 +1,194 @@
+package ants.vm;
+
+import java.util.*;
+import ants.test.*;
+
+/**
+ * The <code>AntStoreTest</code> class tests the {@link AntStore}.  It lives
+ * in the package of the store, which is not public.  Ants of classes with
+ * different variable sizes are added and removed at random, until they
+ * fill several pages of slots and several segments of variable frames.
+ * The state of every living ant must be kept apart from the state of all
+ * other ants, and slots and frames that are reused must look like new.
+ */
+public class AntStoreTest extends Test {
+
+    private static final long SEED = 12;
+    private static final int OPERATIONS = 30000;
+    private static final short ENERGY = 500;
+
+    /**
+     * The state that the test expects for a living ant.
+     */
+    private static class Expected {
+        AntClass antClass;
+        int pc;
+        int x;
+        int y;
+        short[] variables;
+    }
+
+    private final Map<Integer, Expected> living = new HashMap<>();
+    private AntStore store;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException An ant does not have the expected state.
+     */
+    public void run() throws TestFailedException {
+
+        Random random = new Random(SEED);
+        AntClass[] classes = {
+            createClass(AntsVm.FIRST_USER_VAR, (short) 0),
+            createClass(37, (short) 3),
+            createClass(1001, (short) 10)
+        };
+
+        store = new AntStore();
+        int removedSlot = Playfield.NO_ANT;
+
+        for (int i = 0; i < OPERATIONS; i++) {
+
+            // Grow to a few thousand ants, then shrink again.
+            boolean add = living.isEmpty()
+                || random.nextInt(100) < (i < OPERATIONS * 2 / 3 ? 65 : 30);
+
+            if (add) {
+
+                AntClass c = classes[random.nextInt(classes.length)];
+                int x = random.nextInt(100000);
+                int y = random.nextInt(100000);
+                short tribe = (short) random.nextInt(4);
+                int slot = store.add(c, x, y, tribe, ENERGY);
+
+                assertCond(slot != Playfield.NO_ANT && !living.containsKey(slot),
+                           "Operation " + i + ": the store has assigned the slot " + slot +
+                           " of a living ant.");
+                assertCond(removedSlot == Playfield.NO_ANT || slot == removedSlot,
+                           "Operation " + i + ": the store has not reused the free slot.");
+
+                Expected e = new Expected();
+
+                e.antClass = c;
+                e.x = x;
+                e.y = y;
+                e.variables = new short[c.getVariableSize()];
+                e.variables[Ant.MY_BACKPACK_SIZE] = c.getBackpackSize();
+                e.variables[Ant.MY_ENERGY] = ENERGY;
+                e.variables[Ant.MY_TRIBE] = tribe;
+
+                // A new ant must not see the variables of a dead one.
+                assertAnt(slot, e, "Operation " + i + ": the new ant");
+
+                living.put(slot, e);
+                removedSlot = Playfield.NO_ANT;
+                change(slot, e, random);
+
+            } else {
+
+                int slot = pick(random);
+
+                store.remove(slot);
+                living.remove(slot);
+                removedSlot = slot;
+
+                assertCond(!store.contains(slot) && store.getAnt(slot) == null,
+                           "Operation " + i + ": the removed ant is still in the store.");
+            }
+
+            if (!living.isEmpty() && random.nextBoolean()) {
+                int slot = pick(random);
+                change(slot, living.get(slot), random);
+            }
+
+            if (i % 1000 == 999) {
+                for (Map.Entry<Integer, Expected> e: living.entrySet())
+                    assertAnt(e.getKey(), e.getValue(), "Operation " + i + ": the ant");
+            }
+        }
+
+        assertCond(!store.contains(Playfield.NO_ANT) && !store.contains(1 << 20),
+                   "The store contains a slot that has never been assigned.");
+    }
+
+    /**
+     * Changes the program counter, the position, and the variables of an
+     * ant at random.
+     */
+    private void change(int slot, Expected e, Random random) {
+
+        short[] variables = store.getVariables(slot);
+        int base = store.getVariableBase(slot);
+
+        e.pc = random.nextInt(1000);
+        e.x = random.nextInt(100000);
+        e.y = random.nextInt(100000);
+        store.setPC(slot, e.pc);
+        store.setPos(slot, e.x, e.y);
+
+        // Leave the tribe alone, which the store reads from the variables.
+        for (int i = AntsVm.FIRST_USER_VAR; i < e.variables.length; i++) {
+            e.variables[i] = (short) random.nextInt();
+            variables[base + i] = e.variables[i];
+        }
+    }
+
+    /**
+     * Asserts that an ant has the expected state.
+     */
+    private void assertAnt(int slot, Expected e, String description)
+        throws TestFailedException {
+
+        short[] variables = store.getVariables(slot);
+        int base = store.getVariableBase(slot);
+
+        assertCond(store.contains(slot) && store.getAntClass(slot) == e.antClass
+                   && store.getPC(slot) == e.pc && store.getXPos(slot) == e.x
+                   && store.getYPos(slot) == e.y
+                   && store.getTribe(slot) == e.variables[Ant.MY_TRIBE],
+                   description + " in slot " + slot + " does not have the expected state.");
+        assertCond(base + e.variables.length <= variables.length,
+                   description + " in slot " + slot + " has a frame beyond its segment.");
+        assertCond(Arrays.equals(Arrays.copyOfRange(variables, base, base + e.variables.length),
+                                 e.variables),
+                   description + " in slot " + slot + " does not have the expected variables.");
+
+        Ant ant = store.getAnt(slot);
+
+        assertCond(ant.getAntClass() == e.antClass && ant.getPC() == e.pc
+                   && ant.getXPos() == e.x && ant.getYPos() == e.y
+                   && Arrays.equals(ant.getVariables(), e.variables),
+                   description + " in slot " + slot + " has the wrong snapshot.");
+
+        ant.setVariable(Ant.MY_ENERGY, (short) (ant.getEnergy() + 1));
+        assertCond(variables[base + Ant.MY_ENERGY] == e.variables[Ant.MY_ENERGY],
+                   description + " in slot " + slot + " has changed with its snapshot.");
+    }
+
+    /**
+     * Returns the slot of a living ant chosen at random.
+     */
+    private int pick(Random random) {
+
+        int n = random.nextInt(living.size());
+
+        for (int slot: living.keySet()) {
+            if (n-- == 0)
+                return slot;
+        }
+
+        throw new IllegalStateException();
+    }
+
+    private static AntClass createClass(int variableSize, short backpackSize) {
+
+        AntClass c = new AntClass();
+
+        c.setName("Size" + variableSize);
+        c.setVariableSize((short) variableSize);
+        c.setBackpackSize(backpackSize);
+
+        return c;
+    }
+}
@@ -2,6 +2,7 @@ package ants.vm;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.lang.reflect.*;
 
 /**
@@ -42,6 +43,63 @@ public class AntsVm extends Thread {
         TERMINATED
     };
 
+    /**
+     * The engines that an {@link AntsVm} can use to execute instructions.
+     */
+    public static enum Engine {
+        /**
+         * Instructions are dispatched through the {@link
+         * #instructionHandlers} table using Java reflection.
+         */
+        REFLECTIVE,
+        /**
+         * Instructions are dispatched directly to their handler methods by a
+         * switch on the opcode.  This engine executes exactly the same
+         * handlers as the reflective engine, but avoids the reflection
+         * overhead per instruction.  Unlike the reflective engine, it does
+         * not terminate the Java VM if a handler fails, but passes the
+         * exception on.
+         */
+        DIRECT,
+        /**
+         * The program of each ant class is translated to a Java class by the
+         * {@link ProgramCompiler} when the ant class is loaded, so that the
+         * Java VM can optimize ant programs like regular Java code.  Ant
+         * classes that cannot be translated are executed by the direct
+         * engine.
+         */
+        COMPILED,
+        /**
+         * The program of each ant class is decoded into a {@link
+         * DecodedProgram} when the ant class is loaded, and the interpreter
+         * executes the decoded form.  Opcodes, operand flags, energy costs,
+         * and result variables are resolved only once per ant class instead
+         * of once per executed instruction.
+         */
+        DECODED
+    };
+
+    /**
+     * A condition that ends a synchronous run of the VM, see {@link
+     * #runUntil(Condition, long)}.
+     */
+    public static interface Condition {
+
+        /**
+         * Tests if the condition is satisfied.
+         *
+         * @param vm The VM whose state is tested.
+         * @return True if the run should end, false otherwise.
+         */
+        boolean isSatisfied(AntsVm vm);
+    }
+
+    /**
+     * The maximum number of cycles that the VM thread executes between two
+     * checks for stop and suspend requests.
+     */
+    public static final int CONTROL_INTERVAL = 1024;
+
     /**
      * The number of available instructions.
      */
@@ -141,7 +199,9 @@ public class AntsVm extends Thread {
     public static final int MAX_PLAYERS = 4;
 
     /**
-     * The maximum width and height of the playfield.
+     * The maximum width and height of a playfield that is stored in flat
+     * arrays.  Larger playfields are split into chunks that are created on
+     * demand, see {@link ChunkedPlayfield}.
      */
     public static final int MAX_PLAYFIELD_SIZE = 1000;
 
@@ -189,18 +249,18 @@ public class AntsVm extends Thread {
 
     /**
      * The near offset in x direction from the position of the ant, indexed by
-     * direction.
+     * direction.  The last entry belongs to {@link Direction#HERE}.
      */
     protected static final int[] NEAR_DIRECTION_X_INDEXES = {
-        0, 1, 1, 1, 0, -1, -1, -1
+        0, 1, 1, 1, 0, -1, -1, -1, 0
     };
 
     /**
      * The near offset in y direction from the position of the ant, indexed by
-     * direction.
+     * direction.  The last entry belongs to {@link Direction#HERE}.
      */
     protected static final int[] NEAR_DIRECTION_Y_INDEXES = {
-        -1, -1, 0, 1, 1, 1, 0, -1
+        -1, -1, 0, 1, 1, 1, 0, -1, 0
     };
 
     /**
@@ -246,7 +306,9 @@ public class AntsVm extends Thread {
         }
     }
 
-    private Random random = new Random();
+    private long seed;
+    private Random queenRandom;
+    private Random foodRandom;
 
     private int numberOfPlayers;
     private int playfieldWidth;
@@ -257,30 +319,53 @@ public class AntsVm extends Thread {
     private short energyPerRun;
     private short maxFoodPerCell;
     private double foodRegrowRate;
+    private FoodRegrowthMap foodRegrowMap;
+    private double foodRegrowProbability;
+    private long nextFoodRegrowth;
+    private Engine engine;
+    private int threads;
+    private long maxCycles;
+    private long cycles = 0;
+    private long instructions = 0;
+    private AntClassCache antClassCache;
 
     private String[] playerNames;
+    private long[] markHalfLives;
+    private boolean marksDecay;
 
     private List<List<AntClass>> antClasses;
     private AntClass[] queenClasses;
-    private Deque<Ant> activeAnts;
+    private AntScheduler scheduler;
+    private boolean queensPlaced = false;
 
     private volatile boolean suspendRequested = false;
     private volatile boolean stopRequested = false;
     private volatile VmState state = VmState.CREATED;
 
-    private PlayfieldCell[][] playfield;
+    private ExecutorService workerPool;
+    private AntsVm[] stripWorkers;
+    private int stripHeight;
+
+    private Playfield playfield;
+    private AntStore antStore = new AntStore();
 
     private int currentPlayer;
-    private Ant currentAnt;
+    private int currentSlot;
     private AntClass currentClass;
     private short[] program;
     private short[] variables;
+    private int varBase;
     private int pc;
+    private int antX;
+    private int antY;
+    private short antTribe;
     private short instruction;
     private short opcode;
     private short result;
     private short op1;
     private short op2;
+    private int energyLeft;
+    private boolean antDied;
 
     /**
      * Returns the number of players.
@@ -310,12 +395,25 @@ public class AntsVm extends Thread {
     }
 
     /**
-     * Copies a section of the playfield matrix to the specified array.
+     * Returns the playfield.
+     *
+     * @return The playfield.
+     */
+    public Playfield getPlayfield() {
+        return playfield;
+    }
+
+    /**
+     * Copies a section of the playfield matrix to the specified array.  The
+     * copied cells are snapshots, see {@link #getPlayfieldCell(int, int)}.
+     * The cells that the array already holds are overwritten, so copying
+     * the playfield again allocates no cells; only the {@link Ant} objects
+     * of occupied cells are created anew.
      *
      * @param dest The array of {@link PlayfieldCell} elements to which
      *             the section of the playfield matrix should copied.  The
      *             <code>dest</code> array must have the same dimensions as
-     *             the playfield.
+     *             the playfield.  Its elements may be <code>null</code>.
      * @param x The column where the copied section starts.
      * @param y The row where the copied section starts.
      * @param w The number of columns to copy.
@@ -323,27 +421,161 @@ public class AntsVm extends Thread {
      */
     public void copyPlayfield(PlayfieldCell[][] dest, int x, int y, int w, int h) {
 
-        for (int i = y; i < y + h; i++)
-            for (int j = x; j < x + w; j++)
-                dest[i][j] = playfield[i][j];
+        for (int i = y; i < y + h; i++) {
+            for (int j = x; j < x + w; j++) {
+
+                PlayfieldCell cell = dest[i][j];
+
+                if (cell == null || cell.marks.length != numberOfPlayers) {
+                    cell = new PlayfieldCell(numberOfPlayers);
+                    dest[i][j] = cell;
+                }
+
+                copyPlayfieldCell(j, i, cell);
+            }
+        }
     }
 
     /**
-     * Returns a single playfield cell.  The coordinates of the cell are
-     * wrapped at the borders if they are outside the regular playfield.
+     * Returns a snapshot of a single playfield cell.  The coordinates of the
+     * cell are wrapped at the borders if they are outside the regular
+     * playfield.
+     * <p>
+     * The playfield does not keep <code>PlayfieldCell</code> objects, so the
+     * cell is assembled anew on every call.  Unlike the live cells returned
+     * by earlier versions, it does not follow later changes of the
+     * playfield, and changing it does not change the playfield.  The same
+     * holds for the {@link Ant} of the cell.  Clients that display the
+     * playfield must fetch the cells again to see its current state, best
+     * with {@link #copyPlayfield(PlayfieldCell[][], int, int, int, int)},
+     * which reuses the cells of the previous copy.
      *
      * @param x The position in x direction.
      * @param y The position in y direction.
      * @return The playfield cell at the given position.
      */
     public PlayfieldCell getPlayfieldCell(int x, int y) {
-        int x0 = (x >= 0) ?
-            (x % playfieldWidth) :
-            (x % playfieldWidth) + playfieldWidth;
-        int y0 = (y >= 0) ?
-            (y % playfieldHeight) :
-            (y % playfieldHeight) + playfieldHeight;
-        return playfield[y0][x0];
+
+        PlayfieldCell cell = new PlayfieldCell(numberOfPlayers);
+        copyPlayfieldCell(x, y, cell);
+        return cell;
+    }
+
+    /**
+     * Copies the state of a single playfield cell into an existing
+     * <code>PlayfieldCell</code>, see {@link #getPlayfieldCell(int, int)}.
+     * An {@link Ant} is only created if an ant stands on the cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param dest The cell to overwrite.  It must have a mark for each
+     *             player.
+     */
+    public void copyPlayfieldCell(int x, int y, PlayfieldCell dest) {
+
+        int slot = playfield.getAnt(x, y);
+
+        dest.ant = slot != Playfield.NO_ANT ? antStore.getAnt(slot) : null;
+        dest.isPassable = playfield.isPassable(x, y);
+        dest.stones = playfield.getStones(x, y);
+        dest.food = playfield.getFood(x, y);
+
+        for (int i = 0; i < numberOfPlayers; i++) {
+            dest.marks[i] = playfield.getMark(x, y, i);
+            if (marksDecay)
+                dest.marks[i] = decayMark(x, y, i, dest.marks[i]);
+        }
+    }
+
+    /**
+     * Returns the seed from which the random decisions of the VM are
+     * derived.
+     *
+     * @return The seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the number of cycles that the VM has executed.  A cycle is the
+     * turn of a single ant.
+     *
+     * @return The number of executed cycles.
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Returns the number of living ants of a player.  This method must not
+     * be called while the VM is running.
+     *
+     * @param player The index of the player.
+     * @return The number of ants of the player.
+     */
+    public int getNumberOfAnts(int player) {
+
+        int n = 0;
+
+        for (int slot: scheduler.toArray()) {
+            if (antStore.getTribe(slot) == player)
+                ++n;
+        }
+
+        return n;
+    }
+
+    /**
+     * Returns the total amount of food carried by the living ants of a
+     * player.  This method must not be called while the VM is running.
+     *
+     * @param player The index of the player.
+     * @return The amount of food carried by the ants of the player.
+     */
+    public long getFoodOfAnts(int player) {
+
+        long food = 0;
+
+        for (int slot: scheduler.toArray()) {
+            if (antStore.getTribe(slot) == player)
+                food += antStore.getVariables(slot)[antStore.getVariableBase(slot)
+                                                    + Ant.MY_FOOD];
+        }
+
+        return food;
+    }
+
+    /**
+     * Returns the total amount of food on the playfield.  Cells that a
+     * playfield has not allocated yet, see {@link Playfield#isResident(int,
+     * int)}, are not counted.  This method must not be called while the VM
+     * is running.
+     *
+     * @return The amount of food on the playfield.
+     */
+    public long getFoodOnPlayfield() {
+        return playfield.getFood();
+    }
+
+    /**
+     * Returns the number of instructions that have been executed since the
+     * VM was created.  This method must not be called while the VM is
+     * running.
+     *
+     * @return The number of executed instructions.
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Returns the engine that is used to execute instructions.
+     *
+     * @return The execution engine.
+     */
+    public Engine getEngine() {
+        return engine;
     }
 
     /**
@@ -380,6 +612,24 @@ public class AntsVm extends Thread {
     public AntsVm(Configuration config)
         throws ClassNotFoundException, IOException {
 
+        this(config, new AntClassCache());
+    }
+
+    /**
+     * Creates a new <code>AntsVm</code> object that takes its ant classes
+     * from a cache.  VMs that use the same cache share the programs of the
+     * ant classes.
+     *
+     * @param config The VM configuration object.
+     * @param antClassCache The cache from which the ant classes are loaded.
+     * @throws ClassNotFoundException An ant class could not be found.
+     * @throws IOException An I/O error occured while loading the ant classes.
+     */
+    public AntsVm(Configuration config, AntClassCache antClassCache)
+        throws ClassNotFoundException, IOException {
+
+        this.antClassCache = antClassCache;
+
         this.numberOfPlayers = config.numberOfPlayers;
         this.playfieldWidth  = config.playfieldWidth;
         this.playfieldHeight = config.playfieldHeight;
@@ -389,12 +639,61 @@ public class AntsVm extends Thread {
         this.energyPerRun    = config.energyPerRun;
         this.maxFoodPerCell  = config.maxFoodPerCell;
         this.foodRegrowRate  = config.foodRegrowRate;
+        this.engine          = config.engine;
+        this.threads         = config.threads;
+        this.maxCycles       = config.maxCycles;
+        this.seed            = config.seed;
+
+        queenRandom = RandomStreams.create(seed, RandomStreams.QUEENS);
+        foodRandom  = RandomStreams.create(seed, RandomStreams.FOOD_REGROWTH);
 
         createPlayfield(config);
+        createFoodRegrowth(config);
         createPlayers(config);
         createAntClasses(config);
 
-        activeAnts = new LinkedList<>();
+        scheduler = createAntScheduler();
+    }
+
+    /**
+     * Creates a worker VM that runs the ants of one strip of the playfield in
+     * parallel execution mode.  The worker shares the playfield, the ant
+     * classes, and the ant registry with its parent, but has its own
+     * registers and its own scheduler.
+     *
+     * @param parent The VM that distributes the ants to its workers.
+     */
+    private AntsVm(AntsVm parent) {
+
+        this.numberOfPlayers = parent.numberOfPlayers;
+        this.playfieldWidth  = parent.playfieldWidth;
+        this.playfieldHeight = parent.playfieldHeight;
+        this.initialEnergy   = parent.initialEnergy;
+        this.energyPerFood   = parent.energyPerFood;
+        this.energyPerRun    = parent.energyPerRun;
+        this.engine          = parent.engine;
+        this.threads         = 1;
+
+        this.playfield    = parent.playfield;
+        this.antStore     = parent.antStore;
+        this.playerNames  = parent.playerNames;
+        this.antClasses   = parent.antClasses;
+        this.queenClasses = parent.queenClasses;
+        this.markHalfLives = parent.markHalfLives;
+        this.marksDecay   = parent.marksDecay;
+
+        scheduler = parent.createAntScheduler();
+    }
+
+    /**
+     * Creates the scheduler that decides in which order the ants get their
+     * turns.  Worker VMs in parallel execution mode get their schedulers
+     * from this method, too.
+     *
+     * @return A new, empty scheduler.
+     */
+    protected AntScheduler createAntScheduler() {
+        return new RoundRobinScheduler();
     }
 
     /**
@@ -413,32 +712,66 @@ public class AntsVm extends Thread {
         for (int i = 0; i < numberOfPlayers; i++)
             antClasses.add(new ArrayList<AntClass>());
 
+        AntClassArchive archive = null;
+
+        if (config.classArchive != null)
+            archive = AntClassArchive.open(config.dataPath + "/" + config.classArchive);
+
         for (int i = 0; i < numberOfPlayers; i++) {
 
             Configuration.PlayerInfo info = config.playerInfos[i];
             Iterator<String> classFilesIt = info.classFiles.iterator();
 
             String queen = classFilesIt.next();
-            loadQueenClass(i, config.dataPath + "/" + queen);
+            loadQueenClass(i, getClassPath(config, archive, queen));
 
             while (classFilesIt.hasNext()) {
                 String ant = classFilesIt.next();
-                loadAntClass(i, config.dataPath + "/" + ant);
+                loadAntClass(i, getClassPath(config, archive, ant));
             }
         }
     }
 
     /**
-     * Sets the player names.
+     * Returns the path from which a class file of a player is loaded.
+     *
+     * @param config The configuration of the VM.
+     * @param archive The class archive of the configuration, or
+     *                <code>null</code>.
+     * @param classFile The class file as given in the configuration.
+     * @return The path to the class within the archive if the archive
+     *         contains the class, and the path to the class file otherwise.
+     */
+    private static String getClassPath(Configuration config,
+                                       AntClassArchive archive, String classFile) {
+
+        if (archive != null && archive.contains(classFile))
+            return config.dataPath + "/" + config.classArchive + "!" + classFile;
+        else
+            return config.dataPath + "/" + classFile;
+    }
+
+    /**
+     * Sets the player names and the half-lives of their marks.  If the marks
+     * of any player decay, the playfield is told to record the time at which
+     * marks are set.
      *
      * @param config The configuration of the VM.
      */
     protected void createPlayers(Configuration config) {
 
         playerNames = new String[numberOfPlayers];
+        markHalfLives = new long[numberOfPlayers];
 
-        for (int i = 0; i < numberOfPlayers; i++)
+        for (int i = 0; i < numberOfPlayers; i++) {
             playerNames[i] = config.playerInfos[i].name;
+            markHalfLives[i] = config.playerInfos[i].markHalfLife;
+            if (markHalfLives[i] > 0)
+                marksDecay = true;
+        }
+
+        if (marksDecay)
+            playfield.recordMarkTimes();
     }
 
     /**
@@ -455,11 +788,44 @@ public class AntsVm extends Thread {
         builder.passableRatio    = config.passableRatio;
         builder.maxStonesPerCell = config.maxStonesPerCell;
         builder.maxFoodPerCell   = config.maxFoodPerCell;
+        builder.chunked          = config.chunkedPlayfield
+                                   || playfieldWidth > MAX_PLAYFIELD_SIZE
+                                   || playfieldHeight > MAX_PLAYFIELD_SIZE;
+        builder.seed             = RandomStreams.derive(seed, RandomStreams.PLAYFIELD);
 
         playfield = builder.createPlayfield(
                 numberOfPlayers, playfieldWidth, playfieldHeight);
     }
 
+    /**
+     * Sets up the regrowth of food.  Food grows after turns that are chosen
+     * at random, each turn with the probability {@link
+     * Configuration#foodRegrowRate}.  Instead of drawing a random number for
+     * every turn, the VM draws the number of turns until food grows next
+     * from the geometric distribution, which yields the same distribution of
+     * regrowth events.
+     * <p>
+     * If a {@link FoodRegrowthMap} is configured, the turns are chosen with
+     * the regrowth rate multiplied by the largest factor of the map, and the
+     * food on the chosen cell grows with a probability of the factor of the
+     * cell divided by the largest factor.
+     *
+     * @param config The configuration of the VM.
+     * @throws IOException The regrowth map could not be read.
+     */
+    protected void createFoodRegrowth(Configuration config) throws IOException {
+
+        if (config.foodRegrowMap != null) {
+            foodRegrowMap = FoodRegrowthMap.read(config.dataPath + "/" + config.foodRegrowMap);
+            foodRegrowProbability = Math.min(1, foodRegrowRate * foodRegrowMap.getMaxFactor());
+        } else {
+            foodRegrowProbability = Math.min(1, foodRegrowRate);
+        }
+
+        nextFoodRegrowth = -1;
+        scheduleFoodRegrowth();
+    }
+
     /**
      * Loads the queen class for a player.
      *
@@ -477,26 +843,22 @@ public class AntsVm extends Thread {
     }
 
     /**
-     * Loads an ant class for a player.
+     * Loads an ant class for a player.  The program of the class is checked
+     * by the {@link ProgramVerifier}, so the engines can trust it.
      *
      * @param player The index of the player.
      * @param filename The path to the ant class.
      * @throws ClassNotFoundException The class to be loaded could not be found.
+     * @throws InvalidClassException The program of the class is not valid.
      * @throws IOException An I/O error occured while loading the class.
      * @return The loaded ant class.
      */
     protected AntClass loadAntClass(int player, String filename)
         throws IOException, ClassNotFoundException {
 
-        AntClass c;
-
-        try (FileInputStream fs = new FileInputStream(filename);
-             ObjectInputStream os = new ObjectInputStream(fs)) {
-
-            c = (AntClass) os.readObject();
-        }
-
+        AntClass c = antClassCache.getAntClass(filename, engine, numberOfPlayers);
         c.setPlayer(player);
+
         antClasses.get(player).add(c);
         return c;
     }
@@ -506,6 +868,11 @@ public class AntsVm extends Thread {
      * directly call this method or the <code>start()</code> method inherited
      * from the <code>Thread</code>class.  It is called implicitly as a
      * consequence of calling {@link #startVm()}.
+     * <p>
+     * If more than one thread is configured and the playfield is large
+     * enough, the VM runs in parallel execution mode, see {@link
+     * #runRound()}.  In this mode, a cycle is a whole round, so the VM
+     * sleeps once per round.
      */
     public void run() {
 
@@ -513,17 +880,38 @@ public class AntsVm extends Thread {
         stopRequested = false;
         state = VmState.RUNNING;
 
+        if (threads > 1)
+            startWorkers();
+
+        try {
+            runCycles();
+        } finally {
+            stopWorkers();
+        }
+
+        if (stopRequested)
+            state = VmState.STOPPED_BY_COMMAND;
+    }
+
+    /**
+     * Runs cycles until the VM is stopped.  Stop and suspend requests are
+     * checked every {@link #CONTROL_INTERVAL} cycles, or after every cycle if
+     * the VM sleeps between cycles.
+     */
+    private void runCycles() {
+
+        int interval = sleepPerCycle > 0 ? 1 : CONTROL_INTERVAL;
+
         while (!stopRequested) {
 
-            if (activeAnts.size() == 0) {
+            if (isFinished()) {
                 state = VmState.STOPPED_BY_SIM;
                 break;
             }
 
-            runCurrentAnt();
-            regrowFood();
-
             try {
+                executeCycles(interval);
+
                 if (sleepPerCycle > 0)
                     sleep(sleepPerCycle);
 
@@ -541,36 +929,285 @@ public class AntsVm extends Thread {
                 break;
             }
         }
+    }
 
-        if (stopRequested)
-            state = VmState.STOPPED_BY_COMMAND;
+    /**
+     * Executes a number of cycles in the current thread, without checking
+     * for stop or suspend requests.  Fewer cycles are executed if the
+     * simulation ends.  In parallel execution mode, only whole rounds are
+     * executed, so more cycles may be executed.
+     *
+     * @param n The number of cycles to execute.
+     * @throws InterruptedException The thread was interrupted while waiting
+     *                              for the workers.
+     */
+    private void executeCycles(long n) throws InterruptedException {
+
+        if (maxCycles > 0)
+            n = Math.min(n, maxCycles - cycles);
+
+        if (workerPool != null) {
+            long start = cycles;
+            while (cycles - start < n && !scheduler.isEmpty())
+                runRound();
+        } else {
+            for (long i = 0; i < n && !scheduler.isEmpty(); i++) {
+                runCurrentAnt();
+                if (cycles == nextFoodRegrowth)
+                    regrowFood();
+                ++cycles;
+            }
+        }
+    }
+
+    /**
+     * Tests if the simulation has ended, either because all ants have died
+     * or because the maximum number of cycles has been executed.
+     *
+     * @return True if the simulation has ended, false otherwise.
+     */
+    private boolean isFinished() {
+        return scheduler.isEmpty() || (maxCycles > 0 && cycles >= maxCycles);
+    }
+
+    /**
+     * Executes a number of cycles synchronously in the current thread.  This
+     * method provides a way to run the VM without a VM thread, for example
+     * in batch runs and benchmarks.  The first call places the queens, so
+     * <code>step(0)</code> only places them.  The VM executes fewer cycles
+     * if the simulation ends, and more cycles if it runs in parallel
+     * execution mode, which executes only whole rounds.
+     * Afterwards, the VM is in the state <code>VmState.STOPPED_BY_SIM</code>
+     * if the simulation has ended, and in the state
+     * <code>VmState.SUSPENDED</code> otherwise.
+     * <p>
+     * In parallel execution mode, the worker threads are started anew for
+     * every call, so the number of cycles should not be too small.
+     *
+     * @param n The number of cycles to execute.
+     * @return The number of executed cycles.
+     * @throws IllegalStateException The VM thread has been started.
+     */
+    public long step(long n) {
+        return execute(n, null, n);
+    }
+
+    /**
+     * Executes cycles synchronously in the current thread until a condition
+     * is satisfied or the simulation ends.  The condition is tested before
+     * the first cycle and then every <code>interval</code> cycles, so up to
+     * <code>interval</code> cycles may be executed after the condition has
+     * become satisfied.  Otherwise, this method behaves like {@link
+     * #step(long)}.
+     *
+     * @param condition The condition that ends the run.
+     * @param interval The number of cycles between two tests of the
+     *                 condition.
+     * @return The number of executed cycles.
+     * @throws IllegalStateException The VM thread has been started.
+     */
+    public long runUntil(Condition condition, long interval) {
+        return execute(Long.MAX_VALUE, condition, interval);
+    }
+
+    /**
+     * Executes cycles synchronously in the current thread.
+     *
+     * @param n The maximum number of cycles to execute.
+     * @param condition The condition that ends the run, or <code>null</code>.
+     * @param interval The number of cycles between two tests of the
+     *                 condition.
+     * @return The number of executed cycles.
+     */
+    private long execute(long n, Condition condition, long interval) {
+
+        if (isAlive())
+            throw new IllegalStateException("The VM thread is running.");
+
+        if (!queensPlaced)
+            placeQueens();
+
+        if (threads > 1)
+            startWorkers();
+
+        long start = cycles;
+
+        try {
+            while (cycles - start < n && !isFinished()
+                   && (condition == null || !condition.isSatisfied(this)))
+                executeCycles(Math.min(interval, n - (cycles - start)));
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopWorkers();
+        }
+
+        state = isFinished() ? VmState.STOPPED_BY_SIM : VmState.SUSPENDED;
+        return cycles - start;
+    }
+
+    /**
+     * Prepares the parallel execution mode.  The playfield is divided into
+     * an even number of horizontal strips, each of which is assigned a
+     * worker VM.  The strips must be high enough that two ants in strips
+     * that are separated by another strip can never access the same cell
+     * during one turn.  An ant can move at most <i>m</i> =
+     * <code>energyPerRun / ENERGY_COSTS[MOVE]</code> cells per turn, and it
+     * can change cells at a distance of up to <i>m</i> + 1 and look at cells
+     * at a distance of up to <i>m</i> + 3, so each strip must be at least
+     * 2<i>m</i> + 4 rows high.  If the playfield is too small for two such
+     * strips, the VM runs sequentially.
+     */
+    private void startWorkers() {
+
+        int maxMoves = energyPerRun / ENERGY_COSTS[Instruction.MOVE];
+        int strips = (playfieldHeight / (2 * maxMoves + 4)) & ~1;
+
+        if (strips < 2)
+            return;
+
+        stripHeight = playfieldHeight / strips;
+        stripWorkers = new AntsVm[strips];
+
+        for (int i = 0; i < strips; i++)
+            stripWorkers[i] = new AntsVm(this);
+
+        workerPool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, getName() + "-worker");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Shuts the worker threads of the parallel execution mode down.
+     */
+    private void stopWorkers() {
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+            workerPool = null;
+        }
+    }
+
+    /**
+     * Executes a round in parallel execution mode.  In a round, every active
+     * ant is given one turn.  The ants are distributed to the strips of the
+     * playfield by their position, and the ants of all even strips and then
+     * the ants of all odd strips are run concurrently, each strip in the
+     * order of the scheduler.  Ants that are created during the round are
+     * added to the scheduler of their strip and get their first turn in the
+     * next round.  Afterwards, food grows once per turn.
+     * <p>
+     * The outcome of a round only depends on the state of the VM, not on
+     * the number of threads or the scheduling of the threads.
+     *
+     * @throws InterruptedException The thread was interrupted while waiting
+     *                              for the workers.
+     */
+    protected void runRound() throws InterruptedException {
+
+        int turns = scheduler.size();
+
+        for (int slot: scheduler.toArray()) {
+            int strip = playfield.wrapY(antStore.getYPos(slot)) / stripHeight;
+            stripWorkers[Math.min(strip, stripWorkers.length - 1)].scheduler.add(slot);
+        }
+
+        scheduler.clear();
+
+        for (AntsVm worker: stripWorkers)
+            worker.cycles = cycles;
+
+        runStrips(0);
+        runStrips(1);
+
+        for (AntsVm worker: stripWorkers) {
+            for (int slot: worker.scheduler.toArray())
+                scheduler.add(slot);
+            worker.scheduler.clear();
+            instructions += worker.instructions;
+            worker.instructions = 0;
+        }
+
+        while (nextFoodRegrowth < cycles + turns)
+            regrowFood();
+
+        cycles += turns;
+    }
+
+    /**
+     * Runs the ants of every other strip concurrently.
+     *
+     * @param first The index of the first strip to run.
+     * @throws InterruptedException The thread was interrupted while waiting
+     *                              for the workers.
+     */
+    private void runStrips(int first) throws InterruptedException {
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int i = first; i < stripWorkers.length; i += 2) {
+
+            final AntsVm worker = stripWorkers[i];
+
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (int n = worker.scheduler.size(); n > 0; n--)
+                        worker.runCurrentAnt();
+                    return null;
+                }
+            });
+        }
+
+        for (Future<Void> f: workerPool.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
     }
 
     /**
      * Creates a new thread that runs the VM.
      */
     public void startVm() {
+        placeQueens();
+        start();
+    }
+
+    /**
+     * Places the queen of each player at a random empty cell of the
+     * playfield.
+     */
+    protected void placeQueens() {
 
         for (int i = 0; i < numberOfPlayers; i++) {
 
-            short x = 0;
-            short y = 0;
+            int x = 0;
+            int y = 0;
             boolean emptyCellFound = false;
 
             while (!emptyCellFound) {
-                x = (short) random.nextInt(playfieldWidth);
-                y = (short) random.nextInt(playfieldHeight);
-                if (playfield[y][x].isEmpty()) {
+                x = queenRandom.nextInt(playfieldWidth);
+                y = queenRandom.nextInt(playfieldHeight);
+                if (playfield.isEmpty(x, y)) {
                     emptyCellFound = true;
                 }
             }
 
-            Ant queen = new Ant(queenClasses[i], x, y, (short) i, initialEnergy);
-            playfield[y][x].ant = queen;
-            activeAnts.add(queen);
+            scheduler.add(placeAnt(queenClasses[i], x, y, (short) i));
         }
 
-        start();
+        queensPlaced = true;
     }
 
     /**
@@ -620,41 +1257,137 @@ public class AntsVm extends Thread {
     }
 
     /**
-     * Grows new food on the playfield.
+     * Grows new food on a random cell of the playfield and schedules the
+     * next regrowth.  This method is called after the turn at which food is
+     * due to grow, see {@link #createFoodRegrowth(Configuration)}.  Food
+     * does not grow on cells whose storage has not been allocated yet, since
+     * their contents are generated when they are accessed for the first
+     * time.
      */
     protected void regrowFood() {
 
-        if (random.nextDouble() < foodRegrowRate) {
+        scheduleFoodRegrowth();
+
+        int x = foodRandom.nextInt(playfieldWidth);
+        int y = foodRandom.nextInt(playfieldHeight);
 
-            int x = random.nextInt(playfieldWidth);
-            int y = random.nextInt(playfieldHeight);
+        if (foodRegrowMap != null
+            && foodRandom.nextDouble() * foodRegrowMap.getMaxFactor()
+               >= foodRegrowMap.getFactor(x, y, playfieldWidth, playfieldHeight))
+            return;
 
-            PlayfieldCell cell = playfield[y][x];
+        if (!playfield.isResident(x, y))
+            return;
 
-            if (cell.isEmpty() || cell.food > 0)
-                cell.food += random.nextInt(maxFoodPerCell);
+        short food = playfield.getFood(x, y);
+
+        if (playfield.isEmpty(x, y) || food > 0)
+            playfield.setFood(x, y, (short) (food + foodRandom.nextInt(maxFoodPerCell)));
+    }
+
+    /**
+     * Advances the cycle at which food grows next by a random number of
+     * turns, drawn from the geometric distribution.
+     */
+    private void scheduleFoodRegrowth() {
+
+        double p = foodRegrowProbability;
+        long gap = 1;
+
+        if (!(p > 0)) {
+            nextFoodRegrowth = Long.MAX_VALUE;
+            return;
         }
+
+        if (p < 1) {
+            double skip = Math.log(1 - foodRandom.nextDouble()) / Math.log1p(-p);
+            gap = skip < Long.MAX_VALUE / 2 ? 1 + (long) skip : Long.MAX_VALUE / 2;
+        }
+
+        if (nextFoodRegrowth > Long.MAX_VALUE - gap)
+            nextFoodRegrowth = Long.MAX_VALUE;
+        else
+            nextFoodRegrowth += gap;
+    }
+
+    /**
+     * Creates a new ant and places it on the playfield.  The ant is assigned
+     * a free slot id, by which the playfield refers to it.
+     *
+     * @param antClass The class (kind) of the new ant.
+     * @param x The horizontal position of the new ant.
+     * @param y The vertical position of the new ant.
+     * @param tribe The index of the tribe the new ant belongs to.
+     * @return The slot id of the new ant.
+     */
+    protected int placeAnt(AntClass antClass, int x, int y, short tribe) {
+
+        int slot = antStore.add(antClass, x, y, tribe, initialEnergy);
+        playfield.setAnt(x, y, slot, tribe);
+        return slot;
+    }
+
+    /**
+     * Removes an ant from the playfield and releases its slot id.
+     *
+     * @param slot The slot id of the ant to remove.
+     * @param x The horizontal position of the ant.
+     * @param y The vertical position of the ant.
+     */
+    protected void removeAnt(int slot, int x, int y) {
+
+        playfield.clearAnt(x, y);
+        antStore.remove(slot);
     }
 
     /**
      * Executes a cycle for the current ant.  A single cycle is bounded by the
-     * energy that an ant is given per cycle.
+     * energy that an ant is given per cycle.  The program counter and the
+     * position of the ant are loaded from the ant store into fields of the
+     * VM and stored back when the cycle ends.
      */
     protected void runCurrentAnt() {
 
-        currentAnt = activeAnts.removeFirst();
-        variables = currentAnt.getVariables();
+        currentSlot = scheduler.next();
+        variables = antStore.getVariables(currentSlot);
+        varBase = antStore.getVariableBase(currentSlot);
+        pc = antStore.getPC(currentSlot);
+        antX = antStore.getXPos(currentSlot);
+        antY = antStore.getYPos(currentSlot);
+        antTribe = variables[varBase + Ant.MY_TRIBE];
 
-        currentClass = currentAnt.getAntClass();
+        currentClass = antStore.getAntClass(currentSlot);
         currentPlayer = currentClass.getPlayer();
         program = currentClass.getProgram();
 
-        int energyLeft = energyPerRun;
-        boolean antDied = false;
+        energyLeft = energyPerRun;
+        antDied = false;
 
-        while (true) {
+        CompiledProgram compiledProgram = currentClass.getCompiledProgram();
 
-            pc = currentAnt.getPC();
+        if (engine == Engine.COMPILED && compiledProgram != null)
+            pc = compiledProgram.execute(this, variables, varBase, pc);
+        else if (engine == Engine.DECODED)
+            interpretDecodedProgram(currentClass.getDecodedProgram());
+        else
+            interpretCurrentAnt();
+
+        if (antDied) {
+            scheduler.removeCurrent();
+            removeAnt(currentSlot, antX, antY);
+        } else {
+            antStore.setPC(currentSlot, pc);
+            antStore.setPos(currentSlot, antX, antY);
+        }
+    }
+
+    /**
+     * Interprets the program of the current ant until the energy available
+     * in the current cycle is used up or the ant dies.
+     */
+    protected void interpretCurrentAnt() {
+
+        while (true) {
 
             instruction = program[pc + OPCODE_OFFSET];
             result = program[pc + RESULT_OFFSET];
@@ -663,45 +1396,287 @@ public class AntsVm extends Thread {
 
             opcode = (short) (instruction & ~(OP1_CONSTANT | OP2_CONSTANT));
 
-            short instructionCosts = ENERGY_COSTS[opcode];
-
-            if (energyLeft < instructionCosts)
+            if (!chargeEnergy(ENERGY_COSTS[opcode]))
                 break;
 
-            if (currentAnt.getEnergy() < instructionCosts) {
+            if (engine == Engine.REFLECTIVE)
+                invokeInstructionHandler(opcode);
+            else
+                executeInstruction(opcode);
+        }
+    }
+
+    /**
+     * Interprets the decoded program of the current ant until the energy
+     * available in the current cycle is used up or the ant dies.  The
+     * program counter is kept as an instruction index while the ant runs
+     * and is converted back to a program counter when the cycle ends.
+     * <p>
+     * The energy is charged once per basic block when the ant can pay for
+     * the whole block, see {@link #chargeBlock(int, int)}.  Only near the end
+     * of a cycle or of the ant's energy, the instructions are charged one by
+     * one, so the cycle ends, food is converted and the ant dies at exactly
+     * the same instruction as in the other engines.
+     *
+     * @param decoded The decoded program of the class of the current ant.
+     */
+    protected void interpretDecodedProgram(DecodedProgram decoded) {
 
-                int energyNeeded =
-                    (instructionCosts - currentAnt.getEnergy());
-                int foodNeeded =
-                    (energyNeeded + energyPerFood - 1) / energyPerFood;
+        final byte[] opcodes = decoded.opcodes;
+        final byte[] flags = decoded.flags;
+        final short[] results = decoded.results;
+        final short[] operands1 = decoded.operands1;
+        final short[] operands2 = decoded.operands2;
+        final short[] costs = decoded.costs;
+        final int[] blockCosts = decoded.blockCosts;
+        final int[] blockLengths = decoded.blockLengths;
+        final short[] vars = variables;
+        final int base = varBase;
 
-                if (currentAnt.getFood() >= foodNeeded) {
-                    variables[Ant.MY_FOOD] -= foodNeeded;
-                    variables[Ant.MY_ENERGY] += foodNeeded * energyPerFood;
-                } else {
-                    antDied = true;
-                    break;
+        int index = pc / INSTRUCTION_SIZE;
+        int paid = 0;
+
+        try {
+            while (true) {
+
+                // Charge the rest of the basic block at once if possible,
+                // otherwise the next instruction only.
+                if (paid == 0) {
+                    if (chargeBlock(blockCosts[index], blockLengths[index]))
+                        paid = blockLengths[index];
+                    else if (chargeEnergy(costs[index]))
+                        paid = 1;
+                    else
+                        break;
+                }
+
+                paid--;
+
+                int flag = flags[index];
+                short v1 = (flag & OP1_CONSTANT) != 0 ? operands1[index] : vars[base + operands1[index]];
+                short v2 = (flag & OP2_CONSTANT) != 0 ? operands2[index] : vars[base + operands2[index]];
+                int opcode = opcodes[index];
+                int value;
+
+                if (opcode >= DecodedProgram.CHECKED)
+                    opcode = checkOperands(opcode & ~DecodedProgram.CHECKED, v1, v2, index,
+                                           opcodes.length);
+
+                switch (opcode) {
+                    case Instruction.MAKE_ANT:      opMakeAnt(v1); index++; continue;
+                    case Instruction.STONES:        value = opStones(v1); break;
+                    case Instruction.OBSTACLES:     value = opObstacles(v1); break;
+                    case Instruction.FOOD:          value = opFood(v1); break;
+                    case Instruction.ANTS:          value = opAnts(v1, v2); break;
+                    case Instruction.MARKS:         value = opMarks(v1, v2); break;
+                    case Instruction.FOOD_AMOUNT:   value = opFoodAmount(v1); break;
+                    case Instruction.STONE_NUMBER:  value = opStoneNumber(v1); break;
+                    case Instruction.MARK_VALUE:    value = opMarkValue(v1, v2); break;
+                    case Instruction.MOVE:          value = opMove(v1); break;
+                    case Instruction.GET_STONES:    value = opGetStones(v1, v2); break;
+                    case Instruction.GET_FOOD:      value = opGetFood(v1, v2); break;
+                    case Instruction.PUT_STONES:    value = opPutStones(v1, v2); break;
+                    case Instruction.PUT_FOOD:      value = opPutFood(v1, v2); break;
+                    case Instruction.SET_MARK:      opSetMark(v1, v2); index++; continue;
+                    case Instruction.CLEAR_MARK:    opClearMark(v1); index++; continue;
+                    case Instruction.COPY:          value = v1; break;
+                    case Instruction.OR:            value = v1 | v2; break;
+                    case Instruction.AND:           value = v1 & v2; break;
+                    case Instruction.XOR:           value = v1 ^ v2; break;
+                    case Instruction.NOT:           value = ~v1; break;
+                    case Instruction.BITS_TRUE:     value = Integer.bitCount(v1 & 0xffff); break;
+                    case Instruction.BITS_FALSE:    value = 16 - Integer.bitCount(v1 & 0xffff); break;
+                    case Instruction.ADD:           value = v1 + v2; break;
+                    case Instruction.SUB:           value = v1 - v2; break;
+                    case Instruction.MULT:          value = v1 * v2; break;
+                    case Instruction.DIV:           value = v1 / v2; break;
+                    case Instruction.NEG:           value = -v1; break;
+                    case Instruction.EQUAL:         value = v1 == v2 ? 1 : 0; break;
+                    case Instruction.NOT_EQUAL:     value = v1 != v2 ? 1 : 0; break;
+                    case Instruction.LESS:          value = v1 < v2 ? 1 : 0; break;
+                    case Instruction.LESS_EQUAL:    value = v1 <= v2 ? 1 : 0; break;
+                    case Instruction.GREATER:       value = v1 > v2 ? 1 : 0; break;
+                    case Instruction.GREATER_EQUAL: value = v1 >= v2 ? 1 : 0; break;
+                    case Instruction.GOTO:          index = v1; continue;
+                    case Instruction.GOTO_IF:       index = v2 != 0 ? v1 : index + 1; continue;
+                    default:
+                        throw new IllegalStateException(
+                            "Invalid instruction code at " + INSTRUCTION_SIZE * index + ".");
                 }
+
+                int result = results[index];
+                if (result >= 0)
+                    vars[base + result] = (short) value;
+
+                index++;
             }
+        } finally {
+            pc = INSTRUCTION_SIZE * index;
+        }
+    }
 
-            energyLeft -= instructionCosts;
-            variables[Ant.MY_ENERGY] -= instructionCosts;
+    /**
+     * Validates the operands of an instruction that takes a direction, a
+     * tribe or a jump target from a variable.  The operands of all other
+     * instructions have been validated by the {@link ProgramVerifier} when
+     * the class was loaded.
+     *
+     * @param opcode The opcode of the instruction.
+     * @param v1 The value of the first operand.
+     * @param v2 The value of the second operand.
+     * @param index The index of the instruction.
+     * @param size The number of instructions of the program.
+     * @return The opcode of the instruction.
+     * @throws IllegalStateException An operand is not valid.
+     */
+    private int checkOperands(int opcode, short v1, short v2, int index, int size) {
+
+        String error = null;
+
+        if (opcode == Instruction.GOTO || opcode == Instruction.GOTO_IF) {
+            if ((v1 < 0 || v1 >= size) && (opcode == Instruction.GOTO || v2 != 0))
+                error = "Jump target out of range";
+        } else if (!ProgramVerifier.isValidDirection(opcode, v1)) {
+            error = "Invalid direction " + v1;
+        } else if ((opcode == Instruction.MARKS || opcode == Instruction.MARK_VALUE)
+                   && !ProgramVerifier.isValidTribe(opcode, v2, numberOfPlayers)) {
+            error = "Invalid tribe " + v2;
+        }
 
-            try {
-                instructionHandlers[opcode].invoke(this);
-            } catch (IllegalAccessException e) {
-                // This should not happen
-                System.exit(-1);
-            } catch (InvocationTargetException e) {
-                // This should not happen
-                System.exit(-1);
+        if (error != null)
+            throw new IllegalStateException(
+                error + " at " + INSTRUCTION_SIZE * index + ".");
+
+        return opcode;
+    }
+
+    /**
+     * Charges the costs of a sequence of instructions that are executed one
+     * after the other to the current ant, provided that neither the energy
+     * left in the current cycle nor the energy of the ant runs out before
+     * the last of them.  In this case, charging the instructions one by one
+     * with {@link #chargeEnergy(short)} would neither end the cycle nor
+     * convert food, so both ways have the same effect.
+     *
+     * @param costs The summed costs of the instructions.
+     * @param length The number of instructions.
+     * @return True if the instructions have been charged, false if they
+     *         must be charged one by one.
+     */
+    protected boolean chargeBlock(int costs, int length) {
+
+        if (energyLeft < costs || variables[varBase + Ant.MY_ENERGY] < costs)
+            return false;
+
+        energyLeft -= costs;
+        variables[varBase + Ant.MY_ENERGY] -= costs;
+        instructions += length;
+        return true;
+    }
+
+    /**
+     * Charges the costs of an instruction to the current ant.  If the ant has
+     * not enough energy left, food from its backpack is converted to energy.
+     * If this is not possible either, the ant dies.
+     *
+     * @param instructionCosts The costs of the instruction in energy units.
+     * @return True if the instruction can be executed; false if the energy
+     *         for the current cycle is used up or the ant has died.
+     */
+    protected boolean chargeEnergy(short instructionCosts) {
+
+        if (energyLeft < instructionCosts)
+            return false;
+
+        if (variables[varBase + Ant.MY_ENERGY] < instructionCosts) {
+
+            int energyNeeded =
+                (instructionCosts - variables[varBase + Ant.MY_ENERGY]);
+            int foodNeeded =
+                (energyNeeded + energyPerFood - 1) / energyPerFood;
+
+            if (variables[varBase + Ant.MY_FOOD] >= foodNeeded) {
+                variables[varBase + Ant.MY_FOOD] -= foodNeeded;
+                variables[varBase + Ant.MY_ENERGY] += foodNeeded * energyPerFood;
+            } else {
+                antDied = true;
+                return false;
             }
         }
 
-        if (antDied == false)
-            activeAnts.addLast(currentAnt);
-        else
-            playfield[currentAnt.getYPos()][currentAnt.getXPos()].ant = null;
+        energyLeft -= instructionCosts;
+        variables[varBase + Ant.MY_ENERGY] -= instructionCosts;
+        ++instructions;
+        return true;
+    }
+
+    /**
+     * Executes an instruction by invoking its handler from the {@link
+     * #instructionHandlers} table.
+     *
+     * @param opcode The opcode of the instruction.
+     */
+    protected void invokeInstructionHandler(short opcode) {
+
+        try {
+            instructionHandlers[opcode].invoke(this);
+        } catch (IllegalAccessException e) {
+            // This should not happen
+            System.exit(-1);
+        } catch (InvocationTargetException e) {
+            // This should not happen
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Executes an instruction by calling its handler directly.
+     *
+     * @param opcode The opcode of the instruction.
+     */
+    protected void executeInstruction(short opcode) {
+
+        switch (opcode) {
+            case Instruction.MAKE_ANT:      iMakeAnt(); break;
+            case Instruction.STONES:        iStones(); break;
+            case Instruction.OBSTACLES:     iObstacles(); break;
+            case Instruction.FOOD:          iFood(); break;
+            case Instruction.ANTS:          iAnts(); break;
+            case Instruction.MARKS:         iMarks(); break;
+            case Instruction.FOOD_AMOUNT:   iFoodAmount(); break;
+            case Instruction.STONE_NUMBER:  iStoneNumber(); break;
+            case Instruction.MARK_VALUE:    iMarkValue(); break;
+            case Instruction.MOVE:          iMove(); break;
+            case Instruction.GET_STONES:    iGetStones(); break;
+            case Instruction.GET_FOOD:      iGetFood(); break;
+            case Instruction.PUT_STONES:    iPutStones(); break;
+            case Instruction.PUT_FOOD:      iPutFood(); break;
+            case Instruction.SET_MARK:      iSetMark(); break;
+            case Instruction.CLEAR_MARK:    iClearMark(); break;
+            case Instruction.COPY:          iCopy(); break;
+            case Instruction.OR:            iOr(); break;
+            case Instruction.AND:           iAnd(); break;
+            case Instruction.XOR:           iXor(); break;
+            case Instruction.NOT:           iNot(); break;
+            case Instruction.BITS_TRUE:     iBitsTrue(); break;
+            case Instruction.BITS_FALSE:    iBitsFalse(); break;
+            case Instruction.ADD:           iAdd(); break;
+            case Instruction.SUB:           iSub(); break;
+            case Instruction.MULT:          iMult(); break;
+            case Instruction.DIV:           iDiv(); break;
+            case Instruction.NEG:           iNeg(); break;
+            case Instruction.EQUAL:         iEqual(); break;
+            case Instruction.NOT_EQUAL:     iNotEqual(); break;
+            case Instruction.LESS:          iLess(); break;
+            case Instruction.LESS_EQUAL:    iLessEqual(); break;
+            case Instruction.GREATER:       iGreater(); break;
+            case Instruction.GREATER_EQUAL: iGreaterEqual(); break;
+            case Instruction.GOTO:          iGoto(); break;
+            case Instruction.GOTO_IF:       iGotoIf(); break;
+            default:
+                throw new IllegalStateException(
+                    "Invalid instruction code: " + opcode + ".");
+        }
     }
 
     /**
@@ -716,7 +1691,7 @@ public class AntsVm extends Thread {
         if ((instruction & OP1_CONSTANT) != 0)
             return op1;
         else
-            return variables[op1];
+            return variables[varBase + op1];
     }
 
     /**
@@ -731,7 +1706,7 @@ public class AntsVm extends Thread {
         if ((instruction & OP2_CONSTANT) != 0)
             return op2;
         else
-            return variables[op2];
+            return variables[varBase + op2];
     }
 
     /**
@@ -743,7 +1718,18 @@ public class AntsVm extends Thread {
      */
     protected void setResult(short value) {
         if (result >= FIRST_USER_VAR)
-            variables[result] = value;
+            variables[varBase + result] = value;
+    }
+
+    /**
+     * Returns the backpack space of the current ant.  This is the number of
+     * stones or food items that can still be put on the ant.
+     *
+     * @return The number of free slots in the ant's backpack.
+     */
+    protected int getBackpackSpace() {
+        return currentClass.getBackpackSize() - variables[varBase + Ant.MY_FOOD]
+            - variables[varBase + Ant.MY_STONES];
     }
 
     /**
@@ -751,16 +1737,25 @@ public class AntsVm extends Thread {
      */
     protected void iMakeAnt() {
 
+        opMakeAnt(getOp1Value());
+        pc += INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Implements the <i>MakeAnt</i> instruction for the current ant.
+     *
+     * @param classId The id of the class of the ant to create.
+     */
+    protected void opMakeAnt(short classId) {
+
         if (currentClass == queenClasses[currentPlayer]) {
 
-            short classId = getOp1Value();
-            int x0 = currentAnt.getXPos();
-            int y0 = currentAnt.getYPos();
+            int x0 = antX;
+            int y0 = antY;
 
             int x = 0;
             int y = 0;
 
-            PlayfieldCell cell = null;
             boolean emptyCellFound = false;
 
             for (int i = 0; i < NUM_DIRECTIONS; i++) {
@@ -768,9 +1763,7 @@ public class AntsVm extends Thread {
                 x = x0 + NEAR_DIRECTION_X_INDEXES[i];
                 y = y0 + NEAR_DIRECTION_Y_INDEXES[i];
 
-                cell = getPlayfieldCell(x, y);
-
-                if (cell.isEmpty()) {
+                if (playfield.isEmpty(x, y)) {
                     emptyCellFound = true;
                     break;
                 }
@@ -781,20 +1774,16 @@ public class AntsVm extends Thread {
                 for (AntClass c: antClasses.get(currentPlayer)) {
 
                     if (c.getId() == classId) {
-                        short food = currentAnt.getFood();
+                        short food = variables[varBase + Ant.MY_FOOD];
                         if (food >= c.getBackpackSize()) {
-                            Ant newAnt = new Ant(c, x, y, currentAnt.getTribe(), initialEnergy);
-                            cell.ant = newAnt;
-                            activeAnts.addLast(newAnt);
-                            currentAnt.setFood((short) (food - c.getBackpackSize()));
+                            scheduler.add(placeAnt(c, x, y, antTribe));
+                            variables[varBase + Ant.MY_FOOD] = (short) (food - c.getBackpackSize());
                             break;
                         }
                     }
                 }
             }
         }
-
-        currentAnt.nextInstruction();
     }
 
     /**
@@ -802,25 +1791,20 @@ public class AntsVm extends Thread {
      */
     protected void iStones() {
 
-        short direction = getOp1Value();
-        int xpos = currentAnt.getXPos();
-        int ypos = currentAnt.getYPos();
-
-        short stones = 0;
-
-        for (int i = 0; i < DIRECTION_BITS; i++) {
-
-            int dx = DIRECTION_X_INDEXES[direction][i];
-            int dy = DIRECTION_Y_INDEXES[direction][i];
-
-            PlayfieldCell cell = getPlayfieldCell(xpos + dx, ypos + dy);
+        setResult(opStones(getOp1Value()));
+        pc += INSTRUCTION_SIZE;
+    }
 
-            if (cell.stones > 0)
-                stones = (short) (stones | (1 << i));
-        }
+    /**
+     * Implements the <i>Stones</i> instruction for the current ant.
+     *
+     * @param direction The direction to look at.
+     * @return The bit mask of the cells that contain stones.
+     */
+    protected short opStones(short direction) {
 
-        setResult(stones);
-        currentAnt.nextInstruction();
+        return playfield.senseStones(
+            antX, antY, direction);
     }
 
     /**
@@ -828,25 +1812,20 @@ public class AntsVm extends Thread {
      */
     protected void iObstacles() {
 
-        short direction = getOp1Value();
-        int xpos = currentAnt.getXPos();
-        int ypos = currentAnt.getYPos();
-
-        short obstacles = 0;
-
-        for (int i = 0; i < DIRECTION_BITS; i++) {
-
-            int dx = DIRECTION_X_INDEXES[direction][i];
-            int dy = DIRECTION_Y_INDEXES[direction][i];
-
-            PlayfieldCell cell = getPlayfieldCell(xpos + dx, ypos + dy);
+        setResult(opObstacles(getOp1Value()));
+        pc += INSTRUCTION_SIZE;
+    }
 
-            if (!cell.isPassable)
-                obstacles = (short) (obstacles | (1 << i));
-        }
+    /**
+     * Implements the <i>Obstacles</i> instruction for the current ant.
+     *
+     * @param direction The direction to look at.
+     * @return The bit mask of the cells that are not passable.
+     */
+    protected short opObstacles(short direction) {
 
-        setResult(obstacles);
-        currentAnt.nextInstruction();
+        return playfield.senseObstacles(
+            antX, antY, direction);
     }
 
     /**
@@ -854,25 +1833,20 @@ public class AntsVm extends Thread {
      */
     protected void iFood() {
 
-        short direction = getOp1Value();
-        int xpos = currentAnt.getXPos();
-        int ypos = currentAnt.getYPos();
-
-        short food = 0;
-
-        for (int i = 0; i < DIRECTION_BITS; i++) {
-
-            int dx = DIRECTION_X_INDEXES[direction][i];
-            int dy = DIRECTION_Y_INDEXES[direction][i];
-
-            PlayfieldCell cell = getPlayfieldCell(xpos + dx, ypos + dy);
+        setResult(opFood(getOp1Value()));
+        pc += INSTRUCTION_SIZE;
+    }
 
-            if (cell.food > 0)
-                food = (short) (food | (1 << i));
-        }
+    /**
+     * Implements the <i>Food</i> instruction for the current ant.
+     *
+     * @param direction The direction to look at.
+     * @return The bit mask of the cells that contain food.
+     */
+    protected short opFood(short direction) {
 
-        setResult(food);
-        currentAnt.nextInstruction();
+        return playfield.senseFood(
+            antX, antY, direction);
     }
 
     /**
@@ -880,89 +1854,113 @@ public class AntsVm extends Thread {
      */
     protected void iAnts() {
 
-        short direction = getOp1Value();
-        short tribe = getOp2Value();
-        int xpos = currentAnt.getXPos();
-        int ypos = currentAnt.getYPos();
-
-        short ants = 0;
+        setResult(opAnts(getOp1Value(), getOp2Value()));
+        pc += INSTRUCTION_SIZE;
+    }
 
-        for (int i = 0; i < DIRECTION_BITS; i++) {
+    /**
+     * Implements the <i>Ants</i> instruction for the current ant.
+     *
+     * @param direction The direction to look at.
+     * @param tribe The tribe of the ants to look for.
+     * @return The bit mask of the cells where an ant of the given tribe
+     *         stands.
+     */
+    protected short opAnts(short direction, short tribe) {
 
-            int dx = DIRECTION_X_INDEXES[direction][i];
-            int dy = DIRECTION_Y_INDEXES[direction][i];
+        return playfield.senseAnts(antX, antY,
+            direction, tribe, antTribe);
+    }
 
-            PlayfieldCell cell = getPlayfieldCell(xpos + dx, ypos + dy);
+    /**
+     * The <i>Marks</i> instruction.
+     */
+    protected void iMarks() {
 
-            boolean antHere = false;
+        setResult(opMarks(getOp1Value(), getOp2Value()));
+        pc += INSTRUCTION_SIZE;
+    }
 
-            if (cell.ant != null) {
+    /**
+     * Implements the <i>Marks</i> instruction for the current ant.
+     *
+     * @param direction The direction to look at.
+     * @param tribe The tribe whose marks to look for.
+     * @return The bit mask of the cells that carry a mark of the given
+     *         tribe.
+     */
+    protected short opMarks(short direction, short tribe) {
 
-                if (tribe == Tribe.ANY)
-                    antHere = true;
-                else if (tribe == Tribe.OTHER)
-                    antHere = cell.ant.getTribe() != currentAnt.getTribe();
-                else if (tribe == Tribe.OUR)
-                    antHere = cell.ant.getTribe() == currentAnt.getTribe();
-                else
-                    antHere = cell.ant.getTribe() == tribe;
-            }
+        short bits = playfield.senseMarks(antX, antY,
+            direction, tribe, antTribe);
 
-            if (antHere == true)
-                ants = (short) (ants | (1 << i));
-        }
+        if (marksDecay && bits != 0)
+            bits = removeDecayedMarks(bits, direction, tribe);
 
-        setResult(ants);
-        currentAnt.nextInstruction();
+        return bits;
     }
 
     /**
-     * The <i>Marks</i> instruction.
+     * Clears the bits of the cells whose marks have decayed to zero from the
+     * result of a <i>Marks</i> instruction.  Only the cells whose bits are
+     * set are examined.
+     *
+     * @param bits The bit mask returned by the playfield.
+     * @param direction The direction to look at.
+     * @param tribe The tribe whose marks to look for.
+     * @return The bit mask of the cells that still carry a mark.
      */
-    protected void iMarks() {
+    private short removeDecayedMarks(short bits, short direction, short tribe) {
 
-        short direction = getOp1Value();
-        short tribe = getOp2Value();
-        int xpos = currentAnt.getXPos();
-        int ypos = currentAnt.getYPos();
+        int[] dx = DIRECTION_X_INDEXES[direction];
+        int[] dy = DIRECTION_Y_INDEXES[direction];
+        int result = bits;
 
-        short marks = 0;
+        for (int rest = bits; rest != 0; rest &= rest - 1) {
 
-        for (int i = 0; i < DIRECTION_BITS; i++) {
+            int i = Integer.numberOfTrailingZeros(rest);
+            int x = antX + dx[i];
+            int y = antY + dy[i];
+            boolean marked = false;
 
-            int dx = DIRECTION_X_INDEXES[direction][i];
-            int dy = DIRECTION_Y_INDEXES[direction][i];
+            for (int j = 0; j < numberOfPlayers && !marked; j++) {
+                if (Playfield.matchesTribe(j, tribe, antTribe))
+                    marked = decayMark(x, y, j, playfield.getMark(x, y, j)) != 0;
+            }
 
-            PlayfieldCell cell = getPlayfieldCell(xpos + dx, ypos + dy);
+            if (!marked)
+                result &= ~(1 << i);
+        }
 
-            boolean markHere = false;
+        return (short) result;
+    }
 
-            if (tribe == Tribe.ANY) {
-                for (int j = 0; j < numberOfPlayers; j++) {
-                    if (cell.marks[j] != 0) {
-                        markHere = true;
-                        break;
-                    }
-                }
-            } else if (tribe == Tribe.OTHER) {
-                for (int j = 0; j < numberOfPlayers; j++) {
-                    if (cell.marks[j] != 0 && j != currentAnt.getTribe()) {
-                        markHere = true;
-                        break;
-                    }
-                }
-            } else if (tribe == Tribe.OUR) {
-                markHere = cell.marks[currentAnt.getTribe()] != 0;
-            } else {
-                markHere = cell.marks[tribe] != 0;
-            }
+    /**
+     * Returns the value of a mark after it has decayed until the current
+     * cycle.  A mark loses half its value, rounded towards zero, each time
+     * the half-life of its tribe passes.  Marks are only decayed when they
+     * are read, so decay costs nothing for marks that no ant looks at.
+     * <p>
+     * In parallel execution mode, the current cycle of a worker is the
+     * first cycle of the round, so the result does not depend on the
+     * number of threads.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param tribe The index of the tribe.
+     * @param value The value of the mark when it was set.
+     * @return The value of the mark now.
+     */
+    private short decayMark(int x, int y, int tribe, short value) {
 
-            if (markHere == true)
-                marks = (short) (marks | (1 << i));
-        }
+        long halfLife = markHalfLives[tribe];
+
+        if (value == 0 || halfLife == 0)
+            return value;
 
-        setResult(marks);
-        currentAnt.nextInstruction();
+        long halvings = (cycles - playfield.getMarkTime(x, y, tribe)) / halfLife;
+
+        return halvings >= 16 ? 0 : (short) (value / (1 << halvings));
     }
 
     /**
@@ -970,12 +1968,22 @@ public class AntsVm extends Thread {
      */
     protected void iFoodAmount() {
 
-        short direction = getOp1Value();
-        int x = currentAnt.getXPos() + NEAR_DIRECTION_X_INDEXES[direction];
-        int y = currentAnt.getYPos() + NEAR_DIRECTION_Y_INDEXES[direction];
+        setResult(opFoodAmount(getOp1Value()));
+        pc += INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Implements the <i>FoodAmount</i> instruction for the current ant.
+     *
+     * @param direction The direction of the neighboring cell.
+     * @return The amount of food on the cell.
+     */
+    protected short opFoodAmount(short direction) {
 
-        setResult(getPlayfieldCell(x, y).food);
-        currentAnt.nextInstruction();
+        int x = antX + NEAR_DIRECTION_X_INDEXES[direction];
+        int y = antY + NEAR_DIRECTION_Y_INDEXES[direction];
+
+        return playfield.getFood(x, y);
     }
 
     /**
@@ -983,12 +1991,22 @@ public class AntsVm extends Thread {
      */
     protected void iStoneNumber() {
 
-        short direction = getOp1Value();
-        int x = currentAnt.getXPos() + NEAR_DIRECTION_X_INDEXES[direction];
-        int y = currentAnt.getYPos() + NEAR_DIRECTION_Y_INDEXES[direction];
+        setResult(opStoneNumber(getOp1Value()));
+        pc += INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Implements the <i>StoneNumber</i> instruction for the current ant.
+     *
+     * @param direction The direction of the neighboring cell.
+     * @return The number of stones on the cell.
+     */
+    protected short opStoneNumber(short direction) {
+
+        int x = antX + NEAR_DIRECTION_X_INDEXES[direction];
+        int y = antY + NEAR_DIRECTION_Y_INDEXES[direction];
 
-        setResult(getPlayfieldCell(x, y).stones);
-        currentAnt.nextInstruction();
+        return playfield.getStones(x, y);
     }
 
     /**
@@ -996,13 +2014,25 @@ public class AntsVm extends Thread {
      */
     protected void iMarkValue() {
 
-        short direction = getOp1Value();
-        short tribe = getOp2Value();
-        int x = currentAnt.getXPos() + NEAR_DIRECTION_X_INDEXES[direction];
-        int y = currentAnt.getYPos() + NEAR_DIRECTION_Y_INDEXES[direction];
+        setResult(opMarkValue(getOp1Value(), getOp2Value()));
+        pc += INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Implements the <i>MarkValue</i> instruction for the current ant.
+     *
+     * @param direction The direction of the neighboring cell.
+     * @param tribe The tribe whose mark is read.
+     * @return The mark value of the tribe on the cell.
+     */
+    protected short opMarkValue(short direction, short tribe) {
+
+        int x = antX + NEAR_DIRECTION_X_INDEXES[direction];
+        int y = antY + NEAR_DIRECTION_Y_INDEXES[direction];
+
+        short value = playfield.getMark(x, y, tribe);
 
-        setResult(getPlayfieldCell(x, y).marks[tribe]);
-        currentAnt.nextInstruction();
+        return marksDecay ? decayMark(x, y, tribe, value) : value;
     }
 
     /**
@@ -1010,32 +2040,32 @@ public class AntsVm extends Thread {
      */
     protected void iMove() {
 
-        short direction = getOp1Value();
-        int x0 = currentAnt.getXPos();
-        int y0 = currentAnt.getYPos();
-        int x  = x0 + NEAR_DIRECTION_X_INDEXES[direction];
-        int y  = y0 + NEAR_DIRECTION_Y_INDEXES[direction];
-
-        if (x < 0)
-            x = (x % playfieldWidth) + playfieldWidth;
-        else if (x >= playfieldWidth)
-            x = x % playfieldWidth;
-
-        if (y < 0)
-            y = (y % playfieldHeight) + playfieldHeight;
-        else if (y >= playfieldHeight)
-            y = y % playfieldHeight;
-
-        if (getPlayfieldCell(x, y).isEmpty()) {
-            getPlayfieldCell(x, y).ant = currentAnt;
-            getPlayfieldCell(x0, y0).ant = null;
-            currentAnt.setPos(x, y);
-            setResult((short) 0);
+        setResult(opMove(getOp1Value()));
+        pc += INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Implements the <i>Move</i> instruction for the current ant.
+     *
+     * @param direction The direction to move to.
+     * @return 0 if the ant has moved, 1 if the target cell is blocked.
+     */
+    protected short opMove(short direction) {
+
+        int x0 = antX;
+        int y0 = antY;
+        int x  = playfield.wrapX(x0 + NEAR_DIRECTION_X_INDEXES[direction]);
+        int y  = playfield.wrapY(y0 + NEAR_DIRECTION_Y_INDEXES[direction]);
+
+        if (playfield.isEmpty(x, y)) {
+            playfield.clearAnt(x0, y0);
+            playfield.setAnt(x, y, currentSlot, antTribe);
+            antX = x;
+            antY = y;
+            return 0;
         } else {
-            setResult((short) 1);
+            return 1;
         }
-
-        currentAnt.nextInstruction();
     }
 
     /**
@@ -1043,24 +2073,35 @@ public class AntsVm extends Thread {
      */
     protected void iGetStones() {
 
-        short direction = getOp1Value();
-        short stonesToGet = getOp2Value();
-        int x = currentAnt.getXPos() + NEAR_DIRECTION_X_INDEXES[direction];
-        int y = currentAnt.getYPos() + NEAR_DIRECTION_Y_INDEXES[direction];;
+        setResult(opGetStones(getOp1Value(), getOp2Value()));
+        pc += INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Implements the <i>GetStones</i> instruction for the current ant.
+     *
+     * @param direction The direction of the neighboring cell.
+     * @param stonesToGet The number of stones to pick up.
+     * @return 0 if all stones have been picked up, 1 otherwise.
+     */
+    protected short opGetStones(short direction, short stonesToGet) {
 
-        PlayfieldCell cell = getPlayfieldCell(x, y);
+        int x = antX + NEAR_DIRECTION_X_INDEXES[direction];
+        int y = antY + NEAR_DIRECTION_Y_INDEXES[direction];
+        short stones = playfield.getStones(x, y);
+        short status;
 
-        if (stonesToGet > cell.stones ||
-            stonesToGet > currentAnt.getBackpackSpace()) {
-            stonesToGet = (short) Math.min(cell.stones, currentAnt.getBackpackSpace());
-            setResult((short) 1);
+        if (stonesToGet > stones ||
+            stonesToGet > getBackpackSpace()) {
+            stonesToGet = (short) Math.min(stones, getBackpackSpace());
+            status = 1;
         } else {
-            setResult((short) 0);
+            status = 0;
         }
 
-        cell.stones -= stonesToGet;
-        variables[Ant.MY_STONES] += stonesToGet;
-        currentAnt.nextInstruction();
+        playfield.setStones(x, y, (short) (stones - stonesToGet));
+        variables[varBase + Ant.MY_STONES] += stonesToGet;
+        return status;
     }
 
     /**
@@ -1068,24 +2109,35 @@ public class AntsVm extends Thread {
      */
     protected void iGetFood() {
 
-        short direction = getOp1Value();
-        short foodToGet = getOp2Value();
-        int x = currentAnt.getXPos() + NEAR_DIRECTION_X_INDEXES[direction];
-        int y = currentAnt.getYPos() + NEAR_DIRECTION_Y_INDEXES[direction];
+        setResult(opGetFood(getOp1Value(), getOp2Value()));
+        pc += INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Implements the <i>GetFood</i> instruction for the current ant.
+     *
+     * @param direction The direction of the neighboring cell.
+     * @param foodToGet The amount of food to pick up.
+     * @return 0 if all food has been picked up, 1 otherwise.
+     */
+    protected short opGetFood(short direction, short foodToGet) {
 
-        PlayfieldCell cell = getPlayfieldCell(x, y);
+        int x = antX + NEAR_DIRECTION_X_INDEXES[direction];
+        int y = antY + NEAR_DIRECTION_Y_INDEXES[direction];
+        short food = playfield.getFood(x, y);
+        short status;
 
-        if (foodToGet > cell.food ||
-            foodToGet > currentAnt.getBackpackSpace()) {
-            foodToGet = (short) Math.min(cell.food, currentAnt.getBackpackSpace());
-            setResult((short) 1);
+        if (foodToGet > food ||
+            foodToGet > getBackpackSpace()) {
+            foodToGet = (short) Math.min(food, getBackpackSpace());
+            status = 1;
         } else {
-            setResult((short) 0);
+            status = 0;
         }
 
-        cell.food -= foodToGet;
-        variables[Ant.MY_FOOD] += foodToGet;
-        currentAnt.nextInstruction();
+        playfield.setFood(x, y, (short) (food - foodToGet));
+        variables[varBase + Ant.MY_FOOD] += foodToGet;
+        return status;
     }
 
     /**
@@ -1093,27 +2145,38 @@ public class AntsVm extends Thread {
      */
     protected void iPutStones() {
 
-        short direction = getOp1Value();
-        short stonesToPut = getOp2Value();
-        int x = currentAnt.getXPos() + NEAR_DIRECTION_X_INDEXES[direction];
-        int y = currentAnt.getYPos() + NEAR_DIRECTION_Y_INDEXES[direction];;
+        setResult(opPutStones(getOp1Value(), getOp2Value()));
+        pc += INSTRUCTION_SIZE;
+    }
 
-        PlayfieldCell cell = getPlayfieldCell(x, y);
+    /**
+     * Implements the <i>PutStones</i> instruction for the current ant.
+     *
+     * @param direction The direction of the neighboring cell.
+     * @param stonesToPut The number of stones to put down.
+     * @return 0 if all stones have been put down, 1 otherwise.
+     */
+    protected short opPutStones(short direction, short stonesToPut) {
 
-        if (cell.isPassable && cell.ant == null && cell.food == 0) {
-            if (stonesToPut > variables[Ant.MY_STONES]) {
-                stonesToPut = variables[Ant.MY_STONES];
-                setResult((short) 1);
+        int x = antX + NEAR_DIRECTION_X_INDEXES[direction];
+        int y = antY + NEAR_DIRECTION_Y_INDEXES[direction];
+        short status;
+
+        if (playfield.isPassable(x, y) && playfield.getAnt(x, y) == Playfield.NO_ANT
+            && playfield.getFood(x, y) == 0) {
+            if (stonesToPut > variables[varBase + Ant.MY_STONES]) {
+                stonesToPut = variables[varBase + Ant.MY_STONES];
+                status = 1;
             } else {
-                setResult((short) 0);
+                status = 0;
             }
-            variables[Ant.MY_STONES] -= stonesToPut;
-            cell.stones += stonesToPut;
+            variables[varBase + Ant.MY_STONES] -= stonesToPut;
+            playfield.setStones(x, y, (short) (playfield.getStones(x, y) + stonesToPut));
         } else {
-            setResult((short) 1);
+            status = 1;
         }
 
-        currentAnt.nextInstruction();
+        return status;
     }
 
     /**
@@ -1121,27 +2184,38 @@ public class AntsVm extends Thread {
      */
     protected void iPutFood() {
 
-        short direction = getOp1Value();
-        short foodToPut = getOp2Value();
-        int x = currentAnt.getXPos() + NEAR_DIRECTION_X_INDEXES[direction];
-        int y = currentAnt.getYPos() + NEAR_DIRECTION_Y_INDEXES[direction];;
+        setResult(opPutFood(getOp1Value(), getOp2Value()));
+        pc += INSTRUCTION_SIZE;
+    }
 
-        PlayfieldCell cell = getPlayfieldCell(x, y);
+    /**
+     * Implements the <i>PutFood</i> instruction for the current ant.
+     *
+     * @param direction The direction of the neighboring cell.
+     * @param foodToPut The amount of food to put down.
+     * @return 0 if all food has been put down, 1 otherwise.
+     */
+    protected short opPutFood(short direction, short foodToPut) {
 
-        if (cell.isPassable && cell.ant == null && cell.stones == 0) {
-            if (foodToPut > variables[Ant.MY_FOOD]) {
-                foodToPut = variables[Ant.MY_FOOD];
-                setResult((short) 1);
+        int x = antX + NEAR_DIRECTION_X_INDEXES[direction];
+        int y = antY + NEAR_DIRECTION_Y_INDEXES[direction];
+        short status;
+
+        if (playfield.isPassable(x, y) && playfield.getAnt(x, y) == Playfield.NO_ANT
+            && playfield.getStones(x, y) == 0) {
+            if (foodToPut > variables[varBase + Ant.MY_FOOD]) {
+                foodToPut = variables[varBase + Ant.MY_FOOD];
+                status = 1;
             } else {
-                setResult((short) 0);
+                status = 0;
             }
-            variables[Ant.MY_FOOD] -= foodToPut;
-            cell.food += foodToPut;
+            variables[varBase + Ant.MY_FOOD] -= foodToPut;
+            playfield.setFood(x, y, (short) (playfield.getFood(x, y) + foodToPut));
         } else {
-            setResult((short) 1);
+            status = 1;
         }
 
-        currentAnt.nextInstruction();
+        return status;
     }
 
     /**
@@ -1149,15 +2223,25 @@ public class AntsVm extends Thread {
      */
     protected void iSetMark() {
 
-        short direction = getOp1Value();
-        short value = getOp2Value();
-        int x = currentAnt.getXPos() + NEAR_DIRECTION_X_INDEXES[direction];
-        int y = currentAnt.getYPos() + NEAR_DIRECTION_Y_INDEXES[direction];;
+        opSetMark(getOp1Value(), getOp2Value());
+        pc += INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Implements the <i>SetMark</i> instruction for the current ant.
+     *
+     * @param direction The direction of the neighboring cell.
+     * @param value The new mark value.
+     */
+    protected void opSetMark(short direction, short value) {
+
+        int x = antX + NEAR_DIRECTION_X_INDEXES[direction];
+        int y = antY + NEAR_DIRECTION_Y_INDEXES[direction];
 
-        PlayfieldCell cell = getPlayfieldCell(x, y);
-        cell.marks[currentAnt.getTribe()] = value;
+        playfield.setMark(x, y, antTribe, value);
 
-        currentAnt.nextInstruction();
+        if (marksDecay)
+            playfield.setMarkTime(x, y, antTribe, cycles);
     }
 
     /**
@@ -1165,14 +2249,21 @@ public class AntsVm extends Thread {
      */
     protected void iClearMark() {
 
-        short direction = getOp1Value();
-        int x = currentAnt.getXPos() + NEAR_DIRECTION_X_INDEXES[direction];
-        int y = currentAnt.getYPos() + NEAR_DIRECTION_Y_INDEXES[direction];;
+        opClearMark(getOp1Value());
+        pc += INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Implements the <i>ClearMark</i> instruction for the current ant.
+     *
+     * @param direction The direction of the neighboring cell.
+     */
+    protected void opClearMark(short direction) {
 
-        PlayfieldCell cell = getPlayfieldCell(x, y);
-        cell.marks[currentAnt.getTribe()] = 0;
+        int x = antX + NEAR_DIRECTION_X_INDEXES[direction];
+        int y = antY + NEAR_DIRECTION_Y_INDEXES[direction];
 
-        currentAnt.nextInstruction();
+        playfield.setMark(x, y, antTribe, (short) 0);
     }
 
     /**
@@ -1181,7 +2272,7 @@ public class AntsVm extends Thread {
     protected void iCopy() {
 
         setResult(getOp1Value());
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1192,7 +2283,7 @@ public class AntsVm extends Thread {
         short x = getOp1Value();
         short y = getOp2Value();
         setResult((short) (x | y));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1203,7 +2294,7 @@ public class AntsVm extends Thread {
         short x = getOp1Value();
         short y = getOp2Value();
         setResult((short) (x & y));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1214,7 +2305,7 @@ public class AntsVm extends Thread {
         short x = getOp1Value();
         short y = getOp2Value();
         setResult((short) (x ^ y));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1224,7 +2315,7 @@ public class AntsVm extends Thread {
 
         short x = getOp1Value();
         setResult((short) (~x));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1239,7 +2330,7 @@ public class AntsVm extends Thread {
                 ++bits;
         }
         setResult(bits);
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1254,7 +2345,7 @@ public class AntsVm extends Thread {
                 ++bits;
         }
         setResult(bits);
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1265,7 +2356,7 @@ public class AntsVm extends Thread {
         short v1 = getOp1Value();
         short v2 = getOp2Value();
         setResult((short) (v1 + v2));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1276,7 +2367,7 @@ public class AntsVm extends Thread {
         short v1 = getOp1Value();
         short v2 = getOp2Value();
         setResult((short) (v1 - v2));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1287,7 +2378,7 @@ public class AntsVm extends Thread {
         short v1 = getOp1Value();
         short v2 = getOp2Value();
         setResult((short) (v1 * v2));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1298,7 +2389,7 @@ public class AntsVm extends Thread {
         short v1 = getOp1Value();
         short v2 = getOp2Value();
         setResult((short) (v1 / v2));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1308,7 +2399,7 @@ public class AntsVm extends Thread {
 
         short v1 = getOp1Value();
         setResult((short) (-v1));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1319,7 +2410,7 @@ public class AntsVm extends Thread {
         short v1 = getOp1Value();
         short v2 = getOp2Value();
         setResult((short) (v1 == v2 ? 1 : 0));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1330,7 +2421,7 @@ public class AntsVm extends Thread {
         short v1 = getOp1Value();
         short v2 = getOp2Value();
         setResult((short) (v1 != v2 ? 1 : 0));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1341,7 +2432,7 @@ public class AntsVm extends Thread {
         short v1 = getOp1Value();
         short v2 = getOp2Value();
         setResult((short) (v1 < v2 ? 1 : 0));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1352,7 +2443,7 @@ public class AntsVm extends Thread {
         short v1 = getOp1Value();
         short v2 = getOp2Value();
         setResult((short) (v1 <= v2 ? 1 : 0));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1363,7 +2454,7 @@ public class AntsVm extends Thread {
         short v1 = getOp1Value();
         short v2 = getOp2Value();
         setResult((short) (v1 > v2 ? 1 : 0));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1374,7 +2465,7 @@ public class AntsVm extends Thread {
         short v1 = getOp1Value();
         short v2 = getOp2Value();
         setResult((short) (v1 >= v2 ? 1 : 0));
-        currentAnt.nextInstruction();
+        pc += INSTRUCTION_SIZE;
     }
 
     /**
@@ -1383,7 +2474,7 @@ public class AntsVm extends Thread {
     protected void iGoto() {
 
         short address = getOp1Value();
-        currentAnt.setPC(INSTRUCTION_SIZE * address);
+        pc = INSTRUCTION_SIZE * address;
     }
 
     /**
@@ -1395,8 +2486,8 @@ public class AntsVm extends Thread {
         short cond = getOp2Value();
 
         if (cond != 0)
-            currentAnt.setPC(INSTRUCTION_SIZE * address);
+            pc = INSTRUCTION_SIZE * address;
         else
-            currentAnt.nextInstruction();
+            pc += INSTRUCTION_SIZE;
     }
 }
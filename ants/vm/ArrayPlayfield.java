@@ -0,0 +1,430 @@
+package ants.vm;
+
+/**
+ * The <code>ArrayPlayfield</code> class stores the playfield in flat arrays
+ * of primitive values, with one element per cell and property.  The cells
+ * are stored row by row, so the cell at (<i>x</i>, <i>y</i>) has the index
+ * <i>y</i> * <i>width</i> + <i>x</i>.
+ * <p>
+ * Since only a small part of the cells ever carries a mark, the marks are
+ * stored sparsely, in pages of {@link #MARK_PAGE_SIZE} neighboring cells of
+ * a row.  A page is allocated when a mark is set on one of its cells for
+ * the first time.  The marks of all tribes for a cell are stored next to
+ * each other.  Pages never span two rows, so threads that work on
+ * different rows can set marks at the same time.
+ * <p>
+ * Compared with a matrix of {@link PlayfieldCell} objects, this layout needs
+ * no object per cell, and the cells examined by the sensing instructions lie
+ * close to each other in memory.
+ * <p>
+ * In addition, the playfield keeps a {@link Bitboard} for each property that
+ * the sensing instructions look at: stones, food, obstacles, and the ants
+ * and marks of each tribe.  The bitboards are updated whenever a cell
+ * changes, and the sensing methods answer from them in constant time.
+ */
+public class ArrayPlayfield extends Playfield {
+
+    /**
+     * One bit per cell, set if the cell is passable.
+     */
+    final long[] passable;
+
+    final short[] stones;
+    final short[] food;
+    final int[] ants;
+    final byte[] antTribes;
+    /**
+     * The binary logarithm of the number of cells per page of marks.
+     */
+    static final int MARK_PAGE_BITS = 4;
+
+    /**
+     * The number of cells per page of marks.
+     */
+    static final int MARK_PAGE_SIZE = 1 << MARK_PAGE_BITS;
+
+    private static final int MARK_PAGE_MASK = MARK_PAGE_SIZE - 1;
+
+    private final int markPagesPerRow;
+    private final short[][] markPages;
+    private long[][] markTimePages;
+
+    private final Bitboard stoneBoard;
+    private final Bitboard foodBoard;
+    private final Bitboard obstacleBoard;
+    private final Bitboard[] antBoards;
+    private final Bitboard[] markBoards;
+
+    /**
+     * Creates a new playfield.  Initially, all cells are unpassable and
+     * empty.
+     *
+     * @param numberOfPlayers The number of players.
+     * @param width The number of cells in horizontal direction.
+     * @param height The number of cells in vertical direction.
+     */
+    public ArrayPlayfield(int numberOfPlayers, int width, int height) {
+        this(numberOfPlayers, width, height, true);
+    }
+
+    /**
+     * Creates a new playfield, optionally without bitboards.  Playfields
+     * without bitboards are used as chunks of a {@link ChunkedPlayfield},
+     * which accesses their arrays directly and does not sense on them.
+     *
+     * @param numberOfPlayers The number of players.
+     * @param width The number of cells in horizontal direction.
+     * @param height The number of cells in vertical direction.
+     * @param bitboards Whether to keep bitboards for the sensing methods.
+     */
+    ArrayPlayfield(int numberOfPlayers, int width, int height, boolean bitboards) {
+
+        super(numberOfPlayers, width, height);
+
+        int size = width * height;
+
+        passable = new long[(size + 63) >>> 6];
+        stones = new short[size];
+        food = new short[size];
+        ants = new int[size];
+        antTribes = new byte[size];
+        markPagesPerRow = (width + MARK_PAGE_MASK) >>> MARK_PAGE_BITS;
+        markPages = new short[height * markPagesPerRow][];
+
+        if (bitboards) {
+
+            stoneBoard = new Bitboard(width, height, false);
+            foodBoard = new Bitboard(width, height, false);
+            obstacleBoard = new Bitboard(width, height, true);
+            antBoards = new Bitboard[numberOfPlayers];
+            markBoards = new Bitboard[numberOfPlayers];
+
+            for (int i = 0; i < numberOfPlayers; i++) {
+                antBoards[i] = new Bitboard(width, height, false);
+                markBoards[i] = new Bitboard(width, height, false);
+            }
+
+        } else {
+            stoneBoard = null;
+            foodBoard = null;
+            obstacleBoard = null;
+            antBoards = null;
+            markBoards = null;
+        }
+    }
+
+    /**
+     * Returns the array index of a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @return The index of the cell.
+     */
+    protected final int index(int x, int y) {
+        return wrapY(y) * width + wrapX(x);
+    }
+
+    /**
+     * Returns the index of the page of marks that contains a cell.
+     *
+     * @param x The wrapped position in x direction.
+     * @param y The wrapped position in y direction.
+     * @return The index of the page.
+     */
+    private int markPage(int x, int y) {
+        return y * markPagesPerRow + (x >>> MARK_PAGE_BITS);
+    }
+
+    /**
+     * Returns the index of the mark of a tribe on a cell within its page.
+     *
+     * @param x The wrapped position in x direction.
+     * @param tribe The index of the tribe.
+     * @return The index of the mark.
+     * @throws ArrayIndexOutOfBoundsException The tribe does not exist.
+     */
+    private int markOffset(int x, int tribe) {
+
+        if (tribe < 0 || tribe >= numberOfPlayers)
+            throw new ArrayIndexOutOfBoundsException(tribe);
+
+        return (x & MARK_PAGE_MASK) * numberOfPlayers + tribe;
+    }
+
+    /**
+     * Tests if the cell with a certain index is passable.
+     *
+     * @param cell The index of the cell.
+     * @return True if the cell is passable, false otherwise.
+     */
+    final boolean isPassable(int cell) {
+        return (passable[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Tests if the cell with a certain index is empty.
+     *
+     * @param cell The index of the cell.
+     * @return True if the cell is empty, false otherwise.
+     */
+    final boolean isEmpty(int cell) {
+        return stones[cell] == 0 && food[cell] == 0
+            && ants[cell] == NO_ANT && isPassable(cell);
+    }
+
+    public boolean isPassable(int x, int y) {
+        return isPassable(index(x, y));
+    }
+
+    public void setPassable(int x, int y, boolean value) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+
+        int cell = y * width + x;
+
+        if (value)
+            passable[cell >>> 6] |= 1L << cell;
+        else
+            passable[cell >>> 6] &= ~(1L << cell);
+
+        if (obstacleBoard != null)
+            obstacleBoard.set(x, y, !value);
+    }
+
+    public short getStones(int x, int y) {
+        return stones[index(x, y)];
+    }
+
+    public void setStones(int x, int y, short value) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+        stones[y * width + x] = value;
+
+        if (stoneBoard != null)
+            stoneBoard.set(x, y, value > 0);
+    }
+
+    public short getFood(int x, int y) {
+        return food[index(x, y)];
+    }
+
+    public long getFood() {
+
+        long total = 0;
+
+        for (short value: food)
+            total += value;
+
+        return total;
+    }
+
+    public void setFood(int x, int y, short value) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+        food[y * width + x] = value;
+
+        if (foodBoard != null)
+            foodBoard.set(x, y, value > 0);
+    }
+
+    public int getAnt(int x, int y) {
+        return ants[index(x, y)];
+    }
+
+    public int getAntTribe(int x, int y) {
+        return antTribes[index(x, y)];
+    }
+
+    public void setAnt(int x, int y, int slot, int tribe) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+
+        int cell = y * width + x;
+
+        if (antBoards != null) {
+            if (ants[cell] != NO_ANT)
+                antBoards[antTribes[cell]].set(x, y, false);
+            antBoards[tribe].set(x, y, true);
+        }
+
+        ants[cell] = slot;
+        antTribes[cell] = (byte) tribe;
+    }
+
+    public void clearAnt(int x, int y) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+
+        int cell = y * width + x;
+
+        if (antBoards != null && ants[cell] != NO_ANT)
+            antBoards[antTribes[cell]].set(x, y, false);
+
+        ants[cell] = NO_ANT;
+    }
+
+    public short getMark(int x, int y, int tribe) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+
+        int offset = markOffset(x, tribe);
+        short[] page = markPages[markPage(x, y)];
+
+        return page != null ? page[offset] : 0;
+    }
+
+    public void setMark(int x, int y, int tribe, short value) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+
+        int offset = markOffset(x, tribe);
+        int p = markPage(x, y);
+        short[] page = markPages[p];
+
+        if (page == null) {
+
+            if (value == 0)
+                return;
+
+            page = new short[MARK_PAGE_SIZE * numberOfPlayers];
+            markPages[p] = page;
+
+            if (markTimePages != null)
+                markTimePages[p] = new long[page.length];
+        }
+
+        page[offset] = value;
+
+        if (markBoards != null)
+            markBoards[tribe].set(x, y, value != 0);
+    }
+
+    /**
+     * Returns the number of pages of marks that have been allocated.
+     *
+     * @return The number of allocated pages.
+     */
+    int getMarkPageCount() {
+
+        int count = 0;
+
+        for (short[] page: markPages) {
+            if (page != null)
+                ++count;
+        }
+
+        return count;
+    }
+
+    public void recordMarkTimes() {
+
+        if (markTimePages != null)
+            return;
+
+        markTimePages = new long[markPages.length][];
+
+        for (int p = 0; p < markPages.length; p++) {
+            if (markPages[p] != null)
+                markTimePages[p] = new long[markPages[p].length];
+        }
+    }
+
+    public long getMarkTime(int x, int y, int tribe) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+
+        int offset = markOffset(x, tribe);
+        long[] page = markTimePages[markPage(x, y)];
+
+        return page != null ? page[offset] : 0;
+    }
+
+    public void setMarkTime(int x, int y, int tribe, long time) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+
+        int offset = markOffset(x, tribe);
+        long[] page = markTimePages[markPage(x, y)];
+
+        // Cells without a page carry no marks, so their time does not matter.
+        if (page != null)
+            page[offset] = time;
+    }
+
+    public boolean isEmpty(int x, int y) {
+        return isEmpty(index(x, y));
+    }
+
+    public short senseStones(int x, int y, int direction) {
+
+        if (stoneBoard == null)
+            return super.senseStones(x, y, direction);
+
+        return stoneBoard.sense(wrapX(x), wrapY(y), direction);
+    }
+
+    public short senseObstacles(int x, int y, int direction) {
+
+        if (obstacleBoard == null)
+            return super.senseObstacles(x, y, direction);
+
+        return obstacleBoard.sense(wrapX(x), wrapY(y), direction);
+    }
+
+    public short senseFood(int x, int y, int direction) {
+
+        if (foodBoard == null)
+            return super.senseFood(x, y, direction);
+
+        return foodBoard.sense(wrapX(x), wrapY(y), direction);
+    }
+
+    public short senseAnts(int x, int y, int direction, int tribe, int ownTribe) {
+
+        if (antBoards == null)
+            return super.senseAnts(x, y, direction, tribe, ownTribe);
+
+        int selected;
+
+        if (tribe == Tribe.ANY)
+            selected = (1 << numberOfPlayers) - 1;
+        else if (tribe == Tribe.OTHER)
+            selected = ((1 << numberOfPlayers) - 1) & ~(1 << ownTribe);
+        else if (tribe == Tribe.OUR)
+            selected = 1 << ownTribe;
+        else if (tribe >= 0 && tribe < numberOfPlayers)
+            selected = 1 << tribe;
+        else
+            selected = 0;
+
+        return Bitboard.sense(antBoards, selected, wrapX(x), wrapY(y), direction);
+    }
+
+    public short senseMarks(int x, int y, int direction, int tribe, int ownTribe) {
+
+        if (markBoards == null)
+            return super.senseMarks(x, y, direction, tribe, ownTribe);
+
+        int selected;
+
+        if (tribe == Tribe.ANY)
+            selected = (1 << numberOfPlayers) - 1;
+        else if (tribe == Tribe.OTHER)
+            selected = ((1 << numberOfPlayers) - 1) & ~(1 << ownTribe);
+        else if (tribe == Tribe.OUR)
+            selected = 1 << markOffset(0, ownTribe); // checks the tribe
+        else
+            selected = 1 << markOffset(0, tribe);
+
+        return Bitboard.sense(markBoards, selected, wrapX(x), wrapY(y), direction);
+    }
+}
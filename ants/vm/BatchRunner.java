@@ -0,0 +1,384 @@
+package ants.vm;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The <code>BatchRunner</code> class runs many independent simulations on a
+ * bounded number of threads and collects a summary of the outcome of each
+ * simulation.  All simulations take their ant classes from one {@link
+ * AntClassCache}, so each ant class file is read and prepared only once and
+ * its program is shared by all simulations.
+ * <p>
+ * The simulations are described by {@link Run} objects, which can be
+ * derived from a configuration file by setting or sweeping over the public
+ * fields of {@link Configuration}.  Runs derived by a sweep keep the seed of
+ * the run they are derived from, so they differ only in the swept field.
+ * The <code>main</code> method provides a command line interface for this.
+ */
+public class BatchRunner {
+
+    /**
+     * The <code>Run</code> class describes a single simulation.
+     */
+    public static class Run {
+
+        /**
+         * The name of the simulation, which is used in the results.
+         */
+        public String name;
+
+        /**
+         * The configuration of the simulation.
+         */
+        public Configuration config;
+
+        /**
+         * Creates a new <code>Run</code>.
+         *
+         * @param name The name of the simulation.
+         * @param config The configuration of the simulation.
+         */
+        public Run(String name, Configuration config) {
+            this.name = name;
+            this.config = config;
+        }
+    }
+
+    /**
+     * The <code>Result</code> class summarizes the outcome of a simulation.
+     */
+    public static class Result {
+
+        /**
+         * The name of the simulation.
+         */
+        public String name;
+
+        /**
+         * The seed of the simulation.
+         */
+        public long seed;
+
+        /**
+         * The state of the VM at the end of the simulation, or
+         * <code>null</code> if the simulation failed.
+         */
+        public AntsVm.VmState state;
+
+        /**
+         * The number of cycles that have been executed.
+         */
+        public long cycles;
+
+        /**
+         * The number of ants of each player at the end of the simulation.
+         */
+        public int[] ants;
+
+        /**
+         * The time that the simulation took in milliseconds.
+         */
+        public long time;
+
+        /**
+         * The exception that made the simulation fail, or <code>null</code>
+         * if the simulation succeeded.
+         */
+        public Throwable error;
+    }
+
+    private final int threads;
+    private final AntClassCache antClassCache = new AntClassCache();
+
+    /**
+     * Creates a new <code>BatchRunner</code>.
+     *
+     * @param threads The number of simulations that are run at the same
+     *                time.
+     */
+    public BatchRunner(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Runs a list of simulations and waits until all of them have finished.
+     * Each simulation runs until it is stopped by the simulation, so its
+     * configuration should limit the number of cycles.
+     *
+     * @param runs The simulations to run.
+     * @return The results of the simulations, in the order of the
+     *         simulations.
+     * @throws InterruptedException The thread was interrupted while waiting
+     *                              for the simulations.
+     */
+    public List<Result> run(List<Run> runs) throws InterruptedException {
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+
+            for (final Run r: runs) {
+                futures.add(pool.submit(new Callable<Result>() {
+                    public Result call() {
+                        return simulate(r);
+                    }
+                }));
+            }
+
+            List<Result> results = new ArrayList<>();
+
+            for (Future<Result> f: futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    // simulate() does not throw exceptions
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+
+            return results;
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a single simulation in the current thread.
+     *
+     * @param run The simulation to run.
+     * @return The result of the simulation.
+     */
+    public Result simulate(Run run) {
+
+        Result result = new Result();
+        result.name = run.name;
+        result.seed = run.config.seed;
+
+        long start = System.nanoTime();
+
+        try {
+            AntsVm vm = new AntsVm(run.config, antClassCache);
+
+            vm.step(Long.MAX_VALUE);
+
+            result.state = vm.getVmState();
+            result.cycles = vm.getCycles();
+            result.ants = new int[vm.getNumberOfPlayers()];
+
+            for (int i = 0; i < result.ants.length; i++)
+                result.ants[i] = vm.getNumberOfAnts(i);
+
+        } catch (Exception e) {
+            result.error = e;
+        }
+
+        result.time = (System.nanoTime() - start) / 1000000;
+        return result;
+    }
+
+    /**
+     * Derives simulations from a list of simulations by assigning each of a
+     * list of values to a configuration field.
+     *
+     * @param runs The simulations to derive from.
+     * @param field The name of a public field of {@link Configuration}.
+     * @param values The values to assign.
+     * @return The derived simulations, one for each combination of a
+     *         simulation and a value.
+     * @throws IllegalArgumentException The field does not exist, or a value
+     *                                  is not valid for the field.
+     */
+    public static List<Run> sweep(List<Run> runs, String field, String[] values) {
+
+        List<Run> result = new ArrayList<>();
+
+        for (Run r: runs) {
+            for (String value: values) {
+                Configuration config = r.config.copy();
+                setField(config, field, value);
+                result.add(new Run(r.name + " " + field + "=" + value, config));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Sets a field of a configuration to a value given as a string.
+     *
+     * @param config The configuration.
+     * @param field The name of a public field of {@link Configuration}.
+     * @param value The value.
+     * @throws IllegalArgumentException The field does not exist, or the
+     *                                  value is not valid for the field.
+     */
+    public static void setField(Configuration config, String field, String value) {
+
+        try {
+            Field f = Configuration.class.getField(field);
+            Class<?> type = f.getType();
+
+            if (type == int.class)
+                f.setInt(config, Integer.parseInt(value));
+            else if (type == short.class)
+                f.setShort(config, Short.parseShort(value));
+            else if (type == long.class)
+                f.setLong(config, Long.parseLong(value));
+            else if (type == double.class)
+                f.setDouble(config, Double.parseDouble(value));
+            else if (type == boolean.class)
+                f.setBoolean(config, Boolean.parseBoolean(value));
+            else if (type == AntsVm.Engine.class)
+                f.set(config, AntsVm.Engine.valueOf(value.toUpperCase()));
+            else if (type == String.class)
+                f.set(config, value);
+            else
+                throw new IllegalArgumentException(
+                    "Field '" + field + "' cannot be set.");
+
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException(
+                "Unknown configuration field '" + field + "'.");
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(
+                "Field '" + field + "' cannot be set.");
+        }
+    }
+
+    /**
+     * Runs simulations from the command line.  For each configuration file,
+     * all combinations of the values given with <code>-sweep</code> options
+     * are simulated.  The result of each simulation is printed as a line of
+     * tab-separated values, followed by a summary of the throughput.
+     *
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        long cycles = 1000000;
+        int repeat = 1;
+        String dataPath = null;
+        Map<String, String> settings = new LinkedHashMap<>();
+        Map<String, String[]> sweeps = new LinkedHashMap<>();
+        List<String> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-threads"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-cycles"))
+                    cycles = Long.parseLong(args[++i]);
+                else if (args[i].equals("-repeat"))
+                    repeat = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-data"))
+                    dataPath = args[++i];
+                else if (args[i].equals("-set") || args[i].equals("-sweep")) {
+                    String[] assignment = args[i + 1].split("=", 2);
+                    if (args[i].equals("-set"))
+                        settings.put(assignment[0], assignment[1]);
+                    else
+                        sweeps.put(assignment[0], assignment[1].split(","));
+                    ++i;
+                } else
+                    files.add(args[i]);
+            }
+        } catch (RuntimeException e) {
+            files.clear();
+        }
+
+        if (files.isEmpty()) {
+            System.out.println(
+                "Usage: java ants.vm.BatchRunner [options] [configuration files ...]\n" +
+                "  -threads n            number of simulations run at the same time\n" +
+                "  -cycles n             maximum number of cycles per simulation\n" +
+                "  -repeat n             number of simulations with different seeds\n" +
+                "  -data path            directory of the ant class files\n" +
+                "  -set field=value      set a configuration field\n" +
+                "  -sweep field=v1,v2,.. simulate each value of a configuration field");
+            return;
+        }
+
+        List<Run> runs = new ArrayList<>();
+
+        try {
+            for (String file: files) {
+
+                Configuration config;
+
+                try (FileReader fr = new FileReader(file)) {
+                    config = new ConfigurationParser().readConfigFile(fr);
+                }
+
+                config.dataPath = dataPath != null ?
+                    dataPath : new File(file).getAbsoluteFile().getParent();
+                config.maxCycles = cycles;
+
+                for (Map.Entry<String, String> e: settings.entrySet())
+                    setField(config, e.getKey(), e.getValue());
+
+                if (repeat == 1) {
+                    runs.add(new Run(file, config));
+                } else {
+                    for (int i = 0; i < repeat; i++) {
+                        Configuration c = config.copy();
+                        c.seed = RandomStreams.derive(config.seed, i);
+                        runs.add(new Run(file + " #" + (i + 1), c));
+                    }
+                }
+            }
+
+            for (Map.Entry<String, String[]> e: sweeps.entrySet())
+                runs = sweep(runs, e.getKey(), e.getValue());
+
+        } catch (ConfigurationParser.SyntaxError e) {
+            System.out.println("Syntax error in configuration file: " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            System.out.println(
+                "Error while opening or reading configuration file: " +
+                e.getMessage() + ".");
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        BatchRunner runner = new BatchRunner(threads);
+        long start = System.nanoTime();
+        List<Result> results;
+
+        try {
+            results = runner.run(runs);
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (Result r: results) {
+
+            StringBuilder line = new StringBuilder(r.name);
+            line.append('\t').append(r.seed);
+
+            if (r.error != null) {
+                line.append("\tFAILED\t").append(r.error);
+            } else {
+                line.append('\t').append(r.state).append('\t').append(r.cycles);
+                for (int ants: r.ants)
+                    line.append('\t').append(ants);
+                line.append('\t').append(r.time).append(" ms");
+            }
+
+            System.out.println(line);
+        }
+
+        System.out.printf("%d simulations in %.1f s (%.0f simulations/hour)%n",
+            results.size(), seconds, results.size() * 3600 / seconds);
+    }
+}
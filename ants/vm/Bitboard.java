@@ -0,0 +1,219 @@
+package ants.vm;
+
+import java.util.*;
+
+/**
+ * The <code>Bitboard</code> class stores one bit per cell of a playfield,
+ * for example whether a cell contains stones.  Bitboards let the sensing
+ * instructions examine all 15 cells in a direction with a few table
+ * lookups instead of one probe per cell.
+ * <p>
+ * Every row of the playfield is stored in words of its own and is padded
+ * with copies of the {@link #RANGE} cells from the opposite border on both
+ * sides, so the 7 cells around any position of a row can be extracted from
+ * the row without wrapping.  Since no word holds bits of two rows, threads
+ * that work on different rows of the playfield can update a bitboard at
+ * the same time.
+ * <p>
+ * The cells that a sensing instruction examines lie in the square of 7 x 7
+ * cells around the ant.  For each direction and row of the square, a table
+ * maps the 7 bits of the row to the bits of the result mask, using the bit
+ * layout of {@link AntsVm#DIRECTION_X_INDEXES} and {@link
+ * AntsVm#DIRECTION_Y_INDEXES}.
+ */
+final class Bitboard {
+
+    /**
+     * The distance of the farthest cells that a sensing instruction
+     * examines.
+     */
+    static final int RANGE = 3;
+
+    private static final int WINDOW = 2 * RANGE + 1;
+    private static final int WINDOW_MASK = (1 << WINDOW) - 1;
+
+    /**
+     * The rows of the 7 x 7 square that contain cells of each direction.
+     */
+    private static final int[][] SENSE_ROWS;
+
+    /**
+     * The result bits for the cells of a row of the 7 x 7 square, indexed by
+     * direction, row, and the bits of the row.
+     */
+    private static final short[][][] SENSE_MASKS;
+
+    static {
+
+        int directions = AntsVm.DIRECTION_X_INDEXES.length;
+
+        SENSE_ROWS = new int[directions][];
+        SENSE_MASKS = new short[directions][WINDOW][1 << WINDOW];
+
+        for (int d = 0; d < directions; d++) {
+
+            boolean[] used = new boolean[WINDOW];
+            int rows = 0;
+
+            for (int i = 0; i < AntsVm.DIRECTION_BITS; i++) {
+
+                int row = AntsVm.DIRECTION_Y_INDEXES[d][i] + RANGE;
+                int column = AntsVm.DIRECTION_X_INDEXES[d][i] + RANGE;
+
+                for (int bits = 0; bits <= WINDOW_MASK; bits++) {
+                    if ((bits & (1 << column)) != 0)
+                        SENSE_MASKS[d][row][bits] |= 1 << i;
+                }
+
+                if (!used[row]) {
+                    used[row] = true;
+                    ++rows;
+                }
+            }
+
+            SENSE_ROWS[d] = new int[rows];
+
+            for (int row = 0, j = 0; row < WINDOW; row++) {
+                if (used[row])
+                    SENSE_ROWS[d][j++] = row;
+            }
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    /**
+     * Creates a new bitboard.
+     *
+     * @param width The number of cells in horizontal direction.
+     * @param height The number of cells in vertical direction.
+     * @param value The initial value of all bits.
+     */
+    Bitboard(int width, int height, boolean value) {
+
+        this.width = width;
+        this.height = height;
+
+        // One word more than needed, so a window never reads past a row.
+        wordsPerRow = ((width + 2 * RANGE) >>> 6) + 1;
+        words = new long[height * wordsPerRow];
+
+        if (value)
+            Arrays.fill(words, -1L);
+    }
+
+    /**
+     * Sets the bit of a cell.
+     *
+     * @param x The wrapped position in x direction.
+     * @param y The wrapped position in y direction.
+     * @param value The new value of the bit.
+     */
+    void set(int x, int y, boolean value) {
+
+        int row = y * wordsPerRow;
+
+        // The cell appears once more in the padding if it is close to a
+        // border, or several times on very narrow playfields.
+        for (int p = (x + RANGE) % width; p < width + 2 * RANGE; p += width) {
+            if (value)
+                words[row + (p >>> 6)] |= 1L << p;
+            else
+                words[row + (p >>> 6)] &= ~(1L << p);
+        }
+    }
+
+    /**
+     * Returns the bits of the 7 cells of a row around a position.  Bit
+     * <i>i</i> belongs to the cell at <i>x</i> - 3 + <i>i</i>.
+     *
+     * @param x The wrapped position in x direction.
+     * @param y The wrapped position in y direction.
+     * @return The bits of the cells.
+     */
+    int getWindow(int x, int y) {
+
+        int word = y * wordsPerRow + (x >>> 6);
+        int shift = x & 63;
+        long bits = words[word] >>> shift;
+
+        if (shift > 64 - WINDOW)
+            bits |= words[word + 1] << (64 - shift);
+
+        return (int) bits & WINDOW_MASK;
+    }
+
+    /**
+     * Returns the cells in a certain direction from a position whose bits
+     * are set.
+     *
+     * @param x The wrapped position in x direction.
+     * @param y The wrapped position in y direction.
+     * @param direction The direction to look at.
+     * @return The bit mask of the cells.
+     */
+    short sense(int x, int y, int direction) {
+
+        short[][] masks = SENSE_MASKS[direction];
+        int result = 0;
+
+        for (int row: SENSE_ROWS[direction])
+            result |= masks[row][getWindow(x, wrapRow(y + row - RANGE))];
+
+        return (short) result;
+    }
+
+    /**
+     * Returns the cells in a certain direction from a position whose bits
+     * are set in at least one of several bitboards of the same size.
+     *
+     * @param boards The bitboards.
+     * @param selected A bit mask of the bitboards to look at.  Bit <i>j</i>
+     *                 selects <code>boards[</code><i>j</i><code>]</code>.
+     * @param x The wrapped position in x direction.
+     * @param y The wrapped position in y direction.
+     * @param direction The direction to look at.
+     * @return The bit mask of the cells.
+     */
+    static short sense(Bitboard[] boards, int selected, int x, int y,
+                       int direction) {
+
+        short[][] masks = SENSE_MASKS[direction];
+        int result = 0;
+
+        if (selected == 0)
+            return 0;
+
+        for (int row: SENSE_ROWS[direction]) {
+
+            int y0 = boards[0].wrapRow(y + row - RANGE);
+            int bits = 0;
+
+            for (int j = 0; j < boards.length; j++) {
+                if ((selected & (1 << j)) != 0)
+                    bits |= boards[j].getWindow(x, y0);
+            }
+
+            result |= masks[row][bits];
+        }
+
+        return (short) result;
+    }
+
+    /**
+     * Wraps a row at the borders of the board.
+     */
+    private int wrapRow(int y) {
+
+        if (y < 0 || y >= height) {
+            y %= height;
+            if (y < 0)
+                y += height;
+        }
+
+        return y;
+    }
+}
@@ -0,0 +1,316 @@
+package ants.vm;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * The <code>ChunkedPlayfield</code> class stores the playfield in square
+ * chunks of {@link #CHUNK_SIZE} x {@link #CHUNK_SIZE} cells, which are
+ * allocated when one of their cells is accessed for the first time.  The
+ * initial contents of a chunk are generated by a {@link PlayfieldBuilder}
+ * from a random number generator that is seeded with the playfield seed and
+ * the chunk position, so a chunk looks the same no matter when or in which
+ * order it is created.
+ * <p>
+ * The memory used by this playfield grows with the area that the ants have
+ * actually explored, not with the nominal size of the playfield.  This makes
+ * playfields far larger than {@link AntsVm#MAX_PLAYFIELD_SIZE} possible.
+ * Within a chunk, the cells are stored in the same way as in an {@link
+ * ArrayPlayfield}.
+ */
+public class ChunkedPlayfield extends Playfield {
+
+    /**
+     * The binary logarithm of the chunk size.
+     */
+    public static final int CHUNK_BITS = 6;
+
+    /**
+     * The width and height of a chunk in cells.
+     */
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The rows of the chunk directory.  A row is allocated when the first
+     * chunk in it is created.  Each chunk is stored as an {@link
+     * ArrayPlayfield} of {@link #CHUNK_SIZE} x {@link #CHUNK_SIZE} cells.
+     */
+    private final AtomicReferenceArray<AtomicReferenceArray<ArrayPlayfield>> chunks;
+
+    private final int chunksPerRow;
+    private final PlayfieldBuilder builder;
+    private final long seed;
+    private volatile int residentChunks = 0;
+    private volatile boolean recordMarkTimes = false;
+
+    /**
+     * Creates a new playfield.  No chunks are allocated until they are
+     * accessed.
+     *
+     * @param numberOfPlayers The number of players.
+     * @param width The number of cells in horizontal direction.
+     * @param height The number of cells in vertical direction.
+     * @param builder The builder that initializes new chunks.
+     * @param seed The seed from which the contents of the chunks are
+     *             generated.
+     */
+    public ChunkedPlayfield(int numberOfPlayers, int width, int height,
+                            PlayfieldBuilder builder, long seed) {
+
+        super(numberOfPlayers, width, height);
+
+        this.builder = builder;
+        this.seed = seed;
+
+        chunksPerRow = (width + CHUNK_MASK) >>> CHUNK_BITS;
+        chunks = new AtomicReferenceArray<>((height + CHUNK_MASK) >>> CHUNK_BITS);
+    }
+
+    /**
+     * Returns the number of chunks that have been allocated so far.
+     *
+     * @return The number of allocated chunks.
+     */
+    public int getResidentChunks() {
+        return residentChunks;
+    }
+
+    public boolean isResident(int x, int y) {
+
+        AtomicReferenceArray<ArrayPlayfield> row =
+            chunks.get(wrapY(y) >>> CHUNK_BITS);
+
+        return row != null && row.get(wrapX(x) >>> CHUNK_BITS) != null;
+    }
+
+    /**
+     * Returns the chunk containing a cell, allocating and initializing the
+     * chunk if necessary.
+     *
+     * @param x The wrapped position in x direction.
+     * @param y The wrapped position in y direction.
+     * @return The chunk.
+     */
+    private ArrayPlayfield getChunk(int x, int y) {
+
+        AtomicReferenceArray<ArrayPlayfield> row = chunks.get(y >>> CHUNK_BITS);
+
+        if (row != null) {
+            ArrayPlayfield chunk = row.get(x >>> CHUNK_BITS);
+            if (chunk != null)
+                return chunk;
+        }
+
+        return createChunk(x >>> CHUNK_BITS, y >>> CHUNK_BITS);
+    }
+
+    /**
+     * Allocates and initializes a chunk.  Chunks are created under a lock,
+     * and a chunk is published only after it has been initialized, so
+     * several threads can access the playfield at the same time.
+     *
+     * @param cx The column of the chunk.
+     * @param cy The row of the chunk.
+     * @return The chunk.
+     */
+    private synchronized ArrayPlayfield createChunk(int cx, int cy) {
+
+        AtomicReferenceArray<ArrayPlayfield> row = chunks.get(cy);
+
+        if (row == null) {
+            row = new AtomicReferenceArray<>(chunksPerRow);
+            chunks.set(cy, row);
+        }
+
+        ArrayPlayfield chunk = row.get(cx);
+
+        if (chunk == null) {
+
+            chunk = new ArrayPlayfield(numberOfPlayers, CHUNK_SIZE, CHUNK_SIZE, false);
+
+            if (recordMarkTimes)
+                chunk.recordMarkTimes();
+
+            builder.initializeCells(chunk, new Random(getChunkSeed(cx, cy)), 0, 0,
+                Math.min(CHUNK_SIZE, width - (cx << CHUNK_BITS)),
+                Math.min(CHUNK_SIZE, height - (cy << CHUNK_BITS)));
+
+            row.set(cx, chunk);
+            ++residentChunks;
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Returns the seed for the contents of a chunk.
+     *
+     * @param cx The column of the chunk.
+     * @param cy The row of the chunk.
+     * @return The seed of the chunk.
+     */
+    private long getChunkSeed(int cx, int cy) {
+
+        return RandomStreams.derive(seed, ((long) cy << 32) | cx);
+    }
+
+    /**
+     * Returns the index of a cell within its chunk.
+     *
+     * @param x The wrapped position in x direction.
+     * @param y The wrapped position in y direction.
+     * @return The index of the cell.
+     */
+    private static int cellIndex(int x, int y) {
+        return ((y & CHUNK_MASK) << CHUNK_BITS) | (x & CHUNK_MASK);
+    }
+
+    public boolean isPassable(int x, int y) {
+        x = wrapX(x);
+        y = wrapY(y);
+        return getChunk(x, y).isPassable(cellIndex(x, y));
+    }
+
+    public void setPassable(int x, int y, boolean value) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+
+        ArrayPlayfield chunk = getChunk(x, y);
+        int cell = cellIndex(x, y);
+
+        if (value)
+            chunk.passable[cell >>> 6] |= 1L << cell;
+        else
+            chunk.passable[cell >>> 6] &= ~(1L << cell);
+    }
+
+    public short getStones(int x, int y) {
+        x = wrapX(x);
+        y = wrapY(y);
+        return getChunk(x, y).stones[cellIndex(x, y)];
+    }
+
+    public void setStones(int x, int y, short value) {
+        x = wrapX(x);
+        y = wrapY(y);
+        getChunk(x, y).stones[cellIndex(x, y)] = value;
+    }
+
+    public short getFood(int x, int y) {
+        x = wrapX(x);
+        y = wrapY(y);
+        return getChunk(x, y).food[cellIndex(x, y)];
+    }
+
+    public long getFood() {
+
+        long total = 0;
+
+        // Chunks that have not been allocated are not generated for this.
+        for (int cy = 0; cy < chunks.length(); cy++) {
+
+            AtomicReferenceArray<ArrayPlayfield> row = chunks.get(cy);
+
+            for (int cx = 0; row != null && cx < row.length(); cx++) {
+                if (row.get(cx) != null)
+                    total += row.get(cx).getFood();
+            }
+        }
+
+        return total;
+    }
+
+    public void setFood(int x, int y, short value) {
+        x = wrapX(x);
+        y = wrapY(y);
+        getChunk(x, y).food[cellIndex(x, y)] = value;
+    }
+
+    public int getAnt(int x, int y) {
+        x = wrapX(x);
+        y = wrapY(y);
+        return getChunk(x, y).ants[cellIndex(x, y)];
+    }
+
+    public int getAntTribe(int x, int y) {
+        x = wrapX(x);
+        y = wrapY(y);
+        return getChunk(x, y).antTribes[cellIndex(x, y)];
+    }
+
+    public void setAnt(int x, int y, int slot, int tribe) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+
+        ArrayPlayfield chunk = getChunk(x, y);
+        int cell = cellIndex(x, y);
+
+        chunk.ants[cell] = slot;
+        chunk.antTribes[cell] = (byte) tribe;
+    }
+
+    public void clearAnt(int x, int y) {
+        x = wrapX(x);
+        y = wrapY(y);
+        getChunk(x, y).ants[cellIndex(x, y)] = NO_ANT;
+    }
+
+    public short getMark(int x, int y, int tribe) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+        return getChunk(x, y).getMark(x & CHUNK_MASK, y & CHUNK_MASK, tribe);
+    }
+
+    public void setMark(int x, int y, int tribe, short value) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+        getChunk(x, y).setMark(x & CHUNK_MASK, y & CHUNK_MASK, tribe, value);
+    }
+
+    public synchronized void recordMarkTimes() {
+
+        recordMarkTimes = true;
+
+        for (int cy = 0; cy < chunks.length(); cy++) {
+
+            AtomicReferenceArray<ArrayPlayfield> row = chunks.get(cy);
+
+            for (int cx = 0; row != null && cx < row.length(); cx++) {
+                if (row.get(cx) != null)
+                    row.get(cx).recordMarkTimes();
+            }
+        }
+    }
+
+    public long getMarkTime(int x, int y, int tribe) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+        return getChunk(x, y).getMarkTime(x & CHUNK_MASK, y & CHUNK_MASK, tribe);
+    }
+
+    public void setMarkTime(int x, int y, int tribe, long time) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+        getChunk(x, y).setMarkTime(x & CHUNK_MASK, y & CHUNK_MASK, tribe, time);
+    }
+
+    public boolean isEmpty(int x, int y) {
+
+        x = wrapX(x);
+        y = wrapY(y);
+
+        ArrayPlayfield chunk = getChunk(x, y);
+        int cell = cellIndex(x, y);
+
+        return chunk.stones[cell] == 0 && chunk.food[cell] == 0
+            && chunk.ants[cell] == NO_ANT && chunk.isPassable(cell);
+    }
+}
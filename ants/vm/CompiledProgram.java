@@ -0,0 +1,181 @@
+package ants.vm;
+
+/**
+ * The <code>CompiledProgram</code> class is the base class of the Java
+ * classes that the {@link ProgramCompiler} generates from the programs of
+ * ant classes.  A compiled program executes the instructions of an ant
+ * directly as Java byte code, calling back into the {@link AntsVm} for all
+ * instructions that access the playfield.
+ * <p>
+ * Compiled programs do not hold any state, so a single instance can be used
+ * by any number of VMs.  The static methods of this class are the entry
+ * points into the VM for the generated code, which cannot access the
+ * non-public members of {@link AntsVm} itself.
+ */
+public abstract class CompiledProgram {
+
+    /**
+     * Creates a new <code>CompiledProgram</code>.
+     */
+    protected CompiledProgram() {
+    }
+
+    /**
+     * Executes the program for the current ant of a VM until the energy that
+     * the ant is given in the current cycle is used up or the ant dies.
+     *
+     * @param vm The VM that executes the current ant.
+     * @param variables The array that holds the variable frame of the
+     *                  current ant.
+     * @param base The index of the first variable of the frame.
+     * @param pc The program counter where the execution starts.
+     * @return The program counter of the first instruction that has not been
+     *         executed.
+     */
+    protected abstract int execute(AntsVm vm, short[] variables, int base, int pc);
+
+    /**
+     * Charges the costs of an instruction to the current ant of a VM.
+     *
+     * @param vm The VM that executes the current ant.
+     * @param costs The costs of the instruction in energy units.
+     * @return True if the instruction can be executed, false otherwise.
+     */
+    protected static boolean charge(AntsVm vm, int costs) {
+        return vm.chargeEnergy((short) costs);
+    }
+
+    /**
+     * Signals that the program counter has left the program.
+     *
+     * @param address The address of the instruction that does not exist.
+     * @return Never returns normally.
+     * @throws ArrayIndexOutOfBoundsException Always.
+     */
+    protected static int fault(int address) {
+        throw new ArrayIndexOutOfBoundsException(
+            "Program counter out of bounds: " + AntsVm.INSTRUCTION_SIZE * address);
+    }
+
+    /**
+     * Returns the number of bits set in the lower 16 bits of a value.
+     *
+     * @param value The value.
+     * @return The number of bits set.
+     */
+    protected static int bitsTrue(int value) {
+        return Integer.bitCount(value & 0xffff);
+    }
+
+    /**
+     * Executes the <i>MakeAnt</i> instruction.
+     */
+    protected static void makeAnt(AntsVm vm, int classId) {
+        vm.opMakeAnt((short) classId);
+    }
+
+    /**
+     * Executes the <i>Stones</i> instruction.
+     */
+    protected static int stones(AntsVm vm, int direction) {
+        return vm.opStones((short) direction);
+    }
+
+    /**
+     * Executes the <i>Obstacles</i> instruction.
+     */
+    protected static int obstacles(AntsVm vm, int direction) {
+        return vm.opObstacles((short) direction);
+    }
+
+    /**
+     * Executes the <i>Food</i> instruction.
+     */
+    protected static int food(AntsVm vm, int direction) {
+        return vm.opFood((short) direction);
+    }
+
+    /**
+     * Executes the <i>Ants</i> instruction.
+     */
+    protected static int ants(AntsVm vm, int direction, int tribe) {
+        return vm.opAnts((short) direction, (short) tribe);
+    }
+
+    /**
+     * Executes the <i>Marks</i> instruction.
+     */
+    protected static int marks(AntsVm vm, int direction, int tribe) {
+        return vm.opMarks((short) direction, (short) tribe);
+    }
+
+    /**
+     * Executes the <i>FoodAmount</i> instruction.
+     */
+    protected static int foodAmount(AntsVm vm, int direction) {
+        return vm.opFoodAmount((short) direction);
+    }
+
+    /**
+     * Executes the <i>StoneNumber</i> instruction.
+     */
+    protected static int stoneNumber(AntsVm vm, int direction) {
+        return vm.opStoneNumber((short) direction);
+    }
+
+    /**
+     * Executes the <i>MarkValue</i> instruction.
+     */
+    protected static int markValue(AntsVm vm, int direction, int tribe) {
+        return vm.opMarkValue((short) direction, (short) tribe);
+    }
+
+    /**
+     * Executes the <i>Move</i> instruction.
+     */
+    protected static int move(AntsVm vm, int direction) {
+        return vm.opMove((short) direction);
+    }
+
+    /**
+     * Executes the <i>GetStones</i> instruction.
+     */
+    protected static int getStones(AntsVm vm, int direction, int number) {
+        return vm.opGetStones((short) direction, (short) number);
+    }
+
+    /**
+     * Executes the <i>GetFood</i> instruction.
+     */
+    protected static int getFood(AntsVm vm, int direction, int amount) {
+        return vm.opGetFood((short) direction, (short) amount);
+    }
+
+    /**
+     * Executes the <i>PutStones</i> instruction.
+     */
+    protected static int putStones(AntsVm vm, int direction, int number) {
+        return vm.opPutStones((short) direction, (short) number);
+    }
+
+    /**
+     * Executes the <i>PutFood</i> instruction.
+     */
+    protected static int putFood(AntsVm vm, int direction, int amount) {
+        return vm.opPutFood((short) direction, (short) amount);
+    }
+
+    /**
+     * Executes the <i>SetMark</i> instruction.
+     */
+    protected static void setMark(AntsVm vm, int direction, int value) {
+        vm.opSetMark((short) direction, (short) value);
+    }
+
+    /**
+     * Executes the <i>ClearMark</i> instruction.
+     */
+    protected static void clearMark(AntsVm vm, int direction) {
+        vm.opClearMark((short) direction);
+    }
+}
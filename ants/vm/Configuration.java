@@ -6,7 +6,7 @@ import java.util.*;
  * The <code>Configuration</code> class stores the configuration data for an
  * {@link AntsVm} instance.
  */
-public class Configuration {
+public class Configuration implements Cloneable {
 
     /**
      * The <code>PlayerInfo</code> class stores the configuration data for a
@@ -25,6 +25,14 @@ public class Configuration {
          * binary ant file.
          */
         public List<String> classFiles = new ArrayList<>();
+
+        /**
+         * The number of cycles after which the marks of the player have
+         * decayed to half their value, or 0 if the marks do not decay.  A
+         * mark loses half its value, rounded towards zero, whenever this
+         * number of cycles has passed since it was set.
+         */
+        public long markHalfLife = 0;
     }
 
     /**
@@ -83,6 +91,13 @@ public class Configuration {
      */
     public short maxStonesPerCell = 20;
 
+    /**
+     * If the playfield should be split into chunks that are created when they
+     * are accessed for the first time.  Playfields wider or higher than
+     * {@link AntsVm#MAX_PLAYFIELD_SIZE} are always chunked.
+     */
+    public boolean chunkedPlayfield = false;
+
     /**
      * The number of milliseconds to sleep after the execution of a cycle.
      */
@@ -104,7 +119,65 @@ public class Configuration {
     public short energyPerFood = 1000;
 
     /**
-     * The rate of food regrowth.
+     * The rate of food regrowth.  This is the probability that food grows
+     * on a random cell after an ant's turn.
      */
     public double foodRegrowRate = 0.001;
+
+    /**
+     * The path of a {@link FoodRegrowthMap} relative to the data path, or
+     * <code>null</code> if food grows equally everywhere.  The regrowth rate
+     * of a cell is {@link #foodRegrowRate} multiplied by its factor in the
+     * map.
+     */
+    public String foodRegrowMap = null;
+
+    /**
+     * The path of an {@link AntClassArchive} relative to the data path, or
+     * <code>null</code>.  The class files of the players that the archive
+     * contains are taken from the archive; the others are read from the
+     * data path.
+     */
+    public String classArchive = null;
+
+    /**
+     * The engine used to execute the instructions of the ants.
+     */
+    public AntsVm.Engine engine = AntsVm.Engine.REFLECTIVE;
+
+    /**
+     * The number of threads that execute ants.  With more than one thread,
+     * the VM runs the ants in rounds, executing ants in distant parts of the
+     * playfield concurrently.
+     */
+    public int threads = 1;
+
+    /**
+     * The number of cycles after which the simulation ends, or 0 if the
+     * simulation runs until it is stopped or all ants have died.
+     */
+    public long maxCycles = 0;
+
+    /**
+     * The seed from which all random decisions of the simulation are
+     * derived: the contents of the playfield, the positions of the queens,
+     * and the regrowth of food.  Simulations with the same configuration and
+     * the same seed run identically.  Unless a seed is configured, a random
+     * one is chosen.
+     */
+    public long seed = new Random().nextLong();
+
+    /**
+     * Creates a copy of this configuration.  The copy shares the player
+     * configuration with this configuration.
+     *
+     * @return The copy.
+     */
+    public Configuration copy() {
+        try {
+            return (Configuration) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
 }
@@ -11,6 +11,8 @@ public class ConfigurationParser {
         }
     }
 
+    private static final int MAX_LINE_LENGTH = 8192;
+
     private Configuration config;
 
     private BufferedReader in;
@@ -67,7 +69,25 @@ public class ConfigurationParser {
         linePos = 0;
     }
 
-    protected Configuration readConfigFile(FileReader fr)
+    protected AntsVm.Engine parseEngine(String name) throws SyntaxError {
+
+        for (AntsVm.Engine e: AntsVm.Engine.values()) {
+            if (e.name().equalsIgnoreCase(name))
+                return e;
+        }
+
+        throw new SyntaxError("Unknown engine: '" + name + "'.");
+    }
+
+    /**
+     * Reads a configuration file.
+     *
+     * @param fr The reader of the file.
+     * @return The configuration.
+     * @throws IOException An I/O error occured while reading the file.
+     * @throws SyntaxError The file is not a valid configuration file.
+     */
+    public Configuration readConfigFile(FileReader fr)
         throws IOException, SyntaxError {
 
         in = new BufferedReader(fr);
@@ -122,6 +142,11 @@ public class ConfigurationParser {
                 getNextToken();
                 config.maxFoodPerCell = Short.parseShort(currentToken);
 
+            } else if (currentToken.equals("ChunkedPlayfield")) {
+                getToken("=");
+                getNextToken();
+                config.chunkedPlayfield = Boolean.parseBoolean(currentToken);
+
             } else if (currentToken.equals("SleepPerCycle")) {
                 getToken("=");
                 getNextToken();
@@ -147,6 +172,36 @@ public class ConfigurationParser {
                 getNextToken();
                 config.foodRegrowRate = Double.parseDouble(currentToken);
 
+            } else if (currentToken.equals("FoodRegrowMap")) {
+                getToken("=");
+                getNextToken();
+                config.foodRegrowMap = currentToken;
+
+            } else if (currentToken.equals("ClassArchive")) {
+                getToken("=");
+                getNextToken();
+                config.classArchive = currentToken;
+
+            } else if (currentToken.equals("Engine")) {
+                getToken("=");
+                getNextToken();
+                config.engine = parseEngine(currentToken);
+
+            } else if (currentToken.equals("Threads")) {
+                getToken("=");
+                getNextToken();
+                config.threads = Integer.parseInt(currentToken);
+
+            } else if (currentToken.equals("MaxCycles")) {
+                getToken("=");
+                getNextToken();
+                config.maxCycles = Long.parseLong(currentToken);
+
+            } else if (currentToken.equals("Seed")) {
+                getToken("=");
+                getNextToken();
+                config.seed = Long.parseLong(currentToken);
+
             } else if (currentToken.equals("PlayerConfig:")) {
                 globalConfig = false;
                 break;
@@ -179,6 +234,19 @@ public class ConfigurationParser {
             while (getNextToken())
                 info.classFiles.add(currentToken);
 
+            // The half-life of the marks is optional.
+            in.mark(MAX_LINE_LENGTH);
+            getNextLine();
+
+            if (currentLine != null && getNextToken()
+                && currentToken.equals("MarkHalfLife")) {
+                getToken("=");
+                getNextToken();
+                info.markHalfLife = Long.parseLong(currentToken);
+            } else {
+                in.reset();
+            }
+
             config.playerInfos[i] = info;
         }
 
@@ -0,0 +1,210 @@
+package ants.vm;
+
+/**
+ * The <code>DecodedProgram</code> class holds the program of an ant class in
+ * a pre-decoded form.  The program is decoded once when the ant class is
+ * loaded, so the interpreter does not need to separate the opcode from the
+ * operand flags, look up the energy costs, or check the result variable for
+ * every instruction it executes.
+ * <p>
+ * The decoded program stores one entry per instruction in a set of parallel
+ * arrays, which are indexed by the instruction index (the program counter
+ * divided by {@link AntsVm#INSTRUCTION_SIZE}).  Operands that the
+ * instruction does not use are turned into the constant 0, so they can be
+ * evaluated unconditionally.  The target of a <i>Goto</i> or <i>GotoIf</i>
+ * instruction is its first operand, which is already an instruction index.
+ * <p>
+ * For each instruction, the summed costs of the rest of its basic block are
+ * computed as well, so the interpreter can charge a whole block at once when
+ * the ant has enough energy for it.
+ * <p>
+ * The program is expected to have been checked by the {@link
+ * ProgramVerifier}.  Only the instructions that take a direction, tribe or
+ * jump target from a variable are marked for validation at run time; all
+ * other instructions are executed without any checks.
+ * <p>
+ * Decoded programs are immutable and can be shared by any number of VMs.
+ */
+public final class DecodedProgram {
+
+    /**
+     * The opcode that marks an invalid instruction.
+     */
+    public static final byte INVALID = -1;
+
+    /**
+     * The flag that is added to the opcodes of instructions whose operands
+     * must be validated when they are executed, see {@link
+     * ProgramVerifier#needsCheck(int, int)}.
+     */
+    public static final byte CHECKED = 0x40;
+
+    /**
+     * The opcodes of the instructions, without the operand flags, but with
+     * the {@link #CHECKED} flag where needed.
+     */
+    final byte[] opcodes;
+
+    /**
+     * The operand flags of the instructions.  These are the
+     * {@link AntsVm#OP1_CONSTANT} and {@link AntsVm#OP2_CONSTANT} bits.
+     */
+    final byte[] flags;
+
+    /**
+     * The result variables of the instructions, or -1 if the result of an
+     * instruction is discarded.
+     */
+    final short[] results;
+
+    /**
+     * The first operands of the instructions.  This is either a constant or
+     * a variable index, depending on the flags.
+     */
+    final short[] operands1;
+
+    /**
+     * The second operands of the instructions.  This is either a constant or
+     * a variable index, depending on the flags.
+     */
+    final short[] operands2;
+
+    /**
+     * The costs of the instructions in energy units.
+     */
+    final short[] costs;
+
+    /**
+     * The summed costs of each instruction and the instructions that follow
+     * it up to the end of its basic block.
+     */
+    final int[] blockCosts;
+
+    /**
+     * The number of instructions from each instruction up to the end of its
+     * basic block.
+     */
+    final int[] blockLengths;
+
+    /**
+     * Decodes a program.
+     *
+     * @param program The instruction stream of an ant class.
+     */
+    public DecodedProgram(short[] program) {
+
+        int size = program.length / AntsVm.INSTRUCTION_SIZE;
+
+        opcodes = new byte[size];
+        flags = new byte[size];
+        results = new short[size];
+        operands1 = new short[size];
+        operands2 = new short[size];
+        costs = new short[size];
+        blockCosts = new int[size];
+        blockLengths = new int[size];
+
+        for (int i = 0; i < size; i++) {
+
+            int pc = i * AntsVm.INSTRUCTION_SIZE;
+
+            short instruction = program[pc + AntsVm.OPCODE_OFFSET];
+            short result = program[pc + AntsVm.RESULT_OFFSET];
+            short op1 = program[pc + AntsVm.OP1_OFFSET];
+            short op2 = program[pc + AntsVm.OP2_OFFSET];
+
+            int opcode = instruction
+                & ~(AntsVm.OP1_CONSTANT | AntsVm.OP2_CONSTANT);
+
+            if (opcode < 0 || opcode >= AntsVm.NUM_INSTRUCTIONS) {
+                opcodes[i] = INVALID;
+                results[i] = -1;
+                flags[i] = (byte) (AntsVm.OP1_CONSTANT | AntsVm.OP2_CONSTANT);
+                continue;
+            }
+
+            int flag = instruction & (AntsVm.OP1_CONSTANT | AntsVm.OP2_CONSTANT);
+
+            if (getOperandCount(opcode) < 2) {
+                flag |= AntsVm.OP2_CONSTANT;
+                op2 = 0;
+            }
+
+            opcodes[i] = (byte) (ProgramVerifier.needsCheck(opcode, flag) ?
+                                 opcode | CHECKED : opcode);
+            flags[i] = (byte) flag;
+            results[i] = result >= AntsVm.FIRST_USER_VAR ? result : -1;
+            operands1[i] = op1;
+            operands2[i] = op2;
+            costs[i] = AntsVm.ENERGY_COSTS[opcode];
+        }
+
+        for (int i = size - 1; i >= 0; i--) {
+
+            blockCosts[i] = costs[i];
+            blockLengths[i] = 1;
+
+            if (i + 1 < size && !endsBlock(i)) {
+                blockCosts[i] += blockCosts[i + 1];
+                blockLengths[i] += blockLengths[i + 1];
+            }
+        }
+    }
+
+    /**
+     * Tests if an instruction is the last one of its basic block.  Besides
+     * the jumps, an instruction that reads <i>$MyEnergy</i> ends a block,
+     * because it must see the energy that is left after its own costs have
+     * been charged, but before the costs of the following instructions are.
+     *
+     * @param index The index of the instruction.
+     * @return True if the instruction ends its block.
+     */
+    private boolean endsBlock(int index) {
+
+        int opcode = opcodes[index] == INVALID ? INVALID : opcodes[index] & ~CHECKED;
+
+        return opcode == INVALID || opcode == Instruction.GOTO
+            || opcode == Instruction.GOTO_IF
+            || ((flags[index] & AntsVm.OP1_CONSTANT) == 0 && operands1[index] == Ant.MY_ENERGY)
+            || ((flags[index] & AntsVm.OP2_CONSTANT) == 0 && operands2[index] == Ant.MY_ENERGY);
+    }
+
+    /**
+     * Returns the number of instructions of the program.
+     *
+     * @return The number of instructions.
+     */
+    public int size() {
+        return opcodes.length;
+    }
+
+    /**
+     * Returns the number of operands that an instruction uses.
+     *
+     * @param opcode The opcode of the instruction.
+     * @return The number of operands, which is 1 or 2.
+     */
+    public static int getOperandCount(int opcode) {
+
+        switch (opcode) {
+            case Instruction.MAKE_ANT:
+            case Instruction.STONES:
+            case Instruction.OBSTACLES:
+            case Instruction.FOOD:
+            case Instruction.FOOD_AMOUNT:
+            case Instruction.STONE_NUMBER:
+            case Instruction.MOVE:
+            case Instruction.CLEAR_MARK:
+            case Instruction.COPY:
+            case Instruction.NOT:
+            case Instruction.BITS_TRUE:
+            case Instruction.BITS_FALSE:
+            case Instruction.NEG:
+            case Instruction.GOTO:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ants.vm;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The <code>FoodRegrowthMap</code> class describes how the regrowth of food
+ * varies across the playfield.  The map is a grid of non-negative factors
+ * that is stretched over the whole playfield, so every factor covers a
+ * rectangular area of cells.  Food grows on a cell with the configured
+ * regrowth rate multiplied by the factor of the cell.
+ * <p>
+ * A map is read from a text file with one row of factors per line, the
+ * factors separated by white space.  Empty lines and lines starting with
+ * <code>#</code> are ignored.  All rows must have the same number of
+ * factors.
+ */
+public class FoodRegrowthMap {
+
+    private final double[][] factors;
+    private final double maxFactor;
+
+    /**
+     * Creates a new map.
+     *
+     * @param factors The rows of factors.  The array is not copied.
+     * @throws IllegalArgumentException The map is empty, not rectangular,
+     *                                  or contains a negative factor.
+     */
+    public FoodRegrowthMap(double[][] factors) {
+
+        if (factors.length == 0 || factors[0].length == 0)
+            throw new IllegalArgumentException("Empty regrowth map.");
+
+        double max = 0;
+
+        for (double[] row: factors) {
+
+            if (row.length != factors[0].length)
+                throw new IllegalArgumentException("Regrowth map is not rectangular.");
+
+            for (double factor: row) {
+                if (!(factor >= 0))
+                    throw new IllegalArgumentException("Invalid regrowth factor: " + factor);
+                max = Math.max(max, factor);
+            }
+        }
+
+        this.factors = factors;
+        this.maxFactor = max;
+    }
+
+    /**
+     * Reads a map from a file.
+     *
+     * @param filename The path to the file.
+     * @return The map.
+     * @throws IOException An I/O error occured, or the file does not contain
+     *                     a valid map.
+     */
+    public static FoodRegrowthMap read(String filename) throws IOException {
+
+        List<double[]> rows = new ArrayList<>();
+
+        try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+
+            String line;
+
+            while ((line = in.readLine()) != null) {
+
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                String[] tokens = line.split("\\s+");
+                double[] row = new double[tokens.length];
+
+                for (int i = 0; i < tokens.length; i++)
+                    row[i] = Double.parseDouble(tokens[i]);
+
+                rows.add(row);
+            }
+
+            return new FoodRegrowthMap(rows.toArray(new double[rows.size()][]));
+
+        } catch (IllegalArgumentException e) {
+            throw new IOException(filename + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the factor of a cell.
+     *
+     * @param x The position in x direction, between 0 and the width.
+     * @param y The position in y direction, between 0 and the height.
+     * @param width The width of the playfield.
+     * @param height The height of the playfield.
+     * @return The regrowth factor of the cell.
+     */
+    public double getFactor(int x, int y, int width, int height) {
+
+        double[] row = factors[(int) ((long) y * factors.length / height)];
+        return row[(int) ((long) x * row.length / width)];
+    }
+
+    /**
+     * Returns the largest factor of the map.
+     *
+     * @return The largest factor.
+     */
+    public double getMaxFactor() {
+        return maxFactor;
+    }
+}
@@ -0,0 +1,249 @@
+package ants.vm;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The <code>HeadlessRunner</code> class runs a single simulation from the
+ * command line without a display.  It reads a configuration file, executes
+ * the VM synchronously in the current thread until a number of cycles has
+ * been executed or the simulation ends, and reports the progress of the
+ * simulation at regular intervals.
+ * <p>
+ * Every report is a line of tab-separated values: the number of cycles, the
+ * elapsed time, the throughput of the interval in ant turns and instructions
+ * per second, the number of ants and the food carried by them for each
+ * player, and the food on the playfield.  The first line names the columns,
+ * so the output can be loaded into a spreadsheet or a plotting tool.
+ */
+public class HeadlessRunner {
+
+    private final AntsVm vm;
+    private final String[] playerNames;
+    private final PrintStream out;
+
+    private long startTime;
+    private long lastTime;
+    private long lastCycles;
+    private long lastInstructions;
+
+    /**
+     * Creates a new <code>HeadlessRunner</code>.
+     *
+     * @param config The configuration of the simulation.
+     * @param out The stream to which the reports are written.
+     * @throws Exception The VM could not be created.
+     */
+    public HeadlessRunner(Configuration config, PrintStream out)
+        throws Exception {
+
+        this.vm = new AntsVm(config);
+        this.out = out;
+
+        playerNames = new String[config.numberOfPlayers];
+
+        for (int i = 0; i < playerNames.length; i++)
+            playerNames[i] = config.playerInfos[i].name;
+    }
+
+    /**
+     * Returns the VM that runs the simulation.
+     *
+     * @return The VM.
+     */
+    public AntsVm getVm() {
+        return vm;
+    }
+
+    /**
+     * Runs the simulation.  A report is written before the first cycle,
+     * after every <code>interval</code> cycles, and at the end of the
+     * simulation.  In parallel execution mode, the VM executes whole rounds,
+     * so the reports may be a few cycles apart from the requested ones.
+     *
+     * @param cycles The maximum number of cycles to execute, or 0 to run
+     *               until the simulation ends.
+     * @param interval The number of cycles between two reports.
+     * @return The state of the VM at the end of the run.
+     */
+    public AntsVm.VmState run(long cycles, long interval) {
+
+        // Place the queens, so the first report shows the starting state.
+        vm.step(0);
+
+        long end = cycles > 0 ? vm.getCycles() + cycles : Long.MAX_VALUE;
+
+        startTime = lastTime = System.nanoTime();
+        lastCycles = vm.getCycles();
+        lastInstructions = vm.getInstructions();
+
+        writeHeader();
+        writeReport();
+
+        while (vm.getCycles() < end) {
+
+            vm.step(Math.min(interval, end - vm.getCycles()));
+            writeReport();
+
+            if (vm.getVmState() == AntsVm.VmState.STOPPED_BY_SIM)
+                break;
+        }
+
+        out.flush();
+        return vm.getVmState();
+    }
+
+    /**
+     * Writes the names of the columns of the reports.
+     */
+    private void writeHeader() {
+
+        StringBuilder line = new StringBuilder("cycles\ttime\tturns/s\tinstructions/s");
+
+        for (String name: playerNames)
+            line.append("\tants ").append(name).append("\tfood ").append(name);
+
+        line.append("\tfood on playfield");
+        out.println(line);
+    }
+
+    /**
+     * Writes a report and starts a new interval.
+     */
+    private void writeReport() {
+
+        long now = System.nanoTime();
+        long cycles = vm.getCycles();
+        long instructions = vm.getInstructions();
+        double seconds = (now - lastTime) / 1e9;
+
+        StringBuilder line = new StringBuilder();
+        line.append(cycles);
+        line.append('\t').append(String.format(Locale.ROOT, "%.3f", (now - startTime) / 1e9));
+        line.append('\t').append(perSecond(cycles - lastCycles, seconds));
+        line.append('\t').append(perSecond(instructions - lastInstructions, seconds));
+
+        for (int i = 0; i < playerNames.length; i++)
+            line.append('\t').append(vm.getNumberOfAnts(i))
+                .append('\t').append(vm.getFoodOfAnts(i));
+
+        line.append('\t').append(vm.getFoodOnPlayfield());
+        out.println(line);
+
+        // The statistics are not part of the measured time.
+        lastTime = System.nanoTime();
+        lastCycles = cycles;
+        lastInstructions = instructions;
+    }
+
+    /**
+     * Formats a rate, or returns an empty string if no time has passed.
+     */
+    private static String perSecond(long count, double seconds) {
+        return count > 0 && seconds > 0 ? Long.toString(Math.round(count / seconds)) : "";
+    }
+
+    /**
+     * Runs a simulation from the command line.
+     *
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+
+        long cycles = -1;
+        long interval = 100000;
+        String dataPath = null;
+        String outFile = null;
+        Map<String, String> settings = new LinkedHashMap<>();
+        String file = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-cycles"))
+                    cycles = Long.parseLong(args[++i]);
+                else if (args[i].equals("-interval"))
+                    interval = Long.parseLong(args[++i]);
+                else if (args[i].equals("-data"))
+                    dataPath = args[++i];
+                else if (args[i].equals("-out"))
+                    outFile = args[++i];
+                else if (args[i].equals("-set")) {
+                    String[] assignment = args[++i].split("=", 2);
+                    settings.put(assignment[0], assignment[1]);
+                } else if (file == null)
+                    file = args[i];
+                else
+                    throw new IllegalArgumentException();
+            }
+
+            if (interval <= 0)
+                throw new IllegalArgumentException();
+
+        } catch (RuntimeException e) {
+            file = null;
+        }
+
+        if (file == null) {
+            System.out.println(
+                "Usage: java ants.vm.HeadlessRunner [options] configuration file\n" +
+                "  -cycles n             number of cycles to run, 0 to run until the\n" +
+                "                        simulation ends (default: MaxCycles of the file)\n" +
+                "  -interval n           number of cycles between two reports\n" +
+                "  -data path            directory of the ant class files\n" +
+                "  -set field=value      set a configuration field\n" +
+                "  -out file             write the reports to a file");
+            return;
+        }
+
+        Configuration config;
+
+        try {
+            try (FileReader fr = new FileReader(file)) {
+                config = new ConfigurationParser().readConfigFile(fr);
+            }
+
+            config.dataPath = dataPath != null ?
+                dataPath : new File(file).getAbsoluteFile().getParent();
+
+            if (cycles >= 0)
+                config.maxCycles = cycles;
+
+            for (Map.Entry<String, String> e: settings.entrySet())
+                BatchRunner.setField(config, e.getKey(), e.getValue());
+
+        } catch (ConfigurationParser.SyntaxError e) {
+            System.out.println("Syntax error in configuration file: " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            System.out.println(
+                "Error while opening or reading configuration file: " +
+                e.getMessage() + ".");
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        try (PrintStream out = outFile != null ?
+                 new PrintStream(new FileOutputStream(outFile)) : null) {
+
+            HeadlessRunner runner = new HeadlessRunner(config,
+                out != null ? out : System.out);
+            long start = System.nanoTime();
+            AntsVm.VmState state = runner.run(config.maxCycles, interval);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            AntsVm vm = runner.getVm();
+
+            System.out.printf(Locale.ROOT,
+                "%s after %d cycles in %.1f s (%.0f turns/s, %.0f instructions/s)%n",
+                state, vm.getCycles(), seconds, vm.getCycles() / seconds,
+                vm.getInstructions() / seconds);
+
+        } catch (IOException e) {
+            System.out.println("Error while writing '" + outFile + "': " +
+                               e.getMessage() + ".");
+        } catch (Exception e) {
+            System.out.println("Error while running the simulation: " + e.getMessage());
+        }
+    }
+}
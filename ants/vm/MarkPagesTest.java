@@ -0,0 +1,182 @@
+package ants.vm;
+
+import java.util.*;
+import ants.test.*;
+
+/**
+ * The <code>MarkPagesTest</code> class tests the pages in which an {@link
+ * ArrayPlayfield} stores the marks.  It lives in the package of the
+ * playfield to count the allocated pages.  A page must be allocated only
+ * when a mark other than 0 is set on one of its cells, the marks of the
+ * cells and tribes in a page must be kept apart, and threads that set
+ * marks on different rows at the same time must not lose any of them.
+ */
+public class MarkPagesTest extends Test {
+
+    private static final long SEED = 17;
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 9;
+    private static final int PLAYERS = 3;
+    private static final int THREADS = 3;
+
+    /**
+     * Runs the test.
+     *
+     * @throws TestFailedException A mark or a page is not as expected.
+     */
+    public void run() throws TestFailedException {
+
+        testPages();
+        testRandom();
+        testConcurrent();
+    }
+
+    /**
+     * Tests when pages are allocated.
+     */
+    private void testPages() throws TestFailedException {
+
+        ArrayPlayfield playfield = new ArrayPlayfield(PLAYERS, WIDTH, HEIGHT);
+
+        assertPages(playfield, 0, "the new playfield");
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++)
+                assertCond(playfield.getMark(x, y, PLAYERS - 1) == 0,
+                           "The new cell (" + x + ", " + y + ") carries a mark.");
+        }
+
+        playfield.setMark(3, 2, 1, (short) 0);
+        assertPages(playfield, 0, "clearing a mark that has not been set");
+
+        playfield.setMark(0, 2, 0, (short) 5);
+        playfield.setMark(ArrayPlayfield.MARK_PAGE_SIZE - 1, 2, 2, (short) -5);
+        assertPages(playfield, 1, "setting marks on the first page of a row");
+
+        playfield.setMark(ArrayPlayfield.MARK_PAGE_SIZE, 2, 0, (short) 6);
+        assertPages(playfield, 2, "setting a mark on the second page of a row");
+
+        playfield.setMark(0, 3, 0, (short) 7);
+        assertPages(playfield, 3, "setting a mark on the next row");
+
+        // The last page of a row is only partly inside the playfield.
+        playfield.setMark(-1, 2 + HEIGHT, 1, (short) 8);
+        playfield.setMark(WIDTH - 2, 2, 1, (short) 9);
+        assertPages(playfield, 4, "setting marks on the last page of a row");
+
+        assertCond(playfield.getMark(WIDTH - 1, 2, 1) == 8
+                   && playfield.getMark(WIDTH - 2, 2 - HEIGHT, 1) == 9
+                   && playfield.getMark(0, 2, 0) == 5 && playfield.getMark(0, 2, 1) == 0
+                   && playfield.getMark(ArrayPlayfield.MARK_PAGE_SIZE - 1, 2, 2) == -5
+                   && playfield.getMark(ArrayPlayfield.MARK_PAGE_SIZE, 2, 0) == 6
+                   && playfield.getMark(0, 3, 0) == 7 && playfield.getMark(1, 3, 0) == 0,
+                   "The marks have not kept their values.");
+
+        playfield.setMark(0, 2, 0, (short) 0);
+        assertCond(playfield.getMark(0, 2, 0) == 0
+                   && playfield.getMark(ArrayPlayfield.MARK_PAGE_SIZE - 1, 2, 2) == -5,
+                   "Clearing a mark has changed its page.");
+
+        playfield.recordMarkTimes();
+        playfield.setMarkTime(1, 3, 2, 100);
+        playfield.setMarkTime(5, 5, 0, 200);
+
+        assertCond(playfield.getMarkTime(1, 3, 2) == 100 && playfield.getMarkTime(0, 3, 0) == 0
+                   && playfield.getMarkTime(5, 5, 0) == 0,
+                   "The mark times of an existing page are wrong.");
+        assertPages(playfield, 4, "setting the time of a cell without marks");
+
+        playfield.setMark(5, 5, 0, (short) 1);
+        playfield.setMarkTime(5, 5, 0, 300);
+
+        assertCond(playfield.getMarkTime(5, 5, 0) == 300 && playfield.getMarkTime(6, 5, 0) == 0,
+                   "The mark times of a new page are wrong.");
+    }
+
+    /**
+     * Sets marks at random and compares them with a dense matrix.
+     */
+    private void testRandom() throws TestFailedException {
+
+        Random random = new Random(SEED);
+        ArrayPlayfield playfield = new ArrayPlayfield(PLAYERS, WIDTH, HEIGHT);
+        short[][][] marks = new short[HEIGHT][WIDTH][PLAYERS];
+        boolean[][] pages = new boolean[HEIGHT][WIDTH];
+
+        for (int i = 0; i < 2000; i++) {
+
+            int x = random.nextInt(WIDTH);
+            int y = random.nextInt(HEIGHT);
+            int tribe = random.nextInt(PLAYERS);
+            short value = (short) (random.nextBoolean() ? 0 : random.nextInt());
+
+            playfield.setMark(x + WIDTH * (random.nextInt(3) - 1), y, tribe, value);
+            marks[y][x][tribe] = value;
+
+            if (value != 0)
+                pages[y][x / ArrayPlayfield.MARK_PAGE_SIZE] = true;
+        }
+
+        int count = 0;
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+
+                if (pages[y][x])
+                    ++count;
+
+                for (int tribe = 0; tribe < PLAYERS; tribe++)
+                    assertCond(playfield.getMark(x, y, tribe) == marks[y][x][tribe],
+                               "The cell (" + x + ", " + y + ") has the wrong mark of tribe " +
+                               tribe + ".");
+            }
+        }
+
+        assertPages(playfield, count, "setting marks at random");
+    }
+
+    /**
+     * Sets marks on different rows from several threads at the same time.
+     */
+    private void testConcurrent() throws TestFailedException {
+
+        final ArrayPlayfield playfield = new ArrayPlayfield(PLAYERS, WIDTH, 60);
+        Thread[] threads = new Thread[THREADS];
+
+        for (int i = 0; i < THREADS; i++) {
+
+            final int first = i;
+
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int x = 0; x < WIDTH; x++) {
+                        for (int y = first; y < 60; y += THREADS)
+                            playfield.setMark(x, y, first, (short) (x + y + 1));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        try {
+            for (Thread thread: threads)
+                thread.join();
+        } catch (InterruptedException e) {
+            fail("The test has been interrupted.");
+        }
+
+        for (int y = 0; y < 60; y++) {
+            for (int x = 0; x < WIDTH; x++)
+                assertCond(playfield.getMark(x, y, y % THREADS) == x + y + 1,
+                           "The mark of the cell (" + x + ", " + y + ") has been lost.");
+        }
+    }
+
+    private void assertPages(ArrayPlayfield playfield, int expected, String description)
+        throws TestFailedException {
+
+        assertCond(playfield.getMarkPageCount() == expected,
+                   "After " + description + ", the playfield has " +
+                   playfield.getMarkPageCount() + " pages of marks, expected " + expected + ".");
+    }
+}
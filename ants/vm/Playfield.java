@@ -0,0 +1,490 @@
+package ants.vm;
+
+/**
+ * The <code>Playfield</code> class is the base class of all playfield
+ * storage backends.  The playfield is a rectangular matrix of cells that is
+ * wrapped at its borders, so all coordinates passed to the methods of this
+ * class may lie outside the regular playfield.  A cell can be passable or
+ * unpassable.  A passable cell can contain either an ant, or a number of
+ * stones, or a number of food items, and it can carry a mark for each tribe.
+ * <p>
+ * Ants are not stored on the playfield directly.  Instead, each ant that is
+ * placed on the playfield is identified by a slot id, under which the
+ * {@link AntsVm} stores the state of the ant.  The tribe of the ant is
+ * stored together with the slot id, so that sensing instructions do not
+ * need to look at the ant itself.
+ * <p>
+ * Subclasses must implement the accessors for single cells.  The sensing
+ * methods, which examine the 15 cells in a certain direction from a
+ * position, are implemented on top of these accessors, but can be
+ * overridden by backends that can answer them more efficiently.
+ */
+public abstract class Playfield {
+
+    /**
+     * The slot id that indicates that no ant stands on a cell.
+     */
+    public static final int NO_ANT = 0;
+
+    /**
+     * The number of cells in horizontal direction.
+     */
+    protected final int width;
+
+    /**
+     * The number of cells in vertical direction.
+     */
+    protected final int height;
+
+    /**
+     * The number of players, which is the number of marks per cell.
+     */
+    protected final int numberOfPlayers;
+
+    /**
+     * Creates a new <code>Playfield</code>.
+     *
+     * @param numberOfPlayers The number of players.
+     * @param width The number of cells in horizontal direction.
+     * @param height The number of cells in vertical direction.
+     */
+    protected Playfield(int numberOfPlayers, int width, int height) {
+        this.numberOfPlayers = numberOfPlayers;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the width of the playfield.
+     *
+     * @return The number of cells in horizontal direction.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the playfield.
+     *
+     * @return The number of cells in vertical direction.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of players, which is the number of marks per cell.
+     *
+     * @return The number of players.
+     */
+    public int getNumberOfPlayers() {
+        return numberOfPlayers;
+    }
+
+    /**
+     * Wraps a horizontal position at the borders of the playfield.  Almost
+     * all positions passed to the playfield lie inside it, so these are
+     * returned unchanged without a division.
+     *
+     * @param x The position in x direction.
+     * @return The corresponding position inside the playfield.
+     */
+    public final int wrapX(int x) {
+
+        if (x >= 0 && x < width)
+            return x;
+
+        int x0 = x % width;
+        return x0 < 0 ? x0 + width : x0;
+    }
+
+    /**
+     * Wraps a vertical position at the borders of the playfield.  Positions
+     * inside the playfield are returned unchanged without a division.
+     *
+     * @param y The position in y direction.
+     * @return The corresponding position inside the playfield.
+     */
+    public final int wrapY(int y) {
+
+        if (y >= 0 && y < height)
+            return y;
+
+        int y0 = y % height;
+        return y0 < 0 ? y0 + height : y0;
+    }
+
+    /**
+     * Tests if the storage for a cell has been allocated.  Backends that
+     * allocate their storage on demand return false for cells that have
+     * never been accessed, so that callers can skip such cells instead of
+     * forcing their allocation.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @return True if the cell is allocated, false otherwise.
+     */
+    public boolean isResident(int x, int y) {
+        return true;
+    }
+
+    /**
+     * Tests if a cell is passable by ants.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @return True if the cell is passable, false otherwise.
+     */
+    public abstract boolean isPassable(int x, int y);
+
+    /**
+     * Sets whether a cell is passable by ants.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param value True if the cell is passable, false otherwise.
+     */
+    public abstract void setPassable(int x, int y, boolean value);
+
+    /**
+     * Returns the number of stones on a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @return The number of stones.
+     */
+    public abstract short getStones(int x, int y);
+
+    /**
+     * Sets the number of stones on a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param value The new number of stones.
+     */
+    public abstract void setStones(int x, int y, short value);
+
+    /**
+     * Returns the number of food items on a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @return The number of food items.
+     */
+    public abstract short getFood(int x, int y);
+
+    /**
+     * Returns the total number of food items on the playfield.  Backends
+     * that allocate their storage on demand only count the cells they have
+     * allocated, see {@link #isResident(int, int)}.
+     *
+     * @return The number of food items.
+     */
+    public long getFood() {
+
+        long total = 0;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (isResident(x, y))
+                    total += getFood(x, y);
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Sets the number of food items on a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param value The new number of food items.
+     */
+    public abstract void setFood(int x, int y, short value);
+
+    /**
+     * Returns the slot id of the ant that stands on a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @return The slot id of the ant, or {@link #NO_ANT} if no ant is here.
+     */
+    public abstract int getAnt(int x, int y);
+
+    /**
+     * Returns the tribe of the ant that stands on a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @return The tribe of the ant.  The result is undefined if no ant
+     *         stands on the cell.
+     */
+    public abstract int getAntTribe(int x, int y);
+
+    /**
+     * Places an ant on a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param slot The slot id of the ant.
+     * @param tribe The tribe of the ant.
+     */
+    public abstract void setAnt(int x, int y, int slot, int tribe);
+
+    /**
+     * Removes the ant from a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     */
+    public abstract void clearAnt(int x, int y);
+
+    /**
+     * Returns the mark of a tribe on a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param tribe The index of the tribe.
+     * @return The mark value.
+     * @throws ArrayIndexOutOfBoundsException The tribe does not exist.
+     */
+    public abstract short getMark(int x, int y, int tribe);
+
+    /**
+     * Sets the mark of a tribe on a cell.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param tribe The index of the tribe.
+     * @param value The new mark value.
+     * @throws ArrayIndexOutOfBoundsException The tribe does not exist.
+     */
+    public abstract void setMark(int x, int y, int tribe, short value);
+
+    /**
+     * Makes the playfield record the time at which each mark is set, so
+     * that marks can decay.  This method must be called before {@link
+     * #setMarkTime(int, int, int, long)} is called for the first time, and
+     * before several threads access the playfield.
+     */
+    public abstract void recordMarkTimes();
+
+    /**
+     * Returns the time at which the mark of a tribe on a cell has been set.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param tribe The index of the tribe.
+     * @return The time, in cycles, or 0 if the mark has never been set.
+     * @throws ArrayIndexOutOfBoundsException The tribe does not exist.
+     * @throws NullPointerException Mark times are not recorded.
+     */
+    public abstract long getMarkTime(int x, int y, int tribe);
+
+    /**
+     * Sets the time at which the mark of a tribe on a cell has been set.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param tribe The index of the tribe.
+     * @param time The time, in cycles.
+     * @throws ArrayIndexOutOfBoundsException The tribe does not exist.
+     * @throws NullPointerException Mark times are not recorded.
+     */
+    public abstract void setMarkTime(int x, int y, int tribe, long time);
+
+    /**
+     * Tests if a cell is empty.  A cell is empty if it is passable and there
+     * are no ants, no food, and no stones on it.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @return True if the cell is empty, false otherwise.
+     */
+    public boolean isEmpty(int x, int y) {
+        return getStones(x, y) == 0 && getFood(x, y) == 0
+            && getAnt(x, y) == NO_ANT && isPassable(x, y);
+    }
+
+    /**
+     * Returns the cells in a certain direction from a position that contain
+     * stones.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param direction The direction to look at.
+     * @return The bit mask of the cells that contain stones.
+     */
+    public short senseStones(int x, int y, int direction) {
+
+        int[] dx = AntsVm.DIRECTION_X_INDEXES[direction];
+        int[] dy = AntsVm.DIRECTION_Y_INDEXES[direction];
+        int bits = 0;
+
+        for (int i = 0; i < AntsVm.DIRECTION_BITS; i++) {
+            if (getStones(x + dx[i], y + dy[i]) > 0)
+                bits |= 1 << i;
+        }
+
+        return (short) bits;
+    }
+
+    /**
+     * Returns the cells in a certain direction from a position that are not
+     * passable.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param direction The direction to look at.
+     * @return The bit mask of the cells that are not passable.
+     */
+    public short senseObstacles(int x, int y, int direction) {
+
+        int[] dx = AntsVm.DIRECTION_X_INDEXES[direction];
+        int[] dy = AntsVm.DIRECTION_Y_INDEXES[direction];
+        int bits = 0;
+
+        for (int i = 0; i < AntsVm.DIRECTION_BITS; i++) {
+            if (!isPassable(x + dx[i], y + dy[i]))
+                bits |= 1 << i;
+        }
+
+        return (short) bits;
+    }
+
+    /**
+     * Returns the cells in a certain direction from a position that contain
+     * food.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param direction The direction to look at.
+     * @return The bit mask of the cells that contain food.
+     */
+    public short senseFood(int x, int y, int direction) {
+
+        int[] dx = AntsVm.DIRECTION_X_INDEXES[direction];
+        int[] dy = AntsVm.DIRECTION_Y_INDEXES[direction];
+        int bits = 0;
+
+        for (int i = 0; i < AntsVm.DIRECTION_BITS; i++) {
+            if (getFood(x + dx[i], y + dy[i]) > 0)
+                bits |= 1 << i;
+        }
+
+        return (short) bits;
+    }
+
+    /**
+     * Returns the cells in a certain direction from a position where an ant
+     * of a certain tribe stands.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param direction The direction to look at.
+     * @param tribe The tribe of the ants to look for.  This can be the index
+     *              of a tribe, or one of {@link Tribe#ANY}, {@link
+     *              Tribe#OTHER}, and {@link Tribe#OUR}.
+     * @param ownTribe The tribe of the ant that looks.
+     * @return The bit mask of the cells where an ant of the given tribe
+     *         stands.
+     */
+    public short senseAnts(int x, int y, int direction, int tribe, int ownTribe) {
+
+        int[] dx = AntsVm.DIRECTION_X_INDEXES[direction];
+        int[] dy = AntsVm.DIRECTION_Y_INDEXES[direction];
+        int bits = 0;
+
+        for (int i = 0; i < AntsVm.DIRECTION_BITS; i++) {
+
+            int x0 = x + dx[i];
+            int y0 = y + dy[i];
+
+            if (getAnt(x0, y0) != NO_ANT
+                && matchesTribe(getAntTribe(x0, y0), tribe, ownTribe))
+                bits |= 1 << i;
+        }
+
+        return (short) bits;
+    }
+
+    /**
+     * Returns the cells in a certain direction from a position that carry a
+     * mark of a certain tribe.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param direction The direction to look at.
+     * @param tribe The tribe whose marks to look for.  This can be the index
+     *              of a tribe, or one of {@link Tribe#ANY}, {@link
+     *              Tribe#OTHER}, and {@link Tribe#OUR}.
+     * @param ownTribe The tribe of the ant that looks.
+     * @return The bit mask of the cells that carry a mark of the given
+     *         tribe.
+     * @throws ArrayIndexOutOfBoundsException The tribe does not exist.
+     */
+    public short senseMarks(int x, int y, int direction, int tribe, int ownTribe) {
+
+        int[] dx = AntsVm.DIRECTION_X_INDEXES[direction];
+        int[] dy = AntsVm.DIRECTION_Y_INDEXES[direction];
+        int bits = 0;
+
+        for (int i = 0; i < AntsVm.DIRECTION_BITS; i++) {
+            if (hasMark(x + dx[i], y + dy[i], tribe, ownTribe))
+                bits |= 1 << i;
+        }
+
+        return (short) bits;
+    }
+
+    /**
+     * Tests if a cell carries a mark of a certain tribe.
+     *
+     * @param x The position in x direction.
+     * @param y The position in y direction.
+     * @param tribe The tribe whose mark to look for.  This can be the index
+     *              of a tribe, or one of {@link Tribe#ANY}, {@link
+     *              Tribe#OTHER}, and {@link Tribe#OUR}.
+     * @param ownTribe The tribe of the ant that looks.
+     * @return True if the cell carries a mark of the given tribe.
+     * @throws ArrayIndexOutOfBoundsException The tribe does not exist.
+     */
+    protected boolean hasMark(int x, int y, int tribe, int ownTribe) {
+
+        if (tribe == Tribe.ANY || tribe == Tribe.OTHER) {
+            for (int j = 0; j < numberOfPlayers; j++) {
+                if (getMark(x, y, j) != 0 && (tribe == Tribe.ANY || j != ownTribe))
+                    return true;
+            }
+            return false;
+        } else if (tribe == Tribe.OUR) {
+            return getMark(x, y, ownTribe) != 0;
+        } else {
+            return getMark(x, y, tribe) != 0;
+        }
+    }
+
+    /**
+     * Tests if the tribe of an ant matches a tribe given to a sensing
+     * instruction.
+     *
+     * @param antTribe The tribe of the ant.
+     * @param tribe The tribe to look for.  This can be the index of a tribe,
+     *              or one of {@link Tribe#ANY}, {@link Tribe#OTHER}, and
+     *              {@link Tribe#OUR}.
+     * @param ownTribe The tribe of the ant that looks.
+     * @return True if the tribes match.
+     */
+    protected static boolean matchesTribe(int antTribe, int tribe, int ownTribe) {
+
+        if (tribe == Tribe.ANY)
+            return true;
+        else if (tribe == Tribe.OTHER)
+            return antTribe != ownTribe;
+        else if (tribe == Tribe.OUR)
+            return antTribe == ownTribe;
+        else
+            return antTribe == tribe;
+    }
+}
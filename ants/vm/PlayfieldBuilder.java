@@ -40,46 +40,76 @@ public class PlayfieldBuilder {
      */
     public int maxFoodPerCell = 20;
 
+    /**
+     * If the playfield should be split into chunks that are created when they
+     * are accessed for the first time.  See {@link ChunkedPlayfield}.
+     */
+    public boolean chunked = false;
+
+    /**
+     * The seed from which the contents of the playfield are generated.
+     * Builders with the same parameters and the same seed create identical
+     * playfields.
+     */
+    public long seed = new Random().nextLong();
+
     /**
      * Creates a new playfield using the parameters set.
      *
      * @param numberOfPlayers The number of players.
      * @param playfieldWidth The number of cells in horizontal direction.
      * @param playfieldHeight The number of cells in vertical direction.
-     * @return A matrix of playfield cells.
+     * @return The new playfield.
      */
-    public PlayfieldCell[][] createPlayfield(
+    public Playfield createPlayfield(
             int numberOfPlayers, int playfieldWidth, int playfieldHeight) {
 
-        Random random = new Random();
+        Random random = new Random(seed);
+
+        if (chunked) {
+            return new ChunkedPlayfield(numberOfPlayers,
+                playfieldWidth, playfieldHeight, this, random.nextLong());
+        }
+
+        Playfield playfield =
+            new ArrayPlayfield(numberOfPlayers, playfieldWidth, playfieldHeight);
 
-        PlayfieldCell[][] playfield =
-            new PlayfieldCell[playfieldHeight][playfieldWidth];
+        initializeCells(playfield, random, 0, 0, playfieldWidth, playfieldHeight);
 
-        for (int i = 0; i < playfield.length; i++) {
-            for (int j = 0; j < playfield[i].length; j++) {
+        return playfield;
+    }
 
-                PlayfieldCell cell = new PlayfieldCell(numberOfPlayers);
+    /**
+     * Randomly places stones and food in a rectangular section of a
+     * playfield, using the parameters set.  The cells of the section must be
+     * unpassable and empty.
+     *
+     * @param playfield The playfield.
+     * @param random The random number generator to use.
+     * @param x The column where the section starts.
+     * @param y The row where the section starts.
+     * @param w The number of columns of the section.
+     * @param h The number of rows of the section.
+     */
+    public void initializeCells(Playfield playfield, Random random,
+                                int x, int y, int w, int h) {
+
+        for (int i = y; i < y + h; i++) {
+            for (int j = x; j < x + w; j++) {
 
                 if (random.nextDouble() < passableRatio) {
 
-                    cell.isPassable = true;
+                    playfield.setPassable(j, i, true);
 
                     if (random.nextBoolean() == true) {
                         if (random.nextDouble() < stonesRatio)
-                            cell.stones = (short) random.nextInt(maxStonesPerCell);
+                            playfield.setStones(j, i, (short) random.nextInt(maxStonesPerCell));
                     } else {
                         if (random.nextDouble() < foodRatio)
-                            cell.food = (short) random.nextInt(maxFoodPerCell);
+                            playfield.setFood(j, i, (short) random.nextInt(maxFoodPerCell));
                     }
-                } else {
-                    cell.isPassable = false;
                 }
-
-                playfield[i][j] = cell;
             }
         }
-
-        return playfield;
     }
 }
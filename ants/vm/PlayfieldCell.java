@@ -5,6 +5,9 @@ package ants.vm;
  * playfield.  The playfield is a rectangular matrix of such cells.  A cell
  * can be passable or unpassable.  A passable cell can contain either an ant,
  * or a number of stones, or a number of food items.
+ * <p>
+ * The VM stores the playfield in a {@link Playfield}; objects of this class
+ * are snapshots of single cells returned to clients of the VM.
  */
 public class PlayfieldCell {
 
@@ -0,0 +1,827 @@
+package ants.vm;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The <code>ProgramCompiler</code> class translates the program of an {@link
+ * AntClass} to a Java class derived from {@link CompiledProgram}.  Each ant
+ * instruction is translated to a sequence of Java byte code instructions:
+ * constant operands are folded into the code, the kinds of all operands are
+ * resolved at compile time, and <i>Goto</i> and <i>GotoIf</i> instructions
+ * with constant targets become jumps.  Jumps to variable targets are
+ * dispatched through a <code>tableswitch</code> instruction.
+ * <p>
+ * Before each instruction, the generated code charges the instruction costs
+ * from {@link AntsVm#ENERGY_COSTS} through {@link
+ * AntsVm#chargeEnergy(short)}, so a compiled program ends a cycle at exactly
+ * the same instruction as the interpreter.
+ * <p>
+ * The generated classes use class file version 49, which does not need
+ * stack map frames, and are defined by a class loader of their own.
+ */
+public class ProgramCompiler {
+
+    /**
+     * The maximum size of the byte code generated for a program.  The Java VM
+     * does not optimize methods that are larger than 8000 bytes, so larger
+     * programs are better left to the interpreter.
+     */
+    public static final int MAX_CODE_SIZE = 8000;
+
+    private static final String BASE_CLASS = "ants/vm/CompiledProgram";
+    private static final String VM_TYPE = "Lants/vm/AntsVm;";
+    private static final String EXECUTE_DESCRIPTOR = "(" + VM_TYPE + "[SII)I";
+
+    // Local variables of the execute() method.
+    private static final int VM_LOCAL = 1;
+    private static final int VARIABLES_LOCAL = 2;
+    private static final int BASE_LOCAL = 3;
+    private static final int INDEX_LOCAL = 4;
+    private static final int TEMP_LOCAL = 5;
+
+    // Java byte code instructions.
+    private static final int ICONST_0     = 0x03;
+    private static final int ICONST_1     = 0x04;
+    private static final int ICONST_2     = 0x05;
+    private static final int BIPUSH       = 0x10;
+    private static final int SIPUSH       = 0x11;
+    private static final int ILOAD        = 0x15;
+    private static final int ALOAD        = 0x19;
+    private static final int SALOAD       = 0x35;
+    private static final int ISTORE       = 0x36;
+    private static final int SASTORE      = 0x56;
+    private static final int POP          = 0x57;
+    private static final int IADD         = 0x60;
+    private static final int ISUB         = 0x64;
+    private static final int IMUL         = 0x68;
+    private static final int IDIV         = 0x6c;
+    private static final int INEG         = 0x74;
+    private static final int ISHR         = 0x7a;
+    private static final int IAND         = 0x7e;
+    private static final int IOR          = 0x80;
+    private static final int IXOR         = 0x82;
+    private static final int IFEQ         = 0x99;
+    private static final int IF_ICMPEQ    = 0x9f;
+    private static final int IF_ICMPNE    = 0xa0;
+    private static final int IF_ICMPLT    = 0xa1;
+    private static final int IF_ICMPGE    = 0xa2;
+    private static final int IF_ICMPGT    = 0xa3;
+    private static final int IF_ICMPLE    = 0xa4;
+    private static final int GOTO         = 0xa7;
+    private static final int TABLESWITCH  = 0xaa;
+    private static final int IRETURN      = 0xac;
+    private static final int RETURN       = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    private static int classCounter = 0;
+
+    private short[] program;
+    private int programSize;
+
+    private ConstantPool constants = new ConstantPool();
+    private Code code = new Code();
+
+    private int[] instructionLabels;
+    private int[] exitLabels;
+    private int dispatchLabel;
+    private int faultLabel;
+
+    /**
+     * Compiles the program of an ant class.
+     *
+     * @param antClass The ant class whose program is to be compiled.
+     * @return The compiled program, or <code>null</code> if the generated
+     *         code would exceed {@link #MAX_CODE_SIZE}.
+     */
+    public static CompiledProgram compile(AntClass antClass) {
+
+        ProgramCompiler compiler = new ProgramCompiler(antClass);
+        String className = nextClassName(antClass);
+        byte[] classFile = compiler.createClassFile(className);
+
+        if (classFile == null)
+            return null;
+
+        try {
+            Class<?> c = new ProgramClassLoader().define(
+                className.replace('/', '.'), classFile);
+            return (CompiledProgram) c.getConstructor().newInstance();
+
+        } catch (ReflectiveOperationException e) {
+            // This should not happen
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a unique name for the class generated from an ant class.  The
+     * name of the ant class can be any string, so every character that is
+     * not a letter, digit or underscore is replaced by an underscore.
+     *
+     * @param antClass The ant class.
+     * @return The internal name of the generated class.
+     */
+    private static synchronized String nextClassName(AntClass antClass) {
+
+        StringBuilder name = new StringBuilder("ants/vm/compiled/Ant_");
+        String antName = antClass.getName();
+
+        for (int i = 0; antName != null && i < antName.length(); i++) {
+
+            char c = antName.charAt(i);
+
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')
+                || (c >= '0' && c <= '9') || c == '_')
+                name.append(c);
+            else
+                name.append('_');
+        }
+
+        return name.append('$').append(classCounter++).toString();
+    }
+
+    /**
+     * Creates a new <code>ProgramCompiler</code>.
+     *
+     * @param antClass The ant class whose program is to be compiled.
+     */
+    protected ProgramCompiler(AntClass antClass) {
+
+        this.program = antClass.getProgram();
+        this.programSize = program.length / AntsVm.INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Creates the class file of the compiled program.
+     *
+     * @param className The internal name of the class.
+     * @return The class file, or <code>null</code> if the code is too large.
+     */
+    protected byte[] createClassFile(String className) {
+
+        generateExecuteMethod();
+
+        if (code.size() > MAX_CODE_SIZE)
+            return null;
+
+        int thisClass = constants.classRef(className);
+        int superClass = constants.classRef(BASE_CLASS);
+        int codeName = constants.utf8("Code");
+        int initName = constants.utf8("<init>");
+        int initDescriptor = constants.utf8("()V");
+        int executeName = constants.utf8("execute");
+        int executeDescriptor = constants.utf8(EXECUTE_DESCRIPTOR);
+        int superInit = constants.methodRef(BASE_CLASS, "<init>", "()V");
+
+        Code init = new Code();
+        init.op(ALOAD); init.u1(0);
+        init.op(INVOKESPECIAL); init.u2(superInit);
+        init.op(RETURN);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(49);
+            constants.write(out);
+            out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(2); // methods
+            writeMethod(out, 0x0001, initName, initDescriptor, codeName, init, 1, 1);
+            writeMethod(out, 0x0001, executeName, executeDescriptor, codeName,
+                        code, 6, TEMP_LOCAL + 1);
+            out.writeShort(0); // attributes
+            out.flush();
+
+            return bytes.toByteArray();
+
+        } catch (IOException e) {
+            // This should not happen
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes a method with its code attribute to a class file.
+     */
+    private void writeMethod(DataOutputStream out, int access, int name,
+                             int descriptor, int codeName, Code c,
+                             int maxStack, int maxLocals) throws IOException {
+
+        byte[] bytes = c.toByteArray();
+
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + bytes.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    /**
+     * Generates the code of the <code>execute()</code> method.  The method
+     * keeps the index of the current instruction in a local variable, which
+     * is only used to enter the program and for jumps to variable targets.
+     */
+    protected void generateExecuteMethod() {
+
+        instructionLabels = new int[programSize + 1];
+        exitLabels = new int[programSize];
+
+        for (int i = 0; i <= programSize; i++)
+            instructionLabels[i] = code.newLabel();
+        for (int i = 0; i < programSize; i++)
+            exitLabels[i] = code.newLabel();
+
+        dispatchLabel = code.newLabel();
+        faultLabel = code.newLabel();
+
+        // Convert the program counter to an instruction index.
+        code.op(ILOAD); code.u1(INDEX_LOCAL);
+        code.op(ICONST_2);
+        code.op(ISHR);
+        code.op(ISTORE); code.u1(INDEX_LOCAL);
+
+        code.mark(dispatchLabel);
+
+        if (programSize > 0) {
+            code.op(ILOAD); code.u1(INDEX_LOCAL);
+            code.tableSwitch(faultLabel, instructionLabels, programSize);
+        } else {
+            code.jump(GOTO, faultLabel);
+        }
+
+        for (int i = 0; i < programSize; i++) {
+            code.mark(instructionLabels[i]);
+            generateInstruction(i);
+        }
+
+        // The last instruction falls through to the end of the program.
+        code.mark(instructionLabels[programSize]);
+        pushConstant(programSize);
+        code.op(ISTORE); code.u1(INDEX_LOCAL);
+
+        code.mark(faultLabel);
+        code.op(ILOAD); code.u1(INDEX_LOCAL);
+        invokeStatic("fault", "(I)I");
+        code.op(IRETURN);
+
+        for (int i = 0; i < programSize; i++) {
+            code.mark(exitLabels[i]);
+            pushConstant(AntsVm.INSTRUCTION_SIZE * i);
+            code.op(IRETURN);
+        }
+
+        code.resolveLabels();
+    }
+
+    /**
+     * Generates the code of a single instruction.
+     *
+     * @param index The index of the instruction.
+     */
+    protected void generateInstruction(int index) {
+
+        int pc = AntsVm.INSTRUCTION_SIZE * index;
+        short instruction = program[pc + AntsVm.OPCODE_OFFSET];
+        short result = program[pc + AntsVm.RESULT_OFFSET];
+        short op1 = program[pc + AntsVm.OP1_OFFSET];
+        short op2 = program[pc + AntsVm.OP2_OFFSET];
+
+        boolean const1 = (instruction & AntsVm.OP1_CONSTANT) != 0;
+        boolean const2 = (instruction & AntsVm.OP2_CONSTANT) != 0;
+        short opcode = (short)
+            (instruction & ~(AntsVm.OP1_CONSTANT | AntsVm.OP2_CONSTANT));
+
+        // An invalid opcode makes the interpreter fail when it fetches the
+        // instruction costs, so fail at the same place.
+        if (opcode < 0 || opcode >= AntsVm.NUM_INSTRUCTIONS) {
+            pushConstant(index);
+            code.op(ISTORE); code.u1(INDEX_LOCAL);
+            code.jump(GOTO, faultLabel);
+            return;
+        }
+
+        code.op(ALOAD); code.u1(VM_LOCAL);
+        pushConstant(AntsVm.ENERGY_COSTS[opcode]);
+        invokeStatic("charge", "(" + VM_TYPE + "I)Z");
+        code.jump(IFEQ, exitLabels[index]);
+
+        switch (opcode) {
+
+            case Instruction.MAKE_ANT:
+                callVm("makeAnt", 1, false, const1, op1, const2, op2);
+                break;
+
+            case Instruction.STONES:
+                callVm("stones", 1, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.OBSTACLES:
+                callVm("obstacles", 1, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.FOOD:
+                callVm("food", 1, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.ANTS:
+                callVm("ants", 2, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.MARKS:
+                callVm("marks", 2, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.FOOD_AMOUNT:
+                callVm("foodAmount", 1, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.STONE_NUMBER:
+                callVm("stoneNumber", 1, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.MARK_VALUE:
+                callVm("markValue", 2, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.MOVE:
+                callVm("move", 1, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.GET_STONES:
+                callVm("getStones", 2, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.GET_FOOD:
+                callVm("getFood", 2, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.PUT_STONES:
+                callVm("putStones", 2, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.PUT_FOOD:
+                callVm("putFood", 2, true, const1, op1, const2, op2);
+                storeResult(result);
+                break;
+
+            case Instruction.SET_MARK:
+                callVm("setMark", 2, false, const1, op1, const2, op2);
+                break;
+
+            case Instruction.CLEAR_MARK:
+                callVm("clearMark", 1, false, const1, op1, const2, op2);
+                break;
+
+            case Instruction.COPY:
+                pushOperand(const1, op1);
+                storeResult(result);
+                break;
+
+            case Instruction.OR:
+                generateBinaryOperation(IOR, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.AND:
+                generateBinaryOperation(IAND, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.XOR:
+                generateBinaryOperation(IXOR, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.NOT:
+                pushOperand(const1, op1);
+                pushConstant(-1);
+                code.op(IXOR);
+                storeResult(result);
+                break;
+
+            case Instruction.BITS_TRUE:
+                pushOperand(const1, op1);
+                invokeStatic("bitsTrue", "(I)I");
+                storeResult(result);
+                break;
+
+            case Instruction.BITS_FALSE:
+                pushConstant(16);
+                pushOperand(const1, op1);
+                invokeStatic("bitsTrue", "(I)I");
+                code.op(ISUB);
+                storeResult(result);
+                break;
+
+            case Instruction.ADD:
+                generateBinaryOperation(IADD, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.SUB:
+                generateBinaryOperation(ISUB, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.MULT:
+                generateBinaryOperation(IMUL, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.DIV:
+                generateBinaryOperation(IDIV, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.NEG:
+                pushOperand(const1, op1);
+                code.op(INEG);
+                storeResult(result);
+                break;
+
+            case Instruction.EQUAL:
+                generateComparison(IF_ICMPEQ, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.NOT_EQUAL:
+                generateComparison(IF_ICMPNE, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.LESS:
+                generateComparison(IF_ICMPLT, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.LESS_EQUAL:
+                generateComparison(IF_ICMPLE, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.GREATER:
+                generateComparison(IF_ICMPGT, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.GREATER_EQUAL:
+                generateComparison(IF_ICMPGE, const1, op1, const2, op2, result);
+                break;
+
+            case Instruction.GOTO:
+                if (const1) {
+                    generateJump(op1);
+                } else {
+                    pushOperand(const1, op1);
+                    code.op(ISTORE); code.u1(INDEX_LOCAL);
+                    code.jump(GOTO, dispatchLabel);
+                }
+                break;
+
+            case Instruction.GOTO_IF:
+                if (const1) {
+                    pushOperand(const2, op2);
+                    code.jump(IFEQ, instructionLabels[index + 1]);
+                    generateJump(op1);
+                } else {
+                    pushOperand(const1, op1);
+                    code.op(ISTORE); code.u1(TEMP_LOCAL);
+                    pushOperand(const2, op2);
+                    code.jump(IFEQ, instructionLabels[index + 1]);
+                    code.op(ILOAD); code.u1(TEMP_LOCAL);
+                    code.op(ISTORE); code.u1(INDEX_LOCAL);
+                    code.jump(GOTO, dispatchLabel);
+                }
+                break;
+
+            default:
+                throw new IllegalStateException(
+                    "Invalid instruction code: " + opcode + ".");
+        }
+    }
+
+    /**
+     * Generates a jump to a constant target address.
+     *
+     * @param address The address of the target instruction.
+     */
+    protected void generateJump(short address) {
+
+        if (address >= 0 && address < programSize) {
+            code.jump(GOTO, instructionLabels[address]);
+        } else {
+            pushConstant(address);
+            code.op(ISTORE); code.u1(INDEX_LOCAL);
+            code.jump(GOTO, faultLabel);
+        }
+    }
+
+    /**
+     * Generates the code of an arithmetic or logical binary operation.
+     */
+    protected void generateBinaryOperation(int operation,
+            boolean const1, short op1, boolean const2, short op2, short result) {
+
+        pushOperand(const1, op1);
+        pushOperand(const2, op2);
+        code.op(operation);
+        storeResult(result);
+    }
+
+    /**
+     * Generates the code of a comparison, which yields 1 if the comparison
+     * is true and 0 otherwise.
+     */
+    protected void generateComparison(int comparison,
+            boolean const1, short op1, boolean const2, short op2, short result) {
+
+        int trueLabel = code.newLabel();
+        int endLabel = code.newLabel();
+
+        pushOperand(const1, op1);
+        pushOperand(const2, op2);
+        code.jump(comparison, trueLabel);
+        code.op(ICONST_0);
+        code.jump(GOTO, endLabel);
+        code.mark(trueLabel);
+        code.op(ICONST_1);
+        code.mark(endLabel);
+        storeResult(result);
+    }
+
+    /**
+     * Generates a call of an instruction method of {@link CompiledProgram}.
+     *
+     * @param name The name of the method.
+     * @param operands The number of operands passed to the method.
+     * @param hasResult Whether the method returns a result value.
+     */
+    protected void callVm(String name, int operands, boolean hasResult,
+            boolean const1, short op1, boolean const2, short op2) {
+
+        code.op(ALOAD); code.u1(VM_LOCAL);
+        pushOperand(const1, op1);
+        if (operands > 1)
+            pushOperand(const2, op2);
+
+        invokeStatic(name, "(" + VM_TYPE + (operands > 1 ? "II)" : "I)")
+                     + (hasResult ? "I" : "V"));
+    }
+
+    /**
+     * Pushes the value of an operand onto the operand stack.  Variables are
+     * addressed relative to the start of the ant's variable frame.
+     *
+     * @param isConstant Whether the operand is a constant.
+     * @param operand The constant value or the variable address.
+     */
+    protected void pushOperand(boolean isConstant, short operand) {
+
+        if (isConstant) {
+            pushConstant(operand);
+        } else {
+            code.op(ALOAD); code.u1(VARIABLES_LOCAL);
+            code.op(ILOAD); code.u1(BASE_LOCAL);
+            pushConstant(operand);
+            code.op(IADD);
+            code.op(SALOAD);
+        }
+    }
+
+    /**
+     * Stores the value on top of the operand stack into the result variable.
+     * If the result variable is a system variable, the value is discarded.
+     *
+     * @param result The address of the result variable.
+     */
+    protected void storeResult(short result) {
+
+        if (result >= AntsVm.FIRST_USER_VAR) {
+            code.op(ISTORE); code.u1(TEMP_LOCAL);
+            code.op(ALOAD); code.u1(VARIABLES_LOCAL);
+            code.op(ILOAD); code.u1(BASE_LOCAL);
+            pushConstant(result);
+            code.op(IADD);
+            code.op(ILOAD); code.u1(TEMP_LOCAL);
+            code.op(SASTORE);
+        } else {
+            code.op(POP);
+        }
+    }
+
+    /**
+     * Pushes an integer constant in the range of a <code>short</code> onto
+     * the operand stack.
+     *
+     * @param value The constant value.
+     */
+    protected void pushConstant(int value) {
+
+        if (value >= -1 && value <= 5) {
+            code.op(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.op(BIPUSH); code.u1(value);
+        } else {
+            code.op(SIPUSH); code.u2(value);
+        }
+    }
+
+    /**
+     * Generates a call of a static method of {@link CompiledProgram}.
+     *
+     * @param name The name of the method.
+     * @param descriptor The descriptor of the method.
+     */
+    protected void invokeStatic(String name, String descriptor) {
+        code.op(INVOKESTATIC);
+        code.u2(constants.methodRef(BASE_CLASS, name, descriptor));
+    }
+
+    /**
+     * The constant pool of a generated class.
+     */
+    private static class ConstantPool {
+
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private DataOutputStream out = new DataOutputStream(bytes);
+        private HashMap<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String s) {
+            Integer index = entries.get("U" + s);
+            if (index == null) {
+                try {
+                    out.writeByte(1);
+                    out.writeUTF(s);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                index = add("U" + s);
+            }
+            return index;
+        }
+
+        int classRef(String name) {
+            Integer index = entries.get("C" + name);
+            if (index == null) {
+                int nameIndex = utf8(name);
+                write(7, nameIndex);
+                index = add("C" + name);
+            }
+            return index;
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            String key = "M" + owner + "." + name + descriptor;
+            Integer index = entries.get(key);
+            if (index == null) {
+                int classIndex = classRef(owner);
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                write(12, nameIndex, descriptorIndex);
+                int nameAndType = add("N" + name + descriptor);
+                write(10, classIndex, nameAndType);
+                index = add(key);
+            }
+            return index;
+        }
+
+        void write(DataOutputStream dest) throws IOException {
+            out.flush();
+            dest.writeShort(count);
+            bytes.writeTo(dest);
+        }
+
+        private void write(int tag, int... values) {
+            try {
+                out.writeByte(tag);
+                for (int v: values)
+                    out.writeShort(v);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int add(String key) {
+            entries.put(key, count);
+            return count++;
+        }
+    }
+
+    /**
+     * A growable buffer of byte code with support for forward jumps.
+     */
+    private static class Code {
+
+        private byte[] buf = new byte[1024];
+        private int size = 0;
+        private int[] labels = new int[64];
+        private int labelCount = 0;
+        private List<int[]> fixups = new ArrayList<>();
+
+        int size() {
+            return size;
+        }
+
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        void u1(int value) {
+            if (size == buf.length)
+                buf = Arrays.copyOf(buf, 2 * size);
+            buf[size++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        void u4(int value) {
+            u2(value >> 16);
+            u2(value);
+        }
+
+        int newLabel() {
+            if (labelCount == labels.length)
+                labels = Arrays.copyOf(labels, 2 * labelCount);
+            labels[labelCount] = -1;
+            return labelCount++;
+        }
+
+        void mark(int label) {
+            labels[label] = size;
+        }
+
+        void jump(int opcode, int label) {
+            int start = size;
+            op(opcode);
+            fixups.add(new int[] { size, start, label, 2 });
+            u2(0);
+        }
+
+        void tableSwitch(int defaultLabel, int[] targets, int count) {
+            int start = size;
+            op(TABLESWITCH);
+            while (size % 4 != 0)
+                u1(0);
+            fixups.add(new int[] { size, start, defaultLabel, 4 });
+            u4(0);
+            u4(0);
+            u4(count - 1);
+            for (int i = 0; i < count; i++) {
+                fixups.add(new int[] { size, start, targets[i], 4 });
+                u4(0);
+            }
+        }
+
+        void resolveLabels() {
+            for (int[] f: fixups) {
+                int offset = labels[f[2]] - f[1];
+                if (f[3] == 2) {
+                    buf[f[0]] = (byte) (offset >> 8);
+                    buf[f[0] + 1] = (byte) offset;
+                } else {
+                    buf[f[0]] = (byte) (offset >> 24);
+                    buf[f[0] + 1] = (byte) (offset >> 16);
+                    buf[f[0] + 2] = (byte) (offset >> 8);
+                    buf[f[0] + 3] = (byte) offset;
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    /**
+     * The class loader that defines the generated classes.
+     */
+    private static class ProgramClassLoader extends ClassLoader {
+
+        ProgramClassLoader() {
+            super(CompiledProgram.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] b) {
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+}
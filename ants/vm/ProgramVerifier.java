@@ -0,0 +1,225 @@
+package ants.vm;
+
+import java.io.*;
+
+/**
+ * The <code>ProgramVerifier</code> class checks the program of an {@link
+ * AntClass} before the class is used by a VM.  The engines trust the program
+ * they execute, so an invalid operand would otherwise fail deep inside an
+ * instruction handler, or, since the variable frames of all ants are kept
+ * in shared arrays (see {@link AntStore}), silently change the variables of
+ * another ant.
+ * <p>
+ * The verifier proves that
+ * <ul>
+ * <li>every opcode is valid,</li>
+ * <li>every variable operand and every result variable lies within the
+ *     variable frame of the class,</li>
+ * <li>every constant direction and tribe is valid for its instruction,</li>
+ * <li>every constant jump target is an instruction of the program.</li>
+ * </ul>
+ * What remains are directions, tribes and jump targets taken from variables,
+ * which can only be validated while the program runs.  {@link
+ * #needsCheck(int, int)} tells which instructions have such operands, so an
+ * engine can skip the validation for all other instructions.
+ * <p>
+ * A division by the constant 0 and a last instruction that can fall
+ * through past the end of the program are not rejected, since a valid
+ * program may contain them in code that is never executed.  The engines
+ * fail when such an instruction is actually executed.
+ */
+public class ProgramVerifier {
+
+    private ProgramVerifier() {
+    }
+
+    /**
+     * Verifies the program of an ant class.
+     *
+     * @param antClass The ant class.
+     * @param numberOfPlayers The number of players of the VM that uses the
+     *                        class, which limits the tribes that marks can
+     *                        be read from.
+     * @throws InvalidClassException The program is not valid.
+     */
+    public static void verify(AntClass antClass, int numberOfPlayers)
+        throws InvalidClassException {
+
+        String name = antClass.getName();
+        short[] program = antClass.getProgram();
+        int variableSize = antClass.getVariableSize();
+
+        if (program == null || program.length == 0)
+            throw new InvalidClassException(name, "The program is empty.");
+
+        int size = program.length / AntsVm.INSTRUCTION_SIZE;
+
+        if (program.length % AntsVm.INSTRUCTION_SIZE != 0
+            || size != antClass.getProgramSize() || size > AntsVm.MAX_PROGRAM_SIZE)
+            throw new InvalidClassException(name, "Invalid program size.");
+
+        if (variableSize < AntsVm.FIRST_USER_VAR)
+            throw new InvalidClassException(name, "Invalid variable size.");
+
+        for (int i = 0; i < size; i++) {
+
+            int pc = i * AntsVm.INSTRUCTION_SIZE;
+
+            short instruction = program[pc + AntsVm.OPCODE_OFFSET];
+            short result = program[pc + AntsVm.RESULT_OFFSET];
+            short op1 = program[pc + AntsVm.OP1_OFFSET];
+            short op2 = program[pc + AntsVm.OP2_OFFSET];
+
+            int opcode = instruction & ~(AntsVm.OP1_CONSTANT | AntsVm.OP2_CONSTANT);
+            boolean const1 = (instruction & AntsVm.OP1_CONSTANT) != 0;
+            boolean const2 = (instruction & AntsVm.OP2_CONSTANT) != 0;
+
+            if (opcode < 0 || opcode >= AntsVm.NUM_INSTRUCTIONS)
+                throw new InvalidClassException(name,
+                    "Invalid instruction code at " + pc + ".");
+
+            boolean twoOperands = DecodedProgram.getOperandCount(opcode) == 2;
+
+            if ((!const1 && (op1 < 0 || op1 >= variableSize))
+                || (twoOperands && !const2 && (op2 < 0 || op2 >= variableSize))
+                || (hasResult(opcode) && result >= variableSize))
+                throw new InvalidClassException(name,
+                    "Variable out of range at " + pc + ".");
+
+            if (const1 && isDirection(opcode) && !isValidDirection(opcode, op1))
+                throw new InvalidClassException(name,
+                    "Invalid direction " + op1 + " at " + pc + ".");
+
+            if (const2 && isTribe(opcode) && !isValidTribe(opcode, op2, numberOfPlayers))
+                throw new InvalidClassException(name,
+                    "Invalid tribe " + op2 + " at " + pc + ".");
+
+            if (const1 && isJump(opcode) && (op1 < 0 || op1 >= size))
+                throw new InvalidClassException(name,
+                    "Jump target out of range at " + pc + ".");
+        }
+    }
+
+    /**
+     * Tests if an instruction of a verified program must validate its
+     * operands when it is executed.  This is the case if a direction, tribe
+     * or jump target is taken from a variable.
+     *
+     * @param opcode The opcode of the instruction.
+     * @param flags The operand flags of the instruction, {@link
+     *              AntsVm#OP1_CONSTANT} and {@link AntsVm#OP2_CONSTANT}.
+     * @return True if the operands must be validated, false if the
+     *         instruction cannot fail.
+     */
+    public static boolean needsCheck(int opcode, int flags) {
+
+        boolean const1 = (flags & AntsVm.OP1_CONSTANT) != 0;
+        boolean const2 = (flags & AntsVm.OP2_CONSTANT) != 0;
+
+        return (!const1 && (isDirection(opcode) || isJump(opcode)))
+            || (!const2 && isTribe(opcode) && opcode != Instruction.ANTS);
+    }
+
+    /**
+     * Tests if a direction is valid for an instruction.  The sensing
+     * instructions look at the cells in one of the eight directions; the
+     * instructions that read or change marks also accept
+     * {@link Direction#HERE}.
+     *
+     * @param opcode The opcode of an instruction whose first operand is a
+     *               direction.
+     * @param direction The direction.
+     * @return True if the direction is valid.
+     */
+    public static boolean isValidDirection(int opcode, int direction) {
+
+        switch (opcode) {
+            case Instruction.MARK_VALUE:
+            case Instruction.SET_MARK:
+            case Instruction.CLEAR_MARK:
+                return direction >= 0 && direction <= Direction.HERE;
+            default:
+                return direction >= 0 && direction < AntsVm.NUM_DIRECTIONS;
+        }
+    }
+
+    /**
+     * Tests if a tribe is valid for an instruction.  The <i>Ants</i>
+     * instruction accepts all tribe constants of {@link Tribe}, the
+     * <i>Marks</i> instruction the
+     * tribes of the players and {@link Tribe#ANY}, {@link Tribe#OTHER} and
+     * {@link Tribe#OUR}, and the <i>MarkValue</i> instruction only the
+     * tribes of the players.
+     *
+     * @param opcode The opcode of an instruction whose second operand is a
+     *               tribe.
+     * @param tribe The tribe.
+     * @param numberOfPlayers The number of players of the VM.
+     * @return True if the tribe is valid.
+     */
+    public static boolean isValidTribe(int opcode, int tribe, int numberOfPlayers) {
+
+        if (tribe >= 0 && tribe < numberOfPlayers)
+            return true;
+
+        switch (opcode) {
+            case Instruction.ANTS:
+                return tribe >= 0 && tribe <= Tribe.OUR;
+            case Instruction.MARKS:
+                return tribe == Tribe.ANY || tribe == Tribe.OTHER || tribe == Tribe.OUR;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Tests if the first operand of an instruction is a direction.
+     *
+     * @param opcode The opcode of the instruction.
+     * @return True if the first operand is a direction.
+     */
+    public static boolean isDirection(int opcode) {
+        return opcode > Instruction.MAKE_ANT && opcode < Instruction.COPY;
+    }
+
+    /**
+     * Tests if the second operand of an instruction is a tribe.
+     *
+     * @param opcode The opcode of the instruction.
+     * @return True if the second operand is a tribe.
+     */
+    public static boolean isTribe(int opcode) {
+        return opcode == Instruction.ANTS || opcode == Instruction.MARKS
+            || opcode == Instruction.MARK_VALUE;
+    }
+
+    /**
+     * Tests if the first operand of an instruction is a jump target.
+     *
+     * @param opcode The opcode of the instruction.
+     * @return True if the instruction is a jump.
+     */
+    public static boolean isJump(int opcode) {
+        return opcode == Instruction.GOTO || opcode == Instruction.GOTO_IF;
+    }
+
+    /**
+     * Tests if an instruction stores a value in its result variable.
+     *
+     * @param opcode The opcode of the instruction.
+     * @return True if the instruction has a result.
+     */
+    public static boolean hasResult(int opcode) {
+
+        switch (opcode) {
+            case Instruction.MAKE_ANT:
+            case Instruction.SET_MARK:
+            case Instruction.CLEAR_MARK:
+            case Instruction.GOTO:
+            case Instruction.GOTO_IF:
+                return false;
+            default:
+                return true;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ants.vm;
+
+import java.util.*;
+
+/**
+ * The <code>RandomStreams</code> class derives independent random number
+ * generators from a single simulation seed.  Each subsystem that makes random
+ * decisions draws from its own stream, so the decisions of one subsystem do
+ * not depend on how many numbers another subsystem has consumed.  A
+ * simulation is therefore reproducible from its seed even if subsystems are
+ * changed, reordered, or run in parallel.
+ * <p>
+ * Seeds are derived with the finalizer of the SplitMix64 generator, which
+ * maps neighbouring inputs to unrelated outputs.
+ */
+final class RandomStreams {
+
+    /**
+     * The stream used to generate the playfield.
+     */
+    static final int PLAYFIELD = 1;
+
+    /**
+     * The stream used to place the queens.
+     */
+    static final int QUEENS = 2;
+
+    /**
+     * The stream used to regrow food.
+     */
+    static final int FOOD_REGROWTH = 3;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private RandomStreams() {
+    }
+
+    /**
+     * Scrambles the bits of a value.
+     *
+     * @param z The value.
+     * @return The scrambled value.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Derives the seed of a sub-stream from a seed.
+     *
+     * @param seed The seed to derive from.
+     * @param stream The index of the sub-stream.
+     * @return The seed of the sub-stream.
+     */
+    static long derive(long seed, long stream) {
+        return mix(seed + GOLDEN_GAMMA * (stream + 1));
+    }
+
+    /**
+     * Creates the random number generator of a sub-stream.
+     *
+     * @param seed The seed to derive from.
+     * @param stream The index of the sub-stream.
+     * @return The random number generator.
+     */
+    static Random create(long seed, long stream) {
+        return new Random(derive(seed, stream));
+    }
+}
@@ -0,0 +1,116 @@
+package ants.vm;
+
+import java.util.*;
+
+/**
+ * The <code>RoundRobinScheduler</code> class gives the ants their turns in
+ * the order in which they are waiting, like a queue from which the next ant
+ * is taken and to which it is appended again after its turn.  Ants that are
+ * created during a turn are appended before the ant whose turn it is.
+ * <p>
+ * The slot ids are kept in a ring buffer of primitive values, so scheduling
+ * does not allocate any memory.  The ant whose turn it is is appended to the
+ * buffer again when the next ant is requested, unless it has been removed
+ * in the meantime, so removing a dead ant costs nothing.
+ * <p>
+ * A round consists of the turns of the ants that are waiting when the round
+ * starts.  Ants that are created during a round get their first turn in the
+ * next round.
+ */
+public class RoundRobinScheduler implements AntScheduler {
+
+    private static final int NONE = Playfield.NO_ANT;
+
+    private int[] slots = new int[64];
+    private int mask = slots.length - 1;
+    private int head = 0;
+    private int waiting = 0;
+    private int current = NONE;
+    private int turnsLeftInRound = 0;
+    private long round = 0;
+
+    public void add(int slot) {
+
+        if (waiting == slots.length)
+            grow();
+
+        slots[(head + waiting) & mask] = slot;
+        ++waiting;
+    }
+
+    public int next() {
+
+        if (current != NONE)
+            add(current);
+
+        if (waiting == 0)
+            throw new NoSuchElementException();
+
+        if (turnsLeftInRound == 0)
+            turnsLeftInRound = waiting;
+
+        current = slots[head];
+        head = (head + 1) & mask;
+        --waiting;
+
+        if (--turnsLeftInRound == 0)
+            ++round;
+
+        return current;
+    }
+
+    public void removeCurrent() {
+
+        if (current == NONE)
+            throw new IllegalStateException();
+
+        current = NONE;
+    }
+
+    public int size() {
+        return current != NONE ? waiting + 1 : waiting;
+    }
+
+    public boolean isEmpty() {
+        return waiting == 0 && current == NONE;
+    }
+
+    public long getRound() {
+        return round;
+    }
+
+    public int[] toArray() {
+
+        int[] result = new int[size()];
+
+        for (int i = 0; i < waiting; i++)
+            result[i] = slots[(head + i) & mask];
+
+        if (current != NONE)
+            result[waiting] = current;
+
+        return result;
+    }
+
+    public void clear() {
+        head = 0;
+        waiting = 0;
+        current = NONE;
+        turnsLeftInRound = 0;
+    }
+
+    /**
+     * Doubles the capacity of the ring buffer.
+     */
+    private void grow() {
+
+        int[] newSlots = new int[2 * slots.length];
+
+        for (int i = 0; i < waiting; i++)
+            newSlots[i] = slots[(head + i) & mask];
+
+        slots = newSlots;
+        mask = slots.length - 1;
+        head = 0;
+    }
+}
@@ -0,0 +1,48 @@
+package ants.benchmarks;
+
+import ants.compiler.*;
+import ants.vm.*;
+import java.io.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the compilation of large ant programs.  A program is built from
+ * copies of the program of <code>forager.ant</code>, with the labels of each
+ * copy renamed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompilerBenchmark {
+
+    /**
+     * The number of copies of the program.  With 600 copies, the program has
+     * about 27000 instructions, close to {@link AntsVm#MAX_PROGRAM_SIZE}.
+     */
+    @Param({ "20", "600" })
+    public int copies;
+
+    String source;
+
+    @Setup
+    public void createSource() throws IOException {
+
+        String forager = Simulations.readProgram("forager");
+        int body = forager.indexOf("Program:") + "Program:".length();
+        StringBuilder sb = new StringBuilder(forager.substring(0, body));
+
+        for (int i = 0; i < copies; i++)
+            sb.append(forager.substring(body).replaceAll("%(\\w+)", "%$1_" + i));
+
+        source = sb.toString();
+    }
+
+    @Benchmark
+    public AntClass compile() throws IOException, SyntaxError {
+        return new AntsCompiler().compile(new StringReader(source));
+    }
+}
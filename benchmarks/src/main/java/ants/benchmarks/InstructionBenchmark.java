@@ -0,0 +1,82 @@
+package ants.benchmarks;
+
+import ants.vm.*;
+import java.io.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures how many instructions per second the execution engines execute.
+ * A single ant runs a program whose loop takes exactly one cycle, so the
+ * number of executed instructions is known.  The VM is created anew for
+ * every invocation, since the ant uses up its energy after about 1600
+ * cycles.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstructionBenchmark {
+
+    /**
+     * The number of cycles per invocation.
+     */
+    static final int CYCLES = 1000;
+
+    /**
+     * The number of instructions per cycle of <code>arithmetic.ant</code>.
+     */
+    static final int ARITHMETIC_INSTRUCTIONS = 10;
+
+    /**
+     * The number of instructions per cycle of <code>sensing.ant</code>, 15
+     * of which are <code>Stones</code>, <code>Ants</code>, and
+     * <code>Marks</code> instructions.
+     */
+    static final int SENSING_INSTRUCTIONS = 18;
+
+    /**
+     * The state of a benchmark that runs a single ant.
+     */
+    @State(Scope.Thread)
+    public static abstract class SingleAnt {
+
+        @Param({ "REFLECTIVE", "DIRECT", "COMPILED", "DECODED" })
+        public AntsVm.Engine engine;
+
+        AntsVm vm;
+
+        abstract String getProgram();
+
+        @Setup(Level.Invocation)
+        public void createVm() throws IOException {
+            vm = Simulations.createVm(Simulations.configure(64, engine, getProgram()));
+            vm.step(0);
+        }
+    }
+
+    public static class Arithmetic extends SingleAnt {
+        String getProgram() {
+            return "arithmetic";
+        }
+    }
+
+    public static class Sensing extends SingleAnt {
+        String getProgram() {
+            return "sensing";
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES * ARITHMETIC_INSTRUCTIONS)
+    public long arithmetic(Arithmetic state) {
+        return state.vm.step(CYCLES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES * SENSING_INSTRUCTIONS)
+    public long sensing(Sensing state) {
+        return state.vm.step(CYCLES);
+    }
+}
@@ -0,0 +1,59 @@
+package ants.benchmarks;
+
+import ants.vm.*;
+import java.io.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the <code>Move</code> instruction on a crowded playfield.  Before
+ * each invocation, a queen fills a small playfield with walkers, which then
+ * try to move one cell per cycle.  Many of the moves are blocked by other
+ * walkers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveBenchmark {
+
+    /**
+     * The number of cycles per invocation.  Each cycle is the turn of one
+     * walker, which executes one <code>Move</code> instruction.
+     */
+    static final int CYCLES = 100000;
+
+    /**
+     * The width and height of the playfield.
+     */
+    static final int SIZE = 40;
+
+    @Param({ "400" })
+    public int walkers;
+
+    @Param({ "DIRECT", "DECODED" })
+    public AntsVm.Engine engine;
+
+    AntsVm vm;
+
+    @Setup(Level.Invocation)
+    public void createCrowd() throws IOException {
+
+        vm = Simulations.createVm(
+            Simulations.configure(SIZE, engine, "crowd-queen", "walker"));
+
+        vm.runUntil(new AntsVm.Condition() {
+            public boolean isSatisfied(AntsVm vm) {
+                return vm.getNumberOfAnts(0) > walkers || vm.getCycles() > 100 * CYCLES;
+            }
+        }, 100);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public long move() {
+        return vm.step(CYCLES);
+    }
+}
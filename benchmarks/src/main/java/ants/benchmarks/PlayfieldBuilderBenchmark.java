@@ -0,0 +1,34 @@
+package ants.benchmarks;
+
+import ants.vm.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the creation of a playfield of 1000 x 1000 cells, the largest
+ * playfield that is not chunked.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlayfieldBuilderBenchmark {
+
+    @Param({ "4" })
+    public int players;
+
+    PlayfieldBuilder builder;
+
+    @Setup
+    public void createBuilder() {
+        builder = new PlayfieldBuilder();
+        builder.seed = Simulations.SEED;
+    }
+
+    @Benchmark
+    public Playfield createPlayfield() {
+        return builder.createPlayfield(players, AntsVm.MAX_PLAYFIELD_SIZE, AntsVm.MAX_PLAYFIELD_SIZE);
+    }
+}
@@ -0,0 +1,148 @@
+package ants.benchmarks;
+
+import ants.compiler.*;
+import ants.vm.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The <code>Simulations</code> class sets up the simulations used by the
+ * benchmarks.  The ant programs are compiled from the sample sources that are
+ * part of the benchmark resources, and all simulations are seeded with
+ * {@link #SEED}, so that every run of a benchmark executes the same
+ * instructions.
+ */
+final class Simulations {
+
+    /**
+     * The seed of all simulations.
+     */
+    static final long SEED = 4711;
+
+    private static final AntClassCache antClassCache = new AntClassCache();
+    private static File programDirectory;
+
+    private Simulations() {
+    }
+
+    /**
+     * Reads the source of a sample ant program.
+     *
+     * @param name The name of the program, without the extension.
+     * @return The source of the program.
+     * @throws IOException An I/O error occured while reading the source.
+     */
+    static String readProgram(String name) throws IOException {
+
+        InputStream in = Simulations.class.getResourceAsStream(name + ".ant");
+
+        if (in == null)
+            throw new FileNotFoundException(name + ".ant");
+
+        StringBuilder source = new StringBuilder();
+
+        try (Reader r = new InputStreamReader(in, "UTF-8")) {
+            char[] buffer = new char[4096];
+            for (int n = r.read(buffer); n >= 0; n = r.read(buffer))
+                source.append(buffer, 0, n);
+        }
+
+        return source.toString();
+    }
+
+    /**
+     * Compiles a sample ant program.
+     *
+     * @param name The name of the program, without the extension.
+     * @return The compiled ant class.
+     * @throws IOException An I/O error occured while reading the source.
+     */
+    static AntClass compileProgram(String name) throws IOException {
+        try {
+            return new AntsCompiler().compile(new StringReader(readProgram(name)));
+        } catch (SyntaxError e) {
+            throw new IOException(name + ".ant, line " + e.getLine() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the directory with the compiled sample programs.  The programs
+     * are compiled into a temporary directory when this method is called for
+     * the first time.
+     *
+     * @return The directory with the ant class files.
+     * @throws IOException An I/O error occured while compiling the programs.
+     */
+    private static synchronized File getProgramDirectory() throws IOException {
+
+        if (programDirectory != null)
+            return programDirectory;
+
+        File dir = Files.createTempDirectory("ants-benchmarks").toFile();
+        dir.deleteOnExit();
+
+        for (String name: new String[] { "arithmetic", "sensing", "crowd-queen", "walker" }) {
+
+            File file = new File(dir, name + ".ant.bin");
+            file.deleteOnExit();
+
+            AntClassFile.write(compileProgram(name), file.getPath());
+        }
+
+        programDirectory = dir;
+        return dir;
+    }
+
+    /**
+     * Creates the configuration of a single-player simulation on a square
+     * playfield.  The ants have as much energy as possible, and food does not
+     * regrow.
+     *
+     * @param size The width and height of the playfield.
+     * @param engine The execution engine.
+     * @param programs The names of the ant programs of the player, starting
+     *                 with the queen.
+     * @return The configuration.
+     * @throws IOException An I/O error occured while compiling the programs.
+     */
+    static Configuration configure(int size, AntsVm.Engine engine, String... programs)
+        throws IOException {
+
+        Configuration config = new Configuration();
+
+        config.dataPath = getProgramDirectory().getPath();
+        config.numberOfPlayers = 1;
+        config.playerInfos = new Configuration.PlayerInfo[1];
+        config.playerInfos[0] = new Configuration.PlayerInfo();
+        config.playerInfos[0].name = "benchmark";
+
+        for (String program: programs)
+            config.playerInfos[0].classFiles.add(program + ".ant.bin");
+
+        config.playfieldWidth = size;
+        config.playfieldHeight = size;
+        config.initialEnergy = Short.MAX_VALUE;
+        config.foodRegrowRate = 0;
+        config.engine = engine;
+        config.seed = SEED;
+
+        return config;
+    }
+
+    /**
+     * Creates a VM.  All VMs share the loaded ant classes, so that the
+     * programs are decoded or compiled only once.
+     *
+     * @param config The configuration of the VM.
+     * @return The VM.
+     * @throws IOException An I/O error occured while loading the programs.
+     */
+    static AntsVm createVm(Configuration config) throws IOException {
+        try {
+            return new AntsVm(config, antClassCache);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}